@@ -25,6 +25,10 @@ import wvw.utils.wvw.utils.rdf.Namespaces;
 
 public class LocalReasonActivity extends AppCompatActivity {
 
+    // OWL2 RL reasoner, shared by all reasoning requests; its rules are parsed
+    // and compiled (on first bind) only once per process
+    private static GenericRuleReasoner owl2rlReasoner;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -66,14 +70,9 @@ public class LocalReasonActivity extends AppCompatActivity {
     private void reason(Model model) {
         Log.d("android-rules","> reasoning");
 
-        AssetManager assMan = getAssets();
         try {
-            // load & parse rules
-            List<Rule> rules = Rule.parseRules(IOUtils.read(assMan.open("owl2rl.jena")));
-
             // create inf model
-            GenericRuleReasoner reasoner = new GenericRuleReasoner(rules);
-            InfModel infModel = ModelFactory.createInfModel(reasoner, model);
+            InfModel infModel = ModelFactory.createInfModel(getReasoner(getAssets()), model);
 
             printPizzaTypes(infModel);
 
@@ -82,6 +81,17 @@ public class LocalReasonActivity extends AppCompatActivity {
         }
     }
 
+    // load & parse rules, the first time only
+
+    private static synchronized GenericRuleReasoner getReasoner(AssetManager assMan) throws IOException {
+        if (owl2rlReasoner == null) {
+            List<Rule> rules = Rule.parseRules(IOUtils.read(assMan.open("owl2rl.jena")));
+
+            owl2rlReasoner = new GenericRuleReasoner(rules);
+        }
+        return owl2rlReasoner;
+    }
+
     // print DominosMargheritaPizza types
 
     private void printPizzaTypes(Model model) {
@@ -0,0 +1,138 @@
+package wvw.mobile.rules.explanation;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.InfModel;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.reasoner.Derivation;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.RuleDerivation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The derivations logged by an <code>InfModel</code>, indexed as a DAG of
+ * statements for trace-based explanations. Each statement is looked up once,
+ * however many proofs share it: whether the user asserted it, and the
+ * <code>RuleDerivation</code>s which concluded it, whose matches are the
+ * edges to its premises.
+ *
+ * Traces are streamed to a <code>Writer</code>. Within one trace a derived
+ * statement is expanded the first time it is met and referred back to after
+ * that, so shared sub-derivations are explained once and the output is linear
+ * in the size of the proof rather than exponential in its depth.
+ */
+public class DerivationIndex {
+
+    private final InfModel inf;
+
+    // The graph of the triples inputted by the user.
+    private final Graph base;
+
+    private final Map<Triple, Proof> proofs = new HashMap<>();
+
+    public DerivationIndex(InfModel inf, Model baseModel) {
+        this.inf = inf;
+        this.base = baseModel.getGraph();
+    }
+
+    /**
+     * Returns the node for a statement, building it on first use.
+     */
+    public Proof getProof(Triple triple) {
+        Proof proof = proofs.get(triple);
+        if (proof == null) {
+            proof = new Proof(triple);
+            proofs.put(triple, proof);
+        }
+        return proof;
+    }
+
+    /**
+     * Writes a deep trace of how the reasoner derived the statement, if at all.
+     * Tabs specifies the indentation of the outermost derivations.
+     */
+    public void writeTrace(Triple conclusion, int tabs, Writer out) throws IOException {
+        Set<Triple> traced = new HashSet<>();
+        traced.add(conclusion);
+        writeDerivations(getProof(conclusion), tabs, traced, out);
+    }
+
+    // Writes each derivation of the proof with its matches, tracing any derived
+    // match which has not been traced already in this explanation.
+    private void writeDerivations(Proof proof, int tabs, Set<Triple> traced, Writer out) throws IOException {
+        for (RuleDerivation derivation : proof.derivations) {
+            indent(tabs, out);
+            out.write("Conclusion: " + derivation.getConclusion() + " used the following matches: \n");
+
+            for (Triple match : derivation.getMatches()) {
+                Proof premise = getProof(match);
+                indent(tabs, out);
+                out.write(" Match: " + inf.asStatement(match));
+
+                // If the match was added by the user, we don't need to trace through how the reasoner
+                // derived that statement, since the user added it themselves...
+                if (premise.asserted) {
+                    out.write(" was asserted by the user\n");
+                }
+                // ...nor if its derivation is already part of this explanation.
+                else if (!traced.add(match)) {
+                    out.write(" was asserted by the reasoner, as traced above.\n");
+                }
+                else {
+                    out.write(" was asserted by the reasoner.\n");
+                    writeDerivations(premise, tabs + 1, traced, out);
+                    out.write("\n");
+                }
+            }
+
+            // After going through the matches, we now print the rule that the matches matched to.
+            indent(tabs, out);
+            out.write("And paired them with the following rule: \n");
+            indent(tabs, out);
+            out.write(derivation.getRule().toString() + "\n");
+            indent(tabs, out);
+            out.write("to reach this conclusion.\n");
+        }
+    }
+
+    private static void indent(int tabs, Writer out) throws IOException {
+        for (int i = 0; i < tabs; i++) {
+            out.write('\t');
+        }
+    }
+
+    /**
+     * A statement in the derivation DAG.
+     */
+    public class Proof {
+
+        public final Triple triple;
+
+        // Whether the statement is in the base model.
+        public final boolean asserted;
+
+        // The rule derivations concluding the statement.
+        public final List<RuleDerivation> derivations = new ArrayList<>();
+
+        Proof(Triple triple) {
+            this.triple = triple;
+            this.asserted = base.contains(triple);
+            Iterator<Derivation> itr = ((InfGraph) inf.getGraph()).getDerivation(triple);
+            while (itr.hasNext()) {
+                Derivation derivation = itr.next();
+                if (derivation instanceof RuleDerivation) {
+                    derivations.add((RuleDerivation) derivation);
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,9 @@ import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
 import com.hp.hpl.jena.reasoner.rulesys.Rule;
 import com.hp.hpl.jena.reasoner.rulesys.RuleDerivation;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 
@@ -43,6 +46,10 @@ public class Explainer {
     // the baseModel.
     private String rules;
 
+    // The reasoner for the current rules, built on first use so that the
+    // rules are parsed and compiled once rather than for every explanation.
+    private Reasoner reasoner;
+
     /**
      * Creates a new Explainer component.
      */
@@ -64,6 +71,7 @@ public class Explainer {
 
     public void Rules(String rules){
         this.rules = rules;
+        this.reasoner = null;
     }
 
     ///endregion
@@ -154,14 +162,31 @@ public class Explainer {
      * @return The traced-base explanation string
      */
     public String GetFullTracedBaseExplanation(Object subject, Object property, Object object) {
-        StringBuilder explanation = new StringBuilder("");
+        StringWriter explanation = new StringWriter();
+        try {
+            WriteFullTracedBaseExplanation(subject, property, object, explanation);
+        } catch (IOException e) {
+            // A StringWriter never throws.
+            throw new IllegalStateException(e);
+        }
+        return explanation.toString();
+    }
 
+    /**
+     * Writes the traced-base explanation of the statements matching the pattern to out,
+     * as it is generated. Each derived statement is traced once per explanation, and
+     * referred back to wherever else it is used as a match.
+     * @param subject: The statement's subject. Must be a Resource, or null as a wildcard.
+     * @param property: The statement's property. Must be a Property, or null as a wildcard.
+     * @param object: The statement's object. Can be a Literal, a Resource, or null as a wildcard
+     * @param out: The writer receiving the explanation
+     */
+    public void WriteFullTracedBaseExplanation(Object subject, Object property, Object object,
+                                               Writer out) throws IOException {
         InfModel model = generateInfModel(baseModel);
 
-        explanation.append(generateTraceBasedExplanation(this.baseModel, model, (Resource)subject,
-                (Property) property, (RDFNode) object));
-
-        return explanation.toString();
+        writeTraceBasedExplanation(this.baseModel, model, (Resource)subject,
+                (Property) property, (RDFNode) object, out);
     }
 
     /**
@@ -221,8 +246,10 @@ public class Explainer {
      * @return The InfModel derived from the reasoner.
      */
     private InfModel generateInfModel(Model baseModel){
-        Reasoner reasoner = new GenericRuleReasoner(Rule.parseRules(rules));
-        reasoner.setDerivationLogging(true);
+        if (reasoner == null) {
+            reasoner = new GenericRuleReasoner(Rule.parseRules(rules));
+            reasoner.setDerivationLogging(true);
+        }
         return com.hp.hpl.jena.rdf.model.ModelFactory.createInfModel(reasoner, baseModel);
     }
 
@@ -323,107 +350,20 @@ public class Explainer {
 
     ///region Trace Explanation Helper Methods
 
-    // returns a string with @num tabs in it
-    private String tabOffset(int num) {
-        String tab = "";
-        for (int i=0; i < num; i++) {
-            tab += ("\t");
-        }
-        return tab;
-    }
-
-    // A recursive function that traces through the infModel to determine how the statement was generated
-    // by a reasoner, if at all. infModel contains the full RDF model including the triples generated by
-    // the reasoner, the baseModel just contains the triples inputted by the user. The statement is the
-    // triple that we are tracing back. Tabs specifies the formatting, and can be thought of as the "level"
-    // in our model that we're in.
-    private String traceDerivation(InfModel infModel, Model baseModel, Statement statement, int tabs) {
-        String results = "";
-
-        // Find the triples (matches) and rule that was used to
-        // assert this statement, if it exists in the infModel.
-        Iterator<Derivation> derivItr = infModel.getDerivation(statement);
-        while(derivItr.hasNext()) {
-
-            // Should be the same as statement.
-            // Multiple are possible if a wildcard is used within statement.
-            RuleDerivation derivation = (RuleDerivation) derivItr.next();
-
-            // The concluded triple:
-            Triple conclusion = derivation.getConclusion();
-            results += (tabOffset(tabs) + "Conclusion: " + conclusion.toString() + " used the following matches: \n");
-
-            // Goes through the triples that were "matched" with the rule that was fired to
-            // generate the concluded triple.
-            for (Triple match : derivation.getMatches()) {
-
-                // Use the URIs to generate a statement, so we can search the base model for the statement.
-                Resource matchResource = ResourceFactory.createResource(match.getSubject().getURI());
-                Property matchProperty = ResourceFactory.createProperty(match.getPredicate().getURI());
-
-                Node obj = match.getObject();
-
-                if (!obj.isLiteral()) {
-                    Resource matchObject = ResourceFactory.createResource(match.getObject().getURI());
-
-                    Statement s = ResourceFactory.createStatement(matchResource, matchProperty, matchObject);
-
-                    // If the match was added by the user, we don't need to trace through how the reasoner derived
-                    // that statement, since the user added it themselves...
-                    if (baseModel.contains(s)) {
-                        results += tabOffset(tabs) + " Match: " + s.toString() + " was asserted by the user\n";
-                    }
-
-                    // Assuming it's not in the base model, then the reasoner must have derived that statement...
-                    if (!baseModel.contains(s)) {
-                        results += tabOffset(tabs) + " Match: " + s.toString() + " was asserted by the reasoner.\n";
-
-                        // Recursively trace to find how the reasoner derived that statement.
-                        results += traceDerivation(infModel, baseModel, s, tabs+1) + "\n";
-                    }
-                } else {
-                    Literal l = ResourceFactory.createTypedLiteral(obj.getLiteralValue().toString(), obj.getLiteralDatatype());
-                    Statement s = ResourceFactory.createStatement(matchResource, matchProperty, l);
-
-                    if (baseModel.contains(s)) {
-                        results += tabOffset(tabs) + " Match: " + s.toString() + " was asserted by the user\n";
-                    }
-
-                    // Assuming it's not in the base model, then the reasoner must have derived that statement...
-                    if (!baseModel.contains(s)) {
-                        results += tabOffset(tabs) + " Match: " + s.toString() + " was asserted by the reasoner.\n";
-
-                        // Recursively trace to find how the reasoner derived that statement.
-                        results += traceDerivation(infModel, baseModel, s, tabs+1) + "\n";
-                    }
-                }
-            }
-
-            // After going through the matches, we now print the rule that the matches matched to.
-            results += tabOffset(tabs) + "And paired them with the following rule: \n" ;
-            results += tabOffset(tabs) + derivation.getRule().toString() + "\n";
-            results += tabOffset(tabs) + "to reach this conclusion.\n";
-
-        }
-        return results;
-    }
-
     // Use the generated inf model, to provide a deep trace for a
     // triple (subject : predicate : object). The base model (containing
     // triples not generated by the reasoner) is needed to check whether
     // a statement was generated by the reasoner or inputted by the user.
-    private String generateTraceBasedExplanation(Model baseModel, InfModel inf,
-                                                 Resource subject, Property predicate, RDFNode object) {
-        String answer = "";
+    private void writeTraceBasedExplanation(Model baseModel, InfModel inf, Resource subject,
+                                            Property predicate, RDFNode object, Writer out) throws IOException {
+        DerivationIndex index = new DerivationIndex(inf, baseModel);
         StmtIterator stmtItr = inf.listStatements(subject, predicate, object);
         while ( stmtItr.hasNext() )
         {
             Statement s = stmtItr.next();
-            answer += traceDerivation(inf, baseModel, s, 0) + "\n";
-            answer += "\n\n";
-
+            index.writeTrace(s.asTriple(), 0, out);
+            out.write("\n\n\n");
         }
-        return answer;
     }
     //endregion
 
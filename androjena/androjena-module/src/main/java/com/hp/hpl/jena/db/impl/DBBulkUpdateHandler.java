@@ -16,6 +16,7 @@ import com.hp.hpl.jena.util.iterator.NiceIterator;
 
 import com.hp.hpl.jena.db.GraphRDB;
 import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.graph.impl.BulkLoader;
 import com.hp.hpl.jena.graph.impl.SimpleBulkUpdateHandler;
 
 /**
@@ -98,6 +99,16 @@ public class DBBulkUpdateHandler implements BulkUpdateHandler {
         manager.notifyAddGraph( graph, g );
 	}
 
+    /**
+        load the triples of the source through add(Triple[]), one batch at a time.
+    */
+    public long load( TripleSource source, int expectedSize ) {
+        return new BulkLoader() {
+            @Override protected void addBatch( Triple [] batch, int count )
+                { add( SimpleBulkUpdateHandler.copyOf( batch, count ) ); }
+        }.load( source );
+    }
+
     /**
         remove a list of triples from the graph; the remove is done as a list with notify off,
         and then the array-notify invoked.
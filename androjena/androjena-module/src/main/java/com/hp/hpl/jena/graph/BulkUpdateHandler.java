@@ -57,7 +57,17 @@ public interface BulkUpdateHandler
         @param g a Graph whose triples are to be added
     */
     void add( Graph g );
-    
+
+    /**
+        Add all the triples delivered by <code>source</code> into the graph this
+        is handler for. The source is run on a background thread and its
+        triples are added in batches, with one add event per batch rather than
+        per triple. Answer the number of triples delivered.
+        @param source the triples to add, typically a parser
+        @param expectedSize roughly how many triples to expect, or 0 if unknown
+    */
+    long load( TripleSource source, int expectedSize );
+
     /**
         Remove all the triples from the graph this is handler for.
         @param triples an array of triples to remove
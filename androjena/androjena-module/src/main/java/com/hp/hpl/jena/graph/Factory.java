@@ -7,7 +7,9 @@
 package com.hp.hpl.jena.graph;
 
 import com.hp.hpl.jena.mem.faster.GraphMemFaster;
+import com.hp.hpl.jena.mem.integer.GraphMemInt;
 import com.hp.hpl.jena.shared.*;
+import com.hp.hpl.jena.shared.impl.JenaParameters;
 
 /**
     A factory class for creating Graphs.
@@ -33,10 +35,33 @@ public class Factory
         { return Factory.createGraphMem( style ); }
               
     public static Graph createGraphMem()
-        { return new GraphMemFaster(); }
+        { return createGraphMem( ReificationStyle.Minimal ); }
 
+    /**
+        Answer a memory-based Graph with the given reification style: a
+        GraphMemInt if JenaParameters.enableDictionaryEncodedGraphs is set,
+        otherwise a GraphMemFaster.
+    */
     public static Graph createGraphMem( ReificationStyle style )
-        { return new GraphMemFaster( style ); }
+        { 
+        return JenaParameters.enableDictionaryEncodedGraphs 
+            ? createGraphMemInt( style ) 
+            : new GraphMemFaster( style ); 
+        }
+
+    /**
+        Answer a dictionary-encoded memory-based Graph with the Minimal
+        reification style.
+    */
+    public static Graph createGraphMemInt()
+        { return createGraphMemInt( ReificationStyle.Minimal ); }
+
+    /**
+        Answer a dictionary-encoded memory-based Graph with the given
+        reification style and a node dictionary of its own.
+    */
+    public static Graph createGraphMemInt( ReificationStyle style )
+        { return new GraphMemInt( style ); }
 
     public static Graph createGraphMemWithTransactionHandler( final TransactionHandler th )
         {
@@ -27,9 +27,8 @@ import com.hp.hpl.jena.shared.PrefixMapping;
 public abstract class Node {
     
     final protected Object label;
-    static final int THRESHOLD = 10000;
     
-    static final NodeCache present = new NodeCache(); 
+    static volatile NodeCache present = new NodeCache(); 
     
     /**
         The canonical instance of Node_ANY. No other instances are required.
@@ -93,6 +92,15 @@ public abstract class Node {
     public static Node createUncachedLiteral( Object value, String lang, RDFDatatype dtype ) 
         throws DatatypeFormatException 
         { return new Node_Literal( LiteralLabelFactory.create( value, lang, dtype ) ); }
+
+    /** make a literal node without consulting or filling the node cache, for
+        callers (such as bulk loaders) which keep a cache of their own */
+    public static Node createUncachedLiteral( LiteralLabel lit )
+        { return makeLiteral.construct( lit ); }
+
+    /** make a URI node without consulting or filling the node cache */
+    public static Node createUncachedURI( String uri )
+        { return makeURI.construct( uri ); }
                                                    
     /**
         Visit a Node and dispatch on it to the appropriate method from the 
@@ -271,30 +279,42 @@ public abstract class Node {
         if (wantCache == false) present.clear();
         caching = wantCache;
         }
-        
+    
     /**
-        We object strongly to null labels: for example, they make .equals flaky. We reuse nodes 
-        from the recent cache if we can. Otherwise, the maker knows how to construct a new
-        node of the correct class, and we add that node to the cache. create is
-        synchronised to avoid threading problems - a separate thread might zap the
-        cache entry that get is currently looking at.
+        Replace the node cache by an empty one with room for at least
+        <code>size</code> nodes. The counting state is carried over.
     */
-    public static synchronized Node create( NodeMaker maker, Object label )
+    public static void setCacheSize( int size )
         {
-        if (label == null) throw new JenaException( "Node.make: null label" );
-        Node node = present.get( label );
-        return node == null ? cacheNewNode( label, maker.construct( label ) ) : node;
+        NodeCache fresh = new NodeCache( size );
+        fresh.setCounting( present.isCounting() );
+        present = fresh;
         }
+    
+    /**
+        Answer the node cache in use, eg to inspect its hit, miss and eviction counts.
+    */
+    public static NodeCache getCache()
+        { return present; }
         
     /**
-         cache the node <code>n</code> under the key <code>label</code>,
-         and return that node.
+        We object strongly to null labels: for example, they make .equals flaky. We reuse nodes 
+        from the recent cache if we can. Otherwise, the maker knows how to construct a new
+        node of the correct class, and we add that node to the cache. The cache is lock-free,
+        so create is not synchronised; at worst two threads racing on the same new label
+        each construct an (equal) node.
     */
-    private static Node cacheNewNode( Object label, Node n )
-        { 
-        if (present.size() > THRESHOLD) { /* System.err.println( "> trashing node cache" ); */ present.clear(); }
-        if (caching) present.put( label, n );
-        return n;
+    public static Node create( NodeMaker maker, Object label )
+        {
+        if (label == null) throw new JenaException( "Node.make: null label" );
+        NodeCache cache = present;
+        Node node = cache.get( label );
+        if (node == null)
+            {
+            node = maker.construct( label );
+            if (caching) cache.put( label, node );
+            }
+        return node;
         }
         
 	/**
@@ -6,78 +6,195 @@
 
 package com.hp.hpl.jena.graph;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
     A NodeCache caches nodes according to their labels, to reduce store turnover
-    at the expense of some additional computation. The cache is represented as an
-    array indexed by the reduced hashcode of the labels of the nodes it contains.
-    Only the most recent node with any given reduced hash is kept. This tactic
-    means that we don't need to have any explicit cache-clearing code in normal
-    oepration.
+    at the expense of some additional computation. The cache is a set-associative
+    table: the reduced hash of a label selects a bucket of WAYS slots, any of which
+    may hold the node. When a bucket is full a victim is chosen with a second-chance
+    (clock) policy, so nodes which keep being asked for survive collisions.
+<p>
+    The cache is lock-free: slots are read and written through an atomic array
+    and the reference bits are advisory, so concurrent callers of get and put never
+    block each other. A race may occasionally let two equal nodes be constructed
+    for the same label; that is harmless since Node equality is label equality.
+<p>
+    Hit, miss and eviction counts are kept only while counting is switched on
+    with setCounting, so they cost nothing in normal operation.
      
 	@author kers
  */
 public class NodeCache
     {
     /**
-        The defined size of the cache; 5000 is mostly guesswork. (It didn't *quite*
+        The default size of the cache; 5000 is mostly guesswork. (It didn't *quite*
         fill up when running the tests and had about an 85% hit-rate).
     */
-    protected static final int SIZE = 5000;
+    public static final int DEFAULT_SIZE = 5000;
+    
+    /**
+        The number of slots in each bucket.
+    */
+    protected static final int WAYS = 4;
+    
+    /**
+        The cache nodes, in buckets of WAYS consecutive slots indexed by their 
+        label's reduced hash.
+    */
+    protected final AtomicReferenceArray<Node> nodes;
+    
+    /**
+        Second-chance bits, one per slot; set by a hit and cleared by the eviction 
+        scan. Updated without synchronisation since they only steer eviction.
+    */
+    protected final byte [] referenced;
     
     /**
-        The cache nodes, indexed by their label's reduced hash.
+        Shift selecting a bucket number from the top bits of a spread hash.
     */
-    protected final Node [] nodes = new Node [SIZE];
+    protected final int bucketShift;
+    
+    protected volatile boolean counting = false;
     
-    protected static final boolean counting = false;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    /**
+        Initialise a cache of the default size.
+    */
+    public NodeCache()
+        { this( DEFAULT_SIZE ); }
+    
+    /**
+        Initialise a cache with room for at least <code>size</code> nodes.
+    */
+    public NodeCache( int size )
+        {
+        int buckets = 1, bits = 0;
+        while (buckets * WAYS < size) { buckets <<= 1; bits += 1; }
+        bucketShift = 32 - bits;
+        nodes = new AtomicReferenceArray<Node>( buckets * WAYS );
+        referenced = new byte [buckets * WAYS];
+        }
     
     /**
         Wipe the cache of all entries.
     */
     public void clear()
-        { for (int i = 0; i < SIZE; i += 1) nodes[i] = null; }
+        { for (int i = 0; i < nodes.length(); i += 1) nodes.set( i, null ); }
     
+    /**
+        Answer the number of used slots in the cache. This scans the whole
+        table and is intended for diagnostics only.
+    */
     public int size()
-        { return 0; }
+        {
+        int result = 0;
+        for (int i = 0; i < nodes.length(); i += 1) if (nodes.get( i ) != null) result += 1;
+        return result;
+        }
     
-    private int hits = 0;
-    private int misses = 0;
+    /**
+        Answer the number of nodes the cache can hold.
+    */
+    public int capacity()
+        { return nodes.length(); }
     
     /**
-        Answer the number of used slots in the cache
+        Switch the hit/miss/eviction counters on or off. Switching them on
+        resets them.
     */
-    private int count()
+    public void setCounting( boolean wantCounting )
         {
-        int result = 0;
-        for (int i = 0; i < SIZE; i += 1) if (nodes[i] != null) result += 1;
-        return result;
+        if (wantCounting) resetCounts();
+        counting = wantCounting;
+        }
+    
+    public boolean isCounting()
+        { return counting; }
+    
+    public void resetCounts()
+        {
+        hits.set( 0 );
+        misses.set( 0 );
+        evictions.set( 0 );
+        }
+    
+    public long getHits()
+        { return hits.get(); }
+    
+    public long getMisses()
+        { return misses.get(); }
+    
+    public long getEvictions()
+        { return evictions.get(); }
+    
+    @Override public String toString()
+        {
+        return "NodeCache(capacity=" + capacity() + ", hits=" + getHits() 
+            + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ")";
+        }
+    
+    /**
+        Answer the index of the first slot of the bucket for <code>label</code>.
+        The hash is spread by a multiplicative (Fibonacci) step since URI labels
+        tend to differ only in their last few characters.
+    */
+    protected int bucketFor( Object label )
+        {
+        if (bucketShift == 32) return 0;
+        int h = label.hashCode() * 0x9E3779B9;
+        return (h >>> bucketShift) * WAYS;
         }
     
     /**
         Answer the node with the given <code>label</code> in the cache, or 
-        <code>null</code> if there isn't one. Selects the slot in the cache by the
+        <code>null</code> if there isn't one. Selects the bucket in the cache by the
         reduced hash of the label, and confirms that the Node is the right one using
         .equals() on this label and that node's label.
     */
     public Node get( Object label )
         {
-        Node present = nodes[(label.hashCode() & 0x7fffffff) % SIZE]; 
-        if (counting)
+        int base = bucketFor( label );
+        for (int i = base; i < base + WAYS; i += 1)
             {
-            if (present == null || !label.equals( present.label )) misses += 1; else hits += 1;
-            if ((misses + hits) % 100 == 0) 
-                System.err.println( ">> hits: " + hits + ", misses: " + misses + ", occ: " + count() + "/" + SIZE );
+            Node present = nodes.get( i );
+            if (present != null && label.equals( present.label ))
+                {
+                if (referenced[i] == 0) referenced[i] = 1;
+                if (counting) hits.incrementAndGet();
+                return present;
+                }
             }
-        return present == null || !label.equals( present.label ) ? null : present;
+        if (counting) misses.incrementAndGet();
+        return null;
         }
     
     /**
          Record in the cache the designated Node, using the given label (which must
-         be .equals() to the Node's label).
+         be .equals() to the Node's label). Uses a free slot in the label's bucket if
+         there is one, otherwise evicts the first slot which has not been referenced
+         since the last scan.
     */
     public void put( Object label, Node cached )
         {
-        nodes[(label.hashCode() & 0x7fffffff) % SIZE] = cached;
+        int base = bucketFor( label );
+        for (int i = base; i < base + WAYS; i += 1)
+            if (nodes.get( i ) == null && nodes.compareAndSet( i, null, cached )) 
+                { referenced[i] = 0; return; }
+        int victim = -1;
+        for (int i = base; i < base + WAYS; i += 1)
+            {
+            if (referenced[i] == 0) { victim = i; break; }
+            referenced[i] = 0;
+            }
+        if (victim < 0) victim = base + ((cached.hashCode() >>> 8) & (WAYS - 1));
+        nodes.set( victim, cached );
+        referenced[victim] = 0;
+        if (counting) evictions.incrementAndGet();
         }
     }
 
@@ -0,0 +1,23 @@
+package com.hp.hpl.jena.graph;
+
+/**
+    A GraphStatisticsHandler which also knows, for each predicate, how many
+    different subjects and objects it has. With the number of triples for the
+    predicate, these give the number of triples expected to match a pattern
+    whose subject or object is known but not yet what it is, as for a variable
+    bound by an earlier pattern of a query.
+*/
+public interface PredicateStatisticsHandler extends GraphStatisticsHandler
+    {
+    /**
+        Answer the number of different subjects of triples with predicate
+        <code>P</code>, or -1 if not known.
+    */
+    public long getDistinctSubjects( Node P );
+
+    /**
+        Answer the number of different objects of triples with predicate
+        <code>P</code>, or -1 if not known.
+    */
+    public long getDistinctObjects( Node P );
+    }
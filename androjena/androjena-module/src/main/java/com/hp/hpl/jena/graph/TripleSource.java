@@ -0,0 +1,17 @@
+package com.hp.hpl.jena.graph;
+
+/**
+    A TripleSource delivers a stream of triples, typically by parsing some
+    document, for BulkUpdateHandler.load to add to a graph. Sources push
+    their triples rather than being iterated over, so that a parser need not
+    be turned inside out.
+*/
+public interface TripleSource
+    {
+    /**
+        Hand each triple of this source, in order, to <code>sink</code>.
+        This may be called on a thread other than the one that created the
+        source; it is called at most once.
+    */
+    void sendTo( GraphAdd sink );
+    }
@@ -0,0 +1,153 @@
+package com.hp.hpl.jena.graph.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.shared.JenaException;
+
+/**
+    A BulkLoader runs a TripleSource on a background thread and hands its
+    triples, a batch at a time, to <code>addBatch</code> on the calling
+    thread, so that parsing overlaps with indexing. A small fixed set of
+    triple buffers is passed back and forth between the two threads, so
+    batching makes no garbage of its own. If either side fails the other is
+    stopped and the failure is rethrown from <code>load</code>.
+*/
+public abstract class BulkLoader
+    {
+    /**
+        The default number of triples in a batch.
+    */
+    public static final int BATCH_SIZE = 1024;
+
+    /**
+        The number of buffers shared by the parsing and loading threads.
+    */
+    protected static final int BUFFERS = 4;
+
+    protected final int batchSize;
+
+    public BulkLoader()
+        { this( BATCH_SIZE ); }
+
+    public BulkLoader( int batchSize )
+        { this.batchSize = batchSize; }
+
+    /**
+        Add the first <code>count</code> triples of <code>batch</code>. The
+        array is reused once this returns, so it must be copied if it is to be
+        kept (eg to hand it to listeners).
+    */
+    protected abstract void addBatch( Triple [] batch, int count );
+
+    /**
+        Load all the triples of <code>source</code> through <code>addBatch</code>,
+        answering how many there were.
+    */
+    public long load( TripleSource source )
+        {
+        Producer producer = new Producer( source );
+        Thread parser = new Thread( producer, "bulk-loader" );
+        parser.setDaemon( true );
+        parser.start();
+        long count = 0;
+        boolean finished = false;
+        try
+            {
+            while (true)
+                {
+                Buffer b = producer.full.take();
+                if (b.count > 0) addBatch( b.triples, b.count );
+                count += b.count;
+                if (b.last) break;
+                producer.free.put( b );
+                }
+            finished = true;
+            }
+        catch (InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            throw new JenaException( "interrupted while bulk loading", e );
+            }
+        finally
+            {
+            if (!finished) parser.interrupt();
+            }
+        if (producer.failure != null) rethrow( producer.failure );
+        return count;
+        }
+
+    private static void rethrow( Throwable t )
+        {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new JenaException( t );
+        }
+
+    /**
+        A batch of triples in transit.
+    */
+    protected static class Buffer
+        {
+        protected final Triple [] triples;
+        protected int count = 0;
+        protected boolean last = false;
+
+        protected Buffer( int size )
+            { triples = new Triple[size]; }
+        }
+
+    /**
+        Thrown through the source when the loading thread has given up.
+    */
+    protected static class Cancelled extends RuntimeException
+        { private static final long serialVersionUID = 1L; }
+
+    /**
+        The background half: runs the source, filling buffers from the free
+        queue and passing them on to the full one. The final buffer, perhaps
+        empty, is marked last; any failure is recorded before it is sent.
+    */
+    protected class Producer implements Runnable, GraphAdd
+        {
+        protected final TripleSource source;
+        protected final BlockingQueue<Buffer> free = new ArrayBlockingQueue<Buffer>( BUFFERS );
+        protected final BlockingQueue<Buffer> full = new ArrayBlockingQueue<Buffer>( BUFFERS );
+        protected Buffer current;
+        protected Throwable failure;
+
+        protected Producer( TripleSource source )
+            {
+            this.source = source;
+            for (int i = 1; i < BUFFERS; i += 1) free.add( new Buffer( batchSize ) );
+            current = new Buffer( batchSize );
+            }
+
+        public void run()
+            {
+            try { source.sendTo( this ); }
+            catch (Cancelled e) { return; }
+            catch (Throwable e) { failure = e; }
+            current.last = true;
+            try { full.put( current ); }
+            catch (InterruptedException e) { /* the loader has gone */ }
+            }
+
+        public void add( Triple t )
+            {
+            current.triples[current.count++] = t;
+            if (current.count == batchSize)
+                {
+                try
+                    {
+                    full.put( current );
+                    current = free.take();
+                    }
+                catch (InterruptedException e)
+                    { throw new Cancelled(); }
+                current.count = 0;
+                }
+            }
+        }
+    }
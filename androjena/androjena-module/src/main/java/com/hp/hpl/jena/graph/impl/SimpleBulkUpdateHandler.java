@@ -69,6 +69,41 @@ public class SimpleBulkUpdateHandler implements BulkUpdateHandler
         manager.notifyAddGraph( graph, g );
         }
         
+    /**
+        Load the triples of <code>source</code> with performAdd, a batch at a
+        time, bracketed by startRead and finishRead events. Each batch is
+        announced with one notifyAddArray, and only copied out of the
+        loader's buffer if there is someone listening.
+    */
+    public long load( TripleSource source, int expectedSize )
+        {
+        manager.notifyEvent( graph, GraphEvents.startRead );
+        try
+            {
+            return new BulkLoader()
+                {
+                @Override protected void addBatch( Triple [] batch, int count )
+                    {
+                    for (int i = 0; i < count; i += 1) graph.performAdd( batch[i] );
+                    if (manager.listening()) manager.notifyAddArray( graph, copyOf( batch, count ) );
+                    }
+                }.load( source );
+            }
+        finally
+            { manager.notifyEvent( graph, GraphEvents.finishRead ); }
+        }
+
+    /**
+        Answer a new array holding the first <code>count</code> elements of
+        <code>triples</code>.
+    */
+    public static Triple [] copyOf( Triple [] triples, int count )
+        {
+        Triple [] result = new Triple[count];
+        System.arraycopy( triples, 0, result, 0, count );
+        return result;
+        }
+
     public static void addReifications( Graph ours, Graph g )
         {
         Reifier r = g.getReifier();
@@ -62,6 +62,19 @@ public class WrappedBulkUpdateHandler implements BulkUpdateHandler
 	    manager.notifyAddGraph( graph, g );
         }
 
+    /**
+        Load through our own add( Triple[] ), so that each batch is seen by both
+        the base graph and this one.
+    */
+    public long load( TripleSource source, int expectedSize )
+        {
+        return new BulkLoader()
+            {
+            @Override protected void addBatch( Triple [] batch, int count )
+                { add( SimpleBulkUpdateHandler.copyOf( batch, count ) ); }
+            }.load( source );
+        }
+
     public void delete( Triple[] triples )
         {
         base.delete( triples );
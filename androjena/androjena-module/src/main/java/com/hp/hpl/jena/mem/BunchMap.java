@@ -48,6 +48,12 @@ public interface BunchMap
         Answer an iterator over all the keys in this map.
     */
     public ExtendedIterator<Object> keyIterator();
+
+    /**
+        Hint that this map will soon hold about <code>expected</code> keys, so
+        that it may make room for them all at once.
+    */
+    public void ensureCapacity( int expected );
     }
 
 /*
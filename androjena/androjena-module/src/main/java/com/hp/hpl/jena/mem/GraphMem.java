@@ -44,6 +44,9 @@ public class GraphMem extends GraphMemBase implements Graph
     @Override protected void destroy()
         { store.close(); }
 
+    @Override public void presize( int expected )
+        { ((GraphTripleStore) store).presize( expected ); }
+
     @Override public void performAdd( Triple t )
         { if (!getReifier().handledAdd( t )) store.add( t ); }
 
@@ -58,6 +61,9 @@ public class GraphMem extends GraphMemBase implements Graph
         if (queryHandler == null) queryHandler = new GraphMemBaseQueryHandler( this );
         return queryHandler;
         }
+
+    @Override protected GraphStatisticsHandler createStatisticsHandler()
+        { return new GraphMemStatisticsHandler( (GraphTripleStore) store, getReifier() ); }
         
     /**
          Answer an ExtendedIterator over all the triples in this graph that match the
@@ -79,6 +79,13 @@ public abstract class GraphMemBase extends GraphBase
     */
     public abstract void clear();
 
+    /**
+         Make room for about <code>expected</code> more triples, eg before a bulk
+         load. By default there is nothing to do.
+    */
+    public void presize( int expected )
+        {}
+
     @Override
     public BulkUpdateHandler getBulkUpdateHandler()
         {
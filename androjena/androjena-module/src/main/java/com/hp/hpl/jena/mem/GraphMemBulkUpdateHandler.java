@@ -6,6 +6,7 @@
 
 package com.hp.hpl.jena.mem;
 
+import com.hp.hpl.jena.graph.TripleSource;
 import com.hp.hpl.jena.graph.impl.GraphWithPerform;
 import com.hp.hpl.jena.graph.impl.SimpleBulkUpdateHandler;
 
@@ -27,6 +28,16 @@ public class GraphMemBulkUpdateHandler extends SimpleBulkUpdateHandler
 	    notifyRemoveAll();
 	    }
 	
+	/**
+	    Presize the graph's indexes for the expected triples before loading them.
+	*/
+	@Override
+    public long load( TripleSource source, int expectedSize )
+	    {
+	    if (expectedSize > 0) ((GraphMemBase) graph).presize( expectedSize );
+	    return super.load( source, expectedSize );
+	    }
+	
 	protected void clearComponents()
 	    { ((GraphMemBase) graph).clear(); }
 	}
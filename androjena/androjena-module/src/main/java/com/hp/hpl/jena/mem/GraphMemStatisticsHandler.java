@@ -0,0 +1,109 @@
+package com.hp.hpl.jena.mem;
+
+import com.hp.hpl.jena.graph.*;
+
+/**
+    The GraphMemStatisticsHandler exploits the existing S/P/O indexes of an
+    in-memory triple store to deliver statistics information for
+    single-concrete-node queries and for trivial cases of two-concrete-node
+    queries, and, through PredicateStatistics, the numbers of different
+    subjects and objects of each predicate.
+*/
+public class GraphMemStatisticsHandler implements PredicateStatisticsHandler
+    {
+    protected final GraphTripleStoreBase store;
+    protected final Reifier reifier;
+    protected final PredicateStatistics predicateStatistics;
+    
+    public GraphMemStatisticsHandler( GraphTripleStoreBase store, Reifier reifier )
+        { 
+        this.store = store; 
+        this.reifier = reifier; 
+        this.predicateStatistics = store.getPredicateStatistics();
+        }
+
+    private static class C 
+        {
+        static final int NONE = 0;
+        static final int S = 1, P = 2, O = 4;
+        static final int SP = S + P, SO = S + O, PO = P + O;
+        static final int SPO = S + P + O;
+        }
+    
+    /**
+        Answer a good estimate of the number of triples matching (S, P, O)
+        if cheaply possible.
+        
+        <p>If there are any reifier triples, return -1. (We may be able to
+        improve this later.)
+        
+        <p>If only one of S, P, O is concrete, answers the number of triples
+        with that value in that field.
+        
+        <p>If two of S, P, P are concrete and at least one of them has no
+        corresponding triples, answers 0.
+        
+        <p>Otherwise answers -1, ie, no information available. (May change;
+        the two degenerate cases might deserve an answer.)
+        
+     	@see com.hp.hpl.jena.graph.GraphStatisticsHandler#getStatistic(com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.graph.Node, com.hp.hpl.jena.graph.Node)
+     */
+    public long getStatistic( Node S, Node P, Node O )
+        {
+        if (reifier.size() > 0) return -1;
+        int concrete = (S.isConcrete() ? C.S : 0) + (P.isConcrete() ? C.P : 0) + (O.isConcrete() ? C.O : 0);
+        switch (concrete)
+            {
+            case C.NONE:
+                return store.size();
+            
+            case C.S:
+                return countInMap( S, store.subjects );
+                
+            case C.SP:
+                return countsInMap( S, store.subjects, P, store.predicates );
+            
+            case C.SO:
+                return countsInMap( S, store.subjects, O, store.objects );
+                
+            case C.P:
+                return countInMap( P, store.predicates );
+                
+            case C.PO:
+                return countsInMap( P, store.predicates, O, store.objects );
+            
+            case C.O:
+                return countInMap( O, store.objects );
+                
+            case C.SPO:
+                return store.contains( Triple.create( S, P, O ) ) ? 1 : 0;
+            }
+        return -1;
+        }
+
+    /**
+        Answer the number of different subjects of triples with predicate
+        <code>P</code>, or -1 if there are any reifier triples.
+    */
+    public long getDistinctSubjects( Node P )
+        { return reifier.size() > 0 ? -1 : predicateStatistics.getDistinctSubjects( P ); }
+
+    /**
+        Answer the number of different objects of triples with predicate
+        <code>P</code>, or -1 if there are any reifier triples.
+    */
+    public long getDistinctObjects( Node P )
+        { return reifier.size() > 0 ? -1 : predicateStatistics.getDistinctObjects( P ); }
+
+    public long countsInMap( Node a, NodeToTriplesMapBase mapA, Node b, NodeToTriplesMapBase mapB )
+        {
+        long countA = countInMap( a, mapA ), countB = countInMap( b, mapB );
+        return countA == 0 || countB == 0 ? 0 : -1L;
+        }
+    
+    public long countInMap( Node n, NodeToTriplesMapBase map )
+        {
+        TripleBunch b = map.bunchMap.get( n.getIndexingValue() );
+        return b == null ? 0 : b.size();
+        }
+    }
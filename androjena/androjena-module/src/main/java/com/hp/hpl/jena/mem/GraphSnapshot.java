@@ -0,0 +1,246 @@
+package com.hp.hpl.jena.mem;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/**
+    A read-only, versioned snapshot of the triples of a graph. It is a frozen
+    base GraphMem together with a chain of deltas, one for each batch of
+    changes since the base was copied, newest first. None of these is changed
+    once made, so any number of threads can read a snapshot without locking
+    while the graph it was taken from goes on changing.
+<p>
+    The next snapshot is made from this one and a batch of changes by
+    <code>apply</code>, which shares the base and the deltas and puts a new
+    delta, holding just the batch, in front of them. To keep the chain short,
+    a delta is merged with the one before it while that is no more than twice
+    its size, so the chain has a logarithmic length and each change is merged
+    a logarithmic number of times. When the deltas have grown to a quarter of
+    the base the snapshot is compacted into a new base instead.
+*/
+public class GraphSnapshot extends GraphBase
+    {
+    /**
+        Below this many changed triples a snapshot is never compacted.
+    */
+    public static final int MIN_COMPACT = 1000;
+
+    /**
+        One batch of changes: the triples it added (none of them present
+        before it) and removed (all of them present before it), followed by
+        the older changes.
+    */
+    protected static class Delta
+        {
+        protected final Graph added;
+        protected final Set<Triple> removed;
+        protected final Delta older;
+
+        /**
+            The number of triples added and removed by this delta, and by it
+            and all the older ones.
+        */
+        protected final int changes, total;
+
+        protected Delta( Graph added, Set<Triple> removed, Delta older )
+            {
+            this.added = added;
+            this.removed = removed;
+            this.older = older;
+            this.changes = added.size() + removed.size();
+            this.total = changes + (older == null ? 0 : older.total);
+            added.getReifier();
+            }
+
+        /**
+            Answer true iff this delta added or removed <code>t</code>.
+        */
+        protected boolean mentions( Triple t )
+            { return removed.contains( t ) || hasTriple( added, t ); }
+        }
+
+    /**
+        The frozen base and the changes to it, newest first (null if none).
+    */
+    protected final Graph base;
+    protected final Delta deltas;
+
+    protected final int baseSize, size;
+    protected final long version;
+
+    protected GraphSnapshot( Graph base, int baseSize, Delta deltas, int size, long version )
+        {
+        this.base = base;
+        this.baseSize = baseSize;
+        this.deltas = deltas;
+        this.size = size;
+        this.version = version;
+        // create the lazy parts now, rather than racing for them in readers
+        getReifier();
+        base.getReifier();
+        }
+
+    /**
+        Answer a snapshot of the current triples of <code>g</code>, which must
+        not be changed while it is copied.
+    */
+    public static GraphSnapshot copyOf( Graph g, long version )
+        {
+        Graph copy = copy( g );
+        return new GraphSnapshot( copy, copy.size(), null, copy.size(), version );
+        }
+
+    /**
+        Answer the snapshot that follows this one after the triples
+        <code>adds</code> (none of which are in this snapshot) are added and
+        the triples <code>removes</code> (all of which are) are removed. This
+        snapshot is unchanged.
+    */
+    public GraphSnapshot apply( Collection<Triple> adds, Collection<Triple> removes, long newVersion )
+        {
+        int newSize = size + adds.size() - removes.size();
+        int changed = (deltas == null ? 0 : deltas.total) + adds.size() + removes.size();
+        if (changed > MIN_COMPACT && changed > baseSize / 4)
+            {
+            Graph g = copy( this );
+            for (Triple t: adds) g.add( t );
+            for (Triple t: removes) g.delete( t );
+            return new GraphSnapshot( g, g.size(), null, g.size(), newVersion );
+            }
+        Graph added = new GraphMem();
+        for (Triple t: adds) added.add( t );
+        Delta d = new Delta( added, new HashSet<Triple>( removes ), deltas );
+        while (d.older != null && d.older.changes <= d.changes * 2) d = merge( d.older, d );
+        return new GraphSnapshot( base, baseSize, d, newSize, newVersion );
+        }
+
+    /**
+        Answer the single delta with the effect of <code>older</code>
+        followed by <code>newer</code>, which comes straight after it.
+    */
+    protected static Delta merge( Delta older, Delta newer )
+        {
+        Graph added = copy( older.added );
+        Set<Triple> removed = new HashSet<Triple>( older.removed );
+        ExtendedIterator<Triple> it = newer.added.find( Triple.ANY );
+        try { while (it.hasNext()) { Triple t = it.next(); if (!removed.remove( t )) added.add( t ); } }
+        finally { it.close(); }
+        for (Triple t: newer.removed)
+            if (hasTriple( older.added, t )) added.delete( t ); else removed.add( t );
+        return new Delta( added, removed, older.older );
+        }
+
+    /**
+        Answer the number of deltas in front of the base; for testing.
+    */
+    public int chainLength()
+        {
+        int n = 0;
+        for (Delta d = deltas; d != null; d = d.older) n += 1;
+        return n;
+        }
+
+    /**
+        Answer the version given to this snapshot when it was made.
+    */
+    public long getVersion()
+        { return version; }
+
+    /**
+        Answer true iff this snapshot holds exactly the triple <code>t</code>,
+        which must be concrete. Unlike <code>contains</code>, literals are
+        compared by term rather than by value.
+    */
+    public boolean hasTriple( Triple t )
+        {
+        for (Delta d = deltas; d != null; d = d.older)
+            {
+            if (hasTriple( d.added, t )) return true;
+            if (d.removed.contains( t )) return false;
+            }
+        return hasTriple( base, t );
+        }
+
+    /**
+        Each triple is found where it was last added: in the base if no delta
+        mentions it, otherwise in the newest delta which mentions it, if that
+        delta added it.
+    */
+    @Override public ExtendedIterator<Triple> graphBaseFind( TripleMatch m )
+        {
+        ExtendedIterator<Triple> it = base.find( m );
+        if (deltas == null) return it;
+        it = it.filterDrop( mentionedAfter( null ) );
+        for (Delta d = deltas; d != null; d = d.older)
+            if (!d.added.isEmpty()) it = it.andThen( d.added.find( m ).filterDrop( mentionedAfter( d ) ) );
+        return it;
+        }
+
+    /**
+        Answer a filter accepting the triples mentioned by a delta newer than
+        <code>stop</code>, or by any delta if <code>stop</code> is null.
+    */
+    protected Filter<Triple> mentionedAfter( final Delta stop )
+        {
+        return new Filter<Triple>()
+            {
+            @Override public boolean accept( Triple t )
+                {
+                for (Delta d = deltas; d != stop; d = d.older) if (d.mentions( t )) return true;
+                return false;
+                }
+            };
+        }
+
+    @Override public boolean graphBaseContains( Triple t )
+        {
+        if (t.isConcrete() && !t.getObject().isLiteral())
+            {
+            for (Delta d = deltas; d != null; d = d.older)
+                {
+                if (d.added.contains( t )) return true;
+                if (d.removed.contains( t )) return false;
+                }
+            return base.contains( t );
+            }
+        return containsByFind( t );
+        }
+
+    @Override public int graphBaseSize()
+        { return size; }
+
+    @Override public String toString()
+        { return "<snapshot " + version + " of " + graphBaseSize() + " triples>"; }
+
+    /**
+        Answer true iff <code>g</code> holds a triple term-equal to <code>t</code>.
+    */
+    protected static boolean hasTriple( Graph g, Triple t )
+        {
+        if (!t.getObject().isLiteral()) return g.contains( t );
+        ExtendedIterator<Triple> it = g.find( t );
+        try
+            {
+            while (it.hasNext()) if (it.next().equals( t )) return true;
+            return false;
+            }
+        finally { it.close(); }
+        }
+
+    protected static Graph copy( Graph g )
+        {
+        GraphMem copy = new GraphMem();
+        ExtendedIterator<Triple> it = g.find( Triple.ANY );
+        try { while (it.hasNext()) copy.add( it.next() ); }
+        finally { it.close(); }
+        return copy;
+        }
+    }
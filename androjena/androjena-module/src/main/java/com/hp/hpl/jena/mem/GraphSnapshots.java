@@ -0,0 +1,144 @@
+package com.hp.hpl.jena.mem;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+    The published GraphSnapshot of a live graph. A listener on the live graph
+    records the changes made to it since the last snapshot was published;
+    <code>publish</code> makes them into the next snapshot, which readers then
+    see through <code>current</code> without any locking. Changes reported only
+    as events, such as removeAll, cannot be recorded triple by triple and make
+    the next snapshot a fresh copy of the graph.
+*/
+public class GraphSnapshots implements GraphListener
+    {
+    protected final Graph graph;
+
+    protected volatile GraphSnapshot current;
+
+    /**
+        The changes since <code>current</code>: triples added that it does not
+        hold, and triples removed that it does.
+    */
+    protected final Set<Triple> adds = new LinkedHashSet<Triple>();
+    protected final Set<Triple> removes = new LinkedHashSet<Triple>();
+
+    protected boolean recopy = false;
+
+    /**
+        Initialise with a snapshot of <code>graph</code> with the given version,
+        and start listening for changes to it.
+    */
+    public GraphSnapshots( Graph graph, long version )
+        {
+        this.graph = graph;
+        this.current = GraphSnapshot.copyOf( graph, version );
+        graph.getEventManager().register( this );
+        }
+
+    /**
+        Answer the live graph.
+    */
+    public Graph getGraph()
+        { return graph; }
+
+    /**
+        Answer the last snapshot published.
+    */
+    public GraphSnapshot current()
+        { return current; }
+
+    /**
+        Answer true iff the graph has changed since the last snapshot was published.
+    */
+    public synchronized boolean isChanged()
+        { return recopy || !adds.isEmpty() || !removes.isEmpty(); }
+
+    /**
+        Publish a snapshot with the given version of the graph as it is now,
+        which must not change while this runs, and answer it.
+    */
+    public synchronized GraphSnapshot publish( long version )
+        {
+        GraphSnapshot next = recopy
+            ? GraphSnapshot.copyOf( graph, version )
+            : current.apply( adds, removes, version )
+            ;
+        adds.clear();
+        removes.clear();
+        recopy = false;
+        current = next;
+        return next;
+        }
+
+    /**
+        Stop listening to the graph.
+    */
+    public void close()
+        { graph.getEventManager().unregister( this ); }
+
+    protected synchronized void added( Triple t )
+        {
+        if (!recopy && !removes.remove( t ) && !current.hasTriple( t )) adds.add( t );
+        }
+
+    protected synchronized void deleted( Triple t )
+        {
+        if (!recopy && !adds.remove( t ) && current.hasTriple( t )) removes.add( t );
+        }
+
+    public void notifyAddTriple( Graph g, Triple t )
+        { added( t ); }
+
+    public void notifyAddArray( Graph g, Triple[] triples )
+        { for (Triple t: triples) added( t ); }
+
+    public void notifyAddList( Graph g, List<Triple> triples )
+        { for (Triple t: triples) added( t ); }
+
+    public void notifyAddIterator( Graph g, Iterator<Triple> it )
+        { while (it.hasNext()) added( it.next() ); }
+
+    public void notifyAddGraph( Graph g, Graph other )
+        {
+        ExtendedIterator<Triple> it = other.find( Triple.ANY );
+        try { notifyAddIterator( g, it ); } finally { it.close(); }
+        }
+
+    public void notifyDeleteTriple( Graph g, Triple t )
+        { deleted( t ); }
+
+    public void notifyDeleteArray( Graph g, Triple[] triples )
+        { for (Triple t: triples) deleted( t ); }
+
+    public void notifyDeleteList( Graph g, List<Triple> triples )
+        { for (Triple t: triples) deleted( t ); }
+
+    public void notifyDeleteIterator( Graph g, Iterator<Triple> it )
+        { while (it.hasNext()) deleted( it.next() ); }
+
+    public void notifyDeleteGraph( Graph g, Graph other )
+        {
+        ExtendedIterator<Triple> it = other.find( Triple.ANY );
+        try { notifyDeleteIterator( g, it ); } finally { it.close(); }
+        }
+
+    public synchronized void notifyEvent( Graph source, Object value )
+        {
+        if (value instanceof GraphEvents && !value.equals( GraphEvents.startRead ) && !value.equals( GraphEvents.finishRead ))
+            {
+            recopy = true;
+            adds.clear();
+            removes.clear();
+            }
+        }
+    }
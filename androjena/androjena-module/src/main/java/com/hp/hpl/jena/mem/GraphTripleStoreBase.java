@@ -22,6 +22,12 @@ public abstract class GraphTripleStoreBase implements TripleStore
     protected NodeToTriplesMapBase predicates;
     protected NodeToTriplesMapBase objects;
     
+    /**
+        The per-predicate statistics kept up to date by this store, or null
+        if nobody has asked for them.
+    */
+    protected PredicateStatistics statistics;
+    
     protected GraphTripleStoreBase
         ( Graph parent,
         NodeToTriplesMapBase subjects,
@@ -46,8 +52,9 @@ public abstract class GraphTripleStoreBase implements TripleStore
          {
          if (subjects.add( t ))
              {
-             predicates.add( t );
-             objects.add( t ); 
+             predicates.addNew( t );
+             objects.addNew( t ); 
+             if (statistics != null) statistics.added( t );
              }
          }
      
@@ -60,6 +67,7 @@ public abstract class GraphTripleStoreBase implements TripleStore
              {
              predicates.remove( t );
              objects.remove( t ); 
+             if (statistics != null) statistics.deleted( t );
              }
          }
      
@@ -71,7 +79,40 @@ public abstract class GraphTripleStoreBase implements TripleStore
          subjects.clear();
          predicates.clear();
          objects.clear();
+         if (statistics != null) statistics.clear();
          }
+     
+     /**
+          Answer the per-predicate statistics of this store, counting them the
+          first time they are asked for; after that they are kept up to date
+          as triples are added and deleted.
+     */
+     public synchronized PredicateStatistics getPredicateStatistics()
+         {
+         if (statistics == null) statistics = new PredicateStatistics( predicates );
+         return statistics;
+         }
+     
+     /**
+          Note that <code>t</code> has been removed by one of this store's iterators.
+     */
+     protected void removedViaIterator( Triple t )
+         { if (statistics != null) statistics.deleted( t ); }
+
+     /**
+          Make room in the subject and object indexes for about
+          <code>expected</code> more triples, guessing (as is typical of bulk
+          data) a few triples for each distinct subject and object. The
+          predicate index rarely has more than a handful of keys and is left
+          alone.
+     */
+     public void presize( int expected )
+         {
+         subjects.presize( expected / TRIPLES_PER_KEY );
+         objects.presize( expected / TRIPLES_PER_KEY );
+         }
+
+     protected static final int TRIPLES_PER_KEY = 4;
 
      /**
           Answer the size (number of triples) of this triple store.
@@ -140,13 +181,13 @@ public abstract class GraphTripleStoreBase implements TripleStore
          Node sm = t.getSubject();
              
          if (sm.isConcrete())
-             return new StoreTripleIterator( parent, subjects.iterator( sm, pm, om ), subjects, predicates, objects );
+             return new StoreTripleIterator( this, subjects.iterator( sm, pm, om ), subjects, predicates, objects );
          else if (om.isConcrete())
-             return new StoreTripleIterator( parent, objects.iterator( om, sm, pm ), objects, subjects, predicates );
+             return new StoreTripleIterator( this, objects.iterator( om, sm, pm ), objects, subjects, predicates );
          else if (pm.isConcrete())
-             return new StoreTripleIterator( parent, predicates.iterator( pm, om, sm ), predicates, subjects, objects );
+             return new StoreTripleIterator( this, predicates.iterator( pm, om, sm ), predicates, subjects, objects );
          else
-             return new StoreTripleIterator( parent, subjects.iterateAll(), subjects, predicates, objects );
+             return new StoreTripleIterator( this, subjects.iterateAll(), subjects, predicates, objects );
          }
     }
 
@@ -63,6 +63,26 @@ public class HashedBunchMap extends HashCommon<Object> implements BunchMap
         TripleBunch [] oldValues = values;
         final int oldCapacity = capacity;
         growCapacityAndThreshold();
+        rehash( oldContents, oldValues, oldCapacity );
+        }
+
+    /**
+        Make room for at least <code>expected</code> keys in all, so that
+        adding that many will not have to grow the table.
+    */
+    public void ensureCapacity( int expected )
+        {
+        if (expected < threshold) return;
+        Object [] oldContents = keys;
+        TripleBunch [] oldValues = values;
+        final int oldCapacity = capacity;
+        capacity = nextSize( (int) (expected / loadFactor) );
+        threshold = (int) (capacity * loadFactor);
+        rehash( oldContents, oldValues, oldCapacity );
+        }
+
+    private void rehash( Object [] oldContents, TripleBunch [] oldValues, int oldCapacity )
+        {
         keys = newKeyArray( capacity );
         values = new TripleBunch[capacity];
         for (int i = 0; i < oldCapacity; i += 1)
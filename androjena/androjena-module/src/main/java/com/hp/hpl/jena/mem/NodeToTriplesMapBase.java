@@ -44,6 +44,14 @@ public abstract class NodeToTriplesMapBase
     */
     public abstract boolean add( Triple t );
 
+    /**
+         Add <code>t</code>, which the caller knows is not yet in this NTM (eg
+         because another index of the same store has just accepted it), so that
+         the duplicate check can be skipped. By default this is just add.
+    */
+    public void addNew( Triple t )
+        { add( t ); }
+
     /**
          Remove <code>t</code> from this NTM. Answer <code>true</code> iff the 
          triple was previously in the set, ie, it really truly has been removed. 
@@ -78,6 +86,13 @@ public abstract class NodeToTriplesMapBase
     public int size()
         { return size; }
 
+    /**
+        Make room for about <code>keys</code> more distinct index values, eg
+        before a bulk load.
+    */
+    public void presize( int keys )
+        { bunchMap.ensureCapacity( (int) bunchMap.size() + keys ); }
+
     public void removedOneViaIterator()
         { size -= 1; /* System.err.println( ">> rOVI: size := " + size ); */ }
 
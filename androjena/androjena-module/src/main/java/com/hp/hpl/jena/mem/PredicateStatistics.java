@@ -0,0 +1,115 @@
+package com.hp.hpl.jena.mem;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+    Per-predicate statistics over the predicate index of a triple store: the
+    number of triples, which the index keeps up to date as triples are added
+    and deleted, and the numbers of different subjects and objects.
+    <p>
+    The different subjects and objects of each predicate are counted once,
+    when the statistics are made, and from then on kept up to date by the
+    store, which reports each triple it adds or deletes. Each subject and
+    object of a predicate has a count of the triples it is in, and is gone
+    when that count drops to zero, so asking for the numbers costs nothing.
+*/
+public class PredicateStatistics
+    {
+    protected final NodeToTriplesMapBase predicates;
+
+    /**
+        The subjects and objects of each predicate (by indexing value), with
+        the number of triples each is in.
+    */
+    protected final Map<Object, Counts> counts = new HashMap<Object, Counts>();
+
+    public PredicateStatistics( NodeToTriplesMapBase predicates )
+        {
+        this.predicates = predicates;
+        for (Iterator<Triple> it = predicates.iterateAll(); it.hasNext();) added( it.next() );
+        }
+
+    protected static class Counts
+        {
+        final Map<Object, int []> subjects = new HashMap<Object, int []>();
+        final Map<Object, int []> objects = new HashMap<Object, int []>();
+
+        boolean isEmpty()
+            { return subjects.isEmpty(); }
+        }
+
+    /**
+        Answer the number of triples with predicate <code>P</code>.
+    */
+    public long getTriples( Node P )
+        {
+        TripleBunch b = predicates.bunchMap.get( P.getIndexingValue() );
+        return b == null ? 0 : b.size();
+        }
+
+    /**
+        Answer the number of different subjects of triples with predicate <code>P</code>.
+    */
+    public synchronized long getDistinctSubjects( Node P )
+        {
+        Counts c = counts.get( P.getIndexingValue() );
+        return c == null ? 0 : c.subjects.size();
+        }
+
+    /**
+        Answer the number of different objects of triples with predicate <code>P</code>.
+    */
+    public synchronized long getDistinctObjects( Node P )
+        {
+        Counts c = counts.get( P.getIndexingValue() );
+        return c == null ? 0 : c.objects.size();
+        }
+
+    /**
+        Note that the store has added <code>t</code>, which it did not hold.
+    */
+    public synchronized void added( Triple t )
+        {
+        Object p = t.getPredicate().getIndexingValue();
+        Counts c = counts.get( p );
+        if (c == null) counts.put( p, c = new Counts() );
+        increment( c.subjects, t.getSubject().getIndexingValue() );
+        increment( c.objects, t.getObject().getIndexingValue() );
+        }
+
+    /**
+        Note that the store has deleted <code>t</code>, which it held.
+    */
+    public synchronized void deleted( Triple t )
+        {
+        Object p = t.getPredicate().getIndexingValue();
+        Counts c = counts.get( p );
+        if (c == null) return;
+        decrement( c.subjects, t.getSubject().getIndexingValue() );
+        decrement( c.objects, t.getObject().getIndexingValue() );
+        if (c.isEmpty()) counts.remove( p );
+        }
+
+    /**
+        Note that the store has been emptied.
+    */
+    public synchronized void clear()
+        { counts.clear(); }
+
+    private static void increment( Map<Object, int []> m, Object key )
+        {
+        int [] n = m.get( key );
+        if (n == null) m.put( key, new int[] {1} ); else n[0] += 1;
+        }
+
+    private static void decrement( Map<Object, int []> m, Object key )
+        {
+        int [] n = m.get( key );
+        if (n != null && --n[0] == 0) m.remove( key );
+        }
+    }
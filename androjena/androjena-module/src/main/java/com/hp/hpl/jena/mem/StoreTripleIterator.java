@@ -25,6 +25,21 @@ public class StoreTripleIterator extends TrackingTripleIterator
     protected NodeToTriplesMapBase A;
     protected NodeToTriplesMapBase B;
     protected Graph toNotify;
+    protected GraphTripleStoreBase store;
+    
+    /**
+        As below, for an iterator over <code>store</code>, which is told of
+        each removal as well as its graph.
+    */
+    public StoreTripleIterator
+        ( GraphTripleStoreBase store, Iterator<Triple> it, 
+          NodeToTriplesMapBase X, 
+          NodeToTriplesMapBase A, 
+          NodeToTriplesMapBase B )
+        {
+        this( store.parent, it, X, A, B );
+        this.store = store;
+        }
     
     public StoreTripleIterator
         ( Graph toNotify, Iterator<Triple> it, 
@@ -45,6 +60,7 @@ public class StoreTripleIterator extends TrackingTripleIterator
         X.removedOneViaIterator();
         A.remove( current );
         B.remove( current );
+        if (store != null) store.removedViaIterator( current );
         toNotify.getEventManager().notifyDeleteTriple( toNotify, current );
         }
 	}
@@ -34,6 +34,12 @@ public class WrappedHashMap implements BunchMap
 
     public ExtendedIterator<Object> keyIterator()
         { return WrappedIterator.create( map.keySet().iterator() ); }
+
+    /**
+        A HashMap cannot be resized in place, so this is ignored.
+    */
+    public void ensureCapacity( int expected )
+        {}
     }
 
 /*
@@ -42,6 +42,21 @@ public class NodeToTriplesMapFaster extends NodeToTriplesMapBase
            } 
        }
     
+    /**
+        Add <code>t</code> without first looking for it; the caller guarantees
+        that it is not already present.
+    */
+    @Override public void addNew( Triple t )
+       {
+       Object o = getIndexField( t );
+       TripleBunch s = bunchMap.get( o );
+       if (s == null) bunchMap.put( o, s = new ArrayBunch() );
+       else if (s.size() == 9 && s instanceof ArrayBunch)
+           bunchMap.put( o, s = new HashedTripleBunch( s ) );
+       s.add( t );
+       size += 1;
+       }
+    
     /**
         Remove <code>t</code> from this NTM. Answer <code>true</code> iff the 
         triple was previously in the set, ie, it really truly has been removed. 
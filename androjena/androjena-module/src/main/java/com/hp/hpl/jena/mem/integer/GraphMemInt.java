@@ -0,0 +1,105 @@
+package com.hp.hpl.jena.mem.integer;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.graph.impl.*;
+import com.hp.hpl.jena.graph.query.*;
+import com.hp.hpl.jena.mem.*;
+import com.hp.hpl.jena.shared.ReificationStyle;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+    A memory-backed graph whose S/P/O indexes hold dictionary-encoded node
+    ids rather than Triples. It behaves as GraphMemFaster does, but each
+    stored triple costs three packed longs instead of a Triple object and
+    three bunch entries. Each GraphMemInt has a NodeDictionary of its own,
+    which goes when the graph does. Graphs can instead be given a common
+    dictionary, so that nodes they share (for example a reasoner's data and
+    deductions graphs) are stored only once; that dictionary then lives as
+    long as the longest lived of them and is never compacted.
+<p>
+    Obtain one from Factory.createGraphMemInt, or make Factory.createGraphMem
+    answer them by setting JenaParameters.enableDictionaryEncodedGraphs.
+*/
+public class GraphMemInt extends GraphMemBase
+    {
+    public GraphMemInt()
+        { this( ReificationStyle.Minimal ); }
+
+    public GraphMemInt( ReificationStyle style )
+        { super( style ); }
+
+    public GraphMemInt( ReificationStyle style, NodeDictionary dictionary )
+        {
+        super( style );
+        getIntStore().setDictionary( dictionary );
+        }
+
+    @Override protected TripleStore createTripleStore()
+        { return new IntTripleStore( this ); }
+
+    /**
+        Answer this graph's store, typed.
+    */
+    public IntTripleStore getIntStore()
+        { return (IntTripleStore) store; }
+
+    @Override protected void destroy()
+        { store.close(); }
+
+    @Override public void performAdd( Triple t )
+        { if (!getReifier().handledAdd( t )) store.add( t ); }
+
+    @Override public void performDelete( Triple t )
+        { if (!getReifier().handledRemove( t )) store.delete( t ); }
+
+    @Override public int graphBaseSize()
+        { return store.size(); }
+
+    @Override public void presize( int expected )
+        { getIntStore().presize( expected ); }
+
+    @Override public QueryHandler queryHandler()
+        {
+        if (queryHandler == null) queryHandler = new GraphMemBaseQueryHandler( this );
+        return queryHandler;
+        }
+
+    @Override protected GraphStatisticsHandler createStatisticsHandler()
+        { return new GraphMemIntStatisticsHandler( getIntStore(), getReifier() ); }
+
+    @Override public ExtendedIterator<Triple> graphBaseFind( TripleMatch m )
+        { return store.find( m.asTriple() ); }
+
+    @Override public boolean graphBaseContains( Triple t )
+        { return t.isConcrete() ? store.contains( t ) : super.graphBaseContains( t ); }
+
+    @Override public void clear()
+        {
+        store.clear();
+        ((SimpleReifier) getReifier()).clear();
+        }
+
+    /**
+        Statistics from the id indexes: exact counts when at most one of
+        S, P, O is concrete, otherwise no information.
+    */
+    protected static class GraphMemIntStatisticsHandler implements GraphStatisticsHandler
+        {
+        protected final IntTripleStore store;
+        protected final Reifier reifier;
+
+        public GraphMemIntStatisticsHandler( IntTripleStore store, Reifier reifier )
+            { this.store = store; this.reifier = reifier; }
+
+        public long getStatistic( Node S, Node P, Node O )
+            {
+            if (reifier.size() > 0) return -1;
+            boolean s = S.isConcrete(), p = P.isConcrete(), o = O.isConcrete();
+            if (!s && !p && !o) return store.size();
+            if (s && !p && !o) return store.countFor( IntTripleStore.SUBJECTS, S );
+            if (!s && p && !o) return store.countFor( IntTripleStore.PREDICATES, P );
+            if (!s && !p && o) return store.countFor( IntTripleStore.OBJECTS, O );
+            return -1;
+            }
+        }
+    }
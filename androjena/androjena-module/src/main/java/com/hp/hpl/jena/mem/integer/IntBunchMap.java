@@ -0,0 +1,157 @@
+package com.hp.hpl.jena.mem.integer;
+
+import java.util.Arrays;
+
+/**
+    An open-addressed map from node ids to PairBunches, the primitive
+    analogue of HashedBunchMap. Keys are unboxed and removal uses backward
+    shifting, so there are no tombstones.
+    @see com.hp.hpl.jena.mem.HashedBunchMap
+*/
+public class IntBunchMap
+    {
+    protected static final int EMPTY = -1;
+
+    protected int [] keys;
+
+    protected PairBunch [] values;
+
+    protected int size = 0;
+
+    public IntBunchMap()
+        { this( 16 ); }
+
+    public IntBunchMap( int capacity )
+        {
+        keys = new int[capacity];
+        values = new PairBunch[capacity];
+        Arrays.fill( keys, EMPTY );
+        }
+
+    /**
+        Answer the number of keys in this map.
+    */
+    public int size()
+        { return size; }
+
+    /**
+        Answer the bunch for <code>key</code>, or null if there isn't one.
+    */
+    public PairBunch get( int key )
+        {
+        int i = slotFor( key );
+        return keys[i] == EMPTY ? null : values[i];
+        }
+
+    /**
+        Answer the bunch for <code>key</code>, creating an empty one if necessary.
+    */
+    public PairBunch getOrCreate( int key )
+        {
+        int i = slotFor( key );
+        if (keys[i] != EMPTY) return values[i];
+        PairBunch b = new PairBunch();
+        keys[i] = key;
+        values[i] = b;
+        size += 1;
+        if (size * 2 > keys.length) grow();
+        return b;
+        }
+
+    /**
+        Remove the bunch for <code>key</code>, if any.
+    */
+    public void remove( int key )
+        {
+        int i = slotFor( key );
+        if (keys[i] == EMPTY) return;
+        int mask = keys.length - 1;
+        int here = i, scan = i;
+        while (true)
+            {
+            scan = (scan + 1) & mask;
+            int current = keys[scan];
+            if (current == EMPTY) break;
+            int wanted = hash( current ) & mask;
+            boolean movable = here <= scan
+                ? wanted <= here || wanted > scan
+                : wanted <= here && wanted > scan;
+            if (movable)
+                {
+                keys[here] = current;
+                values[here] = values[scan];
+                here = scan;
+                }
+            }
+        keys[here] = EMPTY;
+        values[here] = null;
+        size -= 1;
+        }
+
+    /**
+        Answer a fresh array of the keys of this map.
+    */
+    public int [] keys()
+        {
+        int [] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i += 1)
+            if (keys[i] != EMPTY) result[n++] = keys[i];
+        return result;
+        }
+
+    public void clear()
+        {
+        Arrays.fill( keys, EMPTY );
+        Arrays.fill( values, null );
+        size = 0;
+        }
+
+    private int slotFor( int key )
+        {
+        int mask = keys.length - 1;
+        int i = hash( key ) & mask;
+        while (true)
+            {
+            int current = keys[i];
+            if (current == EMPTY || current == key) return i;
+            i = (i + 1) & mask;
+            }
+        }
+
+    private static int hash( int key )
+        {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+        }
+
+    /**
+        Make room for at least <code>expected</code> keys in all, so that
+        adding that many will not have to grow the table.
+    */
+    public void ensureCapacity( int expected )
+        {
+        int capacity = keys.length;
+        while (expected * 2 > capacity) capacity *= 2;
+        if (capacity > keys.length) resize( capacity );
+        }
+
+    private void grow()
+        { resize( keys.length * 2 ); }
+
+    private void resize( int capacity )
+        {
+        int [] oldKeys = keys;
+        PairBunch [] oldValues = values;
+        keys = new int[capacity];
+        values = new PairBunch[capacity];
+        Arrays.fill( keys, EMPTY );
+        for (int i = 0; i < oldKeys.length; i += 1)
+            if (oldKeys[i] != EMPTY)
+                {
+                int j = slotFor( oldKeys[i] );
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                }
+        }
+    }
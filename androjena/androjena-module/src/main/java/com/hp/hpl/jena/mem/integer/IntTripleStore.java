@@ -0,0 +1,406 @@
+package com.hp.hpl.jena.mem.integer;
+
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.graph.impl.TripleStore;
+import com.hp.hpl.jena.util.iterator.*;
+
+/**
+    A TripleStore which holds its triples as node ids from a NodeDictionary.
+    Like GraphTripleStore it keeps subject, predicate and object indexes, but
+    each index maps an id to a PairBunch of the other two ids rather than to a
+    bunch of Triples. Triples are only built again as <code>find</code>
+    iterators deliver them.
+<p>
+    Index layout: subjects map S to (P, O), predicates map P to (S, O), and
+    objects map O to (S, P).
+<p>
+    A dictionary never forgets a node, so a store which owns its dictionary
+    re-encodes itself into a fresh one when fewer than half of the nodes
+    given ids are still used by its triples. It checks each time the
+    dictionary has doubled, which keeps the cost of adding a triple constant
+    on average. A dictionary shared with other stores is left alone.
+*/
+public class IntTripleStore implements TripleStore
+    {
+    protected static final int SUBJECTS = 0, PREDICATES = 1, OBJECTS = 2;
+
+    protected final Graph parent;
+
+    protected NodeDictionary dictionary;
+
+    protected IntBunchMap subjects = new IntBunchMap();
+
+    protected IntBunchMap predicates = new IntBunchMap();
+
+    protected IntBunchMap objects = new IntBunchMap();
+
+    protected int size = 0;
+
+    /**
+        True iff the dictionary belongs to this store alone, so can be replaced.
+    */
+    protected boolean ownsDictionary;
+
+    /**
+        The dictionary size at which to next check whether to compact it.
+    */
+    protected int compactAt = MIN_COMPACT;
+
+    /**
+        Below this many nodes a dictionary is never compacted.
+    */
+    protected static final int MIN_COMPACT = 1024;
+
+    /**
+        Initialise a store with a dictionary of its own.
+    */
+    public IntTripleStore( Graph parent )
+        { this( parent, new NodeDictionary() ); ownsDictionary = true; }
+
+    /**
+        Initialise a store using <code>dictionary</code>, which may be shared
+        with other stores.
+    */
+    public IntTripleStore( Graph parent, NodeDictionary dictionary )
+        { this.parent = parent; this.dictionary = dictionary; }
+
+    /**
+        Answer the dictionary which encodes this store's nodes.
+    */
+    public NodeDictionary getDictionary()
+        { return dictionary; }
+
+    /**
+        Make this (empty) store encode its nodes with <code>dictionary</code>.
+    */
+    public void setDictionary( NodeDictionary dictionary )
+        {
+        if (size > 0) throw new IllegalStateException( "cannot change the dictionary of a non-empty store" );
+        this.dictionary = dictionary;
+        this.ownsDictionary = false;
+        }
+
+    public void close()
+        { subjects = predicates = objects = null; }
+
+    public void add( Triple t )
+        {
+        if (ownsDictionary && dictionary.size() >= compactAt) compact();
+        add( t.getSubject(), t.getPredicate(), t.getObject() );
+        }
+
+    protected void add( Node sn, Node pn, Node on )
+        {
+        int s = dictionary.idFor( sn );
+        int p = dictionary.idFor( pn );
+        int o = dictionary.idFor( on );
+        if (subjects.getOrCreate( s ).add( PairBunch.pack( p, o ) ))
+            {
+            predicates.getOrCreate( p ).add( PairBunch.pack( s, o ) );
+            objects.getOrCreate( o ).add( PairBunch.pack( s, p ) );
+            size += 1;
+            }
+        }
+
+    public void delete( Triple t )
+        {
+        int s = dictionary.lookup( t.getSubject() );
+        int p = dictionary.lookup( t.getPredicate() );
+        int o = dictionary.lookup( t.getObject() );
+        if (s != NodeDictionary.NONE && p != NodeDictionary.NONE && o != NodeDictionary.NONE)
+            delete( s, p, o );
+        }
+
+    protected void delete( int s, int p, int o )
+        {
+        if (removeFrom( subjects, s, PairBunch.pack( p, o ) ))
+            {
+            removeFrom( predicates, p, PairBunch.pack( s, o ) );
+            removeFrom( objects, o, PairBunch.pack( s, p ) );
+            size -= 1;
+            }
+        }
+
+    private static boolean removeFrom( IntBunchMap map, int key, long pair )
+        {
+        PairBunch b = map.get( key );
+        if (b == null || !b.remove( pair )) return false;
+        if (b.isEmpty()) map.remove( key );
+        return true;
+        }
+
+    public int size()
+        { return size; }
+
+    /**
+        Make room in the subject and object indexes for about
+        <code>expected</code> more triples, allowing a few triples per key as
+        GraphTripleStoreBase does.
+    */
+    public void presize( int expected )
+        {
+        subjects.ensureCapacity( subjects.size() + expected / 4 );
+        objects.ensureCapacity( objects.size() + expected / 4 );
+        }
+
+    public boolean isEmpty()
+        { return size == 0; }
+
+    /**
+        Answer true iff this store contains the concrete triple <code>t</code>,
+        matching its object by sameValueAs.
+    */
+    public boolean contains( Triple t )
+        {
+        int s = dictionary.lookup( t.getSubject() );
+        int p = dictionary.lookup( t.getPredicate() );
+        if (s == NodeDictionary.NONE || p == NodeDictionary.NONE) return false;
+        PairBunch b = subjects.get( s );
+        if (b == null) return false;
+        int [] os = dictionary.idsBySameValue( t.getObject() );
+        for (int i = 0; i < os.length; i += 1)
+            if (b.contains( PairBunch.pack( p, os[i] ) )) return true;
+        return false;
+        }
+
+    public void clear()
+        {
+        subjects.clear();
+        predicates.clear();
+        objects.clear();
+        size = 0;
+        if (ownsDictionary) 
+            {
+            dictionary = new NodeDictionary();
+            compactAt = MIN_COMPACT;
+            }
+        }
+
+    /**
+        Re-encode the triples with a fresh dictionary if fewer than half of the
+        nodes of the current one are used, and decide when to check again.
+        Iterators already made go on reading the old indexes and dictionary.
+    */
+    protected void compact()
+        {
+        int used = countUsedNodes();
+        if (used * 2 < dictionary.size())
+            {
+            NodeDictionary old = dictionary;
+            IntBunchMap oldSubjects = subjects;
+            dictionary = new NodeDictionary( used );
+            subjects = newMap( oldSubjects.size() );
+            predicates = newMap( predicates.size() );
+            objects = newMap( objects.size() );
+            size = 0;
+            int [] keys = oldSubjects.keys();
+            for (int i = 0; i < keys.length; i += 1)
+                {
+                Node s = old.getNode( keys[i] );
+                long [] pairs = oldSubjects.get( keys[i] ).toArray();
+                for (int j = 0; j < pairs.length; j += 1)
+                    add( s, old.getNode( PairBunch.first( pairs[j] ) ), old.getNode( PairBunch.second( pairs[j] ) ) );
+                }
+            }
+        compactAt = Math.max( MIN_COMPACT, dictionary.size() * 2 );
+        }
+
+    private static IntBunchMap newMap( int expected )
+        {
+        IntBunchMap result = new IntBunchMap();
+        result.ensureCapacity( expected );
+        return result;
+        }
+
+    /**
+        Answer the number of distinct ids used by the triples.
+    */
+    protected int countUsedNodes()
+        {
+        BitSet used = new BitSet( dictionary.size() );
+        markKeys( used, subjects );
+        markKeys( used, predicates );
+        markKeys( used, objects );
+        return used.cardinality();
+        }
+
+    private static void markKeys( BitSet used, IntBunchMap map )
+        {
+        int [] keys = map.keys();
+        for (int i = 0; i < keys.length; i += 1) used.set( keys[i] );
+        }
+
+    /**
+        Answer the number of triples with the given node in the given
+        position (0 for subject, 1 for predicate, 2 for object); literal objects
+        count every triple whose object is sameValueAs <code>n</code>.
+    */
+    public int countFor( int position, Node n )
+        {
+        IntBunchMap map = mapFor( position );
+        int [] ids = position == OBJECTS ? dictionary.idsBySameValue( n ) : idsFor( n );
+        int result = 0;
+        for (int i = 0; i < ids.length; i += 1)
+            {
+            PairBunch b = map.get( ids[i] );
+            if (b != null) result += b.size();
+            }
+        return result;
+        }
+
+    public ExtendedIterator<Node> listSubjects()
+        { return new NodeIterator( subjects.keys() ); }
+
+    public ExtendedIterator<Node> listPredicates()
+        { return new NodeIterator( predicates.keys() ); }
+
+    public ExtendedIterator<Node> listObjects()
+        { return new NodeIterator( objects.keys() ); }
+
+    /**
+        Answer an iterator over the triples matching <code>tm</code>. As in
+        GraphTripleStoreBase the subject index is preferred, then the object
+        index, then the predicate index. A concrete literal object may stand for
+        several ids, all of which are tried.
+    */
+    public ExtendedIterator<Triple> find( TripleMatch tm )
+        {
+        Triple t = tm.asTriple();
+        Node sm = t.getSubject(), pm = t.getPredicate(), om = t.getObject();
+        int [] ss = sm.isConcrete() ? idsFor( sm ) : null;
+        int [] ps = pm.isConcrete() ? idsFor( pm ) : null;
+        int [] os = om.isConcrete() ? dictionary.idsBySameValue( om ) : null;
+        if (isEmpty( ss ) || isEmpty( ps ) || isEmpty( os ))
+            return NullIterator.instance();
+        if (ss != null)
+            return new PairIterator( SUBJECTS, ss, ps, os );
+        else if (os != null)
+            return new PairIterator( OBJECTS, os, null, ps );
+        else if (ps != null)
+            return new PairIterator( PREDICATES, ps, null, null );
+        else
+            return new PairIterator( SUBJECTS, subjects.keys(), null, null );
+        }
+
+    private static boolean isEmpty( int [] ids )
+        { return ids != null && ids.length == 0; }
+
+    private int [] idsFor( Node n )
+        {
+        int id = dictionary.lookup( n );
+        return id == NodeDictionary.NONE ? new int[0] : new int[] { id };
+        }
+
+    private IntBunchMap mapFor( int position )
+        { return position == SUBJECTS ? subjects : position == PREDICATES ? predicates : objects; }
+
+    private static boolean accepts( int [] wanted, int id )
+        {
+        if (wanted == null) return true;
+        for (int i = 0; i < wanted.length; i += 1) if (wanted[i] == id) return true;
+        return false;
+        }
+
+    /**
+        Iterator over the pairs held in one index under a set of keys, filtered
+        on the two pair components and turned back into Triples. Each bunch is
+        copied as it is reached, so <code>remove</code> is safe; it deletes the
+        current triple from all three indexes and notifies the parent graph.
+    */
+    protected class PairIterator extends NiceIterator<Triple>
+        {
+        protected final int role;
+        protected final NodeDictionary dict = dictionary;
+        protected final IntBunchMap map;
+        protected final int [] keys;
+        protected final int [] wantedA;
+        protected final int [] wantedB;
+
+        protected int keyIndex = 0;
+        protected long [] pairs = new long[0];
+        protected int pairIndex = 0;
+        protected int key;
+        protected Triple pending;
+        protected Triple current;
+
+        protected PairIterator( int role, int [] keys, int [] wantedA, int [] wantedB )
+            {
+            this.role = role;
+            this.map = mapFor( role );
+            this.keys = keys;
+            this.wantedA = wantedA;
+            this.wantedB = wantedB;
+            }
+
+        @Override public boolean hasNext()
+            {
+            while (pending == null)
+                {
+                while (pairIndex == pairs.length)
+                    {
+                    if (keyIndex == keys.length) return false;
+                    key = keys[keyIndex++];
+                    PairBunch b = map.get( key );
+                    pairs = b == null ? new long[0] : b.toArray();
+                    pairIndex = 0;
+                    }
+                long pair = pairs[pairIndex++];
+                int a = PairBunch.first( pair ), b = PairBunch.second( pair );
+                if (accepts( wantedA, a ) && accepts( wantedB, b )) pending = toTriple( a, b );
+                }
+            return true;
+            }
+
+        @Override public Triple next()
+            {
+            if (!hasNext()) throw new NoSuchElementException();
+            current = pending;
+            pending = null;
+            return current;
+            }
+
+        @Override public void remove()
+            {
+            if (current == null) throw new IllegalStateException();
+            IntTripleStore.this.delete( current );
+            parent.getEventManager().notifyDeleteTriple( parent, current );
+            current = null;
+            }
+
+        private Triple toTriple( int a, int b )
+            {
+            Node k = dict.getNode( key ), x = dict.getNode( a ), y = dict.getNode( b );
+            switch (role)
+                {
+                case SUBJECTS: return new Triple( k, x, y );
+                case PREDICATES: return new Triple( x, k, y );
+                default: return new Triple( x, y, k );
+                }
+            }
+        }
+
+    /**
+        Iterator over the nodes for a snapshot of index keys.
+    */
+    protected class NodeIterator extends NiceIterator<Node>
+        {
+        protected final int [] ids;
+        protected final NodeDictionary dict = dictionary;
+        protected int index = 0;
+
+        protected NodeIterator( int [] ids )
+            { this.ids = ids; }
+
+        @Override public boolean hasNext()
+            { return index < ids.length; }
+
+        @Override public Node next()
+            {
+            if (index == ids.length) throw new NoSuchElementException();
+            return dict.getNode( ids[index++] );
+            }
+        }
+    }
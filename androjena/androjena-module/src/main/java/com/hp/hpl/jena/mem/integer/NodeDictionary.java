@@ -0,0 +1,179 @@
+package com.hp.hpl.jena.mem.integer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+
+/**
+    A NodeDictionary assigns each distinct Node a small non-negative int id
+    and maps ids back to their Nodes. Ids are dense, so the reverse mapping is
+    a plain array. Ids are never recycled: a dictionary only ever grows, which
+    is what lets it be shared by several graphs without reference counting.
+    So a dictionary is normally owned by one store, which replaces it with a
+    compact one when most of its nodes have gone (see IntTripleStore); one
+    shared between graphs lives, and grows, as long as they do.
+<p>
+    Literals are additionally indexed by their indexing value, so that a
+    store can find every id whose node is sameValueAs some literal.
+<p>
+    Allocation and lookup are synchronized; <code>getNode</code> is not, since
+    an id can only have been obtained through a synchronized method.
+*/
+public class NodeDictionary
+    {
+    /**
+        The id answered by <code>lookup</code> for nodes with no id.
+    */
+    public static final int NONE = -1;
+
+    private static final int[] NO_IDS = new int[0];
+
+    /**
+        The nodes, indexed by id. Replaced (never altered below <code>count</code>)
+        when it grows, so unsynchronized readers see a complete prefix.
+    */
+    protected volatile Node [] nodes;
+
+    /**
+        Open-addressed table of ids, hashed on the node hashCode; NONE marks
+        an empty slot.
+    */
+    protected int [] slots;
+
+    protected int count = 0;
+
+    /**
+        Map from indexing value to the ids of the literals with that value.
+    */
+    protected final Map<Object, int[]> literalsByValue = new HashMap<Object, int[]>();
+
+    public NodeDictionary()
+        { this( 16 ); }
+
+    public NodeDictionary( int initialCapacity )
+        {
+        int capacity = 16;
+        while (capacity < initialCapacity * 2) capacity <<= 1;
+        nodes = new Node[capacity >> 1];
+        slots = newSlots( capacity );
+        }
+
+    /**
+        Answer the number of nodes which have been given ids.
+    */
+    public synchronized int size()
+        { return count; }
+
+    /**
+        Answer the node with the given id.
+    */
+    public Node getNode( int id )
+        { return nodes[id]; }
+
+    /**
+        Answer the id of <code>n</code>, or NONE if it has never been given one.
+    */
+    public synchronized int lookup( Node n )
+        {
+        int i = slotFor( n );
+        return slots[i];
+        }
+
+    /**
+        Answer the id of <code>n</code>, allocating a new one if necessary.
+    */
+    public synchronized int idFor( Node n )
+        {
+        int i = slotFor( n );
+        if (slots[i] != NONE) return slots[i];
+        int id = count;
+        if (id == nodes.length) growNodes();
+        nodes[id] = n;
+        slots[i] = id;
+        count += 1;
+        if (n.isLiteral()) addLiteral( n.getIndexingValue(), id );
+        if (count * 2 > slots.length) growSlots();
+        return id;
+        }
+
+    /**
+        Answer the ids of all the nodes which are sameValueAs <code>n</code>.
+        For a non-literal that is at most its own id; for a literal it is every
+        literal with the same indexing value and that compares sameValueAs.
+    */
+    public synchronized int [] idsBySameValue( Node n )
+        {
+        if (n.isLiteral())
+            {
+            int [] candidates = literalsByValue.get( n.getIndexingValue() );
+            if (candidates == null) return NO_IDS;
+            int [] result = new int[candidates.length];
+            int found = 0;
+            for (int i = 0; i < candidates.length; i += 1)
+                if (nodes[candidates[i]].sameValueAs( n )) result[found++] = candidates[i];
+            if (found == result.length) return result;
+            int [] trimmed = new int[found];
+            System.arraycopy( result, 0, trimmed, 0, found );
+            return trimmed;
+            }
+        else
+            {
+            int id = slots[slotFor( n )];
+            return id == NONE ? NO_IDS : new int[] { id };
+            }
+        }
+
+    private void addLiteral( Object value, int id )
+        {
+        int [] already = literalsByValue.get( value );
+        if (already == null)
+            literalsByValue.put( value, new int[] { id } );
+        else
+            {
+            int [] more = new int[already.length + 1];
+            System.arraycopy( already, 0, more, 0, already.length );
+            more[already.length] = id;
+            literalsByValue.put( value, more );
+            }
+        }
+
+    /**
+        Answer the slot which holds the id of <code>n</code>, or the empty slot
+        where it would go.
+    */
+    private int slotFor( Node n )
+        {
+        int mask = slots.length - 1;
+        int i = (n.hashCode() * 0x9E3779B9) >>> Integer.numberOfLeadingZeros( mask );
+        while (true)
+            {
+            int id = slots[i];
+            if (id == NONE || nodes[id].equals( n )) return i;
+            i = (i + 1) & mask;
+            }
+        }
+
+    private void growNodes()
+        {
+        Node [] more = new Node[nodes.length * 2];
+        System.arraycopy( nodes, 0, more, 0, count );
+        nodes = more;
+        }
+
+    private void growSlots()
+        {
+        int [] old = slots;
+        slots = newSlots( old.length * 2 );
+        for (int i = 0; i < old.length; i += 1)
+            if (old[i] != NONE) slots[slotFor( nodes[old[i]] )] = old[i];
+        }
+
+    private static int [] newSlots( int capacity )
+        {
+        int [] result = new int[capacity];
+        Arrays.fill( result, NONE );
+        return result;
+        }
+    }
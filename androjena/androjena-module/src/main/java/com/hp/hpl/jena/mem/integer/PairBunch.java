@@ -0,0 +1,176 @@
+package com.hp.hpl.jena.mem.integer;
+
+import java.util.Arrays;
+
+/**
+    A PairBunch is a set of pairs of node ids, each packed into a single long.
+    It is the primitive analogue of a TripleBunch: the indexing node is
+    implicit (it is the key under which the bunch is held), so each triple
+    costs one long per index. Small bunches are plain arrays searched linearly;
+    once they exceed <code>THRESHOLD</code> elements they become open-addressed
+    hash sets, as ArrayBunch gives way to HashedTripleBunch.
+    @see com.hp.hpl.jena.mem.ArrayBunch
+*/
+public class PairBunch
+    {
+    /**
+        The size above which a bunch switches from linear search to hashing.
+    */
+    public static final int THRESHOLD = 8;
+
+    /**
+        The empty-slot marker in the hashed form. Ids are non-negative, so no
+        packed pair can be negative.
+    */
+    protected static final long EMPTY = -1L;
+
+    protected long [] elements = new long[4];
+
+    protected int size = 0;
+
+    protected boolean hashed = false;
+
+    public static long pack( int a, int b )
+        { return ((long) a << 32) | (b & 0xFFFFFFFFL); }
+
+    public static int first( long pair )
+        { return (int) (pair >>> 32); }
+
+    public static int second( long pair )
+        { return (int) pair; }
+
+    public int size()
+        { return size; }
+
+    public boolean isEmpty()
+        { return size == 0; }
+
+    public boolean contains( long pair )
+        {
+        if (hashed) return elements[slotFor( pair )] == pair;
+        for (int i = 0; i < size; i += 1) if (elements[i] == pair) return true;
+        return false;
+        }
+
+    /**
+        Add <code>pair</code> to this bunch; answer true iff it was not already
+        present.
+    */
+    public boolean add( long pair )
+        {
+        if (hashed)
+            {
+            int i = slotFor( pair );
+            if (elements[i] == pair) return false;
+            elements[i] = pair;
+            size += 1;
+            if (size * 2 > elements.length) rehash( elements.length * 2 );
+            return true;
+            }
+        else
+            {
+            if (contains( pair )) return false;
+            if (size == THRESHOLD)
+                {
+                rehash( 32 );
+                return add( pair );
+                }
+            if (size == elements.length) elements = Arrays.copyOf( elements, size * 2 );
+            elements[size++] = pair;
+            return true;
+            }
+        }
+
+    /**
+        Remove <code>pair</code> from this bunch; answer true iff it was present.
+    */
+    public boolean remove( long pair )
+        {
+        if (hashed)
+            {
+            int i = slotFor( pair );
+            if (elements[i] != pair) return false;
+            removeSlot( i );
+            size -= 1;
+            return true;
+            }
+        else
+            {
+            for (int i = 0; i < size; i += 1)
+                if (elements[i] == pair)
+                    {
+                    elements[i] = elements[--size];
+                    return true;
+                    }
+            return false;
+            }
+        }
+
+    /**
+        Answer a fresh array holding exactly the pairs of this bunch. Iterators
+        work over such copies, so that the bunch may be updated (eg by
+        Iterator.remove) while they run.
+    */
+    public long [] toArray()
+        {
+        if (!hashed) return Arrays.copyOf( elements, size );
+        long [] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < elements.length; i += 1)
+            if (elements[i] != EMPTY) result[n++] = elements[i];
+        return result;
+        }
+
+    private int slotFor( long pair )
+        {
+        int mask = elements.length - 1;
+        int i = hash( pair ) & mask;
+        while (true)
+            {
+            long current = elements[i];
+            if (current == EMPTY || current == pair) return i;
+            i = (i + 1) & mask;
+            }
+        }
+
+    private static int hash( long pair )
+        {
+        long h = pair * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+        }
+
+    /**
+        Empty slot <code>here</code> of the hash table, moving later elements of
+        the same probe run back so that no element becomes unreachable.
+    */
+    private void removeSlot( int here )
+        {
+        int mask = elements.length - 1;
+        int scan = here;
+        while (true)
+            {
+            scan = (scan + 1) & mask;
+            long current = elements[scan];
+            if (current == EMPTY) break;
+            int wanted = hash( current ) & mask;
+            boolean movable = here <= scan
+                ? wanted <= here || wanted > scan
+                : wanted <= here && wanted > scan;
+            if (movable)
+                {
+                elements[here] = current;
+                here = scan;
+                }
+            }
+        elements[here] = EMPTY;
+        }
+
+    private void rehash( int capacity )
+        {
+        long [] old = toArray();
+        elements = new long[capacity];
+        Arrays.fill( elements, EMPTY );
+        hashed = true;
+        for (int i = 0; i < old.length; i += 1) elements[slotFor( old[i] )] = old[i];
+        }
+    }
@@ -0,0 +1,339 @@
+package com.hp.hpl.jena.n3.turtle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.GraphAdd;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleSource;
+import com.hp.hpl.jena.graph.impl.LiteralLabelFactory;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.shared.SyntaxError;
+import com.hp.hpl.jena.util.FileUtils;
+
+/** A TripleSource which parses N-Triples, for BulkUpdateHandler.load.
+ *  It scans its own character buffer and builds graph Nodes directly,
+ *  without the per-character reads and Model resources of NTripleReader.
+ *  <p>
+ *  Each term is first delimited in the buffer, which is compacted as needed
+ *  so that a term is never split, and then looked up by its raw text in a
+ *  small direct-mapped cache of recent terms. Bulk data repeats subjects,
+ *  predicates and common values heavily, so most terms are hits, costing no
+ *  garbage and giving the graph one shared Node where there would have been
+ *  many equal ones. Since the term cache does its job, nodes are made without
+ *  going through the global node cache.
+ *  <p>
+ *  The first syntax error ends the parse with a SyntaxError giving its line
+ *  and column.
+ */
+public class NTriplesSource implements TripleSource
+{
+    private static final int EOF = -1 ;
+    private static final int BUFFER_SIZE = 64 * 1024 ;
+    private static final int CACHE_SIZE = 1 << 14 ;
+
+    private final Reader reader ;
+    private char[] buf = new char[BUFFER_SIZE] ;
+    private int pos = 0 ;
+    private int limit = 0 ;
+
+    // Start of the term being scanned; the buffer is never compacted past it
+    private int termStart = 0 ;
+
+    // Offset in the input of buf[0], and of the start of the current line, for error columns
+    private long bufStart = 0 ;
+    private long lineStart = 0 ;
+    private int line = 1 ;
+
+    // The term cache: raw term text and the node it stands for
+    private final String[] cachedTerms = new String[CACHE_SIZE] ;
+    private final Node[] cachedNodes = new Node[CACHE_SIZE] ;
+
+    private final StringBuilder sb = new StringBuilder() ;
+    private final LabelToNodeMap bNodes = new LabelToNodeMap() ;
+    private final TypeMapper types = TypeMapper.getInstance() ;
+
+    public NTriplesSource(InputStream in)
+    { this(FileUtils.asUTF8(in)) ; }
+
+    public NTriplesSource(Reader reader)
+    { this.reader = reader ; }
+
+    public void sendTo(GraphAdd sink)
+    {
+        try {
+            while ( true )
+            {
+                int c = skipWhiteSpace() ;
+                if ( c == EOF )
+                    return ;
+                if ( c == '#' )
+                {
+                    skipLine() ;
+                    continue ;
+                }
+                if ( c != '<' && c != '_' )
+                    throw error("expected a subject IRI or blank node") ;
+                Node s = readTerm() ;
+                if ( skipWhiteSpace() != '<' )
+                    throw error("expected a predicate IRI") ;
+                Node p = readTerm() ;
+                c = skipWhiteSpace() ;
+                if ( c != '<' && c != '_' && c != '"' )
+                    throw error("expected an object") ;
+                Node o = readTerm() ;
+                if ( skipWhiteSpace() != '.' )
+                    throw error("expected '.'") ;
+                pos++ ;
+                sink.add(new Triple(s, p, o)) ;
+            }
+        } catch (IOException ex) { throw new JenaException(ex) ; }
+    }
+
+    /** Read the IRI, blank node or literal starting at pos */
+    private Node readTerm() throws IOException
+    {
+        termStart = pos ;
+        char first = buf[pos++] ;
+        boolean escaped = false ;
+        if ( first == '<' )
+            escaped = scanTo('>') ;
+        else if ( first == '_' )
+        {
+            if ( peekInTerm() == ':' )
+                pos++ ;
+            int c ;
+            while ( (c = peekInTerm()) != EOF && isLabelChar(c) )
+                pos++ ;
+            // A label may contain '.' but not end with one: that is the end of the triple
+            while ( pos > termStart + 2 && buf[pos - 1] == '.' )
+                pos-- ;
+        }
+        else
+        {
+            escaped = scanTo('"') ;
+            int c = peekInTerm() ;
+            if ( c == '@' )
+            {
+                pos++ ;
+                while ( (c = peekInTerm()) != EOF && (Character.isLetterOrDigit(c) || c == '-') )
+                    pos++ ;
+            }
+            else if ( c == '^' )
+            {
+                pos++ ;
+                if ( peekInTerm() != '^' )
+                    throw error("ill-formed datatype") ;
+                pos++ ;
+                if ( peekInTerm() != '<' )
+                    throw error("ill-formed datatype") ;
+                pos++ ;
+                escaped |= scanTo('>') ;
+            }
+        }
+        int length = pos - termStart ;
+        int hash = 0 ;
+        for ( int i = termStart ; i < pos ; i++ )
+            hash = 31 * hash + buf[i] ;
+        int slot = (hash * 0x9E3779B9) >>> 18 ;
+        // A plain IRI is keyed by its own label, anything else by its raw text
+        boolean plainIRI = first == '<' && !escaped ;
+        String key = cachedTerms[slot] ;
+        if ( key != null && cachedNodes[slot].isURI() == (first == '<') )
+        {
+            if ( plainIRI ? key.length() == length - 2 && sameChars(key, termStart + 1)
+                          : key.length() == length && sameChars(key, termStart) )
+                return cachedNodes[slot] ;
+        }
+        Node node = makeNode(first, termStart, pos, escaped) ;
+        cachedTerms[slot] = plainIRI ? node.getURI() : new String(buf, termStart, length) ;
+        cachedNodes[slot] = node ;
+        return node ;
+    }
+
+    private static boolean isLabelChar(int c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' ;
+    }
+
+    private boolean sameChars(String s, int from)
+    {
+        for ( int i = 0 ; i < s.length() ; i++ )
+            if ( s.charAt(i) != buf[from + i] )
+                return false ;
+        return true ;
+    }
+
+    /** Advance past the next unescaped <code>end</code>, answering true if any escapes were seen */
+    private boolean scanTo(char end) throws IOException
+    {
+        boolean escaped = false ;
+        while ( true )
+        {
+            int c = peekInTerm() ;
+            if ( c == EOF || c == '\n' )
+                throw error("unterminated " + (end == '>' ? "IRI" : "literal")) ;
+            pos++ ;
+            if ( c == end )
+                return escaped ;
+            if ( c == '\\' )
+            {
+                escaped = true ;
+                if ( peekInTerm() != EOF )
+                    pos++ ;
+            }
+        }
+    }
+
+    /** Build the node for the term in buf[from..to), whose first character is <code>first</code> */
+    private Node makeNode(char first, int from, int to, boolean escaped)
+    {
+        if ( first == '<' )
+            return Node.createUncachedURI(text(from + 1, to - 1, escaped)) ;
+        if ( first == '_' )
+        {
+            if ( to - from < 3 || buf[from + 1] != ':' )
+                throw error("expected bNode label") ;
+            return bNodes.asNode(new String(buf, from + 2, to - from - 2)) ;
+        }
+        int close = from + 1 ;
+        while ( buf[close] != '"' )
+            close += buf[close] == '\\' ? 2 : 1 ;
+        String lex = text(from + 1, close, escaped) ;
+        if ( close + 1 == to )
+            return Node.createUncachedLiteral(LiteralLabelFactory.create(lex, "", false)) ;
+        if ( buf[close + 1] == '@' )
+        {
+            if ( close + 2 == to )
+                throw error("expected a language tag") ;
+            String lang = new String(buf, close + 2, to - close - 2) ;
+            return Node.createUncachedLiteral(LiteralLabelFactory.create(lex, lang, false)) ;
+        }
+        RDFDatatype datatype = types.getSafeTypeByName(text(close + 4, to - 1, escaped)) ;
+        return Node.createUncachedLiteral(LiteralLabelFactory.createLiteralLabel(lex, "", datatype)) ;
+    }
+
+    /** The text of buf[from..to), with any escapes replaced */
+    private String text(int from, int to, boolean escaped)
+    {
+        if ( !escaped )
+            return new String(buf, from, to - from) ;
+        sb.setLength(0) ;
+        for ( int i = from ; i < to ; i++ )
+        {
+            char c = buf[i] ;
+            if ( c != '\\' )
+            {
+                sb.append(c) ;
+                continue ;
+            }
+            c = buf[++i] ;
+            switch (c)
+            {
+                case 't': sb.append('\t') ; break ;
+                case 'n': sb.append('\n') ; break ;
+                case 'r': sb.append('\r') ; break ;
+                case '"': sb.append('"') ; break ;
+                case '\\': sb.append('\\') ; break ;
+                case 'u': sb.append((char)readHex(i + 1, 4, to)) ; i += 4 ; break ;
+                case 'U': sb.appendCodePoint(readHex(i + 1, 8, to)) ; i += 8 ; break ;
+                default: throw error("illegal escape sequence") ;
+            }
+        }
+        return sb.toString() ;
+    }
+
+    private int readHex(int from, int digits, int to)
+    {
+        if ( from + digits > to )
+            throw error("bad unicode escape sequence") ;
+        int value = 0 ;
+        for ( int i = from ; i < from + digits ; i++ )
+        {
+            int d = Character.digit(buf[i], 16) ;
+            if ( d < 0 )
+                throw error("bad unicode escape sequence") ;
+            value = value * 16 + d ;
+        }
+        return value ;
+    }
+
+    /** Skip spaces and line ends, answering the next character without consuming it */
+    private int skipWhiteSpace() throws IOException
+    {
+        int c ;
+        while ( (c = peek()) != EOF && isWhiteSpace(c) )
+        {
+            if ( c == '\n' )
+            {
+                line++ ;
+                lineStart = bufStart + pos + 1 ;
+            }
+            pos++ ;
+        }
+        return c ;
+    }
+
+    private void skipLine() throws IOException
+    {
+        int c ;
+        while ( (c = peek()) != EOF && c != '\n' )
+            pos++ ;
+    }
+
+    private static boolean isWhiteSpace(int c)
+    { return c == ' ' || c == '\t' || c == '\n' || c == '\r' ; }
+
+    /** The next character, between terms */
+    private int peek() throws IOException
+    {
+        if ( pos == limit )
+        {
+            termStart = pos ;
+            if ( !fill() )
+                return EOF ;
+        }
+        return buf[pos] ;
+    }
+
+    /** The next character, keeping the current term in the buffer */
+    private int peekInTerm() throws IOException
+    {
+        if ( pos == limit && !fill() )
+            return EOF ;
+        return buf[pos] ;
+    }
+
+    /** Discard the buffer before termStart, growing it if a term fills it, and read more */
+    private boolean fill() throws IOException
+    {
+        int keep = limit - termStart ;
+        if ( keep == buf.length )
+        {
+            char[] bigger = new char[buf.length * 2] ;
+            System.arraycopy(buf, 0, bigger, 0, keep) ;
+            buf = bigger ;
+        }
+        else
+            System.arraycopy(buf, termStart, buf, 0, keep) ;
+        bufStart += termStart ;
+        pos -= termStart ;
+        limit = keep ;
+        termStart = 0 ;
+        int n = reader.read(buf, limit, buf.length - limit) ;
+        if ( n <= 0 )
+            return false ;
+        limit += n ;
+        return true ;
+    }
+
+    private SyntaxError error(String message)
+    {
+        long column = bufStart + pos - lineStart ;
+        return new SyntaxError("Syntax error at line " + line + " position " + column + ": " + message) ;
+    }
+}
@@ -28,11 +28,16 @@ public class ParserTurtle
     }
     
     public void parse(Graph graph, String baseURI, Reader reader)
+    {
+        parse(new TurtleRDFGraphInserter(graph), baseURI, reader) ;
+    }
+    
+    public void parse(TurtleEventHandler handler, String baseURI, Reader reader)
     {
         // Nasty things happen if the reader is not UTF-8.
         try {
             TurtleParser parser = new TurtleParser(reader) ;
-            parser.setEventHandler(new TurtleRDFGraphInserter(graph)) ;
+            parser.setEventHandler(handler) ;
             parser.setBaseURI(baseURI) ;
             parser.parse() ;
         }
@@ -18,7 +18,13 @@ public class TurtleRDFGraphInserter implements TurtleEventHandler
     
     public void triple(int line, int col, Triple triple)
     {
-        //Check it's valid triple.
+        check(line, col, triple) ;
+        graph.add(triple) ;
+    }
+
+    /** Check it's a valid RDF triple */
+    public static void check(int line, int col, Triple triple)
+    {
         Node s = triple.getSubject() ;
         Node p = triple.getPredicate() ;
         Node o = triple.getObject() ;
@@ -29,8 +35,6 @@ public class TurtleRDFGraphInserter implements TurtleEventHandler
             throw new TurtleParseException("["+line+", "+col+"] : Error: Predicate is not a URI") ;
         if ( ! ( o.isURI() || o.isBlank() || o.isLiteral() ) ) 
             throw new TurtleParseException("["+line+", "+col+"] : Error: Object is not a URI, blank node or literal") ;
-        
-        graph.add(triple) ;
     }
 
     public void startFormula(int line, int col)
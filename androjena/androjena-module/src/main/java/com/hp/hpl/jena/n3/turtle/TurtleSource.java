@@ -0,0 +1,56 @@
+package com.hp.hpl.jena.n3.turtle;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.hp.hpl.jena.graph.GraphAdd;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleSource;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.util.FileUtils;
+
+/** A TripleSource which parses Turtle, for BulkUpdateHandler.load.
+ *  Triples are checked as TurtleRDFGraphInserter does. Since the parse
+ *  may run on another thread, prefixes are not set on the target graph
+ *  but collected here; they are complete once the load has returned.
+ */
+public class TurtleSource implements TripleSource
+{
+    private final Reader reader ;
+    private final String baseURI ;
+    private final PrefixMapping prefixes = PrefixMapping.Factory.create() ;
+
+    public TurtleSource(InputStream in, String baseURI)
+    { this(FileUtils.asUTF8(in), baseURI) ; }
+
+    public TurtleSource(Reader reader, String baseURI)
+    {
+        this.reader = reader ;
+        this.baseURI = baseURI ;
+    }
+
+    /** The prefixes declared by the document */
+    public PrefixMapping getPrefixMapping() { return prefixes ; }
+
+    public void sendTo(final GraphAdd sink)
+    {
+        TurtleEventHandler handler = new TurtleEventHandler()
+        {
+            public void triple(int line, int col, Triple triple)
+            {
+                TurtleRDFGraphInserter.check(line, col, triple) ;
+                sink.add(triple) ;
+            }
+
+            public void startFormula(int line, int col)
+            { throw new TurtleParseException("["+line+", "+col+"] : Error: Formula found") ; }
+
+            public void endFormula(int line, int col)
+            { throw new TurtleParseException("["+line+", "+col+"] : Error: Formula found") ; }
+
+            public void prefix(int line, int col, String prefix, String iri)
+            { prefixes.setNsPrefix(prefix, iri) ; }
+        } ;
+        new ParserTurtle().parse(handler, baseURI, reader) ;
+    }
+}
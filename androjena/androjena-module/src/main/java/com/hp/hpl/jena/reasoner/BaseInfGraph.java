@@ -14,6 +14,7 @@ import com.hp.hpl.jena.graph.compose.MultiUnion;
 import com.hp.hpl.jena.graph.impl.*;
 import com.hp.hpl.jena.shared.*;
 import com.hp.hpl.jena.util.iterator.*;
+import java.io.PrintWriter;
 import java.util.Iterator;
 
 /**
@@ -271,6 +272,22 @@ public abstract class BaseInfGraph extends GraphBase implements InfGraph {
         return null;
     }
 
+    /**
+     * Switch on/off the collection of a profile of the work done by each
+     * rule. This default implementation collects nothing.
+     */
+    public void setProfiling(boolean profileOn) {
+    }
+
+    /**
+     * Print a report of the work done by each rule while profiling was on.
+     * This default implementation has no profile to report.
+     */
+    public void printProfile(PrintWriter out) {
+        out.println("No profile collected");
+        out.flush();
+    }
+
     /**
      * Test a global boolean property of the graph. This might included
      * properties like consistency, OWLSyntacticValidity etc.
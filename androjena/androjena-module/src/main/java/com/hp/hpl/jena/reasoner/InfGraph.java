@@ -13,6 +13,7 @@ import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.io.PrintWriter;
 import java.util.Iterator;
 
 /**
@@ -144,6 +145,20 @@ public interface InfGraph extends Graph {
      * engine or null if not.
      */
     public Graph getDeductionsGraph(); 
+    
+    /**
+     * Switch on/off the collection of a profile of the work done by each
+     * rule. The profile collected so far is kept while collection is off.
+     * Not all reasoners will support profiling.
+     */
+    public void setProfiling(boolean profileOn);
+    
+    /**
+     * Print a report of the work done by each rule while profiling was on,
+     * the busiest rules first.
+     * @param out the writer to print the report to
+     */
+    public void printProfile(PrintWriter out);
 }
 
 /*
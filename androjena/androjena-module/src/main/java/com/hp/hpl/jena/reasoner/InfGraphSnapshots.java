@@ -0,0 +1,264 @@
+package com.hp.hpl.jena.reasoner;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.mem.GraphSnapshot;
+import com.hp.hpl.jena.mem.GraphSnapshots;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.reasoner.rulesys.BackwardRuleInfGraphI;
+import com.hp.hpl.jena.reasoner.rulesys.BasicForwardRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.FBRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Functor;
+import com.hp.hpl.jena.reasoner.rulesys.impl.SafeGraph;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/**
+ * Versioned, read-only snapshots of an InfGraph, so that readers need not
+ * lock out a writer (or each other) as they do with
+ * <code>Model.enterCriticalSection</code>.
+ * <p>
+ * A snapshot holds the raw data and the forward deductions of the graph as
+ * they were when it was published. A writer calls <code>beginWrite</code>,
+ * makes a batch of changes through the InfGraph (or a model over it) and
+ * then <code>commit</code>, which brings the forward deductions up to date
+ * and publishes the next snapshot atomically. Meanwhile readers go on using
+ * <code>current()</code>, which answers the last snapshot published without
+ * any locking. A snapshot never changes, so a reader sees one consistent
+ * version for as long as it holds on to it.
+ * <p>
+ * A hybrid graph (FBRuleInfGraph, as made by the hybrid mode and the RDFS
+ * and OWL rule reasoners) also answers through its backward rules, on
+ * demand. Each snapshot of one gets its own backward engine, built when
+ * the snapshot is published from a copy of the graph's backward rules and
+ * transitive caches, over the snapshot's data and deductions, so its
+ * answers are those of the graph at that version. The readers of one
+ * snapshot share its engine, and its tables, which it locks briefly as it
+ * answers. Pure backward graphs, and graphs with sameAs canonicalization,
+ * are refused.
+ * <p>
+ * Each commit costs in proportion to the triples changed by the batch (see
+ * GraphSnapshot), unless the graph was cleared or swapped during the batch,
+ * when the affected graph is copied in full.
+ */
+public class InfGraphSnapshots {
+
+    /** The graph being snapshot */
+    protected BasicForwardRuleInfGraph infGraph;
+
+    /** Snapshots of the raw data and of the deductions, null if there are none */
+    protected GraphSnapshots data, deductions;
+
+    /** The lock held by the writer from beginWrite to commit */
+    protected final ReentrantLock writeLock = new ReentrantLock();
+
+    /** The last snapshot published */
+    protected volatile Snapshot current;
+
+    /** The version of the last snapshot published */
+    protected long version = 0;
+
+    /**
+     * Constructor. Prepares the graph and publishes its first snapshot.
+     * @param infGraph the inference graph to snapshot
+     * @throws IllegalArgumentException if the graph is not a forward or
+     * hybrid rule graph, or uses sameAs canonicalization
+     */
+    public InfGraphSnapshots(InfGraph infGraph) {
+        if (!(infGraph instanceof BasicForwardRuleInfGraph)
+                || (infGraph instanceof BackwardRuleInfGraphI && !(infGraph instanceof FBRuleInfGraph))) {
+            throw new IllegalArgumentException("Only forward and hybrid rule graphs can be snapshot, not " + infGraph.getClass().getName());
+        }
+        if (infGraph instanceof FBRuleInfGraph && ((FBRuleInfGraph) infGraph).getSameAsIndex() != null) {
+            throw new IllegalArgumentException("Graphs with sameAs canonicalization can't be snapshot");
+        }
+        this.infGraph = (BasicForwardRuleInfGraph) infGraph;
+        writeLock.lock();
+        try {
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Return the last snapshot published. Never blocks.
+     */
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Return a read-only model over the last snapshot published.
+     */
+    public Model currentModel() {
+        return ModelFactory.createModelForGraph(current);
+    }
+
+    /**
+     * Start a batch of changes, waiting for any other writer to commit.
+     * Every beginWrite must be followed by a commit, normally in a finally
+     * block.
+     */
+    public void beginWrite() {
+        writeLock.lock();
+    }
+
+    /**
+     * Finish a batch of changes: run any pending inference, publish the new
+     * snapshot and let the next writer in.
+     * @return the snapshot published
+     */
+    public Snapshot commit() {
+        if (!writeLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("commit without beginWrite");
+        }
+        try {
+            publish();
+            return current;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stop tracking changes to the graph. Snapshots already published can
+     * still be read.
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            if (data != null) data.close();
+            if (deductions != null) deductions.close();
+            data = deductions = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Bring the graph up to date and publish a snapshot of it, if it has
+     * changed. Called with the write lock held.
+     */
+    protected void publish() {
+        infGraph.prepare();
+        GraphSnapshots newData = track(data, infGraph.getRawGraph());
+        GraphSnapshots newDeductions = track(deductions, rawDeductionsGraph());
+        if (current != null && newData == data && newDeductions == deductions
+                && !changed(data) && !changed(deductions)) {
+            return;
+        }
+        long next = ++version;
+        GraphSnapshot d = newData == null ? null : newData.publish(next);
+        GraphSnapshot dd = newDeductions == null ? null : newDeductions.publish(next);
+        data = newData;
+        deductions = newDeductions;
+        Graph backward = null;
+        if (infGraph instanceof FBRuleInfGraph) {
+            backward = ((FBRuleInfGraph) infGraph).backwardGraphOver(new Snapshot(d, dd, next, false, null));
+        }
+        current = new Snapshot(d, dd, next, infGraph.filterFunctors, backward);
+    }
+
+    /**
+     * Return the snapshots of the given graph, which are the old ones unless
+     * the graph has been replaced since they were made.
+     */
+    protected GraphSnapshots track(GraphSnapshots old, Graph graph) {
+        if (old != null && old.getGraph() == graph) return old;
+        if (old != null) old.close();
+        return graph == null ? null : new GraphSnapshots(graph, version + 1);
+    }
+
+    private static boolean changed(GraphSnapshots snapshots) {
+        return snapshots != null && snapshots.isChanged();
+    }
+
+    /**
+     * Return the graph the deductions are actually stored in, whose
+     * changes are reported to listeners.
+     */
+    protected Graph rawDeductionsGraph() {
+        Graph g = infGraph.getDeductionsGraph();
+        return g instanceof SafeGraph ? ((SafeGraph) g).getRawGraph() : g;
+    }
+
+    /**
+     * One published version of the graph: the deductions followed by the
+     * raw data that is not also deduced. If the graph filters functors, so
+     * does the snapshot. The snapshot of a hybrid graph answers through its
+     * own backward graph instead, which searches the data and deductions.
+     */
+    public static class Snapshot extends GraphBase {
+
+        /** The data and deductions, either may be null */
+        protected final GraphSnapshot data, deductions;
+
+        /** The version of this snapshot */
+        protected final long version;
+
+        /** True if functor-valued triples are hidden, as by the graph */
+        protected final boolean filterFunctors;
+
+        /** The backward graph over this version, null if the graph has no backward rules */
+        protected final Graph backward;
+
+        protected Snapshot(GraphSnapshot data, GraphSnapshot deductions, long version, boolean filterFunctors,
+                Graph backward) {
+            this.data = data;
+            this.deductions = deductions;
+            this.version = version;
+            this.filterFunctors = filterFunctors;
+            this.backward = backward;
+            getReifier();
+        }
+
+        /**
+         * Return the version of this snapshot; later snapshots have higher versions.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /** Return the snapshot of the raw data, may be null */
+        public GraphSnapshot getData() {
+            return data;
+        }
+
+        /** Return the snapshot of the deductions, may be null */
+        public GraphSnapshot getDeductions() {
+            return deductions;
+        }
+
+        @Override
+        protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m) {
+            if (backward != null) {
+                return backward.find(m);
+            }
+            ExtendedIterator<Triple> it;
+            if (deductions == null) {
+                it = data.find(m);
+            } else if (data == null) {
+                it = deductions.find(m);
+            } else {
+                it = deductions.find(m).andThen(data.find(m).filterDrop(new Filter<Triple>() {
+                    @Override
+                    public boolean accept(Triple t) {
+                        return deductions.hasTriple(t);
+                    }
+                }));
+            }
+            return filterFunctors ? it.filterDrop(Functor.acceptFilter) : it;
+        }
+
+        @Override
+        public String toString() {
+            return "<inference snapshot " + version + ">";
+        }
+    }
+}
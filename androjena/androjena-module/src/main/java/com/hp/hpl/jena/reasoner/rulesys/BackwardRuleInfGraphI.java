@@ -12,6 +12,7 @@ package com.hp.hpl.jena.reasoner.rulesys;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.reasoner.rulesys.impl.RuleProfile;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 /**
@@ -59,6 +60,12 @@ public interface BackwardRuleInfGraphI extends SilentAddI, InfGraph {
      */
     public int getVersion();
     
+    /**
+     * Return the profile of the work done by each rule, shared by the
+     * engines of this graph.
+     */
+    public RuleProfile getRuleProfile();
+    
 }
 
 
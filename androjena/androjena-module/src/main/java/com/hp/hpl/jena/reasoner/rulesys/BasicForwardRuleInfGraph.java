@@ -14,9 +14,10 @@ import com.hp.hpl.jena.reasoner.rulesys.impl.*;
 import com.hp.hpl.jena.shared.ReificationStyle;
 import com.hp.hpl.jena.graph.*;
 
+import java.io.PrintWriter;
 import java.util.*;
 
-import com.hp.hpl.jena.util.OneToManyMap;
+import com.hp.hpl.jena.shared.impl.JenaParameters;
 import com.hp.hpl.jena.util.iterator.*;
 
 import org.slf4j.Logger;
@@ -40,7 +41,7 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
 // variables
     
     /** Table of derivation records, maps from triple to RuleDerivation */
-    protected OneToManyMap<Triple, Derivation> derivations;
+    protected DerivationStore derivations;
     
     /** The set of deduced triples, this is in addition to base triples in the fdata graph */
     protected FGraph fdeductions;
@@ -63,6 +64,9 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
     /** Flag which, if true, enables tracing of rule actions to logger.info */
     protected boolean traceOn = false;
     
+    /** The profile of the work done by each rule, shared by the engines */
+    protected final RuleProfile ruleProfile = new RuleProfile();
+    
     private static Logger logger = LoggerFactory.getLogger(BasicForwardRuleInfGraph.class);
     
 //=======================================================================
@@ -337,14 +341,21 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
     @Override
     public void performDelete(Triple t) {
         version++;
+        boolean removeIsFromBase = false;
         if (fdata != null) {
             Graph data = fdata.getGraph();
             if (data != null) {
+                removeIsFromBase = data.contains(t);
                 data.delete(t);
             }
         }
         if (isPrepared) {
-            fdeductions.getGraph().delete(t);
+            if (removeIsFromBase) {
+                // Retract the deductions which depended on it, or recompute if the engine can't
+                if (!engine.delete(t)) isPrepared = false;
+            } else {
+                fdeductions.getGraph().delete(t);
+            }
         }
     }
    
@@ -358,6 +369,10 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
             fdeductions = null;
             rules = null;
             schemaGraph = null;
+            if (derivations != null) {
+                derivations.close();
+                derivations = null;
+            }
             super.close();
         }
     }
@@ -438,7 +453,7 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
      * Log a dervivation record against the given triple.
      */
     public void logDerivation(Triple t, Derivation derivation) {
-        derivations.put(t, derivation);
+        derivations.add(t, derivation);
     }
     
     /**
@@ -458,8 +473,11 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
     public void setDerivationLogging(boolean recordDerivations) {
         this.recordDerivations = recordDerivations;
         engine.setDerivationLogging(recordDerivations);
+        if (derivations != null) {
+            derivations.close();
+        }
         if (recordDerivations) {
-            derivations = new OneToManyMap<Triple, Derivation>();
+            derivations = new DerivationStore(this, JenaParameters.derivationSpillDirectory);
         } else {
             derivations = null;
         }
@@ -481,10 +499,36 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
         if (derivations == null) {
             return new NullIterator<Derivation>();
         } else {
-            return derivations.getAll(t);
+            return derivations.getDerivation(t);
         }
     }
      
+    /**
+     * Return the profile of the work done by each rule.
+     */
+    public RuleProfile getRuleProfile() {
+        return ruleProfile;
+    }
+    
+    /**
+     * Switch on/off the collection of the profile of the work done by each
+     * rule. The profile collected so far is kept while collection is off,
+     * use getRuleProfile().reset() to clear it.
+     */
+    @Override
+    public void setProfiling(boolean profileOn) {
+        ruleProfile.setEnabled(profileOn);
+    }
+    
+    /**
+     * Print a report of the work done by each rule while profiling was on,
+     * the rules which fired and joined most first.
+     */
+    @Override
+    public void printProfile(PrintWriter out) {
+        ruleProfile.print(out, RuleProfile.Order.WORK);
+    }
+     
     /**
      * Set the state of the trace flag. If set to true then rule firings
      * are logged out to the Log at "INFO" level.
@@ -509,6 +553,14 @@ public class BasicForwardRuleInfGraph extends BaseInfGraph implements ForwardRul
         return engine.getNRulesFired();
     }
     
+    /**
+     * Return the average number of rules fired per second of rule engine time
+     * since this rule engine instance was created and initialized
+     */
+    public double getRulesFiredPerSecond() {
+        return engine.getRulesFiredPerSecond();
+    }
+    
     @Override
     public Reifier constructReifier()
         { 
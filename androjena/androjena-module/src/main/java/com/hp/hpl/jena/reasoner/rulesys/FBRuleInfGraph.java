@@ -21,10 +21,10 @@ import com.hp.hpl.jena.datatypes.TypeMapper;
 import com.hp.hpl.jena.graph.*;
 import com.hp.hpl.jena.graph.impl.LiteralLabel;
 
+import java.io.PrintWriter;
 import java.util.*;
 
 //import com.hp.hpl.jena.util.PrintUtil;
-import com.hp.hpl.jena.util.OneToManyMap;
 import com.hp.hpl.jena.util.PrintUtil;
 import com.hp.hpl.jena.util.iterator.*;
 import com.hp.hpl.jena.vocabulary.*;
@@ -69,6 +69,9 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
     /** Optional precomputed cache of the subClass/subproperty lattices */
     protected TransitiveEngine transitiveEngine;
     
+    /** Optional index of owl:sameAs classes, non-null if sameAs canonicalization is enabled */
+    protected SameAsIndex sameAsIndex;
+    
     /** Optional list of preprocessing hooks  to be run in sequence during preparation time */
     protected List<RulePreprocessHook> preprocessorHooks;
     
@@ -150,7 +153,13 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
      */
     @Override
     protected void instantiateRuleEngine(List<Rule> rules) {
-        if (rules != null) {
+        if (sameAsIndex != null) {
+            if (rules != null) {
+                engine = new SameAsRETEEngine(this, rules, sameAsIndex);
+            } else {
+                engine = new SameAsRETEEngine(this, sameAsIndex);
+            }
+        } else if (rules != null) {
             if (useRETE) {
                 engine = new RETEEngine(this, rules);
             } else {
@@ -187,6 +196,31 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
         resetTGCCache();
     }
     
+    /**
+     * Switch on owl:sameAs canonicalization. The standard equality rules
+     * (reflexivity, symmetry, transitivity and replacement) are dropped from
+     * the forward rules and the sameAs classes are kept in a union-find index
+     * instead. Only one representative of each class is materialized in the
+     * deductions graph, the equivalent triples are generated at find time.
+     * Reflexive sameAs statements are only reported for members of
+     * non-trivial classes. Requires the RETE forward engine.
+     */
+    public void setUseSameAsCanonicalization() {
+        if (!useRETE) {
+            throw new ReasonerException("sameAs canonicalization requires the RETE forward engine");
+        }
+        sameAsIndex = new SameAsIndex();
+        instantiateRuleEngine(rawRules);
+        isPrepared = false;
+    }
+    
+    /**
+     * Return the sameAs index used for canonicalization, or null if it is not enabled.
+     */
+    public SameAsIndex getSameAsIndex() {
+        return sameAsIndex;
+    }
+    
     /**
      * Rest the transitive graph caches
      */
@@ -446,6 +480,11 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
             
             // Make sure there are no Brules left over from pior runs
             bEngine.deleteAllRules();
+            
+            // Forget any equivalences found by a prior run
+            if (sameAsIndex != null) {
+                sameAsIndex.clear();
+            }
 
             // Call any optional preprocessing hook
             if (preprocessorHooks != null && preprocessorHooks.size() > 0) {
@@ -526,8 +565,11 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
         this.recordDerivations = recordDerivations;
         engine.setDerivationLogging(recordDerivations);
         bEngine.setDerivationLogging(recordDerivations);
+        if (derivations != null) {
+            derivations.close();
+        }
         if (recordDerivations) {
-            derivations = new OneToManyMap<Triple, Derivation>();
+            derivations = new DerivationStore(this, JenaParameters.derivationSpillDirectory);
         } else {
             derivations = null;
         }
@@ -559,7 +601,7 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
     public ExtendedIterator<Triple> findWithContinuation(TriplePattern pattern, Finder continuation) {
         checkOpen();
         if (!isPrepared) prepare();
-        ExtendedIterator<Triple> result = UniqueExtendedIterator.create(bEngine.find(pattern));
+        ExtendedIterator<Triple> result = UniqueExtendedIterator.create(bEngineFind(pattern));
         if (continuation != null) {
             result = result.andThen(continuation.find(pattern));
         }
@@ -580,7 +622,19 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
     public ExtendedIterator<Triple> findFull(TriplePattern pattern) {
         checkOpen();
         if (!isPrepared) prepare();
-        return UniqueExtendedIterator.create( bEngine.find(pattern) );
+        return UniqueExtendedIterator.create( bEngineFind(pattern) );
+    }
+    
+    /**
+     * Pass a query to the backward engine, mapping it to and from the 
+     * canonical sameAs forms if canonicalization is enabled.
+     */
+    private ExtendedIterator<Triple> bEngineFind(TriplePattern pattern) {
+        if (sameAsIndex == null) {
+            return bEngine.find(pattern);
+        } else {
+            return sameAsIndex.expand(bEngine.find(sameAsIndex.canonical(pattern)), pattern);
+        }
     }
    
     /** 
@@ -628,19 +682,7 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
             if (transitiveEngine.add(t)) isPrepared = false;
         }
         if (isPrepared) {
-            boolean needReset = false;
-            if (preprocessorHooks != null && preprocessorHooks.size() > 0) {
-                if (preprocessorHooks.size() > 1) {
-                    for (Iterator<RulePreprocessHook> i = preprocessorHooks.iterator(); i.hasNext();) {
-                        if (i.next().needsRerun(this, t)) {
-                            needReset = true; break;
-                        }
-                    }
-                } else {
-                    needReset = preprocessorHooks.get(0).needsRerun(this, t);
-                }
-            }
-            if (needReset) {
+            if (preprocessorNeedsRerun(t)) {
                 isPrepared = false;
             } else {
                 engine.add(t);
@@ -648,6 +690,25 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
         }
         bEngine.reset();
     }
+    
+    /**
+     * Return true if any of the preprocessing hooks needs to be rerun
+     * following an add or remove of the given triple.
+     */
+    private boolean preprocessorNeedsRerun(Triple t) {
+        if (preprocessorHooks != null && preprocessorHooks.size() > 0) {
+            if (preprocessorHooks.size() > 1) {
+                for (Iterator<RulePreprocessHook> i = preprocessorHooks.iterator(); i.hasNext();) {
+                    if (i.next().needsRerun(this, t)) {
+                        return true;
+                    }
+                }
+            } else {
+                return preprocessorHooks.get(0).needsRerun(this, t);
+            }
+        }
+        return false;
+    }
 
     /** 
      * Removes the triple t (if possible) from the set belonging to this graph. 
@@ -665,15 +726,15 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
                 isPrepared = false;
             }
         } 
-        // Full incremental remove processing requires reference counting
-        // of all deductions. It's not clear the cost of maintaining the
-        // reference counts is worth it so the current implementation
-        // forces a recompute if any external deletes are performed.
-        if (isPrepared) {
-            bEngine.deleteAllRules();
-            isPrepared = false;
-            // Re-enable the code below when/if ref counting is added and remove above
-            // if (removeIsFromBase) engine.delete(t);
+        // The forward engine maintains the deductions incrementally by
+        // delete/rederive. Engines which can't (e.g. for non-monotonic rules)
+        // refuse the delete, in which case we fall back on a recompute, as we
+        // do if a preprocessing hook needs to be rerun.
+        if (isPrepared && removeIsFromBase) {
+            if (preprocessorNeedsRerun(t) || !engine.delete(t)) {
+                bEngine.deleteAllRules();
+                isPrepared = false;
+            }
         }
         bEngine.reset();
     }
@@ -902,6 +963,10 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
             for (Iterator<Triple> i = preload.getDeductionsGraph().find(null, null, null); i.hasNext(); ) {
                 d.add( i.next() );
             }
+            // Load the equivalences found in the preload
+            if (sameAsIndex != null && preload.sameAsIndex != null) {
+                sameAsIndex.addAll(preload.sameAsIndex);
+            }
             // Load backward rules
             addBRules(preload.getBRules());
             // Load forward rules
@@ -930,19 +995,78 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
 //  Support for LP engine profiling
     
     /**
-     * Reset the LP engine profile.
+     * Reset the rule profile, which the LP engine shares with the forward engine.
      * @param enable it true then profiling will continue with a new empty profile table,
      * if false profiling will stop all current data lost.
+     * @see #setProfiling(boolean)
      */
     public void resetLPProfile(boolean enable) {
-        bEngine.resetProfile(enable);
+        ruleProfile.reset();
+        ruleProfile.setEnabled(enable);
     }
     
     /**
-     * Print a profile of LP rules used since the last reset.
+     * Print the rule profile collected since the last reset to standard output.
+     * It now includes the forward rules as well as the LP rules.
+     * @see #printProfile(PrintWriter)
      */
     public void printLPProfile() {
-        bEngine.printProfile();
+        printProfile(new PrintWriter(System.out));
+    }
+    
+    /**
+     * Set the maximum number of results held in the tables of completed 
+     * goals of the LP engine, 0 for no limit.
+     * @see LPBRuleEngine#setMaxTabledResults(long)
+     */
+    public void setMaxTabledResults(long max) {
+        bEngine.setMaxTabledResults(max);
+    }
+    
+    /**
+     * Return the maximum number of results held in the tables of completed 
+     * goals of the LP engine, 0 for no limit.
+     */
+    public long getMaxTabledResults() {
+        return bEngine.getMaxTabledResults();
+    }
+    
+    /**
+     * Return the number of calls to tabled goals answered from an existing table.
+     */
+    public long getTableHits() {
+        return bEngine.getTableHits();
+    }
+    
+    /**
+     * Return the number of calls to tabled goals which needed a new table.
+     */
+    public long getTableMisses() {
+        return bEngine.getTableMisses();
+    }
+    
+    /**
+     * Return the number of tables of completed goals evicted to keep within the limit.
+     */
+    public long getTableEvictions() {
+        return bEngine.getTableEvictions();
+    }
+    
+    /**
+     * Return a backward inference graph over a fixed copy of this graph's
+     * data and deductions, which answers as this graph would over them. It
+     * has a copy of the current backward rules and tabling instructions, of
+     * the transitive caches and of the hidden nodes, and shares nothing that
+     * later changes to this graph would touch. Used to answer queries on
+     * published snapshots, see {@link com.hp.hpl.jena.reasoner.InfGraphSnapshots}.
+     * The graph should be prepared and not changed while this is called.
+     * @param data the data and deductions, including any functor-valued triples
+     */
+    public LPBackwardRuleInfGraph backwardGraphOver(Graph data) {
+        if (sameAsIndex != null) {
+            throw new ReasonerException("Can't copy the backward engine of a graph with sameAs canonicalization");
+        }
+        return new FrozenBackwardGraph(this, data);
     }
     
 //  =======================================================================
@@ -955,8 +1079,16 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
      * as subject or object.
      */
     public boolean accept(Object tin) {
-        Triple t = (Triple)tin;
-        
+        return reject((Triple)tin, hiddenNodes, filterFunctors);
+    }
+    
+    /**
+     * Return true if the triple is one that should be hidden: it has a 
+     * literal subject, one of the given hidden nodes or, if filterFunctors
+     * is set, a Functor object.
+     * @param hiddenNodes the hidden nodes, may be null
+     */
+    protected static boolean reject(Triple t, Set<Node> hiddenNodes, boolean filterFunctors) {
         if ((t).getSubject().isLiteral()) return true;
         
         if (JenaParameters.enableFilteringOfHiddenInfNodes && hiddenNodes != null) {
@@ -1002,6 +1134,77 @@ public class FBRuleInfGraph  extends BasicForwardRuleInfGraph implements Backwar
         }
         
     }
+    
+    /**
+     * A backward inference graph over data which will not change, answering
+     * as the FBRuleInfGraph it was copied from would: the data is searched
+     * together with copies of the transitive caches, and results are filtered
+     * with a copy of the hidden nodes.
+     */
+    protected static class FrozenBackwardGraph extends LPBackwardRuleInfGraph {
+        
+        /** Copy of the transitive caches, null if they are not used */
+        protected TransitiveEngine transitiveEngine;
+        
+        /** Copy of the hidden nodes, may be null */
+        protected Set<Node> hiddenNodes;
+        
+        /** True if functor-valued triples are hidden */
+        protected boolean filterFunctors;
+        
+        /** 
+         * Constructor. Copies the state of the graph and prepares the copy.
+         */
+        protected FrozenBackwardGraph(FBRuleInfGraph graph, Graph data) {
+            super(graph.getReasoner(), copyRuleStore(graph.bEngine.getRuleStore()), data,
+                    graph.schemaGraph == null ? null : ((InfGraph)graph.schemaGraph).getRawGraph());
+            if (graph.useTGCCaching) {
+                transitiveEngine = new TransitiveEngine(graph.transitiveEngine);
+                transitiveEngine.setCaching(true, true);
+            }
+            if (graph.hiddenNodes != null) {
+                synchronized (graph.hiddenNodes) {
+                    hiddenNodes = new HashSet<Node>(graph.hiddenNodes);
+                }
+            }
+            filterFunctors = graph.filterFunctors;
+            setMaxTabledResults(graph.getMaxTabledResults());
+            setCompileThreshold(graph.bEngine.getCompileThreshold());
+            prepare();
+        }
+        
+        private static LPRuleStore copyRuleStore(LPRuleStore store) {
+            LPRuleStore copy = new LPRuleStore();
+            copy.addAll(store);
+            return copy;
+        }
+        
+        @Override
+        public void prepare() {
+            if (!isPrepared) {
+                super.prepare();
+                if (transitiveEngine != null) {
+                    dataFind = FinderUtil.cascade(dataFind, transitiveEngine.getSubClassCache(), transitiveEngine.getSubPropertyCache());
+                }
+            }
+        }
+        
+        /**
+         * Answer from the backward engine alone, which also searches the data.
+         * The engine locks itself, so concurrent readers need not lock the graph.
+         */
+        @Override
+        public ExtendedIterator<Triple> findWithContinuation(TriplePattern pattern, Finder continuation) {
+            checkOpen();
+            ExtendedIterator<Triple> result = UniqueExtendedIterator.create(engine.find(pattern));
+            if (continuation != null) {
+                result = result.andThen(continuation.find(pattern));
+            }
+            return result.filterDrop( new Filter<Triple>() {
+                @Override public boolean accept( Triple t )
+                    { return reject(t, hiddenNodes, filterFunctors); }} );
+        }
+    }
    
     
 }
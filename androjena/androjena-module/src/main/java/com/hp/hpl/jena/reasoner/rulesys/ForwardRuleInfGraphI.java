@@ -11,6 +11,7 @@ package com.hp.hpl.jena.reasoner.rulesys;
 
 import com.hp.hpl.jena.graph.*;
 import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.reasoner.rulesys.impl.RuleProfile;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 /**
@@ -79,6 +80,12 @@ public interface ForwardRuleInfGraphI extends InfGraph, SilentAddI {
      * Default is true.
      */
     public void setFunctorFiltering(boolean param) ;
+    
+    /**
+     * Return the profile of the work done by each rule, shared by the
+     * engines of this graph.
+     */
+    public RuleProfile getRuleProfile();
 
 }
 
@@ -43,6 +43,9 @@ public class GenericRuleReasoner extends FBRuleReasoner {
     /** Flag, if true then subClass and subProperty lattices will be optimized using TGCs, only applicable to HYBRID reasoners */
     protected boolean enableTGCCaching = false;
     
+    /** Flag, if true then owl:sameAs classes are kept in a union-find index rather than materialized, only applicable to HYBRID reasoners */
+    protected boolean enableSameAsCanonicalization = false;
+    
     /** Flag, if true then rules will be augmented by OWL translations of the schema */
     protected boolean enableOWLTranslation = false;
     
@@ -52,6 +55,9 @@ public class GenericRuleReasoner extends FBRuleReasoner {
     /** Flag, if true then find results will be filtered to remove functors and illegal RDF */
     public boolean filterFunctors = true;
     
+    /** Maximum number of results held in the tables of completed backward goals, 0 for no limit */
+    protected long maxTabledResults = 0;
+    
     /** A prebuilt copy of the OWL translation hook */
     private static final OWLRuleTranslationHook owlTranslator = new OWLRuleTranslationHook();
     
@@ -61,6 +67,9 @@ public class GenericRuleReasoner extends FBRuleReasoner {
     /** Constant - the mode description for pure forward chaining, using RETE engine */
     public static final RuleMode FORWARD_RETE = new RuleMode("forwardRETE");
     
+    /** Constant - the mode description for pure forward chaining, matching each round of new triples in parallel */
+    public static final RuleMode FORWARD_PARALLEL = new RuleMode("forwardParallel");
+    
     /** Constant - the mode description for pure backward chaining */
     public static final RuleMode BACKWARD = new RuleMode("backward");
     
@@ -170,6 +179,20 @@ public class GenericRuleReasoner extends FBRuleReasoner {
         this.enableTGCCaching = enableTGCCaching;
     }
    
+    /**
+     * Set to true to handle owl:sameAs by keeping the equivalence classes in a
+     * union-find index and rewriting all triples to a canonical representative,
+     * instead of materializing the equality closure through the rules. The
+     * standard sameAs reflexivity, symmetry, transitivity and replacement rules
+     * are recognized and dropped, the equivalent forms are generated at query time.
+     * Reflexive sameAs statements are only reported for members of non-trivial
+     * classes. This is only implemented for the HYBRID mode.
+     */
+    public void setSameAsCanonicalization(boolean enableSameAsCanonicalization) {
+        this.enableSameAsCanonicalization = enableSameAsCanonicalization;
+        preload = null;
+    }
+    
     /**
      * Set to true to cause functor-valued literals to be dropped from rule output.
      * Default is true.
@@ -178,6 +201,16 @@ public class GenericRuleReasoner extends FBRuleReasoner {
         filterFunctors = param;
     }
     
+    /**
+     * Set the maximum number of results held in the tables of completed
+     * backward rule goals, the tables of the least recently used goals are 
+     * evicted to keep within it. Only applicable to BACKWARD and HYBRID modes.
+     * @param max the number of results, 0 for no limit (the default)
+     */
+    public void setMaxTabledResults(long max) {
+        maxTabledResults = max;
+    }
+    
     /**
      * Add a new preprocessing hook defining an operation that
      * should be run when the inference graph is being prepared. This can be
@@ -277,19 +310,27 @@ public class GenericRuleReasoner extends FBRuleReasoner {
         } else if (parameter.equals(ReasonerVocabulary.PROPenableTGCCaching)) {
             enableTGCCaching =  Util.convertBooleanPredicateArg(parameter, value);
             
+        } else if (parameter.equals(ReasonerVocabulary.PROPenableSameAsCanonicalization)) {
+            setSameAsCanonicalization( Util.convertBooleanPredicateArg(parameter, value) );
+            
         } else if (parameter.equals(ReasonerVocabulary.PROPruleMode)) {
             if (value.equals(FORWARD.name)) {
                 mode = FORWARD;
             } else if (value.equals(FORWARD_RETE.name)) {
                 mode = FORWARD_RETE;
+            } else if (value.equals(FORWARD_PARALLEL.name)) {
+                mode = FORWARD_PARALLEL;
             } else if (value.equals(BACKWARD.name)) {
                 mode = BACKWARD;
             } else if (value.equals(HYBRID.name)) {
                 mode = HYBRID;
             } else {
-                throw new IllegalParameterException("PROPruleMode can only be 'forward'm 'forwardRETE', 'backward', 'hybrid', not " + value);
+                throw new IllegalParameterException("PROPruleMode can only be 'forward'm 'forwardRETE', 'forwardParallel', 'backward', 'hybrid', not " + value);
             }
             
+        } else if (parameter.equals(ReasonerVocabulary.PROPmaxTabledResults)) {
+            setMaxTabledResults( Util.convertIntegerPredicateArg(parameter, value) );
+            
         } else if (parameter.equals(ReasonerVocabulary.PROPruleSet)) {
             if (value instanceof String) {
                 addRules( loadRules( (String)value ) );
@@ -321,19 +362,25 @@ public class GenericRuleReasoner extends FBRuleReasoner {
         } else if (mode == FORWARD_RETE) {
                 graph = new RETERuleInfGraph(this, rules, null, tbox);
                 ((InfGraph)graph).prepare();
+        } else if (mode == FORWARD_PARALLEL) {
+            graph = new ParallelForwardRuleInfGraph(this, rules, null, tbox);
+            ((InfGraph)graph).prepare();
         } else if (mode == BACKWARD) {
             graph = tbox;
         } else {
             List<Rule> ruleSet = rules;
             graph = new FBRuleInfGraph(this, ruleSet, getPreload(), tbox);
             if (enableTGCCaching) ((FBRuleInfGraph)graph).setUseTGCCache();
+            if (enableSameAsCanonicalization) ((FBRuleInfGraph)graph).setUseSameAsCanonicalization();
             ((FBRuleInfGraph)graph).prepare();
         }
         GenericRuleReasoner grr = new GenericRuleReasoner(rules, graph, factory, mode);
         grr.setDerivationLogging(recordDerivations);
         grr.setTraceOn(traceOn);
         grr.setTransitiveClosureCaching(enableTGCCaching);
+        grr.setSameAsCanonicalization(enableSameAsCanonicalization);
         grr.setFunctorFiltering(filterFunctors);
+        grr.setMaxTabledResults(maxTabledResults);
         if (preprocessorHooks != null) {
             for (Iterator<RulePreprocessHook> i = preprocessorHooks.iterator(); i.hasNext(); ) {
                 grr.addPreprocessingHook(i.next());
@@ -364,16 +411,23 @@ public class GenericRuleReasoner extends FBRuleReasoner {
                 graph = new RETERuleInfGraph(this, rules, schemaArg);
                 ((BasicForwardRuleInfGraph)graph).setTraceOn(traceOn);
                 ((BasicForwardRuleInfGraph)graph).setFunctorFiltering(filterFunctors);
+        } else if (mode == FORWARD_PARALLEL) {
+            graph = new ParallelForwardRuleInfGraph(this, rules, schemaArg);
+            ((BasicForwardRuleInfGraph)graph).setTraceOn(traceOn);
+            ((BasicForwardRuleInfGraph)graph).setFunctorFiltering(filterFunctors);
         } else if (mode == BACKWARD) {
             graph = new LPBackwardRuleInfGraph(this, getBruleStore(), data, schemaArg);
             ((LPBackwardRuleInfGraph)graph).setTraceOn(traceOn);
+            ((LPBackwardRuleInfGraph)graph).setMaxTabledResults(maxTabledResults);
         } else {
             List<Rule> ruleSet = ((FBRuleInfGraph)schemaArg).getRules();
             FBRuleInfGraph fbgraph = new FBRuleInfGraph(this, ruleSet, schemaArg);
             graph = fbgraph; 
             if (enableTGCCaching) fbgraph.setUseTGCCache();
+            if (enableSameAsCanonicalization) fbgraph.setUseSameAsCanonicalization();
             fbgraph.setTraceOn(traceOn);
             fbgraph.setFunctorFiltering(filterFunctors);
+            fbgraph.setMaxTabledResults(maxTabledResults);
             if (preprocessorHooks!= null) {
                 for (Iterator<RulePreprocessHook> i = preprocessorHooks.iterator(); i.hasNext(); ) {
                     fbgraph.addPreprocessingHook(i.next());
@@ -394,6 +448,7 @@ public class GenericRuleReasoner extends FBRuleReasoner {
         if (cachePreload && preload == null && mode == HYBRID) {
             preload = new FBRuleInfGraph( this, rules, null, Factory.createDefaultGraph() );
             if (enableTGCCaching) ((FBRuleInfGraph)preload).setUseTGCCache();
+            if (enableSameAsCanonicalization) ((FBRuleInfGraph)preload).setUseSameAsCanonicalization();
             preload.prepare();
         }
         return preload;
@@ -13,9 +13,10 @@ import com.hp.hpl.jena.reasoner.rulesys.impl.*;
 import com.hp.hpl.jena.reasoner.*;
 import com.hp.hpl.jena.graph.*;
 
+import java.io.PrintWriter;
 import java.util.*;
 
-import com.hp.hpl.jena.util.OneToManyMap;
+import com.hp.hpl.jena.shared.impl.JenaParameters;
 import com.hp.hpl.jena.util.iterator.*;
 
 import org.slf4j.Logger;
@@ -37,7 +38,7 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
     protected LPBRuleEngine engine;
     
     /** Table of derivation records, maps from triple to RuleDerivation */
-    protected OneToManyMap<Triple, Derivation> derivations;
+    protected DerivationStore derivations;
     
     /** An optional graph of separate schema assertions that should also be processed */
     protected FGraph fschema;
@@ -50,6 +51,9 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
     
     /** Cache of temporary property values inferred through getTemp calls */
     protected TempNodeCache tempNodecache;
+    
+    /** The profile of the work done by each rule, shared by the engines */
+    protected final RuleProfile ruleProfile = new RuleProfile();
         
     static Logger logger = LoggerFactory.getLogger(LPBackwardRuleInfGraph.class);
     
@@ -224,6 +228,20 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
         }
     }
     
+    /** 
+     * Free all resources, any further use of this Graph is an error.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            if (derivations != null) {
+                derivations.close();
+                derivations = null;
+            }
+            super.close();
+        }
+    }
+    
 //  =======================================================================
 //   support for proof traces
 
@@ -233,8 +251,11 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
     @Override
     public void setDerivationLogging(boolean recordDerivations) {
         engine.setDerivationLogging(recordDerivations);
+        if (derivations != null) {
+            derivations.close();
+        }
         if (recordDerivations) {
-            derivations = new OneToManyMap<Triple, Derivation>();
+            derivations = new DerivationStore(this, JenaParameters.derivationSpillDirectory);
         } else {
             derivations = null;
         }
@@ -249,10 +270,36 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
         if (derivations == null) {
             return new NullIterator<Derivation>();
         } else {
-            return derivations.getAll(t);
+            return derivations.getDerivation(t);
         }
     }
        
+    /**
+     * Return the profile of the work done by each rule.
+     */
+    public RuleProfile getRuleProfile() {
+        return ruleProfile;
+    }
+    
+    /**
+     * Switch on/off the collection of the profile of the work done by each
+     * rule. The profile collected so far is kept while collection is off,
+     * use getRuleProfile().reset() to clear it.
+     */
+    @Override
+    public void setProfiling(boolean profileOn) {
+        ruleProfile.setEnabled(profileOn);
+    }
+    
+    /**
+     * Print a report of the work done by each rule while profiling was on,
+     * the rules which fired and joined most first.
+     */
+    @Override
+    public void printProfile(PrintWriter out) {
+        ruleProfile.print(out, RuleProfile.Order.WORK);
+    }
+     
     /**
      * Set the state of the trace flag. If set to true then rule firings
      * are logged out to the Log at "INFO" level.
@@ -267,6 +314,53 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
     public boolean isTraceOn() {
         return engine.isTraceOn();
     }
+    
+    /**
+     * Set the number of calls of a predicate after which the LP engine 
+     * compiles its rule clauses, negative, the default, to never compile them. 
+     * @see LPBRuleEngine#setCompileThreshold(int)
+     */
+    public void setCompileThreshold(int threshold) {
+        engine.setCompileThreshold(threshold);
+    }
+    
+    /**
+     * Set the maximum number of results held in the tables of completed 
+     * goals of the LP engine, 0 for no limit.
+     * @see LPBRuleEngine#setMaxTabledResults(long)
+     */
+    public void setMaxTabledResults(long max) {
+        engine.setMaxTabledResults(max);
+    }
+    
+    /**
+     * Return the maximum number of results held in the tables of completed 
+     * goals of the LP engine, 0 for no limit.
+     */
+    public long getMaxTabledResults() {
+        return engine.getMaxTabledResults();
+    }
+    
+    /**
+     * Return the number of calls to tabled goals answered from an existing table.
+     */
+    public long getTableHits() {
+        return engine.getTableHits();
+    }
+    
+    /**
+     * Return the number of calls to tabled goals which needed a new table.
+     */
+    public long getTableMisses() {
+        return engine.getTableMisses();
+    }
+    
+    /**
+     * Return the number of tables of completed goals evicted to keep within the limit.
+     */
+    public long getTableEvictions() {
+        return engine.getTableEvictions();
+    }
         
 //    =======================================================================
 //     Interface between infGraph and the goal processing machinery
@@ -275,7 +369,7 @@ public class LPBackwardRuleInfGraph extends BaseInfGraph implements BackwardRule
      * Log a dervivation record against the given triple.
      */
     public void logDerivation(Triple t, Derivation derivation) {
-        derivations.put(t, derivation);
+        derivations.add(t, derivation);
     }
 
     /**
@@ -0,0 +1,67 @@
+package com.hp.hpl.jena.reasoner.rulesys;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.reasoner.rulesys.impl.*;
+
+import java.util.*;
+
+/**
+ * Forward rule inference graph which runs its rules in parallel semi-naive
+ * rounds using a {@link ParallelFRuleEngine}.
+ */
+public class ParallelForwardRuleInfGraph extends BasicForwardRuleInfGraph {
+
+    /**
+     * Constructor. Creates a new inference graph to which a (compiled) rule set
+     * and a data graph can be attached. This separation of binding is useful to allow
+     * any configuration parameters (such as logging) to be set before the data is added.
+     * Note that until the data is added using {@link #rebind rebind} then any operations
+     * like add, remove, find will result in errors.
+     * 
+     * @param reasoner the parent reasoner 
+     * @param schema the (optional) schema data which is being processed
+     */
+    public ParallelForwardRuleInfGraph(Reasoner reasoner, Graph schema) {
+        super(reasoner, schema);
+    }    
+
+    /**
+     * Constructor. Creates a new inference graph based on the given rule set. 
+     * No data graph is attached at this stage.
+     * 
+     * @param reasoner the parent reasoner 
+     * @param rules the list of rules to use this time
+     * @param schema the (optional) schema or preload data which is being processed
+     */
+    public ParallelForwardRuleInfGraph(Reasoner reasoner, List<Rule> rules, Graph schema) {
+        super(reasoner, rules, schema);
+    }    
+
+    /**
+     * Constructor. Creates a new inference graph based on the given rule set
+     * then processes the initial data graph. No precomputed deductions are loaded.
+     * 
+     * @param reasoner the parent reasoner 
+     * @param rules the list of rules to use this time
+     * @param schema the (optional) schema or preload data which is being processed
+     * @param data the data graph to be processed
+     */
+    public ParallelForwardRuleInfGraph(Reasoner reasoner, List<Rule> rules, Graph schema, Graph data) {
+        super(reasoner, rules, schema, data);
+    }
+
+    /**
+     * Instantiate the forward rule engine to use.
+     * @param rules the rule set or null if there are not rules bound in yet.
+     */
+    @Override
+    protected void instantiateRuleEngine(List<Rule> rules) {
+        if (rules != null) {
+            engine = new ParallelFRuleEngine(this, rules);
+        } else {
+            engine = new ParallelFRuleEngine(this);
+        }
+    }
+
+}
@@ -96,14 +96,20 @@ public class RETERuleInfGraph extends BasicForwardRuleInfGraph {
     @Override
     public void performDelete(Triple t) {
         if (!isPrepared) prepare();
+        boolean removeIsFromBase = false;
         if (fdata != null) {
             Graph data = fdata.getGraph();
             if (data != null) {
+                removeIsFromBase = data.contains(t);
                 data.delete(t);
             }
         }
-        engine.delete(t);
-        fdeductions.getGraph().delete(t);
+        if (removeIsFromBase) {
+            // Retract the deductions which depended on it, or recompute if the engine can't
+            if (!engine.delete(t)) isPrepared = false;
+        } else {
+            fdeductions.getGraph().delete(t);
+        }
     }
 
 }
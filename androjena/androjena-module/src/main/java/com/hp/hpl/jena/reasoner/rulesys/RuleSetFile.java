@@ -0,0 +1,358 @@
+package com.hp.hpl.jena.reasoner.rulesys;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.reasoner.TriplePattern;
+import com.hp.hpl.jena.shared.JenaException;
+
+/**
+ * A precompiled, binary form of a parsed rule set, so that an application
+ * which always runs the same rules, such as the OWL 2 RL rules, can save
+ * them once and load them at startup without running the rule parser again.
+ * <p>
+ * The file holds a table of all the strings used by the rules, followed by
+ * the rules themselves as trees of tagged nodes which refer to the table.
+ * The variables of a rule are numbered on first use and shared within the
+ * rule, as the parser shares them, and builtins are looked up in
+ * {@link BuiltinRegistry#theRegistry} on loading, also as the parser does.
+ * A file can be read from a stream or memory mapped.</p>
+ * <p>
+ * This only covers part of what was asked for: the RETE network and the LP
+ * clause code are not part of the file, and are still built from the rules
+ * when a reasoner is first bound. The LP code refers to the code of the
+ * predicates it calls and to builtins, and may be for backward rules made by
+ * forward rules while the graph is prepared, so it is not self-contained.
+ * Building both for the OWL 2 RL rules takes under a millisecond, measured
+ * with jena.rulestartbench as the time to prepare over no data, against 20ms
+ * or more for the closure of even a small ontology, so there is little left
+ * for a saved network to win. A reasoner which is reused for several
+ * inference graphs builds them only once, see {@link GenericRuleReasoner}.</p>
+ */
+public class RuleSetFile {
+
+    /** Marks the start of a rule set file */
+    protected static final int MAGIC = 0x4a52554c;
+
+    /** Version of the format */
+    protected static final int VERSION = 1;
+
+    /** Tags of the nodes and clause entries */
+    protected static final byte URI = 1, BLANK = 2, LITERAL = 3, VARIABLE = 4, NEW_VARIABLE = 5,
+            FUNCTOR_NODE = 6, ANY = 7, TRIPLE = 8, FUNCTOR = 9, RULE = 10;
+
+    /** String index of an absent string, such as the name of an unnamed rule */
+    protected static final int NONE = -1;
+
+    /**
+     * Write a rule set.
+     * @param rules the rules, as returned by {@link Rule#parseRules(String)}
+     * @param out the stream to write to, which is not closed
+     */
+    public static void write(List<Rule> rules, OutputStream out) throws IOException {
+        RuleWriter writer = new RuleWriter();
+        for (Rule rule : rules) {
+            writer.variables.clear();
+            writer.writeRule(rule);
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(writer.strings.size());
+        for (String s : writer.strings) {
+            byte[] bytes = s.getBytes("UTF-8");
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        data.writeInt(rules.size());
+        writer.body.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Write a rule set to a file.
+     */
+    public static void write(List<Rule> rules, File file) {
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                write(rules, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new JenaException("Could not write rule set file " + file, e);
+        }
+    }
+
+    /**
+     * Read a rule set from a stream, which is read to the end but not closed.
+     */
+    public static List<Rule> read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Read a rule set from a file, which is memory mapped.
+     */
+    public static List<Rule> read(File file) {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new JenaException("Could not read rule set file " + file, e);
+        }
+    }
+
+    /**
+     * Read a rule set from a buffer.
+     */
+    public static List<Rule> read(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new JenaException("Not a rule set file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new JenaException("Unsupported rule set file version " + version);
+            }
+            RuleReader reader = new RuleReader(buffer);
+            int nStrings = buffer.getInt();
+            reader.strings = new String[nStrings];
+            for (int i = 0; i < nStrings; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                reader.strings[i] = new String(bytes, "UTF-8");
+            }
+            int nRules = buffer.getInt();
+            List<Rule> rules = new ArrayList<Rule>(nRules);
+            for (int i = 0; i < nRules; i++) {
+                reader.variables.clear();
+                if (buffer.get() != RULE) {
+                    throw new JenaException("Corrupt rule set file");
+                }
+                rules.add(reader.readRule());
+            }
+            return rules;
+        } catch (UnsupportedEncodingException e) {
+            throw new JenaException(e);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new JenaException("Truncated rule set file");
+        }
+    }
+
+    /**
+     * Encodes the rules into a body, collecting the string table as it goes.
+     */
+    protected static class RuleWriter {
+
+        /** The strings, in order of first use */
+        List<String> strings = new ArrayList<String>();
+
+        /** Map from string to its index in the table */
+        Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+        /** Map from the variables of the current rule to their number, by identity as the parser shares them */
+        Map<Node_RuleVariable, Integer> variables = new IdentityHashMap<Node_RuleVariable, Integer>();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        DataOutputStream out = new DataOutputStream(body);
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(NONE);
+                return;
+            }
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                id = strings.size();
+                strings.add(s);
+                stringIds.put(s, id);
+            }
+            out.writeInt(id);
+        }
+
+        void writeRule(Rule rule) throws IOException {
+            out.writeByte(RULE);
+            writeString(rule.getName());
+            out.writeBoolean(rule.isBackward());
+            out.writeInt(rule.getNumVars());
+            writeEntries(rule.getHead());
+            writeEntries(rule.getBody());
+        }
+
+        void writeEntries(ClauseEntry[] entries) throws IOException {
+            out.writeInt(entries.length);
+            for (ClauseEntry entry : entries) {
+                if (entry instanceof TriplePattern) {
+                    TriplePattern pattern = (TriplePattern)entry;
+                    out.writeByte(TRIPLE);
+                    writeNode(pattern.getSubject());
+                    writeNode(pattern.getPredicate());
+                    writeNode(pattern.getObject());
+                } else if (entry instanceof Functor) {
+                    out.writeByte(FUNCTOR);
+                    writeFunctor((Functor)entry);
+                } else if (entry instanceof Rule) {
+                    writeRule((Rule)entry);
+                } else {
+                    throw new JenaException("Can't write rule clause " + entry);
+                }
+            }
+        }
+
+        void writeFunctor(Functor f) throws IOException {
+            writeString(f.getName());
+            Node[] args = f.getArgs();
+            out.writeInt(args.length);
+            for (Node arg : args) {
+                writeNode(arg);
+            }
+        }
+
+        void writeNode(Node node) throws IOException {
+            if (node instanceof Node_RuleVariable) {
+                Integer id = variables.get(node);
+                if (id == null) {
+                    variables.put((Node_RuleVariable)node, variables.size());
+                    out.writeByte(NEW_VARIABLE);
+                    writeString(node.getName());
+                    out.writeInt(((Node_RuleVariable)node).getIndex());
+                } else {
+                    out.writeByte(VARIABLE);
+                    out.writeInt(id);
+                }
+            } else if (node == Node.ANY) {
+                out.writeByte(ANY);
+            } else if (node.isURI()) {
+                out.writeByte(URI);
+                writeString(node.getURI());
+            } else if (node.isBlank()) {
+                out.writeByte(BLANK);
+                writeString(node.getBlankNodeLabel());
+            } else if (Functor.isFunctor(node)) {
+                out.writeByte(FUNCTOR_NODE);
+                writeFunctor((Functor)node.getLiteralValue());
+            } else if (node.isLiteral()) {
+                out.writeByte(LITERAL);
+                writeString(node.getLiteralLexicalForm());
+                writeString(node.getLiteralLanguage());
+                writeString(node.getLiteralDatatypeURI());
+            } else {
+                throw new JenaException("Can't write rule node " + node);
+            }
+        }
+    }
+
+    /**
+     * Decodes the rules from a buffer positioned after the string table.
+     */
+    protected static class RuleReader {
+
+        ByteBuffer in;
+
+        String[] strings;
+
+        /** The variables of the current rule, by number */
+        List<Node_RuleVariable> variables = new ArrayList<Node_RuleVariable>();
+
+        RuleReader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        String readString() {
+            int id = in.getInt();
+            return id == NONE ? null : strings[id];
+        }
+
+        Rule readRule() {
+            String name = readString();
+            boolean backward = in.get() != 0;
+            int numVars = in.getInt();
+            ClauseEntry[] head = readEntries();
+            ClauseEntry[] body = readEntries();
+            Rule rule = new Rule(name, head, body);
+            rule.setBackward(backward);
+            rule.setNumVars(numVars);
+            return rule;
+        }
+
+        ClauseEntry[] readEntries() {
+            ClauseEntry[] entries = new ClauseEntry[in.getInt()];
+            for (int i = 0; i < entries.length; i++) {
+                byte tag = in.get();
+                switch (tag) {
+                    case TRIPLE:
+                        entries[i] = new TriplePattern(readNode(), readNode(), readNode());
+                        break;
+                    case FUNCTOR:
+                        entries[i] = readFunctor();
+                        break;
+                    case RULE:
+                        entries[i] = readRule();
+                        break;
+                    default:
+                        throw new JenaException("Corrupt rule set file, clause tag " + tag);
+                }
+            }
+            return entries;
+        }
+
+        Functor readFunctor() {
+            String name = readString();
+            Node[] args = new Node[in.getInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readNode();
+            }
+            return new Functor(name, Arrays.asList(args), BuiltinRegistry.theRegistry);
+        }
+
+        Node readNode() {
+            byte tag = in.get();
+            switch (tag) {
+                case NEW_VARIABLE:
+                    String name = readString();
+                    Node_RuleVariable variable = new Node_RuleVariable(name, in.getInt());
+                    variables.add(variable);
+                    return variable;
+                case VARIABLE:
+                    return variables.get(in.getInt());
+                case ANY:
+                    return Node.ANY;
+                case URI:
+                    return Node.createURI(readString());
+                case BLANK:
+                    return Node.createAnon(new AnonId(readString()));
+                case FUNCTOR_NODE:
+                    return Functor.makeFunctorNode(readFunctor());
+                case LITERAL:
+                    String lex = readString();
+                    String lang = readString();
+                    String datatype = readString();
+                    if (datatype == null) {
+                        return Node.createLiteral(lex, lang, false);
+                    }
+                    return Node.createLiteral(lex, lang, TypeMapper.getInstance().getSafeTypeByName(datatype));
+                default:
+                    throw new JenaException("Corrupt rule set file, node tag " + tag);
+            }
+        }
+    }
+}
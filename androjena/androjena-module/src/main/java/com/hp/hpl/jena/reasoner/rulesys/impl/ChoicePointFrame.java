@@ -27,7 +27,7 @@ import java.util.*;
 public class ChoicePointFrame extends GenericChoiceFrame {
 
     /** The set of argument variables for the call */
-    Node[] argVars = new Node[RuleClauseCode.MAX_ARGUMENT_VARS];
+    Node[] argVars;
 
     /** Iterator over the clauses being searched */
     Iterator<RuleClauseCode> clauseIterator;
@@ -56,6 +56,9 @@ public class ChoicePointFrame extends GenericChoiceFrame {
      */
     public void init(LPInterpreter interpreter, List<RuleClauseCode> predicateClauses) {
         super.init(interpreter);
+        if (argVars == null || argVars.length != interpreter.argVars.length) {
+            argVars = new Node[interpreter.argVars.length];
+        }
         System.arraycopy(interpreter.argVars, 0, argVars, 0, argVars.length);
         clauseIterator = predicateClauses.iterator();
     }
@@ -0,0 +1,355 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.reasoner.rulesys.Functor;
+import com.hp.hpl.jena.reasoner.rulesys.Node_RuleVariable;
+
+/**
+ * The compiled form of the byte code of a rule clause, used by the LP
+ * interpreter once the clause's predicate has been called often enough.
+ * <p>
+ * The code of a clause is a sequence of straight line runs of register
+ * instructions - the head unification, then the argument set up for each
+ * body goal - each ended by a call, a builtin or PROCEED. Each run is compiled
+ * into a Block of op objects with their registers and constants already
+ * decoded, so running the block does no decoding and no dispatch on op codes.
+ * A block is held at the code offset where its run starts, which is where the
+ * interpreter starts decoding when it enters the clause or resumes it after a
+ * call, and it ends at the offset of the instruction which ended the run.
+ * The calls, builtins and PROCEED are still run by the interpreter, as is
+ * everything while tracing.
+ * <p>
+ * Ops hold no state, so a compiled clause can be shared by interpreters
+ * running in different threads.
+ */
+public class CompiledClause {
+
+    /** The blocks of the clause, indexed by the code offset at which each starts, null elsewhere */
+    protected final Block[] blocks;
+
+    /**
+     * Constructor.
+     * @param blocks the blocks, indexed by code offset
+     */
+    protected CompiledClause(Block[] blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Return the block which starts at the given code offset, or null if
+     * none does.
+     */
+    public Block blockAt(int pc) {
+        return blocks[pc];
+    }
+
+    /**
+     * Compile the byte code of a clause.
+     */
+    public static CompiledClause compile(RuleClauseCode clause) {
+        byte[] code = clause.getCode();
+        Object[] args = clause.getArgs();
+        Block[] blocks = new Block[code.length];
+        List<Op> ops = new ArrayList<Op>();
+        int start = 0;
+        int pc = 0;
+        int ac = 0;
+        while (pc < code.length) {
+            int opPc = pc;
+            int opAc = ac;
+            Op op = null;
+            switch (code[pc++]) {
+                case RuleClauseCode.TEST_BOUND:
+                    op = new TestBound(code[pc++], true);
+                    break;
+                case RuleClauseCode.TEST_UNBOUND:
+                    op = new TestBound(code[pc++], false);
+                    break;
+                case RuleClauseCode.ALLOCATE:
+                    op = new Allocate(code[pc++]);
+                    break;
+                case RuleClauseCode.GET_VARIABLE:
+                    op = new GetVariable(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.GET_TEMP:
+                    op = new GetTemp(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.GET_CONSTANT:
+                    op = new GetConstant(code[pc++], (Node)args[ac++]);
+                    break;
+                case RuleClauseCode.GET_FUNCTOR:
+                    op = new GetFunctor((Functor)args[ac++]);
+                    break;
+                case RuleClauseCode.UNIFY_VARIABLE:
+                    op = new UnifyVariable(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.UNIFY_TEMP:
+                    op = new UnifyTemp(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.PUT_NEW_VARIABLE:
+                    op = new PutNewVariable(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.PUT_VARIABLE:
+                    op = new PutVariable(code[pc++], code[pc++], false);
+                    break;
+                case RuleClauseCode.PUT_DEREF_VARIABLE:
+                    op = new PutVariable(code[pc++], code[pc++], true);
+                    break;
+                case RuleClauseCode.PUT_TEMP:
+                    op = new PutTemp(code[pc++], code[pc++]);
+                    break;
+                case RuleClauseCode.PUT_CONSTANT:
+                    op = new PutConstant(code[pc++], (Node)args[ac++]);
+                    break;
+                case RuleClauseCode.CLEAR_ARG:
+                    op = new ClearArg(code[pc++]);
+                    break;
+                case RuleClauseCode.MAKE_FUNCTOR:
+                    op = new MakeFunctor((Functor)args[ac++]);
+                    break;
+                case RuleClauseCode.CALL_BUILTIN:
+                    pc++;
+                    ac++;
+                    break;
+                case RuleClauseCode.CALL_PREDICATE:
+                case RuleClauseCode.LAST_CALL_PREDICATE:
+                case RuleClauseCode.CALL_PREDICATE_INDEX:
+                    ac++;
+                    break;
+                case RuleClauseCode.CALL_TRIPLE_MATCH:
+                case RuleClauseCode.CALL_TABLED:
+                case RuleClauseCode.CALL_WILD_TABLED:
+                case RuleClauseCode.PROCEED:
+                    break;
+                default:
+                    // Not compiled, leave the rest of the clause to the interpreter
+                    pc = code.length;
+                    break;
+            }
+            if (op != null) {
+                ops.add(op);
+            } else {
+                // A call or builtin ends the run, the next starts after it
+                if (!ops.isEmpty()) {
+                    blocks[start] = new Block(ops.toArray(new Op[ops.size()]), opPc, opAc);
+                    ops.clear();
+                }
+                start = pc;
+            }
+        }
+        return new CompiledClause(blocks);
+    }
+
+    /**
+     * A straight line run of ops, which leaves the interpreter at a given
+     * code offset and args offset.
+     */
+    public static class Block {
+
+        /** The ops to run in order */
+        final Op[] ops;
+
+        /** The code offset of the instruction after the run */
+        final int endPc;
+
+        /** The args offset of the instruction after the run */
+        final int endAc;
+
+        Block(Op[] ops, int endPc, int endAc) {
+            this.ops = ops;
+            this.endPc = endPc;
+            this.endAc = endAc;
+        }
+
+        /**
+         * Run the ops on the registers of the interpreter.
+         * @return false if an op failed, in which case the interpreter should backtrack
+         */
+        boolean run(LPInterpreter interpreter) {
+            for (Op op : ops) {
+                if (!op.run(interpreter)) return false;
+            }
+            return true;
+        }
+
+        /** Return the number of ops in the block */
+        public int size() {
+            return ops.length;
+        }
+    }
+
+    /**
+     * A single compiled instruction.
+     */
+    static abstract class Op {
+        /**
+         * Run the instruction on the registers of the interpreter.
+         * @return false if it failed
+         */
+        abstract boolean run(LPInterpreter interpreter);
+    }
+
+    /** TEST_BOUND and TEST_UNBOUND */
+    static class TestBound extends Op {
+        final int ai;
+        final boolean bound;
+        TestBound(int ai, boolean bound) { this.ai = ai; this.bound = bound; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            return LPInterpreter.deref(interpreter.argVars[ai]).isVariable() != bound;
+        }
+    }
+
+    /** ALLOCATE */
+    static class Allocate extends Op {
+        final int size;
+        Allocate(int size) { this.size = size; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.envFrame.allocate(size);
+            interpreter.pVars = interpreter.envFrame.pVars;
+            return true;
+        }
+    }
+
+    /** GET_VARIABLE */
+    static class GetVariable extends Op {
+        final int yi, ai;
+        GetVariable(int yi, int ai) { this.yi = yi; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.pVars[yi] = interpreter.argVars[ai];
+            return true;
+        }
+    }
+
+    /** GET_TEMP */
+    static class GetTemp extends Op {
+        final int ti, ai;
+        GetTemp(int ti, int ai) { this.ti = ti; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.tVars[ti] = interpreter.argVars[ai];
+            return true;
+        }
+    }
+
+    /** GET_CONSTANT */
+    static class GetConstant extends Op {
+        final int ai;
+        final Node constant;
+        GetConstant(int ai, Node constant) { this.ai = ai; this.constant = constant; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            Node arg = interpreter.argVars[ai];
+            if (arg instanceof Node_RuleVariable) arg = ((Node_RuleVariable)arg).deref();
+            if (arg instanceof Node_RuleVariable) {
+                interpreter.bind(arg, constant);
+                return true;
+            }
+            return arg.sameValueAs(constant);
+        }
+    }
+
+    /** GET_FUNCTOR */
+    static class GetFunctor extends Op {
+        final Functor functor;
+        GetFunctor(Functor functor) { this.functor = functor; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            return interpreter.getFunctor(functor);
+        }
+    }
+
+    /** UNIFY_VARIABLE */
+    static class UnifyVariable extends Op {
+        final int yi, ai;
+        UnifyVariable(int yi, int ai) { this.yi = yi; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            return interpreter.unify(interpreter.argVars[ai], interpreter.pVars[yi]);
+        }
+    }
+
+    /** UNIFY_TEMP */
+    static class UnifyTemp extends Op {
+        final int ti, ai;
+        UnifyTemp(int ti, int ai) { this.ti = ti; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            return interpreter.unify(interpreter.argVars[ai], interpreter.tVars[ti]);
+        }
+    }
+
+    /** PUT_NEW_VARIABLE */
+    static class PutNewVariable extends Op {
+        final int yi, ai;
+        PutNewVariable(int yi, int ai) { this.yi = yi; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.argVars[ai] = interpreter.pVars[yi] = new Node_RuleVariable(null, yi);
+            return true;
+        }
+    }
+
+    /** PUT_VARIABLE and PUT_DEREF_VARIABLE */
+    static class PutVariable extends Op {
+        final int yi, ai;
+        final boolean deref;
+        PutVariable(int yi, int ai, boolean deref) { this.yi = yi; this.ai = ai; this.deref = deref; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            Node value = interpreter.pVars[yi];
+            interpreter.argVars[ai] = deref ? LPInterpreter.deref(value) : value;
+            return true;
+        }
+    }
+
+    /** PUT_TEMP */
+    static class PutTemp extends Op {
+        final int ti, ai;
+        PutTemp(int ti, int ai) { this.ti = ti; this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.argVars[ai] = interpreter.tVars[ti];
+            return true;
+        }
+    }
+
+    /** PUT_CONSTANT */
+    static class PutConstant extends Op {
+        final int ai;
+        final Node constant;
+        PutConstant(int ai, Node constant) { this.ai = ai; this.constant = constant; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.argVars[ai] = constant;
+            return true;
+        }
+    }
+
+    /** CLEAR_ARG */
+    static class ClearArg extends Op {
+        final int ai;
+        ClearArg(int ai) { this.ai = ai; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.argVars[ai] = new Node_RuleVariable(null, ai);
+            return true;
+        }
+    }
+
+    /** MAKE_FUNCTOR */
+    static class MakeFunctor extends Op {
+        final Functor functor;
+        MakeFunctor(Functor functor) { this.functor = functor; }
+        @Override
+        boolean run(LPInterpreter interpreter) {
+            interpreter.makeFunctor(functor);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.rulesys.BackwardRuleInfGraphI;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * Iterator over the results of a top level goal answered from the table of a
+ * completed generator. The results can no longer change so, unlike
+ * LPTopGoalIterator, this runs without locking the engine. As with
+ * LPTopGoalIterator, a change to the inference graph during the iteration
+ * is reported as a ConcurrentModificationException.
+ */
+public class CompletedGoalIterator extends NiceIterator<Triple> {
+
+    /** The completed results of the generator */
+    protected List<Object> results;
+
+    /** The index of the next result to return */
+    protected int index = 0;
+
+    /** The parent InfGraph, used for CME detection */
+    protected BackwardRuleInfGraphI infgraph;
+
+    /** Version stamp of the graph when we start */
+    protected int initialVersion;
+
+    /**
+     * Constructor.
+     * @param results the results of a completed generator
+     * @param infgraph the inference graph being queried
+     * @param initialVersion the version of the graph before the results were found
+     */
+    public CompletedGoalIterator(List<Object> results, BackwardRuleInfGraphI infgraph, int initialVersion) {
+        this.results = results;
+        this.infgraph = infgraph;
+        this.initialVersion = initialVersion;
+    }
+
+    @Override
+    public boolean hasNext() {
+        checkCME();
+        return index < results.size();
+    }
+
+    @Override
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Overran end of LP result set");
+        }
+        return (Triple) results.get(index++);
+    }
+
+    /**
+     * Check that the version stamp of the graph is still valid.
+     */
+    private void checkCME() {
+        if (initialVersion != infgraph.getVersion()) {
+            throw new ConcurrentModificationException();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.Derivation;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.RuleDerivation;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.util.OneToManyMap;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/**
+ * Compact store for the derivations logged by the rule engines. Rather than
+ * keeping each RuleDerivation, with its list of matches, in a map from the
+ * conclusion, each rule and each triple is given an int id and a derivation
+ * is recorded as a run of ints:
+ * <pre>
+ *   rule id, conclusion id, number of matches, previous record, match ids...
+ * </pre>
+ * where the previous record links together the derivations of the same
+ * conclusion. The records are appended to fixed size segments which are
+ * either held on the heap or, if a spill directory is given, mapped from a
+ * temporary file so that they can be paged out by the OS. The rules and
+ * triples themselves stay on the heap; they are shared with the rule set
+ * and the graphs anyway.
+ * <p>
+ * RuleDerivation objects are only rebuilt, one at a time, as the iterator
+ * returned by {@link #getDerivation} is walked.</p>
+ * <p>
+ * Derivations of other classes are rare and are simply kept as they are.</p>
+ */
+public class DerivationStore {
+
+    /** log2 of the number of ints in a record segment */
+    protected static final int SEGMENT_SHIFT = 16;
+
+    /** Number of ints in a record segment */
+    protected static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    /** Offsets of the fields within a record */
+    protected static final int RULE = 0, CONCLUSION = 1, COUNT = 2, PREVIOUS = 3, MATCHES = 4;
+
+    /** The graph which the rebuilt derivations belong to */
+    protected InfGraph infGraph;
+
+    /** The rules seen so far, indexed by id */
+    protected Rule[] rules = new Rule[16];
+
+    /** Map from rule to id, by identity since rules compare structurally */
+    protected Map<Rule, Integer> ruleIds = new IdentityHashMap<Rule, Integer>();
+
+    /** The triples seen so far, indexed by id */
+    protected Triple[] triples = new Triple[1024];
+
+    /** Number of triples seen so far */
+    protected int nTriples = 0;
+
+    /** Open addressed hash table from triple to id+1, 0 for an empty slot */
+    protected int[] tripleTable = new int[2048];
+
+    /** For each triple id, the offset+1 of its latest derivation record, 0 if none */
+    protected int[] latest = new int[1024];
+
+    /** The record segments */
+    protected IntBuffer[] segments = new IntBuffer[16];
+
+    /** Number of ints written to the segments */
+    protected int size = 0;
+
+    /** Derivations which are not plain RuleDerivations, created on demand */
+    protected OneToManyMap<Triple, Derivation> others;
+
+    /** The file the segments are mapped from, null if they are on the heap */
+    protected File spillFile;
+
+    /** Channel to the spill file */
+    protected FileChannel channel;
+
+    /**
+     * Constructor for a store held entirely on the heap.
+     * @param infGraph the graph whose derivations are being stored
+     */
+    public DerivationStore(InfGraph infGraph) {
+        this.infGraph = infGraph;
+    }
+
+    /**
+     * Constructor.
+     * @param infGraph the graph whose derivations are being stored
+     * @param spillDirectory directory in which to create a temporary file for
+     * the derivation records, or null to keep them on the heap
+     */
+    public DerivationStore(InfGraph infGraph, String spillDirectory) {
+        this(infGraph);
+        if (spillDirectory != null) {
+            try {
+                spillFile = File.createTempFile("derivations", ".dat", new File(spillDirectory));
+                spillFile.deleteOnExit();
+                channel = new RandomAccessFile(spillFile, "rw").getChannel();
+            } catch (IOException e) {
+                throw new JenaException("Could not create derivation spill file", e);
+            }
+        }
+    }
+
+    /**
+     * Record a derivation of the given triple.
+     */
+    public synchronized void add(Triple t, Derivation derivation) {
+        if (derivation.getClass() != RuleDerivation.class) {
+            if (others == null) others = new OneToManyMap<Triple, Derivation>();
+            others.put(t, derivation);
+            return;
+        }
+        RuleDerivation rd = (RuleDerivation) derivation;
+        List<Triple> matches = rd.getMatches();
+        int conclusion = idFor(t);
+        int record = size;
+        write(idFor(rd.getRule()));
+        write(idFor(rd.getConclusion()));
+        write(matches == null ? -1 : matches.size());
+        write(latest[conclusion] - 1);
+        if (matches != null) {
+            for (int i = 0; i < matches.size(); i++) {
+                write(idFor(matches.get(i)));
+            }
+        }
+        latest[conclusion] = record + 1;
+    }
+
+    /**
+     * Return an iterator over the derivations of the given triple, in the
+     * order they were recorded.
+     */
+    public synchronized Iterator<Derivation> getDerivation(Triple t) {
+        int id = find(t);
+        int n = 0;
+        int[] records = null;
+        if (id >= 0) {
+            records = new int[4];
+            for (int r = latest[id] - 1; r >= 0; r = read(r + PREVIOUS)) {
+                if (n == records.length) records = Arrays.copyOf(records, n * 2);
+                records[n++] = r;
+            }
+        }
+        Iterator<Derivation> other = others == null ? null : others.getAll(t);
+        if (n == 0 && (other == null || !other.hasNext())) {
+            return new NullIterator<Derivation>();
+        }
+        return new DerivationIterator(records, n, other);
+    }
+
+    /**
+     * Release the spill file, if any. The store must not be used again.
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more we can do, it will be deleted on exit
+            }
+            channel = null;
+            spillFile.delete();
+        }
+        segments = null;
+    }
+
+    /**
+     * Rebuild the derivation recorded at the given offset.
+     */
+    protected synchronized RuleDerivation rebuild(int record) {
+        int rule = read(record + RULE);
+        int count = read(record + COUNT);
+        List<Triple> matches = null;
+        if (count >= 0) {
+            matches = new ArrayList<Triple>(count);
+            for (int i = 0; i < count; i++) {
+                matches.add(triples[read(record + MATCHES + i)]);
+            }
+        }
+        return new RuleDerivation(rule < 0 ? null : rules[rule],
+                triples[read(record + CONCLUSION)], matches, infGraph);
+    }
+
+    /**
+     * Return the id of a rule, allocating one if needed. A null rule is -1.
+     */
+    protected int idFor(Rule rule) {
+        if (rule == null) return -1;
+        Integer id = ruleIds.get(rule);
+        if (id == null) {
+            id = ruleIds.size();
+            if (id == rules.length) rules = Arrays.copyOf(rules, id * 2);
+            rules[id] = rule;
+            ruleIds.put(rule, id);
+        }
+        return id;
+    }
+
+    /**
+     * Return the id of a triple, allocating one if needed.
+     */
+    protected int idFor(Triple t) {
+        int mask = tripleTable.length - 1;
+        int slot = hash(t) & mask;
+        for (int entry; (entry = tripleTable[slot]) != 0; slot = (slot + 1) & mask) {
+            if (triples[entry - 1].equals(t)) return entry - 1;
+        }
+        int id = nTriples++;
+        if (id == triples.length) {
+            triples = Arrays.copyOf(triples, id * 2);
+            latest = Arrays.copyOf(latest, id * 2);
+        }
+        triples[id] = t;
+        tripleTable[slot] = id + 1;
+        if (nTriples * 2 > tripleTable.length) rehash();
+        return id;
+    }
+
+    /**
+     * Return the id of a triple, or -1 if it has not been seen.
+     */
+    protected int find(Triple t) {
+        int mask = tripleTable.length - 1;
+        for (int slot = hash(t) & mask, entry; (entry = tripleTable[slot]) != 0; slot = (slot + 1) & mask) {
+            if (triples[entry - 1].equals(t)) return entry - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Double the size of the triple table.
+     */
+    protected void rehash() {
+        int[] table = new int[tripleTable.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < nTriples; id++) {
+            int slot = hash(triples[id]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+        tripleTable = table;
+    }
+
+    /**
+     * Spread the triple hash code, so that close hash codes do not cluster.
+     */
+    protected static int hash(Triple t) {
+        int h = t.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Append an int to the records, adding a segment if needed.
+     */
+    protected void write(int value) {
+        int segment = size >>> SEGMENT_SHIFT;
+        if (segment == segments.length) segments = Arrays.copyOf(segments, segment * 2);
+        if (segments[segment] == null) segments[segment] = newSegment(segment);
+        segments[segment].put(size & (SEGMENT_SIZE - 1), value);
+        size++;
+    }
+
+    /**
+     * Read the int at the given offset in the records.
+     */
+    protected int read(int offset) {
+        return segments[offset >>> SEGMENT_SHIFT].get(offset & (SEGMENT_SIZE - 1));
+    }
+
+    /**
+     * Create the segment with the given index, on the heap or mapped from the spill file.
+     */
+    protected IntBuffer newSegment(int segment) {
+        if (channel == null) {
+            return IntBuffer.allocate(SEGMENT_SIZE);
+        }
+        try {
+            long bytes = (long) SEGMENT_SIZE * 4;
+            return channel.map(FileChannel.MapMode.READ_WRITE, segment * bytes, bytes).asIntBuffer();
+        } catch (IOException e) {
+            throw new JenaException("Could not extend derivation spill file", e);
+        }
+    }
+
+    /**
+     * Iterator which rebuilds the recorded derivations as it goes, followed by any others.
+     */
+    protected class DerivationIterator implements Iterator<Derivation> {
+
+        /** Record offsets, latest first */
+        protected int[] records;
+
+        /** Number of records left to return */
+        protected int remaining;
+
+        /** Other derivations, returned after the records */
+        protected Iterator<Derivation> others;
+
+        DerivationIterator(int[] records, int n, Iterator<Derivation> others) {
+            this.records = records;
+            this.remaining = n;
+            this.others = others;
+        }
+
+        public boolean hasNext() {
+            return remaining > 0 || (others != null && others.hasNext());
+        }
+
+        public Derivation next() {
+            if (remaining > 0) {
+                return rebuild(records[--remaining]);
+            }
+            if (others == null) throw new NoSuchElementException();
+            return others.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -23,8 +23,8 @@ import java.util.*;
  */
 public class EnvironmentFrameWithDerivation extends EnvironmentFrame {
 
-    /** The initial starting arguments for the call */
-    Node[] argVars = new Node[RuleClauseCode.MAX_ARGUMENT_VARS];
+    /** The initial starting arguments for the call, just those of the goal's triple */
+    Node[] argVars = new Node[3];
         
     /** The set of instantiated subgoals processed so far */
     TriplePattern[] matches;
@@ -75,7 +75,7 @@ public class EnvironmentFrameWithDerivation extends EnvironmentFrame {
      * argument registers.
      */
     public void initDerivationRecord(Node[] args) {
-        System.arraycopy(args, 0, argVars, 0, RuleClauseCode.MAX_ARGUMENT_VARS);
+        System.arraycopy(args, 0, argVars, 0, argVars.length);
     }    
     
 }
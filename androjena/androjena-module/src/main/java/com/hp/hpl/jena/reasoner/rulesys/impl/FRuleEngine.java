@@ -46,16 +46,28 @@ public class FRuleEngine implements FRuleEngineI {
     
     /** Flag, if true then there is a wildcard predicate in the rule set so that selective insert is not useful */
     protected boolean wildcardRule;
+    
+    /** The rules compiled into the clause index, together with any axioms, used to rederive triples after a delete */
+    protected List<Rule> forwardRules;
+    
+    /** True if deletes can be processed incrementally: all the rules are monotonic and none adds backward rules */
+    protected boolean canRederive;
      
     /** Set to true to flag that derivations should be logged */
     protected boolean recordDerivations;
     
+    /** The profile of the work done by each rule, shared with the parent graph */
+    protected RuleProfile profile;
+    
     /** performance stats - number of rules passing initial trigger */
     int nRulesTriggered = 0;
     
     /** performance stats - number of rules fired */
     long nRulesFired = 0;
     
+    /** performance stats - nanoseconds spent processing triples */
+    long ruleTime = 0;
+    
     /** performance stats - number of rules fired during axiom initialization */
     long nAxiomRulesFired = -1;
     
@@ -75,6 +87,7 @@ public class FRuleEngine implements FRuleEngineI {
      */
     public FRuleEngine(ForwardRuleInfGraphI parent, List<Rule> rules) {
         infGraph = parent;
+        profile = parent.getRuleProfile();
         this.rules = rules;
     }
 
@@ -86,6 +99,7 @@ public class FRuleEngine implements FRuleEngineI {
      */
     public FRuleEngine(ForwardRuleInfGraphI parent) {
         infGraph = parent;
+        profile = parent.getRuleProfile();
     }
     
 //  =======================================================================
@@ -146,12 +160,53 @@ public class FRuleEngine implements FRuleEngineI {
     
     /**
      * Remove one triple to the data graph.
+     * The triple should already have been removed from the data. Deletes are
+     * processed by delete/rederive: first every deduction with a derivation which
+     * depends on the triple is removed, then each of those which can still be
+     * derived from what remains is put back and the rules run forward from them.
      * @return true if the effects could be correctly propagated or
      * false if not (in which case the entire engine should be restarted).
      */
     public synchronized boolean delete(Triple t) {
-        // Incremental delete not supported
-        return false;
+        if (!canRederive) return false;
+        long start = System.nanoTime();
+        Graph deductions = infGraph.getCurrentDeductionsGraph();
+        // Overdelete, matching against the graph as it was before the delete
+        DeleteContext context = new DeleteContext(infGraph, t, deductions);
+        context.addTriple(t);
+        Triple next;
+        while ((next = context.getNextTriple()) != null) {
+            Iterator<ClausePointer> i1 = clauseIndex.getAll(next.getPredicate());
+            Iterator<ClausePointer> i2 = clauseIndex.getAll(Node.ANY);
+            Iterator<ClausePointer> i = new ConcatenatedIterator<ClausePointer>(i1, i2);
+            while (i.hasNext()) {
+                ClausePointer cp = i.next();
+                context.resetEnv( cp.rule.getNumVars() );
+                TriplePattern trigger = (TriplePattern) cp.rule.getBodyElement(cp.index);
+                if (match(trigger, next, context.getEnvStack())) {
+                    context.setRule(cp.rule);
+                    matchRuleBody(cp.index, context);
+                }
+            }
+        }
+        for (Iterator<Triple> i = context.overdeleted.iterator(); i.hasNext(); ) {
+            deductions.delete(i.next());
+        }
+        // Rederive
+        List<Triple> candidates = new ArrayList<Triple>(context.overdeleted);
+        candidates.add(t);
+        RederivationChecker checker = new RederivationChecker(infGraph, forwardRules);
+        BFRuleContext readds = new BFRuleContext(infGraph);
+        for (Iterator<Triple> i = candidates.iterator(); i.hasNext(); ) {
+            Triple d = i.next();
+            if ( ! readds.contains(d) && checker.isDerivable(d)) {
+                infGraph.addDeduction(d);
+                readds.addTriple(d);
+            }
+        }
+        ruleTime += System.nanoTime() - start;
+        addSet(readds);
+        return true;
     }
     
     /**
@@ -162,6 +217,14 @@ public class FRuleEngine implements FRuleEngineI {
         return nRulesFired;
     }
     
+    /**
+     * Return the average number of rules fired per second of time spent
+     * running the rules since this engine instance was created and initialized
+     */
+    public double getRulesFiredPerSecond() {
+        return ruleTime == 0 ? 0.0 : nRulesFired * 1.0e9 / ruleTime;
+    }
+    
     /**
      * Return true if the internal engine state means that tracing is worthwhile.
      * It will return false during the axiom bootstrap phase.
@@ -183,7 +246,7 @@ public class FRuleEngine implements FRuleEngineI {
      * internal axiom closures.
      */
     public Object getRuleStore() {
-        return new RuleStore(clauseIndex, predicatesUsed, wildcardRule);
+        return new RuleStore(clauseIndex, predicatesUsed, wildcardRule, forwardRules);
     }
     
     /**
@@ -194,6 +257,8 @@ public class FRuleEngine implements FRuleEngineI {
         clauseIndex = rs.clauseIndex;
         predicatesUsed = rs.predicatesUsed;
         wildcardRule = rs.wildcardRule;
+        forwardRules = rs.forwardRules;
+        canRederive = canRederive(forwardRules);
     }
     
 //  =======================================================================
@@ -208,6 +273,7 @@ public class FRuleEngine implements FRuleEngineI {
      * @param context a context containing a set of new triples to be added
      */
     public void addSet(BFRuleContext context) {
+        long start = System.nanoTime();
         Triple t;
         while ((t = context.getNextTriple()) != null) {
             if (infGraph.shouldTrace()) {
@@ -233,6 +299,7 @@ public class FRuleEngine implements FRuleEngineI {
                 }
             }
         }
+        ruleTime += System.nanoTime() - start;
     }
     
     /**
@@ -245,10 +312,12 @@ public class FRuleEngine implements FRuleEngineI {
         clauseIndex = new OneToManyMap<Node, ClausePointer>();
         predicatesUsed = new HashSet<Node>();
         wildcardRule = false;
+        forwardRules = new ArrayList<Rule>();
             
         for (Iterator<Rule> i = rules.iterator(); i.hasNext(); ) {
             Rule r = i.next();
             if (ignoreBrules && r.isBackward()) continue;
+            forwardRules.add(r);
             Object[] body = r.getBody();
             for (int j = 0; j < body.length; j++) {
                 if (body[j] instanceof TriplePattern) {
@@ -268,6 +337,32 @@ public class FRuleEngine implements FRuleEngineI {
         }
             
         if (wildcardRule) predicatesUsed = null;
+        canRederive = canRederive(forwardRules);
+    }
+    
+    /**
+     * Return true if deletes from a graph run by the given forward rules can be
+     * handled by delete/rederive. That needs a monotonic rule set, with no
+     * non-monotonic builtins in the body either (a delete can make noValue
+     * true, deriving something new), and no rule may create backward rules
+     * since those are not reference counted.
+     */
+    protected static boolean canRederive(List<Rule> rules) {
+        for (Iterator<Rule> i = rules.iterator(); i.hasNext(); ) {
+            Rule r = i.next();
+            if ( ! r.isMonotonic()) return false;
+            for (int j = 0; j < r.headLength(); j++) {
+                if (r.getHeadElement(j) instanceof Rule) return false;
+            }
+            for (int j = 0; j < r.bodyLength(); j++) {
+                ClauseEntry clause = r.getBodyElement(j);
+                if (clause instanceof Functor) {
+                    Builtin b = ((Functor)clause).getImplementor();
+                    if (b != null && ! b.isMonotonic()) return false;
+                }
+            }
+        }
+        return true;
     }
         
     /**
@@ -327,7 +422,7 @@ public class FRuleEngine implements FRuleEngineI {
      * @param context a context containing a set of new triples to be added
      * @return true if the rule actually fires
      */
-    private boolean matchRuleBody(int trigger, BFRuleContext context) {
+    protected boolean matchRuleBody(int trigger, BFRuleContext context) {
         Rule rule = context.getRule();
         // Create an ordered list of body clauses to process, best at the end
         ClauseEntry[] body = rule.getBody();
@@ -387,68 +482,28 @@ public class FRuleEngine implements FRuleEngineI {
      * @param context a context containing a set of new triples to be added
      * @return true if the rule actually fires
      */
-    private boolean matchClauseList(List<ClauseEntry> clauses, BFRuleContext context) {
+    protected boolean matchClauseList(List<ClauseEntry> clauses, BFRuleContext context) {
         Rule rule = context.getRule();
         BindingStack env = context.getEnvStack();
         int index = clauses.size() - 1;
         if (index == -1) {
+            RuleProfile.Stats stats = null;
             // Check any non-pattern clauses 
             for (int i = 0; i < rule.bodyLength(); i++) {
                 Object clause = rule.getBodyElement(i);
                 if (clause instanceof Functor) {
+                    if (stats == null && profile.isEnabled()) stats = profile.statsFor(rule);
+                    long start = (stats == null) ? 0 : System.nanoTime();
                     // Fire a built in
-                    if (!((Functor)clause).evalAsBodyClause(context)) {
+                    boolean ok = ((Functor)clause).evalAsBodyClause(context);
+                    if (stats != null) stats.noteBuiltin(System.nanoTime() - start);
+                    if (!ok) {
                         return false;       // guard failed
                     }
                 }
             }
             // Now fire the rule
-            if (infGraph.shouldTrace()) {
-                logger.info("Fired rule: " + rule.toShortString() + " = " + rule.instantiate(env));
-            }
-            List<Triple> matchList = null;
-            if (recordDerivations) {
-                // Create derivation record
-                matchList = new ArrayList<Triple>(rule.bodyLength());
-                for (int i = 0; i < rule.bodyLength(); i++) {
-                    Object clause = rule.getBodyElement(i);
-                    if (clause instanceof TriplePattern) {
-                        matchList.add(env.instantiate((TriplePattern)clause));
-                    } 
-                }
-            }
-            for (int i = 0; i < rule.headLength(); i++) {
-                Object hClause = rule.getHeadElement(i);
-                if (hClause instanceof TriplePattern) {
-                    Triple t = env.instantiate((TriplePattern) hClause);
-                    if (!t.getSubject().isLiteral()) {
-                        // Only add the result if it is legal at the RDF level.
-                        // E.g. RDFS rules can create assertions about literals
-                        // that we can't record in RDF
-                        if ( ! context.contains(t)  ) {
-                            context.add(t);
-                            if (recordDerivations) {
-                                infGraph.logDerivation(t, new RuleDerivation(rule, t, matchList, infGraph));
-                            }
-                        }
-                    }
-                } else if (hClause instanceof Functor) {
-                    Functor f = (Functor)hClause;
-                    Builtin imp = f.getImplementor();
-                    if (imp != null) {
-                        imp.headAction(f.getBoundArgs(env), f.getArgLength(), context);
-                    } else {
-                        throw new ReasonerException("Invoking undefined Functor " + f.getName() +" in " + rule.toShortString());
-                    }
-                } else if (hClause instanceof Rule) {
-                    Rule r = (Rule)hClause;
-                    if (r.isBackward()) {
-                        infGraph.addBRule(r.instantiate(env));
-                    } else {
-                        throw new ReasonerException("Found non-backward subrule : " + r); 
-                    }
-                }
-            }
+            fireRule(context);
             return true;
         }
         // More clauses left to match ...
@@ -459,11 +514,12 @@ public class FRuleEngine implements FRuleEngineI {
             // Can't search on functor patterns so leave that as a wildcard
             objPattern = null;
         }
-        Iterator<Triple> i = infGraph.findDataMatches(
+        Iterator<Triple> i = context.find(
                             env.getBinding(clause.getSubject()),
                             env.getBinding(clause.getPredicate()),
                             env.getBinding(objPattern));
         boolean foundMatch = false;
+        int matched = 0;
         while (i.hasNext()) {
             Triple t = i.next();
             // Add the bindings to the environment
@@ -471,13 +527,85 @@ public class FRuleEngine implements FRuleEngineI {
             if (match(clause.getPredicate(), t.getPredicate(), env)
                     && match(clause.getObject(), t.getObject(), env)
                     && match(clause.getSubject(), t.getSubject(), env)) {
+                matched++;
                 foundMatch |= matchClauseList(clausesCopy, context);
             }
             env.unwind();
         }
+        if (matched > 0 && profile.isEnabled()) {
+            profile.statsFor(rule).noteTokens(matched);
+        }
         return foundMatch;
     }
 
+    /**
+     * Fire a rule whose body has been fully matched, in the binding environment
+     * of the given context: instantiate and add the head triples and run any head actions.
+     * @param context a context holding the rule and bindings, to which new triples are added
+     */
+    protected void fireRule(BFRuleContext context) {
+        if (context instanceof DeleteContext) {
+            ((DeleteContext)context).overdelete();
+            return;
+        }
+        Rule rule = context.getRule();
+        BindingStack env = context.getEnvStack();
+        if (infGraph.shouldTrace()) {
+            logger.info("Fired rule: " + rule.toShortString() + " = " + rule.instantiate(env));
+        }
+        RuleProfile.Stats stats = null;
+        if (profile.isEnabled()) {
+            stats = profile.statsFor(rule);
+            stats.noteFired();
+        }
+        List<Triple> matchList = null;
+        if (recordDerivations) {
+            // Create derivation record
+            matchList = new ArrayList<Triple>(rule.bodyLength());
+            for (int i = 0; i < rule.bodyLength(); i++) {
+                Object clause = rule.getBodyElement(i);
+                if (clause instanceof TriplePattern) {
+                    matchList.add(env.instantiate((TriplePattern)clause));
+                } 
+            }
+        }
+        for (int i = 0; i < rule.headLength(); i++) {
+            Object hClause = rule.getHeadElement(i);
+            if (hClause instanceof TriplePattern) {
+                Triple t = env.instantiate((TriplePattern) hClause);
+                if (!t.getSubject().isLiteral()) {
+                    // Only add the result if it is legal at the RDF level.
+                    // E.g. RDFS rules can create assertions about literals
+                    // that we can't record in RDF
+                    if ( ! context.contains(t)  ) {
+                        context.add(t);
+                        if (stats != null) stats.noteDeduction();
+                        if (recordDerivations) {
+                            infGraph.logDerivation(t, new RuleDerivation(rule, t, matchList, infGraph));
+                        }
+                    }
+                }
+            } else if (hClause instanceof Functor) {
+                Functor f = (Functor)hClause;
+                Builtin imp = f.getImplementor();
+                if (imp != null) {
+                    long start = (stats == null) ? 0 : System.nanoTime();
+                    imp.headAction(f.getBoundArgs(env), f.getArgLength(), context);
+                    if (stats != null) stats.noteBuiltin(System.nanoTime() - start);
+                } else {
+                    throw new ReasonerException("Invoking undefined Functor " + f.getName() +" in " + rule.toShortString());
+                }
+            } else if (hClause instanceof Rule) {
+                Rule r = (Rule)hClause;
+                if (r.isBackward()) {
+                    infGraph.addBRule(r.instantiate(env));
+                } else {
+                    throw new ReasonerException("Found non-backward subrule : " + r); 
+                }
+            }
+        }
+    }
+
     /**
      * Score a Node in terms of groundedness - heuristic.
      * Treats a variable as better than a wildcard because it constrains
@@ -625,11 +753,71 @@ public class FRuleEngine implements FRuleEngineI {
         /** Flag, if true then there is a wildcard predicate in the rule set so that selective insert is not useful */
         protected boolean wildcardRule;
         
+        /** The rules compiled into the clause index, together with any axioms */
+        protected List<Rule> forwardRules;
+        
         /** Constructor */
-        RuleStore(OneToManyMap<Node, ClausePointer> clauseIndex, HashSet<Node> predicatesUsed, boolean wildcardRule) {
+        RuleStore(OneToManyMap<Node, ClausePointer> clauseIndex, HashSet<Node> predicatesUsed, boolean wildcardRule, List<Rule> forwardRules) {
             this.clauseIndex = clauseIndex;
             this.predicatesUsed = predicatesUsed;
             this.wildcardRule = wildcardRule;
+            this.forwardRules = forwardRules;
+        }
+    }
+    
+    /**
+     * The context used for the overdelete phase of a delete. Rule bodies are matched
+     * against the graph as it was before the delete, so the deleted triple is still
+     * visible to them; when a rule fires its head triples are collected, if they
+     * are deductions, instead of being added.
+     */
+    protected static class DeleteContext extends BFRuleContext {
+        
+        /** The triple deleted from the data */
+        protected Triple deleted;
+        
+        /** The deductions graph */
+        protected Graph deductions;
+        
+        /** The deductions found to depend on the deleted triple, in the order found */
+        protected List<Triple> overdeleted = new ArrayList<Triple>();
+        
+        /** Index of the overdeleted triples, to avoid processing them twice */
+        protected Set<Triple> seen = new HashSet<Triple>();
+        
+        DeleteContext(ForwardRuleInfGraphI graph, Triple deleted, Graph deductions) {
+            super(graph);
+            this.deleted = deleted;
+            this.deductions = deductions;
+        }
+        
+        /**
+         * Collect the head triples of the current rule firing which are deductions,
+         * other than those which are also premises of the firing
+         */
+        void overdelete() {
+            for (int i = 0; i < rule.headLength(); i++) {
+                Object hClause = rule.getHeadElement(i);
+                if (hClause instanceof TriplePattern) {
+                    Triple t = env.instantiate((TriplePattern) hClause);
+                    if (deductions.contains(t) && ! RETEConflictSet.isInBody(t, rule, env) && seen.add(t)) {
+                        overdeleted.add(t);
+                        addTriple(t);
+                    }
+                }
+            }
+        }
+        
+        /** Find in the graph, including the deleted triple */
+        @Override
+        public ClosableIterator<Triple> find(Node s, Node p, Node o) {
+            ExtendedIterator<Triple> result = graph.findDataMatches(s, p, o);
+            if ( (s == null || s.sameValueAs(deleted.getSubject()))
+                    && (p == null || p.sameValueAs(deleted.getPredicate()))
+                    && (o == null || o.sameValueAs(deleted.getObject())) ) {
+                result = result.andThen(new SingletonIterator<Triple>(deleted));
+            }
+            return result;
         }
     }
 
@@ -61,6 +61,12 @@ public interface FRuleEngineI {
      */
     public long getNRulesFired();
     
+    /**
+     * Return the average number of rules fired per second of time spent
+     * running the rules since this engine instance was created and initialized
+     */
+    public double getRulesFiredPerSecond();
+    
     /**
      * Return true if the internal engine state means that tracing is worthwhile.
      * It will return false during the axiom bootstrap phase.
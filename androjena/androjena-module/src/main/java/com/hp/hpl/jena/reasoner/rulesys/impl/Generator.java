@@ -36,6 +36,14 @@ public class Generator implements LPAgendaEntry, LPInterpreterContext {
     /** The ordered set of results available for the goal */
     protected ArrayList<Object> results = new ArrayList<Object>();
     
+    /** The results once the generator is complete. They no longer change,
+     *  so they can be read without locking the engine. Null until then. */
+    protected volatile List<Object> completedResults;
+    
+    /** Set when the completed results are used without locking the engine, 
+     *  so that the engine can take it into account when evicting tables */
+    protected volatile boolean recentlyUsed = false;
+    
     /** A indexed version of the result set, used while the generator is live 
      *  to detect duplicate results */
     protected Set<Object> resultSet;
@@ -87,6 +95,14 @@ public class Generator implements LPAgendaEntry, LPInterpreterContext {
         return results.size();
     }
     
+    /**
+     * Return the results of the generator if it is complete, else null.
+     * Unlike the other methods this can be called without holding the engine lock.
+     */
+    public List<Object> getCompletedResults() {
+        return completedResults;
+    }
+    
     /**
      * Return true if the generator is ready to be scheduled (i.e. it is not
      * known to be complete and not known to be waiting for a dependent generator).
@@ -147,9 +163,11 @@ public class Generator implements LPAgendaEntry, LPInterpreterContext {
      */
     public void setComplete() {
         if (!isComplete()) {
+            LPBRuleEngine engine = interpreter.getEngine();
             interpreter.close();
             interpreter = null;
             resultSet = null;
+            completedResults = Collections.unmodifiableList(results);
             isReady = false;
             completionState = LFlag.DEAD;
             // Anyone we were generating results for is now finished
@@ -161,6 +179,7 @@ public class Generator implements LPAgendaEntry, LPInterpreterContext {
             }
             generatingCPs = null;
             consumingCPs.clear();
+            engine.noteCompleted(this);
         }
     }
     
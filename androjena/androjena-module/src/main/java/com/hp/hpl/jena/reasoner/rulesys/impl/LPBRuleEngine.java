@@ -17,6 +17,9 @@ import com.hp.hpl.jena.util.iterator.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * LP version of the core backward chaining engine. For each parent inference
@@ -49,21 +52,51 @@ public class LPBRuleEngine {
     protected List<LPInterpreter> activeInterpreters = new ArrayList<LPInterpreter>();
     
     /** Table mapping tabled goals to generators for those goals.
-     *  This is here so that partial goal state can be shared across multiple queries. */
-    protected HashMap<TriplePattern, Generator> tabledGoals = new HashMap<TriplePattern, Generator>();
+     *  This is here so that partial goal state can be shared across multiple queries.
+     *  Only changed with the engine locked, but read without the lock to find completed goals. */
+    protected volatile Map<TriplePattern, Generator> tabledGoals = new ConcurrentHashMap<TriplePattern, Generator>();
+    
+    /** The tabled goals whose generators are complete and may be evicted, least recently used first */
+    protected LinkedHashMap<TriplePattern, Generator> completedGoals = new LinkedHashMap<TriplePattern, Generator>(16, 0.75f, true);
+    
+    /** The number of results held in the tables of completedGoals */
+    protected long completedResultCount = 0;
+    
+    /** The maximum number of results to hold in the tables of completed goals, 0 for no limit */
+    protected long maxTabledResults = 0;
+    
+    /** Number of calls to tabled goals answered by an existing generator */
+    protected AtomicLong tableHits = new AtomicLong();
+    
+    /** Number of calls to tabled goals which needed a new generator */
+    protected AtomicLong tableMisses = new AtomicLong();
+    
+    /** Number of completed generators evicted from the table */
+    protected AtomicLong tableEvictions = new AtomicLong();
     
     /** Set of generators waiting to be run */
     protected LinkedList<LPAgendaEntry> agenda = new LinkedList<LPAgendaEntry>();
 //    protected List agenda = new ArrayList();
 //    protected Collection agenda = new HashSet();
     
-    /** Optional profile of number of time each rule is entered, set to non-null to profile */
-    protected HashMap<String, Count> profile;
+    /** Number of calls of a predicate before its rule clauses are compiled, negative to never compile them */
+    protected int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+    
+    /** The calls of each predicate with rule clauses, counted until the clauses are compiled.
+     *  Uses Node_RuleVariable.WILD for calls with a variable predicate. */
+    protected ConcurrentHashMap<Node, CallCount> callCounts = new ConcurrentHashMap<Node, CallCount>();
+    
+    /** The profile of the work done by each rule, shared with the parent graph */
+    protected RuleProfile ruleProfile;
     
     /** The number of generator cycles to wait before running a completion check.
      *  If set to 0 then checks will be done in the generator each time. */
     public static final int CYCLES_BETWEEN_COMPLETION_CHECK = 3;
     
+    /** The default number of calls of a predicate before its rule clauses are compiled,
+     *  negative so that they are only interpreted unless a threshold is set. */
+    public static final int DEFAULT_COMPILE_THRESHOLD = -1;
+    
     static Logger logger = LoggerFactory.getLogger(LPBRuleEngine.class);
     
 //  =======================================================================
@@ -76,6 +109,7 @@ public class LPBRuleEngine {
      */
     public LPBRuleEngine(BackwardRuleInfGraphI infGraph, LPRuleStore rules) {
         this.infGraph = infGraph;
+        ruleProfile = infGraph.getRuleProfile();
         ruleStore = rules;
     }
     
@@ -85,6 +119,7 @@ public class LPBRuleEngine {
      */
     public LPBRuleEngine(BackwardRuleInfGraphI infGraph) {
         this.infGraph = infGraph;
+        ruleProfile = infGraph.getRuleProfile();
         ruleStore = new LPRuleStore();
     }
     
@@ -96,10 +131,58 @@ public class LPBRuleEngine {
      * @param goal the query to be processed
      * @return a closable iterator over the query results
      */
-    public synchronized ExtendedIterator<Triple> find(TriplePattern goal) {
-        LPInterpreter interpreter = new LPInterpreter(this, goal);
-        activeInterpreters.add(interpreter);
-        return WrappedIterator.create( new LPTopGoalIterator(interpreter));
+    public ExtendedIterator<Triple> find(TriplePattern goal) {
+        // Read the version first, so that a change made while the results are found is detected
+        int version = infGraph.getVersion();
+        if (!traceOn) {
+            // A goal whose generator has completed is answered from its table without locking
+            List<Object> results = completedResultsFor(goal);
+            if (results != null) {
+                tableHits.incrementAndGet();
+                return new CompletedGoalIterator(results, infGraph, version);
+            }
+        }
+        synchronized (this) {
+            LPInterpreter interpreter = new LPInterpreter(this, goal);
+            activeInterpreters.add(interpreter);
+            return WrappedIterator.create( new LPTopGoalIterator(interpreter));
+        }
+    }
+    
+    /**
+     * Return the results of a top level goal if they are already held by 
+     * a completed generator, else null. Can be called without the engine lock.
+     * The results are those of a new interpreter for the goal, but may be in 
+     * a different order and include duplicates it would not.
+     */
+    protected List<Object> completedResultsFor(TriplePattern goal) {
+        Node s = goal.getSubject();
+        Node p = goal.getPredicate();
+        Node o = goal.getObject();
+        // Tables are indexed ignoring which variables are repeated, and hold a functor goal differently
+        if (isRepeatedVariable(s, p) || isRepeatedVariable(s, o) || isRepeatedVariable(p, o) 
+                || Functor.isFunctor(o)) {
+            return null;
+        }
+        TriplePattern key = new TriplePattern(tableNode(s), tableNode(p), tableNode(o));
+        Generator generator = tabledGoals.get(key);
+        if (generator == null) return null;
+        List<Object> results = generator.getCompletedResults();
+        if (results != null && !generator.recentlyUsed) {
+            // Can't reorder completedGoals without the lock, note the use for the next eviction
+            generator.recentlyUsed = true;
+        }
+        return results;
+    }
+    
+    /** Map a node of a top level goal to the node used in a tabled goal */
+    private static Node tableNode(Node node) {
+        return (node == Node.ANY || node.isVariable()) ? Node_RuleVariable.WILD : node;
+    }
+    
+    /** Return true if the two nodes are the same variable */
+    private static boolean isRepeatedVariable(Node n1, Node n2) {
+        return n1.isVariable() && n1.equals(n2);
     }
     
     /**
@@ -107,7 +190,9 @@ public class LPBRuleEngine {
      */
     public synchronized void reset() {
         checkSafeToUpdate();
-        tabledGoals = new HashMap<TriplePattern, Generator>();
+        tabledGoals = new ConcurrentHashMap<TriplePattern, Generator>();
+        completedGoals.clear();
+        completedResultCount = 0;
         agenda.clear();
     }
     
@@ -122,6 +207,7 @@ public class LPBRuleEngine {
             throw new ReasonerException("Backward rules only allowed one head clause");
         }
         ruleStore.addRule(rule);
+        callCounts.clear();
     }
     
     /**
@@ -132,6 +218,7 @@ public class LPBRuleEngine {
     public synchronized void deleteRule(Rule rule) {
         checkSafeToUpdate();
         ruleStore.deleteRule(rule);
+        callCounts.clear();
     }
     
     /**
@@ -148,6 +235,7 @@ public class LPBRuleEngine {
     public synchronized void deleteAllRules() {
         checkSafeToUpdate();
         ruleStore.deleteAllRules();     
+        callCounts.clear();
     }
     
     /**
@@ -190,6 +278,60 @@ public class LPBRuleEngine {
         return recordDerivations;
     }
 
+    /**
+     * Set the number of calls of a predicate after which the byte code of 
+     * its rule clauses is compiled into op objects, see {@link CompiledClause}.
+     * Clauses which are not compiled are just interpreted. 
+     * @param threshold the number of calls, 0 to compile clauses when first
+     * called or a negative number, the default, to never compile them
+     */
+    public void setCompileThreshold(int threshold) {
+        compileThreshold = threshold;
+    }
+    
+    /**
+     * Return the number of calls of a predicate after which its rule clauses are compiled.
+     */
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+    
+    /**
+     * Note a call of a predicate which has rule clauses, and compile its 
+     * clauses on the call which makes it hot. Can be called without the engine lock.
+     * @param predicate the predicate of the call, which may be a variable
+     */
+    public void noteCall(Node predicate) {
+        int threshold = compileThreshold;
+        if (threshold < 0) return;
+        Node key = predicate.isVariable() ? Node_RuleVariable.WILD : predicate;
+        CallCount count = callCounts.get(key);
+        if (count == null) {
+            CallCount newCount = new CallCount();
+            count = callCounts.putIfAbsent(key, newCount);
+            if (count == null) count = newCount;
+        }
+        if (!count.compiled && count.incrementAndGet() >= threshold) {
+            count.compiled = true;
+            List<RuleClauseCode> clauses = ruleStore.codeFor(key);
+            if (clauses != null) {
+                for (RuleClauseCode clause : clauses) {
+                    clause.compileOps();
+                }
+            }
+        }
+    }
+    
+    /**
+     * The calls of a predicate, and whether its rule clauses have been compiled.
+     */
+    protected static class CallCount extends AtomicInteger {
+        private static final long serialVersionUID = 1L;
+        
+        /** Set once the clauses of the predicate have been compiled */
+        volatile boolean compiled = false;
+    }
+
     /** Return the rule store associated with the inference graph */
     public LPRuleStore getRuleStore() {
         return ruleStore;
@@ -249,11 +391,15 @@ public class LPBRuleEngine {
     public synchronized Generator generatorFor(TriplePattern goal, List<RuleClauseCode> clauses) {
         Generator generator = tabledGoals.get(goal);
         if (generator == null) {
+            tableMisses.incrementAndGet();
             LPInterpreter interpreter = new LPInterpreter(this, goal, clauses, false);
             activeInterpreters.add(interpreter);
             generator = new Generator(interpreter, goal);
             schedule(generator);
             tabledGoals.put(goal, generator);
+        } else {
+            tableHits.incrementAndGet();
+            touch(goal);
         }
         return generator;
     }
@@ -266,15 +412,123 @@ public class LPBRuleEngine {
     public synchronized Generator generatorFor(TriplePattern goal) {
         Generator generator = tabledGoals.get(goal);
         if (generator == null) {
+            tableMisses.incrementAndGet();
             LPInterpreter interpreter = new LPInterpreter(this, goal, false);
             activeInterpreters.add(interpreter);
             generator = new Generator(interpreter, goal);
             schedule(generator);
             tabledGoals.put(goal, generator);
+        } else {
+            tableHits.incrementAndGet();
+            touch(goal);
         }
         return generator;
     }
     
+    /**
+     * Mark the table of a goal as the most recently used, so that it is the
+     * last to be evicted. Does nothing if the goal's generator is not complete.
+     * Should be called from within a synchronized block.
+     */
+    protected void touch(TriplePattern goal) {
+        // An access ordered map moves the entry to the end on get
+        completedGoals.get(goal);
+    }
+    
+    /**
+     * Note that a generator has completed. Its table is then accounted 
+     * against the limit on tabled results, and may be evicted once the 
+     * current completion pass is over.
+     * Should be called from within a synchronized block.
+     */
+    public void noteCompleted(Generator generator) {
+        if (tabledGoals.get(generator.goal) != generator) return;
+        completedGoals.put(generator.goal, generator);
+        completedResultCount += tableSize(generator);
+    }
+    
+    /**
+     * Evict the tables of the least recently used completed goals until the 
+     * results held are within the limit. A goal used since the last eviction 
+     * without the engine lock, so not yet reordered, is kept and made most recent.
+     * Should be called from within a synchronized block.
+     */
+    protected void evictTables() {
+        if (maxTabledResults <= 0) return;
+        // A goal used recently without the lock is given a second chance in the first pass
+        for (int pass = 0; pass < 2 && completedResultCount > maxTabledResults; pass++) {
+            List<Generator> reprieved = new ArrayList<Generator>();
+            Iterator<Generator> i = completedGoals.values().iterator();
+            while (completedResultCount > maxTabledResults && i.hasNext()) {
+                Generator generator = i.next();
+                i.remove();
+                if (pass == 0 && generator.recentlyUsed) {
+                    generator.recentlyUsed = false;
+                    reprieved.add(generator);
+                } else {
+                    completedResultCount -= tableSize(generator);
+                    tabledGoals.remove(generator.goal);
+                    tableEvictions.incrementAndGet();
+                }
+            }
+            for (Iterator<Generator> j = reprieved.iterator(); j.hasNext(); ) {
+                Generator generator = j.next();
+                completedGoals.put(generator.goal, generator);
+            }
+        }
+    }
+    
+    /** The cost of holding the table of a completed generator, counted in results */
+    private static long tableSize(Generator generator) {
+        return generator.numResults() + 1;
+    }
+    
+    /**
+     * Set the maximum number of results held in the tables of completed goals, 
+     * tables of the least recently used goals are evicted to keep within it. 
+     * Goals which are still being evaluated are not counted.
+     * @param max the number of results, 0 for no limit
+     */
+    public synchronized void setMaxTabledResults(long max) {
+        maxTabledResults = max;
+        evictTables();
+    }
+    
+    /**
+     * Return the maximum number of results held in the tables of completed goals, 0 for no limit.
+     */
+    public long getMaxTabledResults() {
+        return maxTabledResults;
+    }
+    
+    /**
+     * Return the number of results held in the tables of completed goals.
+     */
+    public synchronized long getTabledResults() {
+        return completedResultCount;
+    }
+    
+    /**
+     * Return the number of calls to tabled goals answered by an existing generator.
+     */
+    public long getTableHits() {
+        return tableHits.get();
+    }
+    
+    /**
+     * Return the number of calls to tabled goals which needed a new generator.
+     */
+    public long getTableMisses() {
+        return tableMisses.get();
+    }
+    
+    /**
+     * Return the number of completed goals whose tables have been evicted.
+     */
+    public long getTableEvictions() {
+        return tableEvictions.get();
+    }
+    
     /**
      * Register that a generator or specific generator state (Consumer choice point)
      * is now ready to run.
@@ -296,6 +550,7 @@ public class LPBRuleEngine {
         while(!gen.isReady()) {
             if (agenda.isEmpty()) {
 //                System.out.println("Cycled " + this + ", " + count);
+                evictTables();
                 return;
             } 
 //            Iterator ai = agenda.iterator();
@@ -318,6 +573,8 @@ public class LPBRuleEngine {
         if (CYCLES_BETWEEN_COMPLETION_CHECK > 0 && !batch.isEmpty()) {
             Generator.checkForCompletions(batch);
         }
+        // Generators completed above are not evicted until now, when none are being completed
+        evictTables();
         
 //        System.out.println("Cycled " + this + ", " + count);
     }
@@ -334,86 +591,18 @@ public class LPBRuleEngine {
             }
         }
         Generator.checkForCompletions( contexts );
+        evictTables();
     }
     
 //  =======================================================================
 //  Profiling support
    
     /**
-     * Record a rule invocation in the profile count.
-     */
-    public void incrementProfile(RuleClauseCode clause) {
-        if (profile != null) {
-            String index = clause.toString();
-            Count count = profile.get(index);
-            if (count == null) {
-                profile.put(index, new Count(clause).inc());
-            } else {
-                count.inc();
-            }
-        }
-    }
-    
-    /**
-     * Reset the profile.
-     * @param enable it true then profiling will continue with a new empty profile table,
-     * if false profiling will stop all current data lost.
+     * Return the profile of the work done by each rule, which is shared
+     * with any forward engine of the graph.
      */
-    public void resetProfile(boolean enable) {
-        profile = enable ? new HashMap<String, Count>() : null;
-    }
-    
-    /**
-     * Print a profile of rules used since the last reset.
-     */
-    public void printProfile() {
-        if (profile == null) {
-            System.out.println("No profile collected");
-        } else {
-            ArrayList<Count> counts = new ArrayList<Count>();
-            counts.addAll(profile.values());
-            Collections.sort(counts);
-            System.out.println("LP engine rule profile");
-            for (Iterator<Count> i = counts.iterator(); i.hasNext(); ) {
-                System.out.println(i.next());
-            }
-        }
-    }
-    
-    /**
-     * Record count of number of rule invocations, used in profile structure only.
-     */
-    static class Count implements Comparable<Count> {
-        protected int count = 0;
-        protected RuleClauseCode clause;
-
-        /** Constructor */
-        public Count(RuleClauseCode clause) {
-            this.clause = clause;
-        }
-        
-        /** return the count value */
-        public int getCount() {
-            return count;        
-        }
-        
-        /** increment the count value, return the count object */
-        public Count inc() {
-            count++;
-            return this;
-        }
-        
-        /** Ordering */
-        public int compareTo(Count other) {
-            return (count < other.count) ? -1 : ( (count == other.count) ? 0 : +1);
-        }
-        
-        /** Printable form */
-        @Override
-        public String toString() {
-            return " " + count + "\t - " + clause;
-        }
-        
+    public RuleProfile getRuleProfile() {
+        return ruleProfile;
     }
 }
 
@@ -41,11 +41,11 @@ public class LPInterpreter {
     /** True if the engine has terminated */
     protected boolean isComplete = false;
 
-    /** The set of temporary variables (Ti) in use by this interpreter */
-    protected Node[] tVars = new Node[RuleClauseCode.MAX_TEMPORARY_VARS];
+    /** The set of temporary variables (Ti) in use by this interpreter, as many as the rule store needs */
+    protected Node[] tVars;
 
-    /** The set of argument variables (Ai) in use by this interpreter */
-    protected Node[] argVars = new Node[RuleClauseCode.MAX_ARGUMENT_VARS];
+    /** The set of argument variables (Ai) in use by this interpreter, as many as the rule store needs */
+    protected Node[] argVars;
         
     /** The set of "permanent" variables (Yi) in use by this interpreter */
     protected Node[] pVars = null;
@@ -67,6 +67,7 @@ public class LPInterpreter {
     
     /** Original set up goal, only used for debugging */
     protected TriplePattern goal;
+    
         
     static Logger logger = LoggerFactory.getLogger(LPInterpreter.class);
 
@@ -105,6 +106,8 @@ public class LPInterpreter {
     public LPInterpreter(LPBRuleEngine engine, TriplePattern goal, List<RuleClauseCode> clauses, boolean isTop) {
         this.engine = engine;
         this.goal = goal;       // Used for debug only
+        tVars = new Node[engine.getRuleStore().getTemporaryVarCount()];
+        argVars = new Node[engine.getRuleStore().getArgumentVarCount()];
         
         // Construct dummy top environemnt which is a call into the clauses for this goal
         if (engine.getDerivationLogging()) {
@@ -247,6 +250,7 @@ public class LPInterpreter {
         Object[] args;
         boolean traceOn = engine.isTraceOn();
         boolean recordDerivations = engine.getDerivationLogging();
+        RuleProfile ruleProfile = engine.getRuleProfile();
         
         main: while (cpFrame != null) {
             // restore choice point
@@ -271,7 +275,7 @@ public class LPInterpreter {
                 envFrame.cac = choice.cac;
                 
                 // Restore the choice point state
-                System.arraycopy(choice.argVars, 0, argVars, 0, RuleClauseCode.MAX_ARGUMENT_VARS);
+                System.arraycopy(choice.argVars, 0, argVars, 0, argVars.length);
                 int trailMark = choice.trailIndex;
                 if (trailMark < trail.size()) {
                     unwindTrail(trailMark);
@@ -377,7 +381,9 @@ public class LPInterpreter {
                 throw new ReasonerException("Internal error in backward rule system, unrecognized choice point");
             }
             
-            engine.incrementProfile(clause);
+            if (ruleProfile.isEnabled() && clause.getRule() != null) {
+                ruleProfile.statsFor(clause.getRule()).noteFired();
+            }
             
             interpreter: while (envFrame != null) {
 
@@ -388,8 +394,18 @@ public class LPInterpreter {
                 Node arg, constant;
                 code = clause.getCode();
                 args = clause.getArgs();
+                // The compiled form of the clause if its predicate is hot, which the trace bypasses
+                CompiledClause compiled = traceOn ? null : clause.getCompiled();
         
                 while (true) {
+                    if (compiled != null) {
+                        CompiledClause.Block block = compiled.blockAt(pc);
+                        if (block != null) {
+                            if (!block.run(this)) continue main;
+                            pc = block.endPc;
+                            ac = block.endAc;
+                        }
+                    }
                     switch (code[pc++]) {
                         case RuleClauseCode.TEST_BOUND:
                             ai = code[pc++];
@@ -441,36 +457,7 @@ public class LPInterpreter {
                             break;
                             
                         case RuleClauseCode.GET_FUNCTOR:
-                            Functor func = (Functor)args[ac++];
-                            boolean match = false;
-                            Node o = argVars[2];
-                            if (o instanceof Node_RuleVariable) o = ((Node_RuleVariable)o).deref();
-                            if (Functor.isFunctor(o)) {
-                                Functor funcArg = (Functor)o.getLiteralValue();
-                                if (funcArg.getName().equals(func.getName())) {
-                                    if (funcArg.getArgLength() == func.getArgLength()) {
-                                        Node[] fargs = funcArg.getArgs();
-                                        for (int i = 0; i < fargs.length; i++) {
-                                            argVars[i+3] = fargs[i];
-                                        }
-                                        match = true;
-                                    }
-                                }
-                            } else if (o.isVariable()) {
-                                // Construct a new functor in place
-                                Node[] fargs = new Node[func.getArgLength()];
-                                Node[] templateArgs = func.getArgs();
-                                for (int i = 0; i < fargs.length; i++) {
-                                    Node template = templateArgs[i];
-                                    if (template.isVariable()) template = new Node_RuleVariable(null, i+3);
-                                    fargs[i] = template;
-                                    argVars[i+3] = template;
-                                }
-                                Node newFunc = Functor.makeFunctorNode(func.getName(), fargs);
-                                bind(((Node_RuleVariable)o).deref(), newFunc);
-                                match = true;
-                            }
-                            if (!match) {
+                            if (!getFunctor((Functor)args[ac++])) {
                                 if (traceOn) logger.info("FAIL " + clause);
                                 continue main;      // fail to unify functor shape
                             }
@@ -529,10 +516,7 @@ public class LPInterpreter {
                             break;
                             
                         case RuleClauseCode.MAKE_FUNCTOR:
-                            Functor f = (Functor)args[ac++];
-                            Node[] fargs = new Node[f.getArgLength()];
-                            System.arraycopy(argVars, 3, fargs, 0, fargs.length);
-                            argVars[2] = Functor.makeFunctorNode(f.getName(), fargs);
+                            makeFunctor((Functor)args[ac++]);
                             break;
                         
                         case RuleClauseCode.LAST_CALL_PREDICATE:
@@ -614,7 +598,13 @@ public class LPInterpreter {
                                 context = bbcontext;
                             }
                             context.setRule(clause.getRule());
-                            if (!builtin.bodyCall(argVars, code[pc++], context)) {
+                            boolean profiling = ruleProfile.isEnabled() && clause.getRule() != null;
+                            long start = profiling ? System.nanoTime() : 0;
+                            boolean ok = builtin.bodyCall(argVars, code[pc++], context);
+                            if (profiling) {
+                                ruleProfile.statsFor(clause.getRule()).noteBuiltin(System.nanoTime() - start);
+                            }
+                            if (!ok) {
                                 if (traceOn) logger.info("FAIL " + clause + ", due to " + builtin.getName());
                                 continue main;  
                             }
@@ -656,16 +646,76 @@ public class LPInterpreter {
         cpFrame = tmFrame;
     }
     
+    /**
+     * Unify the object argument with the functor of a rule head, binding the 
+     * argument registers from 3 up to the arguments of the functor.
+     * @return false if the object argument is not a functor of the same shape 
+     */
+    boolean getFunctor(Functor func) {
+        Node o = argVars[2];
+        if (o instanceof Node_RuleVariable) o = ((Node_RuleVariable)o).deref();
+        if (Functor.isFunctor(o)) {
+            Functor funcArg = (Functor)o.getLiteralValue();
+            if (funcArg.getName().equals(func.getName())) {
+                if (funcArg.getArgLength() == func.getArgLength()) {
+                    Node[] fargs = funcArg.getArgs();
+                    for (int i = 0; i < fargs.length; i++) {
+                        argVars[i+3] = fargs[i];
+                    }
+                    return true;
+                }
+            }
+        } else if (o.isVariable()) {
+            // Construct a new functor in place
+            Node[] fargs = new Node[func.getArgLength()];
+            Node[] templateArgs = func.getArgs();
+            for (int i = 0; i < fargs.length; i++) {
+                Node template = templateArgs[i];
+                if (template.isVariable()) template = new Node_RuleVariable(null, i+3);
+                fargs[i] = template;
+                argVars[i+3] = template;
+            }
+            Node newFunc = Functor.makeFunctorNode(func.getName(), fargs);
+            bind(((Node_RuleVariable)o).deref(), newFunc);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Make the object argument a functor of the given template, from the
+     * argument registers from 3 up.
+     */
+    void makeFunctor(Functor f) {
+        Node[] fargs = new Node[f.getArgLength()];
+        System.arraycopy(argVars, 3, fargs, 0, fargs.length);
+        argVars[2] = Functor.makeFunctorNode(f.getName(), fargs);
+    }
+    
     /**
      * Set up a clause choice point as part of a CALL.
      */
     private void setupClauseCall(int pc, int ac, List<RuleClauseCode> clauses, boolean isSingleton) {
+        if (engine.getCompileThreshold() >= 0 && !isCompiled(clauses)) {
+            engine.noteCall(deref(argVars[1]));
+        }
         ChoicePointFrame newChoiceFrame = new ChoicePointFrame(this, clauses, isSingleton);
         newChoiceFrame.linkTo(cpFrame);
         newChoiceFrame.setContinuation(pc, ac);
         cpFrame = newChoiceFrame;
     }
     
+    /**
+     * Return true if all the clauses have been compiled, so that there is
+     * no need to count the call.
+     */
+    private static boolean isCompiled(List<RuleClauseCode> clauses) {
+        for (int i = 0; i < clauses.size(); i++) {
+            if (clauses.get(i).getCompiled() == null) return false;
+        }
+        return true;
+    }
+    
     /**
      * Set up a tabled choice point as part of a CALL.
      */
@@ -824,6 +874,7 @@ public class LPInterpreter {
         }
     }
         
+
 }
 
 
@@ -47,6 +47,12 @@ public class LPRuleStore extends RuleStore {
     /** True if all goals should be treated as tabled */
     protected boolean allTabled = false;
     
+    /** The number of argument variables an interpreter needs to run the compiled clauses */
+    protected int argumentVarCount = RuleClauseCode.MAX_ARGUMENT_VARS;
+    
+    /** The number of temporary variables an interpreter needs to run the compiled clauses */
+    protected int temporaryVarCount = RuleClauseCode.MAX_TEMPORARY_VARS;
+    
     /**
      * Construct a rule store containing the given rules.
      * @param rules the rules to initialize the store with.
@@ -121,6 +127,24 @@ public class LPRuleStore extends RuleStore {
         return allRules;
     }
     
+    /**
+     * Return the number of argument variables (Ai) an interpreter needs to 
+     * run the code of the rules, at least RuleClauseCode.MAX_ARGUMENT_VARS.
+     * Only complete once the rules have been compiled.
+     */
+    public int getArgumentVarCount() {
+        return argumentVarCount;
+    }
+    
+    /**
+     * Return the number of temporary variables (Ti) an interpreter needs to 
+     * run the code of the rules, at least RuleClauseCode.MAX_TEMPORARY_VARS.
+     * Only complete once the rules have been compiled.
+     */
+    public int getTemporaryVarCount() {
+        return temporaryVarCount;
+    }
+    
     /**
      * Return true if the given predicate is indexed.
      */
@@ -235,9 +259,13 @@ public class LPRuleStore extends RuleStore {
         }
         
         // Now compile all the clauses
+        argumentVarCount = RuleClauseCode.MAX_ARGUMENT_VARS;
+        temporaryVarCount = RuleClauseCode.MAX_TEMPORARY_VARS;
         for (Iterator<RuleClauseCode> i = allRuleClauseCodes.iterator(); i.hasNext(); ) {
             RuleClauseCode code = i.next();
             code.compile(this);
+            argumentVarCount = Math.max(argumentVarCount, code.getArgumentVarCount());
+            temporaryVarCount = Math.max(temporaryVarCount, code.getTemporaryVarCount());
         }
     }
     
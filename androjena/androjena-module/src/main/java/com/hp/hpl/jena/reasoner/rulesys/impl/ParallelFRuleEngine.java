@@ -0,0 +1,289 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.reasoner.rulesys.*;
+import com.hp.hpl.jena.util.iterator.ConcatenatedIterator;
+
+/**
+ * Variant of the basic forward rule engine which runs the rules in semi-naive
+ * rounds. Each round takes all the triples added by the previous round (the delta),
+ * splits it into slices and matches the rule bodies for each slice on a
+ * pool of worker threads. Nothing is written to the graph while matching,
+ * so every worker sees the same stable state. The rule firings found are then
+ * executed on the calling thread in delta order, so the deductions, and their
+ * order, do not depend on the number of threads. New deductions form the
+ * next delta.
+ * <p>
+ * Deferring the rule heads to the end of a round is only safe for monotonic
+ * rule sets, so a rule set containing non-monotonic rules (e.g. using remove or drop)
+ * is run sequentially exactly as by {@link FRuleEngine}.</p>
+ */
+public class ParallelFRuleEngine extends FRuleEngine {
+
+    /** Deltas smaller than this are matched on the calling thread */
+    public static final int MIN_PARALLEL_DELTA = 64;
+
+    /** Pool of matcher threads shared by all engines, created on first use */
+    private static ExecutorService sharedPool;
+
+    /** Number of worker threads in the shared pool */
+    private static final int poolSize = Runtime.getRuntime().availableProcessors();
+
+    /** True if all the rules are monotonic, so that rounds can be used */
+    protected boolean isMonotonic = true;
+
+    /** performance stats - number of semi-naive rounds run */
+    long nRounds = 0;
+
+    /**
+     * Constructor.
+     * @param parent the F or FB infGraph that it using this engine, the parent graph
+     * holds the deductions graph and source data.
+     * @param rules the rule set to be processed
+     */
+    public ParallelFRuleEngine(ForwardRuleInfGraphI parent, List<Rule> rules) {
+        super(parent, rules);
+        isMonotonic = allMonotonic(rules.iterator());
+    }
+
+    /**
+     * Constructor. Build an empty engine to which rules must be added
+     * using setRuleStore().
+     * @param parent the F or FB infGraph that it using this engine, the parent graph
+     * holds the deductions graph and source data.
+     */
+    public ParallelFRuleEngine(ForwardRuleInfGraphI parent) {
+        super(parent);
+    }
+
+    /**
+     * Set the internal rule from from a precomputed state.
+     */
+    @Override
+    public void setRuleStore(Object ruleStore) {
+        super.setRuleStore(ruleStore);
+        List<Rule> indexed = new ArrayList<Rule>();
+        for (Iterator<ClausePointer> i = clauseIndex.values().iterator(); i.hasNext(); ) {
+            indexed.add(i.next().rule);
+        }
+        isMonotonic = allMonotonic(indexed.iterator());
+    }
+
+    /**
+     * Return the number of semi-naive rounds run since this engine was created.
+     */
+    public long getNRounds() {
+        return nRounds;
+    }
+
+    /**
+     * Run the rules to a fixpoint over the triples stacked in the context,
+     * one semi-naive round at a time.
+     * @param context a context containing a set of new triples to be added
+     */
+    @Override
+    public void addSet(BFRuleContext context) {
+        if (!isMonotonic) {
+            super.addSet(context);
+            return;
+        }
+        long start = System.nanoTime();
+        List<Triple> delta = drain(context);
+        while ( ! delta.isEmpty()) {
+            nRounds++;
+            for (Iterator<MatchContext> i = match(delta).iterator(); i.hasNext(); ) {
+                MatchContext matches = i.next();
+                nRulesFired += matches.nFired;
+                nRulesTriggered += matches.nTriggered;
+                for (Iterator<Firing> f = matches.firings.iterator(); f.hasNext(); ) {
+                    f.next().restore(context);
+                    fireRule(context);
+                    context.flushPending();
+                }
+            }
+            delta = drain(context);
+        }
+        ruleTime += System.nanoTime() - start;
+    }
+
+    /**
+     * Record rule firings found during matching instead of executing them.
+     */
+    @Override
+    protected void fireRule(BFRuleContext context) {
+        if (context instanceof MatchContext) {
+            ((MatchContext)context).record();
+        } else {
+            super.fireRule(context);
+        }
+    }
+
+    /**
+     * Match the rules against each triple of the delta, returning one context of
+     * recorded firings per slice, in delta order.
+     */
+    protected List<MatchContext> match(final List<Triple> delta) {
+        int size = delta.size();
+        int slices = Math.min(poolSize * 4, size / MIN_PARALLEL_DELTA);
+        if (slices < 2 || poolSize < 2) {
+            MatchContext all = new MatchContext(infGraph);
+            matchSlice(delta, 0, size, all);
+            return Collections.singletonList(all);
+        }
+        List<MatchContext> results = new ArrayList<MatchContext>(slices);
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(slices);
+        for (int s = 0; s < slices; s++) {
+            final int from = (int)((long)size * s / slices);
+            final int to = (int)((long)size * (s + 1) / slices);
+            final MatchContext slice = new MatchContext(infGraph);
+            results.add(slice);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    matchSlice(delta, from, to, slice);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Iterator<Future<Object>> i = getPool().invokeAll(tasks).iterator(); i.hasNext(); ) {
+                i.next().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReasonerException("Interrupted while matching rules", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new ReasonerException("Rule matching failed", cause);
+        }
+        return results;
+    }
+
+    /**
+     * Match the rules triggered by delta triples from..to-1, recording the
+     * firings in the given context. Mirrors the inner loop of FRuleEngine.addSet.
+     */
+    protected void matchSlice(List<Triple> delta, int from, int to, MatchContext context) {
+        for (int k = from; k < to; k++) {
+            Triple t = delta.get(k);
+            HashSet<Rule> firedRules = new HashSet<Rule>();
+            Iterator<ClausePointer> i1 = clauseIndex.getAll(t.getPredicate());
+            Iterator<ClausePointer> i2 = clauseIndex.getAll(Node.ANY);
+            Iterator<ClausePointer> i = new ConcatenatedIterator<ClausePointer>(i1, i2);
+            while (i.hasNext()) {
+                ClausePointer cp = i.next();
+                if (firedRules.contains(cp.rule)) continue;
+                context.resetEnv( cp.rule.getNumVars() );
+                TriplePattern trigger = (TriplePattern) cp.rule.getBodyElement(cp.index);
+                if (match(trigger, t, context.getEnvStack())) {
+                    context.nTriggered++;
+                    context.setRule(cp.rule);
+                    if (matchRuleBody(cp.index, context)) {
+                        firedRules.add(cp.rule);
+                        context.nFired++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the triples stacked in the context, in the order they were added.
+     */
+    private static List<Triple> drain(BFRuleContext context) {
+        List<Triple> delta = new ArrayList<Triple>();
+        Triple t;
+        while ((t = context.getNextTriple()) != null) {
+            delta.add(t);
+        }
+        Collections.reverse(delta);
+        return delta;
+    }
+
+    private static boolean allMonotonic(Iterator<Rule> rules) {
+        while (rules.hasNext()) {
+            if ( ! rules.next().isMonotonic()) return false;
+        }
+        return true;
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (sharedPool == null) {
+            sharedPool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+                private int count = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "rule-matcher-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sharedPool;
+    }
+
+//=======================================================================
+// Inner classes
+
+    /**
+     * A rule firing found while matching: the rule and a copy of its bindings.
+     */
+    protected static class Firing {
+
+        /** The rule to fire */
+        protected final Rule rule;
+
+        /** The variable bindings for the rule */
+        protected final Node[] bindings;
+
+        Firing(Rule rule, Node[] bindings) {
+            this.rule = rule;
+            this.bindings = bindings;
+        }
+
+        /** Set up the context to execute this firing */
+        void restore(BFRuleContext context) {
+            context.setRule(rule);
+            context.resetEnv(bindings.length);
+            System.arraycopy(bindings, 0, context.getEnvStack().getEnvironment(), 0, bindings.length);
+        }
+    }
+
+    /**
+     * The context used by one matching task. It records firings rather than
+     * executing them and never writes to the graph.
+     */
+    protected static class MatchContext extends BFRuleContext {
+
+        /** The firings found, in the order they were found */
+        protected final List<Firing> firings = new ArrayList<Firing>();
+
+        /** Count of rules which fired */
+        protected long nFired = 0;
+
+        /** Count of rules which passed the initial trigger */
+        protected int nTriggered = 0;
+
+        MatchContext(ForwardRuleInfGraphI graph) {
+            super(graph);
+        }
+
+        /** Record the current rule and bindings as a firing */
+        void record() {
+            Node[] env = getEnvStack().getEnvironment();
+            Node[] copy = new Node[env.length];
+            System.arraycopy(env, 0, copy, 0, env.length);
+            firings.add(new Firing(getRule(), copy));
+        }
+
+        /** Nothing is ever pending during matching */
+        @Override
+        public void flushPending() {
+            // Deliberately empty, heads are executed after the round
+        }
+    }
+}
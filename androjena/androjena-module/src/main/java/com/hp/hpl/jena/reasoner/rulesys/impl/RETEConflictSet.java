@@ -137,6 +137,11 @@ public class RETEConflictSet {
         }
         RETEEngine engine = context.getEngine();
         engine.incRuleCount();
+        RuleProfile.Stats stats = null;
+        if (engine.getProfile().isEnabled()) {
+            stats = engine.getProfile().statsFor(rule);
+            stats.noteFired();
+        }
         List<Triple> matchList = null;
         if (infGraph.shouldLogDerivations() && isAdd) {
             // Create derivation record
@@ -161,13 +166,15 @@ public class RETEConflictSet {
                     if (isAdd) {
                         if ( ! context.contains(t) ) {
                             engine.addTriple(t, true);
+                            if (stats != null) stats.noteDeduction();
                             if (infGraph.shouldLogDerivations()) {
                                 infGraph.logDerivation(t, new RuleDerivation(rule, t, matchList, infGraph));
                             }
                         }
                     } else {
-                        if ( context.contains(t)) {
-                            // Remove the generated triple
+                        if ( context.contains(t) && ! isInBody(t, rule, env)) {
+                            // Remove the generated triple, unless this firing
+                            // just rederives one of its own premises
                             engine.deleteTriple(t, true);
                         }
                     }
@@ -176,7 +183,9 @@ public class RETEConflictSet {
                 Functor f = (Functor)hClause;
                 Builtin imp = f.getImplementor();
                 if (imp != null) {
+                    long start = (stats == null) ? 0 : System.nanoTime();
                     imp.headAction(f.getBoundArgs(env), f.getArgLength(), context);
+                    if (stats != null) stats.noteBuiltin(System.nanoTime() - start);
                 } else {
                     throw new ReasonerException("Invoking undefined Functor " + f.getName() +" in " + rule.toShortString());
                 }
@@ -195,6 +204,21 @@ public class RETEConflictSet {
         }        
     }
         
+    /**
+     * Return true if the triple is one of the rule's body triples under the given
+     * bindings. Such a firing can never be the only support for the triple, so a
+     * delete need not be propagated through it.
+     */
+    protected static boolean isInBody(Triple t, Rule rule, BindingEnvironment env) {
+        for (int i = 0; i < rule.bodyLength(); i++) {
+            Object clause = rule.getBodyElement(i);
+            if (clause instanceof TriplePattern && t.equals(env.instantiate((TriplePattern)clause))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     // Inner class representing a conflict set entry 
     private static class CSEntry {
         protected Rule rule;
@@ -17,6 +17,7 @@ import java.util.*;
 
 import com.hp.hpl.jena.util.OneToManyMap;
 import com.hp.hpl.jena.util.PrintUtil;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
 import com.hp.hpl.jena.util.iterator.ConcatenatedIterator;
 
 import org.slf4j.Logger;
@@ -54,13 +55,28 @@ public class RETEEngine implements FRuleEngineI {
     
     /** Flag, if true then there is a wildcard predicate in the rule set so that selective insert is not useful */
     protected boolean wildcardRule;
+    
+    /** The rules compiled into the network, together with any axioms, used to rederive triples after a delete */
+    protected List<Rule> forwardRules;
+    
+    /** True if deletes can be processed incrementally: all the rules are monotonic and none adds backward rules */
+    protected boolean canRederive;
+    
+    /** While a delete is being processed, the deductions it has removed so far */
+    protected List<Triple> overdeleted;
      
     /** Set to true to flag that derivations should be logged */
     protected boolean recordDerivations;
     
+    /** The profile of the work done by each rule, shared with the parent graph */
+    protected RuleProfile profile;
+    
     /** performance stats - number of rules fired */
     long nRulesFired = 0;
     
+    /** performance stats - nanoseconds spent running the network */
+    long ruleTime = 0;
+    
     /** True if we have processed the axioms in the rule set */
     boolean processedAxioms = false;
     
@@ -80,6 +96,7 @@ public class RETEEngine implements FRuleEngineI {
      */
     public RETEEngine(ForwardRuleInfGraphI parent, List<Rule> rules) {
         infGraph = parent;
+        profile = parent.getRuleProfile();
         this.rules = rules;
         // Check if this is a monotonic rule set
         isMonotonic = true;
@@ -100,6 +117,7 @@ public class RETEEngine implements FRuleEngineI {
      */
     public RETEEngine(ForwardRuleInfGraphI parent) {
         infGraph = parent;
+        profile = parent.getRuleProfile();
     }
     
 //  =======================================================================
@@ -161,12 +179,40 @@ public class RETEEngine implements FRuleEngineI {
     
     /**
      * Remove one triple to the data graph.
+     * The triple should already have been removed from the data. Deletes are
+     * processed by delete/rederive: running the delete through the network removes
+     * every deduction with a derivation which depends on the triple, then each of
+     * those which can still be derived from what remains is put back and the network
+     * run forward from them.
      * @return true if the effects could be correctly propagated or
      * false if not (in which case the entire engine should be restarted).
      */
     public synchronized boolean delete(Triple t) {
+        if (!canRederive) return false;
+        // Overdelete
+        overdeleted = new ArrayList<Triple>();
         deleteTriple(t, false);
         runAll();
+        Set<Triple> candidates = new LinkedHashSet<Triple>(overdeleted);
+        overdeleted = null;
+        candidates.add(t);
+        // Rederive
+        long start = System.nanoTime();
+        RederivationChecker checker = new RederivationChecker(infGraph, forwardRules);
+        for (Iterator<Triple> i = candidates.iterator(); i.hasNext(); ) {
+            Triple d = i.next();
+            ClosableIterator<Triple> present = infGraph.findDataMatches(d.getSubject(), d.getPredicate(), d.getObject());
+            boolean isPresent = present.hasNext();
+            present.close();
+            if (isPresent) {
+                // Still held elsewhere, e.g. in the data, so restore it to the network
+                addTriple(d, false);
+            } else if (checker.isDerivable(d)) {
+                addTriple(d, true);
+            }
+        }
+        ruleTime += System.nanoTime() - start;
+        runAll();
         return true;
     }
     
@@ -178,6 +224,14 @@ public class RETEEngine implements FRuleEngineI {
         return nRulesFired;
     }
     
+    /**
+     * Return the average number of rules fired per second of time spent
+     * running the rules since this engine instance was created and initialized
+     */
+    public double getRulesFiredPerSecond() {
+        return ruleTime == 0 ? 0.0 : nRulesFired * 1.0e9 / ruleTime;
+    }
+    
     /**
      * Return true if the internal engine state means that tracing is worthwhile.
      * It will return false during the axiom bootstrap phase.
@@ -199,7 +253,7 @@ public class RETEEngine implements FRuleEngineI {
      * internal axiom closures.
      */
     public Object getRuleStore() {
-        return new RuleStore(clauseIndex, predicatesUsed, wildcardRule, isMonotonic);
+        return new RuleStore(clauseIndex, predicatesUsed, wildcardRule, isMonotonic, forwardRules);
     }
     
     /**
@@ -210,6 +264,8 @@ public class RETEEngine implements FRuleEngineI {
         predicatesUsed = rs.predicatesUsed;
         wildcardRule = rs.wildcardRule;
         isMonotonic = rs.isMonotonic;
+        forwardRules = rs.forwardRules;
+        canRederive = FRuleEngine.canRederive(forwardRules);
         
         // Clone the RETE network to this engine
         RETERuleContext context = new RETERuleContext(infGraph, this);
@@ -240,10 +296,12 @@ public class RETEEngine implements FRuleEngineI {
         clauseIndex = new OneToManyMap<Node, RETENode>();
         predicatesUsed = new HashSet<Node>();
         wildcardRule = false;
+        forwardRules = new ArrayList<Rule>();
             
         for (Iterator<Rule> it = rules.iterator(); it.hasNext(); ) {
             Rule rule = it.next();
             if (ignoreBrules && rule.isBackward()) continue;
+            forwardRules.add(rule);
             
             int numVars = rule.getNumVars();
             boolean[] seenVar = new boolean[numVars];
@@ -283,6 +341,8 @@ public class RETEEngine implements FRuleEngineI {
                         RETEQueue rightQ = new RETEQueue(matchIndices);
                         leftQ.setSibling(rightQ);
                         rightQ.setSibling(leftQ);
+                        leftQ.setProfile(profile.statsFor(rule).joinStats(i, true));
+                        rightQ.setProfile(profile.statsFor(rule).joinStats(i, false));
                         clauseNode.setContinuation(rightQ);
                         prior.setContinuation(leftQ);
                         prior = leftQ;
@@ -299,6 +359,7 @@ public class RETEEngine implements FRuleEngineI {
         }
             
         if (wildcardRule) predicatesUsed = null;
+        canRederive = FRuleEngine.canRederive(forwardRules);
     }    
 
     /**
@@ -348,6 +409,8 @@ public class RETEEngine implements FRuleEngineI {
                 // Built in a graph which can't delete this triple
                 // so block further processing of this delete to avoid loops
                 deletesPending.remove(triple);
+            } else if (overdeleted != null) {
+                overdeleted.add(triple);
             }
         }
     }
@@ -360,6 +423,13 @@ public class RETEEngine implements FRuleEngineI {
         nRulesFired++;
     }
     
+    /**
+     * Return the profile of the work done by each rule.
+     */
+    public RuleProfile getProfile() {
+        return profile;
+    }
+    
     /**
      * Find the next pending add triple.
      * @return the triple or null if there are none left.
@@ -389,6 +459,7 @@ public class RETEEngine implements FRuleEngineI {
      * Public to simplify unit tests - not normally called directly.
      */
     public void runAll() {
+        long start = System.nanoTime();
         while(true) {
             boolean isAdd = false;
             Triple next = nextDeleteTriple();
@@ -398,12 +469,13 @@ public class RETEEngine implements FRuleEngineI {
             }
             if (next == null) {
                 // Nothing more to inject, if this is a non-mon rule set now process one rule from the conflict set
-                if (conflictSet.isEmpty()) return;   // Finished
+                if (conflictSet.isEmpty()) break;   // Finished
                 conflictSet.fireOne();
             } else {
                 inject(next, isAdd);
             }
         }
+        ruleTime += System.nanoTime() - start;
     }
     
     /**
@@ -538,12 +610,16 @@ public class RETEEngine implements FRuleEngineI {
         /** True if all the rules are monotonic, so we short circuit the conflict set processing */
         protected boolean isMonotonic = true;
         
+        /** The rules compiled into the network, together with any axioms */
+        protected List<Rule> forwardRules;
+        
         /** Constructor */
-        RuleStore(OneToManyMap<Node, RETENode> clauseIndex, HashSet<Node> predicatesUsed, boolean wildcardRule, boolean isMonotonic) {
+        RuleStore(OneToManyMap<Node, RETENode> clauseIndex, HashSet<Node> predicatesUsed, boolean wildcardRule, boolean isMonotonic, List<Rule> forwardRules) {
             this.clauseIndex = clauseIndex;
             this.predicatesUsed = predicatesUsed;
             this.wildcardRule = wildcardRule;
             this.isMonotonic = isMonotonic;
+            this.forwardRules = forwardRules;
         }
     }
 
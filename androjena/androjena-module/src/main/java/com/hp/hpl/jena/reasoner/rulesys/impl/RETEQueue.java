@@ -26,6 +26,9 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
     /** A multi-set of partially bound envionments */
     protected HashMap<BindingVector, Count> queue = new HashMap<BindingVector, Count>();
     
+    /** The environments in the queue, indexed by the values of their join variables, see {@link #joinKey} */
+    protected HashMap<Object, Set<BindingVector>> index = new HashMap<Object, Set<BindingVector>>();
+    
     /** A set of variable indices which should match between the two inputs */
     protected byte[] matchIndices;
     
@@ -35,6 +38,13 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
     /** The node that results should be passed on to */
     protected RETESinkNode continuation;
     
+    /** The profile of this queue of the rule it belongs to, null if not profiled */
+    protected RuleProfile.JoinStats profile;
+    
+    /** Static switch, set to false to match each token against the whole sibling queue
+     *  rather than probing its join index, only used for comparing the two */
+    public static boolean useJoinIndex = true;
+    
     /** 
      * Constructor. The queue is not usable until it has been bound
      * to a sibling and a continuation node.
@@ -64,6 +74,13 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
         this.sibling = sibling;
     }
     
+    /**
+     * Set the profile of this queue of the rule it belongs to.
+     */
+    public void setProfile(RuleProfile.JoinStats profile) {
+        this.profile = profile;
+    }
+    
     /**
      * Set the continuation node for this node (and any sibling)
      */
@@ -84,6 +101,7 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
             // no entry yet
             if (!isAdd) return;
             queue.put(env, new Count(1));
+            addToIndex(env);
         } else {
             if (isAdd) {
                 count.inc();
@@ -91,14 +109,19 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
                 count.dec();
                 if (count.getCount() == 0) {
                     queue.remove(env);
+                    removeFromIndex(env);
                 }
             }
         }
         
         // Cross match new token against the entries in the sibling queue
-        for (Iterator<BindingVector> i = sibling.queue.keySet().iterator(); i.hasNext(); ) {
+        // which share its join key, the sameValueAs check guards against key collisions
+        Node[] envNodes = env.getEnvironment();
+        Set<BindingVector> candidates = useJoinIndex ? sibling.index.get(joinKey(envNodes)) : sibling.queue.keySet();
+        if (candidates == null) return;
+        int joined = 0;
+        for (Iterator<BindingVector> i = candidates.iterator(); i.hasNext(); ) {
             Node[] candidate = i.next().getEnvironment();
-            Node[] envNodes = env.getEnvironment();
             boolean matchOK = true;
             for (int j = 0; j < matchIndices.length; j++) {
                 int index = matchIndices[j];
@@ -116,9 +139,55 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
                 }
                 BindingVector newEnv = new BindingVector(newNodes);
                 // Fire the successor processing
+                joined++;
                 continuation.fire(newEnv, isAdd);
             }
         }
+        if (joined > 0 && profile != null && profile.isEnabled()) {
+            profile.noteTokens(joined);
+        }
+    }
+    
+    /**
+     * Compute the key under which an environment is indexed: the indexing values
+     * of its join variables, so that environments whose join variables are
+     * sameValueAs each other share a key. A single join variable is keyed on its
+     * value directly, several on a list of their values.
+     */
+    protected Object joinKey(Node[] env) {
+        if (matchIndices.length == 1) {
+            return env[matchIndices[0]].getIndexingValue();
+        }
+        List<Object> key = new ArrayList<Object>(matchIndices.length);
+        for (int j = 0; j < matchIndices.length; j++) {
+            key.add(env[matchIndices[j]].getIndexingValue());
+        }
+        return key;
+    }
+    
+    /**
+     * Record a newly queued environment in the join index.
+     */
+    protected void addToIndex(BindingVector env) {
+        Object key = joinKey(env.getEnvironment());
+        Set<BindingVector> bucket = index.get(key);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<BindingVector>();
+            index.put(key, bucket);
+        }
+        bucket.add(env);
+    }
+    
+    /**
+     * Remove a no longer queued environment from the join index.
+     */
+    protected void removeFromIndex(BindingVector env) {
+        Object key = joinKey(env.getEnvironment());
+        Set<BindingVector> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(env);
+            if (bucket.isEmpty()) index.remove(key);
+        }
     }
 
     /**
@@ -163,9 +232,16 @@ public class RETEQueue implements RETESinkNode, RETESourceNode {
         if (clone == null) {
             clone = new RETEQueue(matchIndices);
             netCopy.put(this, clone);
+            if (profile != null) {
+                RuleProfile.Stats stats = context.getEngine().getProfile().statsFor(profile.getRuleStats().getRule());
+                clone.setProfile(stats.joinStats(profile.getClause(), profile.isLeft()));
+            }
             clone.setSibling((RETEQueue)sibling.clone(netCopy, context));
             clone.setContinuation((RETESinkNode)continuation.clone(netCopy, context));
             clone.queue.putAll(queue);
+            for (Iterator<BindingVector> i = queue.keySet().iterator(); i.hasNext(); ) {
+                clone.addToIndex(i.next());
+            }
         }
         return clone;
     }
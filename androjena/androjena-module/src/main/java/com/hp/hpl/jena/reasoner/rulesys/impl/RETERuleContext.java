@@ -147,22 +147,22 @@ public class RETERuleContext implements RuleContext {
      * Check whether the rule should fire in this context.
      */
     public boolean shouldFire(boolean allowUnsafe) {
+        RuleProfile.Stats stats = null;
         // Check any non-pattern clauses 
         for (int i = 0; i < rule.bodyLength(); i++) {
             Object clause = rule.getBodyElement(i);
             if (clause instanceof Functor) {
-                // Fire a built in
-                if (allowUnsafe) {
-                    if (!((Functor)clause).evalAsBodyClause(this)) {
-                        // Failed guard so just discard and return
-                        return false;
-                    }
-                } else {
-                    // Don't re-run side-effectful clause on a re-run
-                    if (!((Functor)clause).safeEvalAsBodyClause(this)) {
-                        // Failed guard so just discard and return
-                        return false;
-                    }
+                if (stats == null && engine.getProfile().isEnabled()) {
+                    stats = engine.getProfile().statsFor(rule);
+                }
+                long start = (stats == null) ? 0 : System.nanoTime();
+                // Fire a built in, but don't re-run side-effectful clause on a re-run
+                boolean ok = allowUnsafe ? ((Functor)clause).evalAsBodyClause(this) 
+                                         : ((Functor)clause).safeEvalAsBodyClause(this);
+                if (stats != null) stats.noteBuiltin(System.nanoTime() - start);
+                if (!ok) {
+                    // Failed guard so just discard and return
+                    return false;
                 }
             }
         }
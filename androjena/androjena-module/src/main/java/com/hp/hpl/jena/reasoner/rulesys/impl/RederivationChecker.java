@@ -0,0 +1,111 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.reasoner.rulesys.*;
+import com.hp.hpl.jena.util.OneToManyMap;
+import com.hp.hpl.jena.util.iterator.ConcatenatedIterator;
+
+/**
+ * Rederivation step of the delete/rederive (DRed) algorithm used by the forward
+ * engines to process deletes incrementally. A delete first removes every deduction
+ * which has at least one derivation through the deleted triple (an overestimate);
+ * this checker then tests each of those triples for a remaining derivation, i.e. one
+ * application of a forward rule whose body matches the current graph. Triples that
+ * pass are put back by the engine, and running the rules forward from them restores
+ * anything else which is still derivable.
+ */
+public class RederivationChecker extends FRuleEngine {
+
+    /** The forward rules, indexed by the predicate of each head clause, Node.ANY for variables */
+    protected OneToManyMap<Node, HeadPointer> headIndex = new OneToManyMap<Node, HeadPointer>();
+
+    /** Set once a derivation has been found by the current check */
+    protected boolean found;
+
+    /** The context used for each check */
+    protected BFRuleContext context;
+
+    /** The raw data of the graph's schema, if any, whose triples need no derivation */
+    protected Graph schemaData;
+
+    /**
+     * Constructor.
+     * @param parent the inference graph whose contents the rule bodies are matched against
+     * @param rules the forward rules run by the engine, axioms included
+     */
+    public RederivationChecker(ForwardRuleInfGraphI parent, List<Rule> rules) {
+        super(parent, rules);
+        context = new BFRuleContext(parent);
+        if (parent instanceof BaseInfGraph) {
+            Graph schema = ((BaseInfGraph)parent).getSchemaGraph();
+            schemaData = (schema instanceof InfGraph) ? ((InfGraph)schema).getRawGraph() : schema;
+        }
+        for (Iterator<Rule> i = rules.iterator(); i.hasNext(); ) {
+            Rule rule = i.next();
+            for (int j = 0; j < rule.headLength(); j++) {
+                Object head = rule.getHeadElement(j);
+                if (head instanceof TriplePattern) {
+                    Node predicate = ((TriplePattern)head).getPredicate();
+                    headIndex.put(predicate.isVariable() ? Node.ANY : predicate, new HeadPointer(rule, j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return true if some forward rule derives the given triple in one step
+     * from the current contents of the graph, or is part of the schema.
+     */
+    public boolean isDerivable(Triple t) {
+        if (schemaData != null && schemaData.contains(t)) return true;
+        Iterator<HeadPointer> i1 = headIndex.getAll(t.getPredicate());
+        Iterator<HeadPointer> i2 = headIndex.getAll(Node.ANY);
+        Iterator<HeadPointer> i = new ConcatenatedIterator<HeadPointer>(i1, i2);
+        while (i.hasNext()) {
+            HeadPointer hp = i.next();
+            Rule rule = hp.rule;
+            context.resetEnv(rule.getNumVars());
+            if ( ! match((TriplePattern)rule.getHeadElement(hp.index), t, context.getEnvStack())) continue;
+            context.setRule(rule);
+            // matchClauseList works from the end of the list, so reverse the body
+            List<ClauseEntry> clauses = new ArrayList<ClauseEntry>(rule.bodyLength());
+            for (int j = rule.bodyLength() - 1; j >= 0; j--) {
+                ClauseEntry clause = rule.getBodyElement(j);
+                if (clause instanceof TriplePattern) clauses.add(clause);
+            }
+            found = false;
+            matchClauseList(clauses, context);
+            if (found) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A full body match is a derivation, record it rather than running the head.
+     */
+    @Override
+    protected void fireRule(BFRuleContext context) {
+        found = true;
+    }
+
+    /**
+     * Structure used in the head index to point to a head clause of a rule.
+     */
+    protected static class HeadPointer {
+
+        /** The rule containing this clause */
+        protected Rule rule;
+
+        /** The index of the clause in the rule head */
+        protected int index;
+
+        /** constructor */
+        HeadPointer(Rule rule, int index) {
+            this.rule = rule;
+            this.index = index;
+        }
+    }
+}
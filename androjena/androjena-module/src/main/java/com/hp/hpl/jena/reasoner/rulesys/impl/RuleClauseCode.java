@@ -41,6 +41,15 @@ public class RuleClauseCode {
     
     /** starting byte code offset for body terms */
     protected int[] termStart;
+    
+    /** The number of argument variables (Ai) used by the code */
+    protected int argumentVarCount = 3;
+    
+    /** The number of temporary variables (Ti) used by the code */
+    protected int temporaryVarCount = 0;
+    
+    /** The compiled form of the code, null until the clause's predicate is hot */
+    protected volatile CompiledClause compiled;
      
 //  =======================================================================
 //  Instruction set constants
@@ -125,17 +134,22 @@ public class RuleClauseCode {
     
     // current next = 0x22
     
-    /** The maximum number of permanent variables allowed in a single rule clause. 
-     *  Now only relevent for initial holding clause. */
+    /** The number of permanent variables of the initial holding clause. 
+     *  Rule clauses allocate as many as they use. */
     public static final int MAX_PERMANENT_VARS = 15;
     
-    /** The maximum number of argument variables allowed in a single goal 
-     *   Future refactorings will remove this restriction. */
+    /** The least number of argument variables an interpreter has. It has more
+     *  if a clause of its rule store uses more, see LPRuleStore.getArgumentVarCount. */
     public static final int MAX_ARGUMENT_VARS = 8;
     
-    /** The maximum number of temporary variables allowed in a single rule clause. */
+    /** The least number of temporary variables an interpreter has. It has more
+     *  if a clause of its rule store uses more, see LPRuleStore.getTemporaryVarCount. */
     public static final int MAX_TEMPORARY_VARS = 8;
     
+    /** The most variables of each kind a rule clause can use, as the byte code 
+     *  holds variable numbers in single bytes. */
+    public static final int MAX_VARS = Byte.MAX_VALUE;
+    
     /** Dummy code block which just returns */
     public static RuleClauseCode returnCodeBlock;
     
@@ -175,6 +189,38 @@ public class RuleClauseCode {
         return rule;
     }
     
+    /**
+     * Return the number of argument variables (Ai) used by the code of this clause.
+     */
+    public int getArgumentVarCount() {
+        return argumentVarCount;
+    }
+    
+    /**
+     * Return the number of temporary variables (Ti) used by the code of this clause.
+     */
+    public int getTemporaryVarCount() {
+        return temporaryVarCount;
+    }
+    
+    /**
+     * Compile the byte code of this clause into the op objects of a 
+     * CompiledClause, which the interpreter runs in place of decoding the 
+     * byte code. Does nothing if it has already been compiled.
+     */
+    public void compileOps() {
+        if (compiled == null && code != null) {
+            compiled = CompiledClause.compile(this);
+        }
+    }
+    
+    /**
+     * Return the compiled form of the code, or null if it has not been compiled.
+     */
+    public CompiledClause getCompiled() {
+        return compiled;
+    }
+    
     /**
      * Compile the rule into byte code.
      * @param ruleStore the store of LP rules through which calls to other predicates
@@ -210,6 +256,9 @@ public class RuleClauseCode {
         // Extract the final code
         code = state.getFinalCode();
         args = state.getFinalArgs();
+        argumentVarCount = state.argumentVarCount;
+        temporaryVarCount = state.tempVars.size();
+        compiled = null;
     }
             
     /**
@@ -359,6 +408,9 @@ public class RuleClauseCode {
         /** List of all temporary variables */
         private List<Node_RuleVariable> tempVars = new ArrayList<Node_RuleVariable>();
         
+        /** The number of argument variables used so far */
+        int argumentVarCount = 3;
+        
         /** The total number of var occurrences */
         int totalOccurrences = 0;
         
@@ -376,7 +428,8 @@ public class RuleClauseCode {
             classifyVariables(rule);
             this.rule = rule;
             // Create a scratch area for assembling the code, use a worst-case size estimate
-            code = new byte[10 + totalOccurrences + rule.bodyLength()*10];
+            // of three bytes for each node and ten for each call
+            code = new byte[10 + totalOccurrences*3 + rule.bodyLength()*10];
             args = new ArrayList<Object>();
         }
         
@@ -473,6 +526,7 @@ public class RuleClauseCode {
                 code[p++] = GET_FUNCTOR;
                 args.add(f);
                 Node[] fargs = f.getArgs();
+                useArgument(fargs.length + 2);
                 for (int i = 0; i < fargs.length; i++) {
                     emitHeadGet(fargs[i], i+3);
                 }
@@ -538,11 +592,7 @@ public class RuleClauseCode {
          * use in calling builtins
          */
         void emitBodyPut(Node node, int argi, boolean deref) {
-            if (argi >= MAX_ARGUMENT_VARS) {
-                throw new LPRuleSyntaxException("Rule too complex for current implementation\n" 
-                            + "Rule clauses are limited to " + MAX_ARGUMENT_VARS + " argument variables\n", rule); 
-
-            }
+            useArgument(argi);
             if (node instanceof Node_RuleVariable) {
                 Node_RuleVariable var = (Node_RuleVariable)node;
                 if (isDummy(var)) {
@@ -584,6 +634,18 @@ public class RuleClauseCode {
             }
         }
         
+        /**
+         * Note the use of an argument variable.
+         * @param argi the argument register used
+         */
+        void useArgument(int argi) {
+            if (argi >= MAX_VARS) {
+                throw new LPRuleSyntaxException("Rule too complex for current implementation\n" 
+                            + "Rule clauses are limited to " + MAX_VARS + " argument variables\n", rule); 
+            }
+            argumentVarCount = Math.max(argumentVarCount, argi + 1);
+        }
+        
         /**
          * Emit code for a call to a built-in predicate (functor).
          * @param functor the built-in to be invoked.
@@ -698,14 +760,14 @@ public class RuleClauseCode {
                  
             }
             
-            if (permanentVars.size() > MAX_PERMANENT_VARS) {
+            if (permanentVars.size() > MAX_VARS) {
                 throw new LPRuleSyntaxException("Rule too complex for current implementation\n" 
-                            + "Rule clauses are limited to " + MAX_PERMANENT_VARS + " permanent variables\n", rule); 
+                            + "Rule clauses are limited to " + MAX_VARS + " permanent variables\n", rule); 
             }
             
-            if (tempVars.size() > MAX_TEMPORARY_VARS) {
+            if (tempVars.size() > MAX_VARS) {
                 throw new LPRuleSyntaxException("Rule too complex for current implementation\n" 
-                            + "Rule clauses are limited to " + MAX_TEMPORARY_VARS + " temporary variables\n", rule); 
+                            + "Rule clauses are limited to " + MAX_VARS + " temporary variables\n", rule); 
             }
             
             // Builtins in the forward system use the var index to modify variable bindings.
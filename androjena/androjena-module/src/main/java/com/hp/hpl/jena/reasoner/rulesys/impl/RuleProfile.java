@@ -0,0 +1,301 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+
+/**
+ * A profile of the work done by each rule of an inference graph, shared by
+ * its forward and backward engines. For each rule it records how often the
+ * rule fired (for a backward rule, how often it was entered), how many
+ * partial matches of its body were made (tokens joined by its RETE queues,
+ * or clause matches in the basic forward engine), how long its builtins ran
+ * and how many new triples it deduced. Backward rules deduce nothing that
+ * is stored, so only their entries and builtins are counted. For the RETE
+ * engine the tokens joined are also counted for each queue of the rule, so
+ * that a badly ordered body shows up as the join which does the work.
+ * <p>
+ * Profiling is switched on and off at run time. While it is off the engines
+ * only test isEnabled() where they would record something. The counts are
+ * kept when profiling is switched off, and cleared by reset().
+ */
+public class RuleProfile {
+
+    /**
+     * The orders in which a report can be sorted, largest first. WORK is
+     * the firings and tokens together.
+     */
+    public enum Order { WORK, FIRED, TOKENS, BUILTIN_TIME, DEDUCTIONS }
+
+    /** True if the engines should record their work */
+    protected volatile boolean enabled = false;
+
+    /** The statistics of each rule seen so far */
+    protected final ConcurrentHashMap<Rule, Stats> stats = new ConcurrentHashMap<Rule, Stats>();
+
+    /**
+     * Return true if profiling is switched on.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switch profiling on or off. The counts so far are kept.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Clear the counts of all the rules.
+     */
+    public void reset() {
+        for (Stats s : stats.values()) {
+            s.reset();
+        }
+    }
+
+    /**
+     * Return the statistics of the given rule, creating them if necessary.
+     * Engines may hold on to the result, it is not replaced by reset().
+     */
+    public Stats statsFor(Rule rule) {
+        Stats s = stats.get(rule);
+        if (s == null) {
+            Stats created = new Stats(this, rule);
+            s = stats.putIfAbsent(rule, created);
+            if (s == null) s = created;
+        }
+        return s;
+    }
+
+    /**
+     * Return the statistics of the rules which have done any work since the
+     * last reset, sorted largest first in the given order.
+     */
+    public List<Stats> getStats(final Order order) {
+        List<Stats> result = new ArrayList<Stats>();
+        for (Stats s : stats.values()) {
+            if (s.isUsed()) result.add(s);
+        }
+        Collections.sort(result, new Comparator<Stats>() {
+            public int compare(Stats a, Stats b) {
+                long x = a.get(order), y = b.get(order);
+                return (x > y) ? -1 : ( (x == y) ? 0 : +1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Print a report of the rules which have done any work since the last
+     * reset, sorted largest first in the given order.
+     */
+    public void print(PrintWriter out, Order order) {
+        List<Stats> list = getStats(order);
+        if (list.isEmpty()) {
+            out.println("No profile collected");
+        } else {
+            out.println("Rule profile by " + order.toString().toLowerCase().replace('_', ' '));
+            out.println("     fired     tokens  builtin ms    deduced  rule");
+            for (Stats s : list) {
+                out.println(s);
+                for (JoinStats j : s.getJoinStats()) {
+                    if (j.getTokens() != 0) out.println(j);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * The counts recorded for one rule.
+     */
+    public static class Stats {
+        protected final RuleProfile owner;
+        protected final Rule rule;
+        protected final AtomicLong fired = new AtomicLong();
+        protected final AtomicLong tokens = new AtomicLong();
+        protected final AtomicLong builtinNanos = new AtomicLong();
+        protected final AtomicLong deductions = new AtomicLong();
+        protected final ConcurrentHashMap<Integer, JoinStats> joins = new ConcurrentHashMap<Integer, JoinStats>();
+
+        Stats(RuleProfile owner, Rule rule) {
+            this.owner = owner;
+            this.rule = rule;
+        }
+
+        /** Return true if the profile these statistics belong to is switched on */
+        public boolean isEnabled() {
+            return owner.enabled;
+        }
+
+        /** Return the rule */
+        public Rule getRule() {
+            return rule;
+        }
+
+        /** Return the number of firings, or entries for a backward rule */
+        public long getFired() {
+            return fired.get();
+        }
+
+        /** Return the number of partial matches of the body of the rule */
+        public long getTokens() {
+            return tokens.get();
+        }
+
+        /** Return the time spent in builtins of the rule, in nanoseconds */
+        public long getBuiltinNanos() {
+            return builtinNanos.get();
+        }
+
+        /** Return the number of new triples deduced by the rule */
+        public long getDeductions() {
+            return deductions.get();
+        }
+
+        /**
+         * Return the statistics of one RETE queue of the rule, creating them
+         * if necessary.
+         * @param clause the index in the rule body of the clause the queue joins in
+         * @param left true for the queue of partial matches of the earlier
+         * clauses, false for the queue of matches of the clause itself
+         */
+        public JoinStats joinStats(int clause, boolean left) {
+            Integer key = Integer.valueOf(clause * 2 + (left ? 0 : 1));
+            JoinStats j = joins.get(key);
+            if (j == null) {
+                JoinStats created = new JoinStats(this, clause, left);
+                j = joins.putIfAbsent(key, created);
+                if (j == null) j = created;
+            }
+            return j;
+        }
+
+        /** Return the statistics of the RETE queues of the rule, in body order */
+        public List<JoinStats> getJoinStats() {
+            List<Integer> keys = new ArrayList<Integer>(joins.keySet());
+            Collections.sort(keys);
+            List<JoinStats> result = new ArrayList<JoinStats>(keys.size());
+            for (Integer key : keys) {
+                result.add(joins.get(key));
+            }
+            return result;
+        }
+
+        /** Record a firing, or an entry to a backward rule */
+        public void noteFired() {
+            fired.incrementAndGet();
+        }
+
+        /** Record partial matches of the body of the rule */
+        public void noteTokens(long n) {
+            tokens.addAndGet(n);
+        }
+
+        /** Record time spent running a builtin of the rule */
+        public void noteBuiltin(long nanos) {
+            builtinNanos.addAndGet(nanos);
+        }
+
+        /** Record a triple newly deduced by the rule */
+        public void noteDeduction() {
+            deductions.incrementAndGet();
+        }
+
+        long get(Order order) {
+            switch (order) {
+            case WORK:         return getFired() + getTokens();
+            case FIRED:        return getFired();
+            case TOKENS:       return getTokens();
+            case BUILTIN_TIME: return getBuiltinNanos();
+            default:           return getDeductions();
+            }
+        }
+
+        boolean isUsed() {
+            return getFired() != 0 || getTokens() != 0 || getBuiltinNanos() != 0 || getDeductions() != 0;
+        }
+
+        void reset() {
+            fired.set(0);
+            tokens.set(0);
+            builtinNanos.set(0);
+            deductions.set(0);
+            for (Map.Entry<Integer, JoinStats> e : joins.entrySet()) {
+                e.getValue().tokens.set(0);
+            }
+        }
+
+        /** Printable form, one line of the report */
+        @Override
+        public String toString() {
+            return String.format("%10d %10d %11.3f %10d  %s", getFired(), getTokens(),
+                    getBuiltinNanos() / 1.0e6, getDeductions(), rule.toShortString());
+        }
+    }
+
+    /**
+     * The tokens joined by one RETE queue of a rule, which are also counted
+     * as tokens of the rule.
+     */
+    public static class JoinStats {
+        protected final Stats rule;
+        protected final int clause;
+        protected final boolean left;
+        protected final AtomicLong tokens = new AtomicLong();
+
+        JoinStats(Stats rule, int clause, boolean left) {
+            this.rule = rule;
+            this.clause = clause;
+            this.left = left;
+        }
+
+        /** Return true if the profile these statistics belong to is switched on */
+        public boolean isEnabled() {
+            return rule.isEnabled();
+        }
+
+        /** Return the statistics of the rule the queue belongs to */
+        public Stats getRuleStats() {
+            return rule;
+        }
+
+        /** Return the index in the rule body of the clause the queue joins in */
+        public int getClause() {
+            return clause;
+        }
+
+        /** Return true for the queue of partial matches of the earlier clauses */
+        public boolean isLeft() {
+            return left;
+        }
+
+        /** Return the number of tokens joined on arriving at this queue */
+        public long getTokens() {
+            return tokens.get();
+        }
+
+        /** Record tokens joined on arriving at this queue */
+        public void noteTokens(long n) {
+            tokens.addAndGet(n);
+            rule.noteTokens(n);
+        }
+
+        /** Printable form, one line of the report */
+        @Override
+        public String toString() {
+            return String.format("%10s %10d %11s %10s    join at clause %d, %s", "", getTokens(), "", "",
+                    clause, left ? "earlier clauses" : "this clause");
+        }
+    }
+}
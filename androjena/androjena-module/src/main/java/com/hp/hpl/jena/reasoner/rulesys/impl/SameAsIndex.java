@@ -0,0 +1,385 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.reasoner.TriplePattern;
+import com.hp.hpl.jena.reasoner.rulesys.*;
+import com.hp.hpl.jena.util.PrintUtil;
+import com.hp.hpl.jena.util.iterator.*;
+import com.hp.hpl.jena.vocabulary.OWL;
+
+/**
+ * Union-find index over the owl:sameAs equivalence classes seen by a
+ * forward engine. Used by the sameAs canonicalization mode of the hybrid
+ * rule reasoner: every triple is rewritten to use the representative of
+ * each node's class before it enters the RETE network, and the
+ * equivalent forms are only generated again when the graph is queried.
+ * <p>
+ * Nodes which appear as constants in rule bodies can be pinned so that
+ * they always stay the representative of their class, otherwise rules
+ * mentioning them would stop matching once their class is merged.</p>
+ */
+public class SameAsIndex {
+
+    /** The owl:sameAs predicate handled by this index */
+    public static final Node sameAs = OWL.sameAs.asNode();
+
+    /** Map from each merged node to its parent in the union-find forest, roots are absent */
+    protected HashMap<Node, Node> parent = new HashMap<Node, Node>();
+
+    /** Map from the root of each non-singleton class to all its members */
+    protected HashMap<Node, List<Node>> members = new HashMap<Node, List<Node>>();
+
+    /** Nodes which should always be preferred as class representatives */
+    protected HashSet<Node> pinned = new HashSet<Node>();
+
+    protected static Logger logger = LoggerFactory.getLogger(SameAsIndex.class);
+
+    /**
+     * Constructor. Creates an empty index.
+     */
+    public SameAsIndex() {
+    }
+
+    /**
+     * Empty the index, dropping all equivalences but keeping the pinned nodes.
+     */
+    public synchronized void clear() {
+        parent.clear();
+        members.clear();
+    }
+
+    /**
+     * Copy all the equivalences and pinned nodes from another index into this one.
+     */
+    public synchronized void addAll(SameAsIndex other) {
+        synchronized (other) {
+            pinned.addAll(other.pinned);
+            for (Iterator<List<Node>> i = other.members.values().iterator(); i.hasNext(); ) {
+                List<Node> cls = i.next();
+                Node first = cls.get(0);
+                for (int j = 1; j < cls.size(); j++) {
+                    union(first, cls.get(j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark a node as a preferred representative.
+     */
+    public synchronized void pin(Node n) {
+        pinned.add(n);
+    }
+
+    /**
+     * Pin every constant which occurs in the body of the given rules.
+     */
+    public void pinConstants(List<Rule> rules) {
+        for (Iterator<Rule> i = rules.iterator(); i.hasNext(); ) {
+            Rule r = i.next();
+            for (int j = 0; j < r.bodyLength(); j++) {
+                ClauseEntry clause = r.getBodyElement(j);
+                if (clause instanceof TriplePattern) {
+                    TriplePattern tp = (TriplePattern)clause;
+                    pinIfConstant(tp.getSubject());
+                    pinIfConstant(tp.getPredicate());
+                    pinIfConstant(tp.getObject());
+                } else if (clause instanceof Functor) {
+                    Node[] args = ((Functor)clause).getArgs();
+                    for (int k = 0; k < args.length; k++) pinIfConstant(args[k]);
+                }
+            }
+        }
+    }
+
+    private void pinIfConstant(Node n) {
+        if (n.isURI() || n.isLiteral() && ! Functor.isFunctor(n)) pin(n);
+    }
+
+    /**
+     * Return the representative of the class containing the given node.
+     */
+    public synchronized Node find(Node n) {
+        Node p = parent.get(n);
+        if (p == null) return n;
+        Node root = find(p);
+        if (root != p) parent.put(n, root);
+        return root;
+    }
+
+    /**
+     * Record that two nodes are the same.
+     * @return the old representative whose class has just been merged
+     * into another one, or null if the nodes were already known to be the same
+     */
+    public synchronized Node union(Node a, Node b) {
+        Node ra = find(a);
+        Node rb = find(b);
+        if (ra.equals(rb)) return null;
+        boolean pa = pinned.contains(ra);
+        boolean pb = pinned.contains(rb);
+        Node winner, loser;
+        if (pa != pb) {
+            winner = pa ? ra : rb;
+        } else {
+            if (pa) {
+                logger.warn("Merging rule constants " + PrintUtil.print(ra) + " and " + PrintUtil.print(rb)
+                            + ", rules which mention only one of them may be incomplete");
+            }
+            winner = classSize(ra) >= classSize(rb) ? ra : rb;
+        }
+        loser = (winner == ra) ? rb : ra;
+        parent.put(loser, winner);
+        List<Node> wm = members.get(winner);
+        if (wm == null) {
+            wm = new ArrayList<Node>();
+            wm.add(winner);
+            members.put(winner, wm);
+        }
+        List<Node> lm = members.remove(loser);
+        if (lm == null) {
+            wm.add(loser);
+        } else {
+            wm.addAll(lm);
+        }
+        return loser;
+    }
+
+    /**
+     * Return the number of nodes in the class containing the given node.
+     */
+    public synchronized int classSize(Node n) {
+        List<Node> cls = members.get(find(n));
+        return cls == null ? 1 : cls.size();
+    }
+
+    /**
+     * Return a copy of all the members of the class containing the given node,
+     * including the node itself.
+     */
+    public synchronized List<Node> getMembers(Node n) {
+        Node root = find(n);
+        List<Node> cls = members.get(root);
+        if (cls == null) {
+            return Collections.singletonList(n);
+        }
+        return new ArrayList<Node>(cls);
+    }
+
+    /**
+     * Return the number of non-singleton equivalence classes.
+     */
+    public synchronized int numClasses() {
+        return members.size();
+    }
+
+    /**
+     * Return true if the index does not hold any equivalences.
+     */
+    public synchronized boolean isEmpty() {
+        return parent.isEmpty();
+    }
+
+    /**
+     * Rewrite a triple so that each of its nodes is a class representative.
+     * Returns the original triple if it is already canonical.
+     */
+    public Triple canonical(Triple t) {
+        if (isEmpty()) return t;
+        Node s = find(t.getSubject());
+        Node p = find(t.getPredicate());
+        Node o = find(t.getObject());
+        if (s == t.getSubject() && p == t.getPredicate() && o == t.getObject()) return t;
+        return new Triple(s, p, o);
+    }
+
+    /**
+     * Rewrite the concrete nodes of a triple pattern to their class representatives.
+     */
+    public TriplePattern canonical(TriplePattern pattern) {
+        if (isEmpty()) return pattern;
+        return new TriplePattern(canonicalNode(pattern.getSubject()),
+                                 canonicalNode(pattern.getPredicate()),
+                                 canonicalNode(pattern.getObject()));
+    }
+
+    private Node canonicalNode(Node n) {
+        return (n == null || ! n.isConcrete()) ? n : find(n);
+    }
+
+    /**
+     * Expand a stream of canonical triples into all their equivalent forms
+     * which match the given (non-canonical) pattern. Concrete pattern positions
+     * are answered with the node requested, wildcard positions range over the
+     * whole class of the matched node. The result may contain duplicates.
+     */
+    public ExtendedIterator<Triple> expand(ExtendedIterator<Triple> triples, TriplePattern pattern) {
+        return new ExpandingIterator(triples, pattern);
+    }
+
+    /**
+     * Return true if the rule is one of the standard owl:sameAs rules
+     * (reflexivity, symmetry, transitivity or replacement in any position)
+     * whose effect is subsumed by this index.
+     */
+    public static boolean isEqualityRule(Rule r) {
+        int bl = r.bodyLength();
+        int hl = r.headLength();
+        if (bl == 0 || bl > 2 || hl == 0) return false;
+        for (int i = 0; i < bl; i++) {
+            if ( ! (r.getBodyElement(i) instanceof TriplePattern)) return false;
+        }
+        for (int i = 0; i < hl; i++) {
+            if ( ! (r.getHeadElement(i) instanceof TriplePattern)) return false;
+        }
+        if (bl == 1) {
+            TriplePattern b = (TriplePattern)r.getBodyElement(0);
+            // Reflexivity: (?s ?p ?o) -> (?s sameAs ?s) ...
+            boolean reflexive = true;
+            for (int i = 0; i < hl; i++) {
+                TriplePattern h = (TriplePattern)r.getHeadElement(i);
+                if ( ! (isSameAs(h) && h.getSubject().isVariable() && same(h.getSubject(), h.getObject()))) {
+                    reflexive = false;
+                    break;
+                }
+            }
+            if (reflexive) return true;
+            // Symmetry: (?x sameAs ?y) -> (?y sameAs ?x)
+            if (hl == 1 && isSameAsVars(b)) {
+                TriplePattern h = (TriplePattern)r.getHeadElement(0);
+                return isSameAs(h) && same(h.getSubject(), b.getObject()) && same(h.getObject(), b.getSubject());
+            }
+            return false;
+        }
+        if (hl != 1) return false;
+        TriplePattern b0 = (TriplePattern)r.getBodyElement(0);
+        TriplePattern b1 = (TriplePattern)r.getBodyElement(1);
+        TriplePattern h = (TriplePattern)r.getHeadElement(0);
+        // Transitivity: (?x sameAs ?y)(?y sameAs ?z) -> (?x sameAs ?z)
+        if (isSameAsVars(b0) && isSameAsVars(b1) && isSameAs(h)) {
+            if (same(b0.getObject(), b1.getSubject()) && same(h.getSubject(), b0.getSubject()) && same(h.getObject(), b1.getObject())) return true;
+            if (same(b1.getObject(), b0.getSubject()) && same(h.getSubject(), b1.getSubject()) && same(h.getObject(), b0.getObject())) return true;
+        }
+        // Replacement: (?a sameAs ?b)(?s ?p ?o) -> one of (?b ?p ?o), (?s ?b ?o), (?s ?p ?b)
+        return isReplacement(b0, b1, h) || isReplacement(b1, b0, h);
+    }
+
+    private static boolean isReplacement(TriplePattern eq, TriplePattern t, TriplePattern h) {
+        if ( ! isSameAsVars(eq)) return false;
+        if ( ! (t.getSubject().isVariable() && t.getPredicate().isVariable() && t.getObject().isVariable())) return false;
+        Node a = eq.getSubject();
+        Node b = eq.getObject();
+        Node[] tn = new Node[] {t.getSubject(), t.getPredicate(), t.getObject()};
+        Node[] hn = new Node[] {h.getSubject(), h.getPredicate(), h.getObject()};
+        int replaced = 0;
+        for (int i = 0; i < 3; i++) {
+            if (same(tn[i], hn[i])) continue;
+            if (same(tn[i], a) && same(hn[i], b)) {
+                replaced++;
+            } else {
+                return false;
+            }
+        }
+        return replaced == 1;
+    }
+
+    private static boolean isSameAs(TriplePattern tp) {
+        return tp.getPredicate().equals(sameAs);
+    }
+
+    private static boolean isSameAsVars(TriplePattern tp) {
+        return isSameAs(tp) && tp.getSubject().isVariable() && tp.getObject().isVariable()
+                && ! same(tp.getSubject(), tp.getObject());
+    }
+
+    private static boolean same(Node a, Node b) {
+        return Node_RuleVariable.sameNodeAs(a, b);
+    }
+
+    /**
+     * Iterator which returns the cross product of the equivalence classes
+     * of the unbound positions of each source triple.
+     */
+    protected class ExpandingIterator extends NiceIterator<Triple> {
+
+        /** The canonical triples being expanded */
+        protected ExtendedIterator<Triple> source;
+
+        /** The original pattern nodes, null for wildcard positions */
+        protected Node[] bound = new Node[3];
+
+        /** The candidate nodes for each position of the current source triple */
+        protected List<?>[] choices = new List<?>[3];
+
+        /** Current offset into each candidate list */
+        protected int[] index = new int[3];
+
+        /** The next expanded triple or null if not yet computed */
+        protected Triple lookahead;
+
+        ExpandingIterator(ExtendedIterator<Triple> source, TriplePattern pattern) {
+            this.source = source;
+            bound[0] = boundNode(pattern.getSubject());
+            bound[1] = boundNode(pattern.getPredicate());
+            bound[2] = boundNode(pattern.getObject());
+        }
+
+        private Node boundNode(Node n) {
+            return (n == null || ! n.isConcrete()) ? null : n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (lookahead != null) return true;
+            if (choices[0] != null && advance()) {
+                lookahead = current();
+                return true;
+            }
+            if (source.hasNext()) {
+                Triple t = source.next();
+                choices[0] = candidates(0, t.getSubject());
+                choices[1] = candidates(1, t.getPredicate());
+                choices[2] = candidates(2, t.getObject());
+                index[0] = index[1] = index[2] = 0;
+                lookahead = current();
+                return true;
+            }
+            choices[0] = null;
+            return false;
+        }
+
+        private List<Node> candidates(int position, Node n) {
+            return bound[position] != null ? Collections.singletonList(bound[position]) : getMembers(n);
+        }
+
+        private boolean advance() {
+            for (int i = 2; i >= 0; i--) {
+                if (++index[i] < choices[i].size()) return true;
+                index[i] = 0;
+            }
+            return false;
+        }
+
+        private Triple current() {
+            return new Triple((Node)choices[0].get(index[0]), (Node)choices[1].get(index[1]), (Node)choices[2].get(index[2]));
+        }
+
+        @Override
+        public Triple next() {
+            if ( ! hasNext()) noElements("no more expanded triples");
+            Triple t = lookahead;
+            lookahead = null;
+            return t;
+        }
+
+        @Override
+        public void close() {
+            source.close();
+        }
+    }
+}
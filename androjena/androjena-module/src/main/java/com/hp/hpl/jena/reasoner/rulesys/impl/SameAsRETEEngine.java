@@ -0,0 +1,151 @@
+package com.hp.hpl.jena.reasoner.rulesys.impl;
+
+import java.util.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.reasoner.rulesys.*;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/**
+ * Variant of the RETE engine which handles owl:sameAs through a
+ * {@link SameAsIndex} rather than through the usual equality rules.
+ * The reflexivity, symmetry, transitivity and replacement rules are dropped
+ * at compile time. Every other triple is rewritten to its canonical form
+ * before it is injected into the network, so the network (and the
+ * deductions graph) only ever sees one representative of each equivalence class.
+ * When two classes are merged the triples which mention members of the
+ * absorbed class are found again and re-injected in their new canonical form.
+ * <p>
+ * The parent graph is responsible for expanding canonical results back
+ * to all the equivalent forms when queried.</p>
+ */
+public class SameAsRETEEngine extends RETEEngine {
+
+    /** The equivalence classes shared with the parent graph */
+    protected SameAsIndex index;
+
+    /**
+     * Constructor.
+     * @param parent the F or FB infGraph that it using this engine, the parent graph
+     * holds the deductions graph and source data.
+     * @param rules the rule set to be processed
+     * @param index the sameAs index to maintain, shared with the parent graph
+     */
+    public SameAsRETEEngine(ForwardRuleInfGraphI parent, List<Rule> rules, SameAsIndex index) {
+        super(parent, rules);
+        this.index = index;
+    }
+
+    /**
+     * Constructor. Build an empty engine to which rules must be added
+     * using setRuleStore().
+     * @param parent the F or FB infGraph that it using this engine, the parent graph
+     * holds the deductions graph and source data.
+     * @param index the sameAs index to maintain, shared with the parent graph
+     */
+    public SameAsRETEEngine(ForwardRuleInfGraphI parent, SameAsIndex index) {
+        super(parent);
+        this.index = index;
+    }
+
+    /**
+     * Compile the rules, omitting the equality rules which the index replaces.
+     * Every data triple is then routed through the network, not just those with
+     * predicates used in rules, so that each gets a canonical form recorded.
+     */
+    @Override
+    public void compile(List<Rule> rules, boolean ignoreBrules) {
+        List<Rule> kept = new ArrayList<Rule>(rules.size());
+        for (Iterator<Rule> i = rules.iterator(); i.hasNext(); ) {
+            Rule r = i.next();
+            if (SameAsIndex.isEqualityRule(r)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("sameAs canonicalization replaces rule " + r.toShortString());
+                }
+            } else {
+                kept.add(r);
+            }
+        }
+        index.pinConstants(kept);
+        super.compile(kept, ignoreBrules);
+        wildcardRule = true;
+        predicatesUsed = null;
+    }
+
+    /**
+     * Add a new triple to the network, in canonical form. sameAs triples
+     * are first recorded in the index.
+     * @param triple the new triple
+     * @param deduction true if the triple has been generated by the rules and so should be
+     * added to the deductions graph.
+     */
+    @Override
+    public synchronized void addTriple(Triple triple, boolean deduction) {
+        if (triple.getPredicate().equals(SameAsIndex.sameAs)) {
+            merge(triple.getSubject(), triple.getObject());
+        }
+        Triple canonical = index.canonical(triple);
+        if (canonical == triple) {
+            super.addTriple(triple, deduction);
+        } else if ( ! isKnown(canonical)) {
+            // The canonical form is always a deduction even if the original was asserted
+            super.addTriple(canonical, true);
+        }
+    }
+
+    /**
+     * Deletes cannot be processed incrementally since a merge of two sameAs
+     * classes cannot be undone, so the engine must always be restarted.
+     */
+    @Override
+    public synchronized boolean delete(Triple t) {
+        return false;
+    }
+
+    /**
+     * Merge the classes of two nodes and re-inject, in their new canonical form,
+     * all known triples mentioning a member of the class which was absorbed.
+     */
+    protected void merge(Node a, Node b) {
+        Node ra = index.find(a);
+        Node rb = index.find(b);
+        if (ra.equals(rb)) return;
+        List<Node> membersA = index.getMembers(ra);
+        List<Node> membersB = index.getMembers(rb);
+        Node loser = index.union(ra, rb);
+        List<Node> moved = loser.equals(ra) ? membersA : membersB;
+        List<Triple> affected = new ArrayList<Triple>();
+        for (Iterator<Node> i = moved.iterator(); i.hasNext(); ) {
+            Node m = i.next();
+            collect(infGraph.findDataMatches(m, null, null), affected);
+            collect(infGraph.findDataMatches(null, m, null), affected);
+            collect(infGraph.findDataMatches(null, null, m), affected);
+        }
+        for (Iterator<Triple> i = affected.iterator(); i.hasNext(); ) {
+            addTriple(i.next(), true);
+        }
+    }
+
+    /**
+     * Return true if the triple is already in the data or deductions.
+     */
+    protected boolean isKnown(Triple t) {
+        ClosableIterator<Triple> i = infGraph.findDataMatches(t.getSubject(), t.getPredicate(), t.getObject());
+        try {
+            return i.hasNext();
+        } finally {
+            i.close();
+        }
+    }
+
+    private static void collect(Iterator<Triple> i, List<Triple> result) {
+        while (i.hasNext()) result.add(i.next());
+    }
+
+    /**
+     * Return the sameAs index maintained by this engine.
+     */
+    public SameAsIndex getSameAsIndex() {
+        return index;
+    }
+}
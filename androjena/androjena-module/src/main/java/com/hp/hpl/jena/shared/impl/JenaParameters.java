@@ -104,6 +104,24 @@ public class JenaParameters {
      * will only be unique for this single JVM run.
      */
     public static boolean disableBNodeUIDGeneration = false;
+
+    /**
+     * If this flag is true (default is false) then Factory.createGraphMem, and hence
+     * ModelFactory.createDefaultModel and the reasoners' deductions graphs, build
+     * dictionary-encoded GraphMemInt graphs rather than GraphMemFaster ones. These
+     * hold each triple as three node ids, which needs far less memory for large
+     * graphs; the nodes themselves are held in a dictionary belonging to the graph,
+     * which is rebuilt when most of its nodes are no longer used.
+     */
+    public static boolean enableDictionaryEncodedGraphs = false;
+
+    /**
+     * If this is set (default is null) then rule reasoners with derivation logging
+     * switched on keep their derivation records in a memory-mapped temporary file in
+     * this directory, rather than on the heap, so that the explanations for a large
+     * graph can be paged out. The file is deleted when the InfGraph is closed.
+     */
+    public static String derivationSpillDirectory = null;
 }
 
 
@@ -82,6 +82,10 @@ public class ReasonerVocabulary {
      *  caching in a generic rule reasoner. Set to "true" to enable caching. */
     public static final Property PROPenableTGCCaching = ruleReasonerProperty( "enableTGCCaching" );
     
+    /** Property used to switch on/off union-find canonicalization of owl:sameAs
+     *  classes in a generic rule reasoner. Set to "true" to enable canonicalization. */
+    public static final Property PROPenableSameAsCanonicalization = ruleReasonerProperty( "enableSameAsCanonicalization" );
+    
     /** Property used to switch on/off scanning of data for container membership
      * properties in RDFS preprocessing. */
     public static final Property PROPenableCMPScan = ruleReasonerProperty( "enableCMPScan" );
@@ -94,6 +98,11 @@ public class ReasonerVocabulary {
      *  in the generic rule engine. Default is filtering on. */
     public static final Property PROPenableFunctorFiltering = ruleReasonerProperty( "enableFunctorFiltering" );
     
+    /** Property used to limit the memory used by the tables of backward rule goals
+     *  in a generic rule reasoner. Value is the maximum number of results held for 
+     *  completed goals, the least recently used are evicted beyond that. Default is 0, no limit. */
+    public static final Property PROPmaxTabledResults = ruleReasonerProperty( "maxTabledResults" );
+    
     /** Constant for PROPsetRDFSLevel - default behaviour */
     public static final String RDFS_DEFAULT = RDFSRuleReasoner.DEFAULT_RULES;
     
@@ -0,0 +1,69 @@
+package jena;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.TripleSource;
+import com.hp.hpl.jena.n3.turtle.NTriplesSource;
+import com.hp.hpl.jena.n3.turtle.TurtleSource;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/** A program which loads an N-Triples or Turtle file into a memory graph
+ *  with BulkUpdateHandler.load, reporting the time taken and the load rate.
+ *  With <code>-compare</code> it first loads the file with Model.read, for
+ *  a benchmark of the bulk loader against the ordinary readers.
+ *
+ *  <pre>java jena.bulkload [-compare] file [N-TRIPLE|TURTLE [expectedSize]]</pre>
+ */
+public class bulkload {
+
+    public static void main(String args[]) {
+        int argn = 0;
+        boolean compare = args.length > 0 && args[0].equals("-compare");
+        if (compare) argn++;
+        if (args.length - argn < 1 || args.length - argn > 3) {
+            usage();
+            System.exit(-1);
+        }
+        String file = args[argn];
+        String lang = args.length - argn > 1 ? args[argn + 1] : "N-TRIPLE";
+        int expectedSize = args.length - argn > 2 ? Integer.parseInt(args[argn + 2]) : 0;
+        try {
+            if (compare) {
+                long start = System.currentTimeMillis();
+                Model m = ModelFactory.createDefaultModel();
+                InputStream in = new FileInputStream(file);
+                try { m.read(in, "file:" + file, lang); } finally { in.close(); }
+                report("Model.read", m.size(), System.currentTimeMillis() - start);
+                m.close();
+                System.gc();
+            }
+            long start = System.currentTimeMillis();
+            Graph g = ModelFactory.createDefaultModel().getGraph();
+            InputStream in = new FileInputStream(file);
+            try {
+                TripleSource source = lang.equalsIgnoreCase("TURTLE") || lang.equalsIgnoreCase("TTL")
+                    ? new TurtleSource(in, "file:" + file)
+                    : new NTriplesSource(in);
+                g.getBulkUpdateHandler().load(source, expectedSize);
+            } finally { in.close(); }
+            report("bulk load", g.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            System.err.println("Unhandled exception:");
+            System.err.println("    " + e.toString());
+            System.exit(-1);
+        }
+    }
+
+    protected static void report(String what, long triples, long ms) {
+        System.out.println(what + ": " + triples + " triples in " + ms + "ms ("
+            + (ms == 0 ? "-" : String.valueOf(triples * 1000 / ms)) + " triples/s)");
+    }
+
+    protected static void usage() {
+        System.err.println("usage:");
+        System.err.println("    java jena.bulkload [-compare] file [N-TRIPLE|TURTLE [expectedSize]]");
+    }
+}
@@ -0,0 +1,133 @@
+package jena;
+
+import java.util.Random;
+
+import jena.cmdline.CommandLine;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.LPBackwardRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+
+/**
+ * Benchmark for the LP backward rule interpreter, with and without its
+ * compiled tier. The data is a random tree of "parent" links with a "kind"
+ * for each node; untabled backward rules give the grandparents, the
+ * ancestors up to three steps away, the "kind" of each node's relations
+ * and a label made by a builtin. Nothing is tabled, so every query runs the
+ * rule clauses. The same queries are run over one graph with the compiled
+ * tier off and one with it on, both warmed up first and then timed in turn,
+ * and the best of the timed runs of each is printed.
+ * <p>
+ * Usage: <code>java jena.lpbench [-n nodes] [-q queries] [-r runs]</code>,
+ * by default 2000 nodes, 20000 queries and 5 runs.
+ */
+public class lpbench {
+
+    static final String NS = "urn:x-lpbench:";
+
+    static String p(String name) {
+        return "<" + NS + name + ">";
+    }
+
+    static final String RULES =
+        "[g: (?x " + p("grandparent") + " ?z) <- (?x " + p("parent") + " ?y), (?y " + p("parent") + " ?z)]\n" +
+        "[n1: (?x " + p("near") + " ?y) <- (?x " + p("parent") + " ?y)]\n" +
+        "[n2: (?x " + p("near") + " ?z) <- (?x " + p("grandparent") + " ?z)]\n" +
+        "[n3: (?x " + p("near") + " ?w) <- (?x " + p("grandparent") + " ?z), (?z " + p("parent") + " ?w)]\n" +
+        "[k1: (?x " + p("related") + " " + p("even") + ") <- (?x " + p("near") + " ?y), (?y " + p("kind") + " " + p("even") + ")]\n" +
+        "[k2: (?x " + p("related") + " " + p("odd") + ") <- (?x " + p("near") + " ?y), (?y " + p("kind") + " " + p("odd") + ")]\n" +
+        "[l: (?x " + p("label") + " ?s) <- (?x " + p("parent") + " ?y), strConcat(?x, ' < ', ?y, ?s)]\n";
+
+    public static void main(String[] args) {
+        CommandLine cl = new CommandLine();
+        cl.setUsage("Usage:  lpbench [-n nodes] [-q queries] [-r runs]");
+        cl.add("n", true);
+        cl.add("q", true);
+        cl.add("r", true);
+        cl.process(args);
+        int nodes = cl.contains("n") ? Integer.parseInt(cl.getValue("n")) : 2000;
+        int queries = cl.contains("q") ? Integer.parseInt(cl.getValue("q")) : 20000;
+        int runs = cl.contains("r") ? Integer.parseInt(cl.getValue("r")) : 5;
+
+        Model data = ModelFactory.createDefaultModel();
+        Property parent = data.createProperty(NS + "parent");
+        Property kind = data.createProperty(NS + "kind");
+        Random random = new Random(42);
+        for (int i = 0; i < nodes; i++) {
+            if (i > 0) data.add(node(data, i), parent, node(data, random.nextInt(i)));
+            data.add(node(data, i), kind, data.createResource(NS + (i % 2 == 0 ? "even" : "odd")));
+        }
+
+        System.out.println(nodes + " nodes, " + queries + " queries, best of " + runs + " runs");
+        InfModel interpreted = bind(data, -1);
+        InfModel compiled = bind(data, 0);
+        long results = queries(interpreted, nodes, queries);
+        if (queries(compiled, nodes, queries) != results) {
+            throw new IllegalStateException("interpreted and compiled results differ");
+        }
+        long bestInterpreted = Long.MAX_VALUE;
+        long bestCompiled = Long.MAX_VALUE;
+        for (int r = 0; r < runs; r++) {
+            bestInterpreted = Math.min(bestInterpreted, time(interpreted, nodes, queries));
+            bestCompiled = Math.min(bestCompiled, time(compiled, nodes, queries));
+        }
+        print("interpreted", bestInterpreted, queries, results);
+        print("compiled   ", bestCompiled, queries, results);
+    }
+
+    /**
+     * Bind the rules to the data with the given compile threshold.
+     */
+    protected static InfModel bind(Model data, int threshold) {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        reasoner.setMode(GenericRuleReasoner.BACKWARD);
+        InfModel model = ModelFactory.createInfModel(reasoner, data);
+        ((LPBackwardRuleInfGraph) model.getGraph()).setCompileThreshold(threshold);
+        model.prepare();
+        return model;
+    }
+
+    /**
+     * Return the time in nanoseconds to run the queries.
+     */
+    protected static long time(InfModel model, int nodes, int queries) {
+        long start = System.nanoTime();
+        queries(model, nodes, queries);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Print the time of the best run and the throughput it gives.
+     */
+    protected static void print(String label, long time, int queries, long results) {
+        System.out.println(label + ": " + (time / 1000000) + "ms, "
+                + (1000000000L * queries / Math.max(1, time)) + " queries/s, " + results + " results");
+    }
+
+    /**
+     * Run the queries, the same ones each time.
+     * @return the number of results
+     */
+    protected static long queries(InfModel model, int nodes, int queries) {
+        Property[] predicates = {
+            model.createProperty(NS + "grandparent"), model.createProperty(NS + "near"),
+            model.createProperty(NS + "related"), model.createProperty(NS + "label")
+        };
+        Random random = new Random(7);
+        long results = 0;
+        for (int i = 0; i < queries; i++) {
+            Resource r = node(model, random.nextInt(nodes));
+            StmtIterator it = model.listStatements(r, predicates[i % predicates.length], (RDFNode) null);
+            while (it.hasNext()) {
+                it.next();
+                results++;
+            }
+        }
+        return results;
+    }
+
+    protected static Resource node(Model model, int i) {
+        return model.createResource(NS + "n" + i);
+    }
+}
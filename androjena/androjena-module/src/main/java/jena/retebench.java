@@ -0,0 +1,118 @@
+package jena;
+
+import jena.cmdline.CommandLine;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.impl.RETEQueue;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Benchmark for the joins of the RETE engine, with and without the join
+ * indexes of its queues. The rules are the sameAs symmetry and transitivity,
+ * transitive property and property chain rules of owl2rl.jena. The data is
+ * a chain of sameAs links, a chain of a transitive property and a family
+ * tree for a two step property chain, all of the given length. The rules
+ * are run forward over the data, with join indexes and with each token
+ * matched against the whole sibling queue, and the best of several prepare
+ * times of each is printed, for each length.
+ * <p>
+ * Usage: <code>java jena.retebench [-s length,...] [-n runs]</code>,
+ * by default lengths of 20, 40 and 80 and 3 runs.
+ */
+public class retebench {
+
+    static final String NS = "urn:x-retebench:";
+
+    static final String RDFNS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    static final String OWLNS = "http://www.w3.org/2002/07/owl#";
+
+    static final String CHAIN = "http://niche.cs.dal.ca/owl/reasoning/";
+
+    /** R1, R2, R16 and R75-R77 of owl2rl.jena */
+    static final String RULES =
+        "[R1: (?x <" + OWLNS + "sameAs> ?y) -> (?y <" + OWLNS + "sameAs> ?x)]\n" +
+        "[R2: (?x <" + OWLNS + "sameAs> ?y) (?y <" + OWLNS + "sameAs> ?z) -> (?x <" + OWLNS + "sameAs> ?z)]\n" +
+        "[R16: (?p <" + RDFNS + "type> <" + OWLNS + "TransitiveProperty>) (?x ?p ?y) (?y ?p ?z) -> (?x ?p ?z)]\n" +
+        "[R75: (?l <" + RDFNS + "first> ?p) (?l <" + RDFNS + "rest> <" + RDFNS + "nil>) (?u1 ?p ?u2)" +
+            " -> (?u1 <" + CHAIN + "inPropertyChain> ?l) (?u1 <" + CHAIN + "lastChained> ?u2)]\n" +
+        "[R76: (?l <" + RDFNS + "first> ?p) (?l <" + RDFNS + "rest> ?l2) (?u1 ?p ?u2)" +
+            " (?u2 <" + CHAIN + "inPropertyChain> ?l2) (?u2 <" + CHAIN + "lastChained> ?ul)" +
+            " -> (?u1 <" + CHAIN + "inPropertyChain> ?l) (?u1 <" + CHAIN + "lastChained> ?ul)]\n" +
+        "[R77: (?p <" + OWLNS + "propertyChainAxiom> ?l) (?uf <" + CHAIN + "inPropertyChain> ?l)" +
+            " (?uf <" + CHAIN + "lastChained> ?ul) -> (?uf ?p ?ul)]\n";
+
+    public static void main(String[] args) {
+        CommandLine cl = new CommandLine();
+        cl.setUsage("Usage:  retebench [-s length,...] [-n runs]");
+        cl.add("s", true);
+        cl.add("n", true);
+        cl.process(args);
+        String[] lengths = (cl.contains("s") ? cl.getValue("s") : "20,40,80").split(",");
+        int runs = cl.contains("n") ? Integer.parseInt(cl.getValue("n")) : 3;
+
+        System.out.println("best of " + runs + " runs");
+        for (String length : lengths) {
+            Model data = data(Integer.parseInt(length.trim()));
+            long[] indexed = run(data, true, runs);
+            long[] scanned = run(data, false, runs);
+            System.out.println("length " + length + ": indexed " + indexed[0] + "ms, scanned " + scanned[0]
+                    + "ms, " + indexed[1] + " triples");
+            if (indexed[1] != scanned[1]) {
+                throw new IllegalStateException("indexed and scanned closures differ");
+            }
+        }
+        RETEQueue.useJoinIndex = true;
+    }
+
+    /**
+     * Make the data: x0 ... x<i>n</i> each sameAs the next, t0 ... t<i>n</i>
+     * each linked to the next by a transitive property, and p0 ... p<i>n</i>
+     * each the parent of the next, with a brother each, and uncle defined as
+     * the property chain of parent and brother.
+     */
+    protected static Model data(int n) {
+        Model data = ModelFactory.createDefaultModel();
+        Property linked = data.createProperty(NS + "linked");
+        Property parent = data.createProperty(NS + "parent");
+        Property brother = data.createProperty(NS + "brother");
+        Property uncle = data.createProperty(NS + "uncle");
+        data.add(linked, RDF.type, OWL.TransitiveProperty);
+        RDFList chain = data.createList(new RDFNode[] { parent, brother });
+        data.add(uncle, data.createProperty(OWLNS + "propertyChainAxiom"), chain);
+        for (int i = 0; i < n; i++) {
+            data.add(resource(data, "x", i), OWL.sameAs, resource(data, "x", i + 1));
+            data.add(resource(data, "t", i), linked, resource(data, "t", i + 1));
+            data.add(resource(data, "p", i), parent, resource(data, "p", i + 1));
+            data.add(resource(data, "p", i + 1), brother, resource(data, "b", i + 1));
+        }
+        return data;
+    }
+
+    /**
+     * Run the rules forward over the data with or without join indexes.
+     * @return the best prepare time in ms and the number of triples in the closure
+     */
+    protected static long[] run(Model data, boolean indexed, int runs) {
+        RETEQueue.useJoinIndex = indexed;
+        long best = Long.MAX_VALUE;
+        long size = 0;
+        for (int r = 0; r < runs; r++) {
+            GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+            reasoner.setMode(GenericRuleReasoner.FORWARD_RETE);
+            long start = System.nanoTime();
+            InfModel model = ModelFactory.createInfModel(reasoner, data);
+            model.prepare();
+            best = Math.min(best, System.nanoTime() - start);
+            size = model.size();
+        }
+        return new long[] { best / 1000000, size };
+    }
+
+    protected static Resource resource(Model model, String prefix, int i) {
+        return model.createResource(NS + prefix + i);
+    }
+}
@@ -0,0 +1,110 @@
+package jena;
+
+import java.util.Random;
+
+import jena.cmdline.CommandLine;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+
+/**
+ * Benchmark for queries from several threads against one hybrid rule
+ * InfModel. The data is a random tree of "parent" links; a forward rule
+ * adds the inverse "child" links and tabled backward rules give the
+ * "ancestor" and "descendant" closures. Each thread asks for the ancestors
+ * and descendants of random nodes. Every node is first queried once to fill
+ * the tables, then the queries are timed with 1 thread and with the given
+ * number of threads.
+ * <p>
+ * Usage: <code>java jena.rulebench [-n nodes] [-t threads] [-q queries]</code>,
+ * by default 2000 nodes, 4 threads and 20000 queries per thread.
+ */
+public class rulebench {
+
+    static final String NS = "urn:x-rulebench:";
+
+    static final String RULES =
+        "[child: (?x <" + NS + "parent> ?y) -> (?y <" + NS + "child> ?x)]\n" +
+        "-> table(<" + NS + "ancestor>), table(<" + NS + "descendant>).\n" +
+        "[anc1: (?x <" + NS + "ancestor> ?y) <- (?x <" + NS + "parent> ?y)]\n" +
+        "[anc2: (?x <" + NS + "ancestor> ?y) <- (?x <" + NS + "parent> ?z), (?z <" + NS + "ancestor> ?y)]\n" +
+        "[desc: (?x <" + NS + "descendant> ?y) <- (?y <" + NS + "ancestor> ?x)]\n";
+
+    public static void main(String[] args) {
+        CommandLine cl = new CommandLine();
+        cl.setUsage("Usage:  rulebench [-n nodes] [-t threads] [-q queries]");
+        cl.add("n", true);
+        cl.add("t", true);
+        cl.add("q", true);
+        cl.process(args);
+        int nodes = cl.contains("n") ? Integer.parseInt(cl.getValue("n")) : 2000;
+        int threads = cl.contains("t") ? Integer.parseInt(cl.getValue("t")) : 4;
+        int queries = cl.contains("q") ? Integer.parseInt(cl.getValue("q")) : 20000;
+
+        Model data = ModelFactory.createDefaultModel();
+        Property parent = data.createProperty(NS + "parent");
+        Random random = new Random(42);
+        for (int i = 1; i < nodes; i++) {
+            data.add(node(data, i), parent, node(data, random.nextInt(i)));
+        }
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        reasoner.setMode(GenericRuleReasoner.HYBRID);
+        InfModel model = ModelFactory.createInfModel(reasoner, data);
+        model.prepare();
+
+        System.out.println(nodes + " nodes, " + queries + " queries per thread");
+        Property ancestor = model.createProperty(NS + "ancestor");
+        Property descendant = model.createProperty(NS + "descendant");
+        for (int i = 0; i < nodes; i++) {
+            model.listStatements(node(model, i), ancestor, (RDFNode) null).toList();
+            model.listStatements(node(model, i), descendant, (RDFNode) null).toList();
+        }
+        run(model, nodes, queries, 1, "1 thread");
+        run(model, nodes, queries, threads, threads + " threads");
+    }
+
+    /**
+     * Run the queries on the given number of threads and print the throughput.
+     */
+    protected static void run(final InfModel model, final int nodes, final int queries, int threads, String label) {
+        final Property ancestor = model.createProperty(NS + "ancestor");
+        final Property descendant = model.createProperty(NS + "descendant");
+        final long[] results = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    for (int i = 0; i < queries; i++) {
+                        Resource r = node(model, random.nextInt(nodes));
+                        Property p = (i % 2 == 0) ? ancestor : descendant;
+                        StmtIterator it = model.listStatements(r, p, (RDFNode) null);
+                        while (it.hasNext()) {
+                            it.next();
+                            results[id]++;
+                        }
+                    }
+                }
+            };
+        }
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < threads; t++) workers[t].start();
+        try {
+            for (int t = 0; t < threads; t++) workers[t].join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        long total = 0;
+        for (int t = 0; t < threads; t++) total += results[t];
+        System.out.println(label + ": " + (1000L * queries * threads / time) + " queries/s, "
+                + total + " results in " + time + "ms");
+    }
+
+    protected static Resource node(Model model, int i) {
+        return model.createResource(NS + "n" + i);
+    }
+}
@@ -0,0 +1,121 @@
+package jena;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jena.cmdline.CommandLine;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.RuleSetFile;
+import com.hp.hpl.jena.util.FileUtils;
+
+/**
+ * Benchmark for the startup cost of a rule reasoner. A rule set, such as
+ * owl2rl.jena, is saved as a precompiled {@link RuleSetFile} and then a
+ * reasoner is made and run over some data, such as pizza.owl, in three ways:
+ * from the rule text, which is parsed; from the precompiled file, which is
+ * memory mapped; and from a reasoner made and bound once before, which is
+ * how a long running application would reuse the rules. For each the time
+ * to get the rules and the time to bind and prepare the inference graph are
+ * printed, best of several runs. The time to prepare a new reasoner over no
+ * data is printed too: that is the cost of building the rule engines, and of
+ * the closure of any axioms of the rules, which no form of the rules saves.
+ * <p>
+ * Usage: <code>java jena.rulestartbench -r rules [-d data] [-l lang] [-n runs]</code>,
+ * by default 10 runs.
+ */
+public class rulestartbench {
+
+    static final String USAGE = "Usage:  rulestartbench -r rules [-d data] [-l lang] [-n runs]";
+
+    public static void main(String[] args) throws IOException {
+        CommandLine cl = new CommandLine();
+        cl.setUsage(USAGE);
+        cl.add("r", true);
+        cl.add("d", true);
+        cl.add("l", true);
+        cl.add("n", true);
+        cl.process(args);
+        if (!cl.contains("r")) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        int runs = cl.contains("n") ? Integer.parseInt(cl.getValue("n")) : 10;
+
+        String text = FileUtils.readWholeFileAsUTF8(cl.getValue("r"));
+        Model data = ModelFactory.createDefaultModel();
+        if (cl.contains("d")) {
+            String file = cl.getValue("d");
+            String lang = cl.contains("l") ? cl.getValue("l") : FileUtils.guessLang(file);
+            InputStream in = new FileInputStream(file);
+            try {
+                data.read(in, null, lang);
+            } finally {
+                in.close();
+            }
+        }
+        Model empty = ModelFactory.createDefaultModel();
+        File compiled = File.createTempFile("rules", ".rsf");
+        compiled.deleteOnExit();
+        RuleSetFile.write(Rule.parseRules(text), compiled);
+        GenericRuleReasoner cached = new GenericRuleReasoner(Rule.parseRules(text));
+        ModelFactory.createInfModel(cached, data).prepare();
+
+        System.out.println(Rule.parseRules(text).size() + " rules, " + text.length() + " chars of text, "
+                + compiled.length() + " bytes precompiled, " + data.size() + " data triples, best of "
+                + runs + " runs");
+        long[][] times = new long[4][2];
+        for (long[] t : times) {
+            t[0] = t[1] = Long.MAX_VALUE;
+        }
+        long size = -1;
+        for (int r = 0; r < runs; r++) {
+            for (int way = 0; way < 4; way++) {
+                long start = System.nanoTime();
+                GenericRuleReasoner reasoner;
+                if (way == 0) {
+                    reasoner = new GenericRuleReasoner(Rule.parseRules(text));
+                } else if (way == 1) {
+                    reasoner = new GenericRuleReasoner(RuleSetFile.read(compiled));
+                } else if (way == 2) {
+                    reasoner = cached;
+                } else {
+                    reasoner = new GenericRuleReasoner(Rule.parseRules(text));
+                }
+                long loaded = System.nanoTime();
+                InfModel model = ModelFactory.createInfModel(reasoner, way == 3 ? empty : data);
+                model.prepare();
+                long prepared = System.nanoTime();
+                if (way == 3) {
+                    // No data, so a different closure
+                } else if (size == -1) {
+                    size = model.size();
+                } else if (model.size() != size) {
+                    throw new IllegalStateException("inference graphs differ in size");
+                }
+                times[way][0] = Math.min(times[way][0], loaded - start);
+                times[way][1] = Math.min(times[way][1], prepared - loaded);
+            }
+        }
+        print("parsed     ", times[0]);
+        print("precompiled", times[1]);
+        print("cached     ", times[2]);
+        print("no data    ", times[3]);
+        System.out.println(size + " triples");
+    }
+
+    /**
+     * Print the times of a way of getting the reasoner.
+     */
+    protected static void print(String label, long[] times) {
+        System.out.println(label + ": rules " + micros(times[0]) + ", prepare " + micros(times[1]));
+    }
+
+    protected static String micros(long nanos) {
+        return (nanos / 1000) + "us";
+    }
+}
@@ -0,0 +1,154 @@
+package jena;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import jena.cmdline.CommandLine;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.util.FileUtils;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Benchmark for sameAs canonicalization in the hybrid rule reasoner. An
+ * OWL 2 RL rule set, such as owl2rl.jena, is run over an ontology, such as
+ * pizza.owl, plus synthetic individuals joined by a chain of owl:sameAs
+ * links, each with a type and a property value of its own. The reasoner is
+ * run with its equality rules and with sameAs canonicalization, and for
+ * each the time to prepare the inference graph and to answer a set of
+ * queries is printed, best of several runs. The query answers of the two
+ * must agree, leaving out reflexive sameAs statements.
+ * <p>
+ * Usage: <code>java jena.sameasbench -r rules [-d data] [-l lang] [-s links] [-n runs]</code>,
+ * by default 30 sameAs links and 3 runs.
+ */
+public class sameasbench {
+
+    static final String NS = "urn:x-sameasbench:";
+
+    static final String USAGE = "Usage:  sameasbench -r rules [-d data] [-l lang] [-s links] [-n runs]";
+
+    public static void main(String[] args) throws IOException {
+        CommandLine cl = new CommandLine();
+        cl.setUsage(USAGE);
+        cl.add("r", true);
+        cl.add("d", true);
+        cl.add("l", true);
+        cl.add("s", true);
+        cl.add("n", true);
+        cl.process(args);
+        if (!cl.contains("r")) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        int links = cl.contains("s") ? Integer.parseInt(cl.getValue("s")) : 30;
+        int runs = cl.contains("n") ? Integer.parseInt(cl.getValue("n")) : 3;
+
+        List<Rule> rules = Rule.parseRules(FileUtils.readWholeFileAsUTF8(cl.getValue("r")));
+        Model data = ModelFactory.createDefaultModel();
+        if (cl.contains("d")) {
+            String file = cl.getValue("d");
+            String lang = cl.contains("l") ? cl.getValue("l") : FileUtils.guessLang(file);
+            InputStream in = new FileInputStream(file);
+            try {
+                data.read(in, null, lang);
+            } finally {
+                in.close();
+            }
+        }
+        int ontology = (int) data.size();
+        addSameAsChain(data, links);
+
+        System.out.println(rules.size() + " rules, " + ontology + " ontology triples, " + links
+                + " sameAs links, best of " + runs + " runs");
+        long[] equality = run(rules, data, false, runs);
+        long[] canonical = run(rules, data, true, runs);
+        print("equality rules", equality);
+        print("canonicalized ", canonical);
+        if (equality[2] != canonical[2]) {
+            throw new IllegalStateException("query answers differ: " + equality[2] + " and " + canonical[2]);
+        }
+    }
+
+    /**
+     * Add individuals x0 ... x<i>links</i>, each sameAs the next, with a
+     * type and a value of their own.
+     */
+    protected static void addSameAsChain(Model data, int links) {
+        Property value = data.createProperty(NS + "value");
+        for (int i = 0; i <= links; i++) {
+            Resource x = individual(data, i);
+            x.addProperty(RDF.type, data.createResource(NS + "C" + (i % 3)));
+            x.addLiteral(value, (long) i);
+            if (i < links) x.addProperty(OWL.sameAs, individual(data, i + 1));
+        }
+    }
+
+    /**
+     * Bind the rules to the data, with or without canonicalization, and
+     * time the preparation and the queries.
+     * @return the best prepare time, the best query time, both in ms, and
+     * the number of query answers
+     */
+    protected static long[] run(List<Rule> rules, Model data, boolean canonicalize, int runs) {
+        long bestPrepare = Long.MAX_VALUE;
+        long bestQuery = Long.MAX_VALUE;
+        long answers = 0;
+        for (int r = 0; r < runs; r++) {
+            GenericRuleReasoner reasoner = new GenericRuleReasoner(rules);
+            reasoner.setSameAsCanonicalization(canonicalize);
+            long start = System.nanoTime();
+            InfModel model = ModelFactory.createInfModel(reasoner, data);
+            model.prepare();
+            long prepared = System.nanoTime();
+            answers = queries(model);
+            long queried = System.nanoTime();
+            bestPrepare = Math.min(bestPrepare, prepared - start);
+            bestQuery = Math.min(bestQuery, queried - prepared);
+        }
+        return new long[] { bestPrepare / 1000000, bestQuery / 1000000, answers };
+    }
+
+    /**
+     * Ask about the individuals of the chain. Reflexive sameAs answers are
+     * not counted, as canonicalization only gives them for members of
+     * classes with more than one member.
+     * @return the number of answers
+     */
+    protected static long queries(InfModel model) {
+        Resource x0 = individual(model, 0);
+        return count(model.listStatements(x0, null, (RDFNode) null))
+            + count(model.listStatements(null, OWL.sameAs, x0))
+            + count(model.listStatements(null, RDF.type, model.createResource(NS + "C0")))
+            + count(model.listStatements(null, model.createProperty(NS + "value"), (RDFNode) null));
+    }
+
+    /**
+     * Count the statements, other than reflexive sameAs statements.
+     */
+    protected static long count(StmtIterator it) {
+        long n = 0;
+        while (it.hasNext()) {
+            Statement s = it.nextStatement();
+            if (!(s.getPredicate().equals(OWL.sameAs) && s.getSubject().equals(s.getObject()))) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Print the times of a mode.
+     */
+    protected static void print(String label, long[] times) {
+        System.out.println(label + ": prepare " + times[0] + "ms, queries " + times[1] + "ms, "
+                + times[2] + " answers");
+    }
+
+    protected static Resource individual(Model model, int i) {
+        return model.createResource(NS + "x" + i);
+    }
+}
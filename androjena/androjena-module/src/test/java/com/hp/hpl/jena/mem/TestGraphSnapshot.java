@@ -0,0 +1,125 @@
+package com.hp.hpl.jena.mem;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Tests for snapshots of a changing graph, made from a chain of deltas.
+ */
+public class TestGraphSnapshot {
+
+    static final Node p = Node.createURI("http://example/p");
+    static final Node q = Node.createURI("http://example/q");
+
+    static Triple triple(Random random) {
+        return Triple.create(Node.createURI("http://example/s" + random.nextInt(50)),
+                random.nextBoolean() ? p : q, Node.createLiteral("o" + random.nextInt(50)));
+    }
+
+    static Set<Triple> contents(Graph g, Node P) {
+        List<Triple> found = g.find(Node.ANY, P, Node.ANY).toList();
+        Set<Triple> result = new HashSet<Triple>(found);
+        assertEquals("no duplicates", found.size(), result.size());
+        return result;
+    }
+
+    static Set<Triple> only(Set<Triple> triples, Node P) {
+        Set<Triple> result = new HashSet<Triple>();
+        for (Triple t : triples) {
+            if (t.getPredicate().equals(P)) result.add(t);
+        }
+        return result;
+    }
+
+    static void check(Set<Triple> expected, GraphSnapshot snapshot) {
+        assertEquals(expected, contents(snapshot, Node.ANY));
+        assertEquals(only(expected, p), contents(snapshot, p));
+        assertEquals(expected.size(), snapshot.size());
+        for (Triple t : expected) {
+            assertTrue(snapshot.hasTriple(t));
+        }
+    }
+
+    @Test
+    public void batchesMakeSnapshots() {
+        Graph g = new GraphMem();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i += 1) g.add(triple(random));
+        GraphSnapshots snapshots = new GraphSnapshots(g, 0);
+        List<GraphSnapshot> published = new ArrayList<GraphSnapshot>();
+        List<Set<Triple>> expected = new ArrayList<Set<Triple>>();
+        int longest = 0;
+        for (int batch = 1; batch <= 60; batch += 1) {
+            // batches of varying size, with triples removed and added back
+            int n = 1 + random.nextInt(batch % 7 == 0 ? 40 : 5);
+            for (int i = 0; i < n; i += 1) {
+                Triple t = triple(random);
+                if (random.nextInt(3) == 0) g.delete(t); else g.add(t);
+            }
+            published.add(snapshots.publish(batch));
+            expected.add(new HashSet<Triple>(g.find(Node.ANY, Node.ANY, Node.ANY).toList()));
+            longest = Math.max(longest, published.get(published.size() - 1).chainLength());
+        }
+        assertTrue(longest > 1);
+        assertTrue(longest <= 8);
+        // earlier snapshots are unchanged by later batches
+        for (int i = 0; i < published.size(); i += 1) {
+            assertEquals(i + 1, published.get(i).getVersion());
+            check(expected.get(i), published.get(i));
+        }
+        snapshots.close();
+    }
+
+    @Test
+    public void removedAndAddedBackIsFoundOnce() {
+        Graph g = new GraphMem();
+        Triple a = Triple.create(Node.createURI("http://example/a"), p, Node.createURI("http://example/b"));
+        Triple b = Triple.create(Node.createURI("http://example/a"), q, Node.createLiteral("x"));
+        g.add(a);
+        GraphSnapshots snapshots = new GraphSnapshots(g, 0);
+        g.delete(a);
+        g.add(b);
+        GraphSnapshot one = snapshots.publish(1);
+        g.add(a);
+        GraphSnapshot two = snapshots.publish(2);
+        g.delete(b);
+        GraphSnapshot three = snapshots.publish(3);
+        g.add(b);
+        GraphSnapshot four = snapshots.publish(4);
+        assertFalse(one.contains(a));
+        assertTrue(one.contains(b));
+        assertEquals(2, contents(two, Node.ANY).size());
+        assertTrue(two.contains(a));
+        assertFalse(three.contains(b));
+        assertFalse(three.hasTriple(b));
+        assertEquals(1, three.size());
+        assertEquals(2, contents(four, Node.ANY).size());
+        assertTrue(four.hasTriple(b));
+        snapshots.close();
+    }
+
+    @Test
+    public void largeChangesCompact() {
+        Graph g = new GraphMem();
+        Random random = new Random(11);
+        GraphSnapshots snapshots = new GraphSnapshots(g, 0);
+        for (int i = 0; i < 3 * GraphSnapshot.MIN_COMPACT; i += 1) {
+            g.add(Triple.create(Node.createURI("http://example/s" + i), p, Node.createLiteral("o" + random.nextInt(50))));
+        }
+        GraphSnapshot s = snapshots.publish(1);
+        assertEquals(0, s.chainLength());
+        check(new HashSet<Triple>(g.find(Node.ANY, Node.ANY, Node.ANY).toList()), s);
+        snapshots.close();
+    }
+}
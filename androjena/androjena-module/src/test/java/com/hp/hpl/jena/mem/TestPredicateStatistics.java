@@ -0,0 +1,120 @@
+package com.hp.hpl.jena.mem;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.mem.faster.GraphMemFaster;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Tests that the per-predicate counts of different subjects and objects
+ * are kept up to date as a graph changes.
+ */
+public class TestPredicateStatistics {
+
+    static final Node p = Node.createURI("http://example/p");
+    static final Node q = Node.createURI("http://example/q");
+
+    static Node node(String name, int i) {
+        return Node.createURI("http://example/" + name + i);
+    }
+
+    static GraphMemStatisticsHandler stats(Graph g) {
+        return (GraphMemStatisticsHandler) g.getStatisticsHandler();
+    }
+
+    /** Check the handler's counts against counting the graph by brute force */
+    static void check(GraphMemStatisticsHandler stats, Graph g, Node P) {
+        Set<Node> subjects = new HashSet<Node>(), objects = new HashSet<Node>();
+        ExtendedIterator<Triple> it = g.find(Node.ANY, P, Node.ANY);
+        while (it.hasNext()) {
+            Triple t = it.next();
+            subjects.add(t.getSubject());
+            objects.add(t.getObject());
+        }
+        assertEquals(subjects.size(), stats.getDistinctSubjects(P));
+        assertEquals(objects.size(), stats.getDistinctObjects(P));
+    }
+
+    @Test
+    public void countsFollowAddsAndDeletes() {
+        Graph g = new GraphMem();
+        g.add(Triple.create(node("s", 1), p, node("o", 1)));
+        GraphMemStatisticsHandler stats = stats(g);
+        check(stats, g, p);
+        g.add(Triple.create(node("s", 1), p, node("o", 2)));
+        g.add(Triple.create(node("s", 2), p, node("o", 2)));
+        g.add(Triple.create(node("s", 2), p, node("o", 2)));
+        assertEquals(2, stats.getDistinctSubjects(p));
+        assertEquals(2, stats.getDistinctObjects(p));
+        g.delete(Triple.create(node("s", 1), p, node("o", 1)));
+        assertEquals(2, stats.getDistinctSubjects(p));
+        assertEquals(1, stats.getDistinctObjects(p));
+        g.delete(Triple.create(node("s", 1), p, node("o", 1)));
+        g.delete(Triple.create(node("s", 1), p, node("o", 2)));
+        assertEquals(1, stats.getDistinctSubjects(p));
+        g.delete(Triple.create(node("s", 2), p, node("o", 2)));
+        assertEquals(0, stats.getDistinctSubjects(p));
+        assertEquals(0, stats.getDistinctObjects(p));
+        assertEquals(0, stats.getDistinctObjects(q));
+    }
+
+    @Test
+    public void countsFollowIteratorRemovesAndClear() {
+        Graph g = new GraphMemFaster();
+        for (int i = 0; i < 20; i += 1) {
+            g.add(Triple.create(node("s", i % 5), p, node("o", i)));
+            g.add(Triple.create(node("s", i), q, node("o", i % 3)));
+        }
+        GraphMemStatisticsHandler stats = stats(g);
+        check(stats, g, p);
+        check(stats, g, q);
+        ExtendedIterator<Triple> it = g.find(Node.ANY, p, Node.ANY);
+        while (it.hasNext()) {
+            Triple t = it.next();
+            if (!t.getSubject().equals(node("s", 0))) it.remove();
+        }
+        assertEquals(1, stats.getDistinctSubjects(p));
+        check(stats, g, p);
+        check(stats, g, q);
+        g.getBulkUpdateHandler().removeAll();
+        assertEquals(0, stats.getDistinctSubjects(q));
+        assertEquals(0, stats.getDistinctObjects(p));
+        g.add(Triple.create(node("s", 1), q, node("o", 1)));
+        check(stats, g, q);
+    }
+
+    @Test
+    public void countsSurviveChurn() {
+        Graph g = new GraphMem();
+        GraphMemStatisticsHandler stats = stats(g);
+        Random random = new Random(42);
+        Set<Triple> held = new HashSet<Triple>();
+        for (int i = 0; i < 5000; i += 1) {
+            Triple t = Triple.create(node("s", random.nextInt(30)), random.nextBoolean() ? p : q,
+                    node("o", random.nextInt(40)));
+            if (random.nextInt(3) == 0) {
+                g.delete(t);
+                held.remove(t);
+            } else {
+                g.add(t);
+                held.add(t);
+            }
+        }
+        assertEquals(held.size(), g.size());
+        check(stats, g, p);
+        check(stats, g, q);
+        for (Iterator<Triple> it = held.iterator(); it.hasNext();) g.delete(it.next());
+        assertEquals(0, stats.getDistinctSubjects(p));
+        assertEquals(0, stats.getDistinctObjects(q));
+    }
+}
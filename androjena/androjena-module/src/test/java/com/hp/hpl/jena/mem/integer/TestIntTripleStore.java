@@ -0,0 +1,101 @@
+package com.hp.hpl.jena.mem.integer;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.shared.ReificationStyle;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Tests for the node dictionaries of dictionary-encoded graphs.
+ */
+public class TestIntTripleStore {
+
+    static final Node p = Node.createURI("http://example/p");
+
+    static Triple triple(int i) {
+        return Triple.create(Node.createURI("http://example/s" + i), p, Node.createLiteral("o" + i));
+    }
+
+    @Test
+    public void graphsHaveTheirOwnDictionaries() {
+        GraphMemInt a = new GraphMemInt(), b = new GraphMemInt();
+        assertNotSame(a.getIntStore().getDictionary(), b.getIntStore().getDictionary());
+        NodeDictionary shared = new NodeDictionary();
+        GraphMemInt c = new GraphMemInt(ReificationStyle.Minimal, shared);
+        GraphMemInt d = new GraphMemInt(ReificationStyle.Minimal, shared);
+        c.add(triple(1));
+        d.add(triple(1));
+        assertSame(shared, d.getIntStore().getDictionary());
+        assertEquals(3, shared.size());
+    }
+
+    @Test
+    public void dictionaryDoesNotGrowWithChurn() {
+        GraphMemInt g = new GraphMemInt();
+        for (int i = 0; i < 100000; i++) {
+            g.add(triple(i));
+            if (i >= 10) g.delete(triple(i - 10));
+        }
+        assertEquals(10, g.size());
+        assertTrue(g.getIntStore().getDictionary().size() < 2 * IntTripleStore.MIN_COMPACT);
+        for (int i = 100000 - 10; i < 100000; i++) {
+            assertTrue(g.contains(triple(i)));
+        }
+        assertFalse(g.contains(triple(0)));
+        assertEquals(10, g.find(Node.ANY, p, Node.ANY).toList().size());
+    }
+
+    @Test
+    public void sharedDictionaryIsNotCompacted() {
+        NodeDictionary shared = new NodeDictionary();
+        GraphMemInt g = new GraphMemInt(ReificationStyle.Minimal, shared);
+        for (int i = 0; i < 3000; i++) {
+            g.add(triple(i));
+            g.delete(triple(i));
+        }
+        assertSame(shared, g.getIntStore().getDictionary());
+        assertEquals(6001, shared.size());
+    }
+
+    @Test
+    public void iteratorSurvivesCompaction() {
+        GraphMemInt g = new GraphMemInt();
+        for (int i = 0; i < 2000; i++) {
+            g.add(triple(i));
+        }
+        for (int i = 0; i < 1990; i++) {
+            g.delete(triple(i));
+        }
+        NodeDictionary before = g.getIntStore().getDictionary();
+        ExtendedIterator<Triple> it = g.find(Node.ANY, p, Node.ANY);
+        Set<Triple> seen = new HashSet<Triple>();
+        seen.add(it.next());
+        // Enough new nodes to reach the next check, which finds most ids unused
+        for (int i = 2000; i < 2100; i++) {
+            g.getIntStore().add(triple(i));
+        }
+        assertNotSame(before, g.getIntStore().getDictionary());
+        while (it.hasNext()) seen.add(it.next());
+        assertEquals(10, seen.size());
+        for (int i = 1990; i < 2000; i++) {
+            assertTrue(seen.contains(triple(i)));
+        }
+    }
+
+    @Test
+    public void clearForgetsTheNodes() {
+        GraphMemInt g = new GraphMemInt();
+        for (int i = 0; i < 100; i++) g.add(triple(i));
+        g.clear();
+        assertEquals(0, g.getIntStore().getDictionary().size());
+        g.add(triple(1));
+        assertTrue(g.contains(triple(1)));
+    }
+}
@@ -0,0 +1,54 @@
+package com.hp.hpl.jena.n3.turtle;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.shared.JenaException;
+
+/**
+ * Tests for the streaming N-Triples reader.
+ */
+public class TestNTriplesSource {
+
+    private static Graph read(String text) {
+        Graph g = Factory.createGraphMem();
+        new NTriplesSource(new StringReader(text)).sendTo(g);
+        return g;
+    }
+
+    @Test
+    public void blankNodeLabelEndsBeforeDot() {
+        Graph g = read("_:b1 <http://example/p> _:b2.\n_:b2 <http://example/p> _:b1 .\n");
+        assertEquals(2, g.size());
+        Triple t = g.find(Node.ANY, Node.ANY, Node.ANY).next();
+        assertTrue(g.contains(t.getObject(), t.getPredicate(), t.getSubject()));
+    }
+
+    @Test
+    public void blankNodeLabelMayContainDots() {
+        Graph g = read("_:a.b <http://example/p> \"x\".\n");
+        assertEquals(1, g.size());
+        Graph h = read("_:a.b <http://example/p> \"x\" .\n_:a.b <http://example/q> \"y\" .\n");
+        Node s = h.find(Node.ANY, Node.createURI("http://example/p"), Node.ANY).next().getSubject();
+        assertTrue(h.contains(s, Node.createURI("http://example/q"), Node.createLiteral("y")));
+    }
+
+    @Test
+    public void iriAndLiteralTerms() {
+        Graph g = read("<http://example/s> <http://example/p> \"v\"@en .\n"
+                + "<http://example/s> <http://example/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int>.\n");
+        assertEquals(2, g.size());
+    }
+
+    @Test(expected = JenaException.class)
+    public void missingDotIsAnError() {
+        read("_:b1 <http://example/p> _:b2\n");
+    }
+}
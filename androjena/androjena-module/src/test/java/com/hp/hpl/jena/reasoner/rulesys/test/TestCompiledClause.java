@@ -0,0 +1,147 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.LPBackwardRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.impl.LPBRuleEngine;
+import com.hp.hpl.jena.reasoner.rulesys.impl.LPRuleStore;
+import com.hp.hpl.jena.reasoner.rulesys.impl.RuleClauseCode;
+
+/**
+ * Tests for the compiled tier of the LP interpreter, and for rule clauses
+ * with more variables than the interpreter has by default.
+ */
+public class TestCompiledClause {
+
+    static final String NS = "http://example/";
+
+    static String p(String name) {
+        return "<" + NS + name + ">";
+    }
+
+    static final String RULES =
+        "[a1: (?a " + p("anc") + " ?b) <- (?a " + p("parent") + " ?b)]" +
+        "[a2: (?a " + p("anc") + " ?c) <- (?a " + p("parent") + " ?b), (?b " + p("anc") + " ?c)]" +
+        "[k1: (?a " + p("kind") + " " + p("parentOf") + ") <- (?a " + p("parent") + " ?b)]" +
+        "[k2: (?a " + p("kind") + " " + p("childOf") + ") <- (?b " + p("parent") + " ?a)]" +
+        "[f1: (?a " + p("pair") + " f(?b, ?c)) <- (?a " + p("parent") + " ?b), (?b " + p("parent") + " ?c)]" +
+        "[f2: (?a " + p("second") + " ?c) <- (?a " + p("pair") + " f(?b, ?c))]" +
+        "[s1: (?a " + p("label") + " ?s) <- (?a " + p("parent") + " ?b), strConcat(?a, ' > ', ?b, ?s)]";
+
+    static final Node[] PREDICATES = {
+        node("anc"), node("kind"), node("pair"), node("second"), node("label")
+    };
+
+    /** A backward graph which gives the tests its engine */
+    static class EngineGraph extends LPBackwardRuleInfGraph {
+        EngineGraph(String rules, Graph data) {
+            super(new GenericRuleReasoner(Rule.parseRules(rules)), new LPRuleStore(Rule.parseRules(rules)), data, null);
+        }
+
+        LPBRuleEngine getEngine() {
+            return engine;
+        }
+    }
+
+    static Node node(String name) {
+        return Node.createURI(NS + name);
+    }
+
+    static Node node(int i) {
+        return node("n" + i);
+    }
+
+    static EngineGraph chain(String rules, int length, int threshold) {
+        Graph data = Factory.createGraphMem();
+        for (int i = 0; i + 1 < length; i++) {
+            data.add(Triple.create(node(i), node("parent"), node(i + 1)));
+        }
+        EngineGraph g = new EngineGraph(rules, data);
+        g.setCompileThreshold(threshold);
+        g.prepare();
+        return g;
+    }
+
+    /** Run each goal twice over, so that a small threshold compiles the clauses part way through */
+    static Set<Triple> answers(EngineGraph g) {
+        Set<Triple> result = new HashSet<Triple>();
+        for (int round = 0; round < 2; round++) {
+            for (Node predicate : PREDICATES) {
+                result.addAll(g.find(Node.ANY, predicate, Node.ANY).toList());
+                result.addAll(g.find(node(2), predicate, Node.ANY).toList());
+                result.addAll(g.find(Node.ANY, predicate, node(5)).toList());
+            }
+            result.addAll(g.find(Node.ANY, node("kind"), node("childOf")).toList());
+            result.addAll(g.find(node(0), node("pair"), Node.ANY).toList());
+        }
+        return result;
+    }
+
+    @Test
+    public void compiledAndInterpretedAgree() {
+        EngineGraph interpreted = chain(RULES, 8, -1);
+        Set<Triple> expected = answers(interpreted);
+        assertTrue(expected.contains(Triple.create(node(1), node("second"), node(3))));
+        assertTrue(expected.contains(Triple.create(node(7), node("kind"), node("childOf"))));
+        for (RuleClauseCode clause : interpreted.getEngine().getRuleStore().codeFor(node("anc"))) {
+            assertNull(clause.getCompiled());
+        }
+        for (int threshold : new int[] { 0, 1, 5 }) {
+            EngineGraph compiled = chain(RULES, 8, threshold);
+            assertEquals("threshold " + threshold, expected, answers(compiled));
+            for (Node predicate : PREDICATES) {
+                for (RuleClauseCode clause : compiled.getEngine().getRuleStore().codeFor(predicate)) {
+                    assertNotNull(clause.getCompiled());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compilingIsOffByDefault() {
+        EngineGraph g = new EngineGraph(RULES, Factory.createGraphMem());
+        assertTrue(g.getEngine().getCompileThreshold() < 0);
+    }
+
+    @Test
+    public void coldPredicatesAreNotCompiled() {
+        EngineGraph g = chain(RULES, 8, 1000);
+        g.find(node(0), node("kind"), Node.ANY).toList();
+        for (RuleClauseCode clause : g.getEngine().getRuleStore().codeFor(node("kind"))) {
+            assertNull(clause.getCompiled());
+        }
+    }
+
+    @Test
+    public void clausesWithManyVariables() {
+        // A chain of 18 calls needs more than 15 permanent variables, and the
+        // builtin call more than 8 argument variables
+        StringBuilder body = new StringBuilder();
+        StringBuilder concat = new StringBuilder("strConcat(?v0");
+        for (int i = 0; i < 18; i++) {
+            body.append("(?v" + i + " " + p("parent") + " ?v" + (i + 1) + "), ");
+            if (i < 11) concat.append(", ?v" + (i + 1));
+        }
+        String rules = "[long: (?v0 " + p("long") + " ?s) <- " + body + concat + ", ?s)]";
+        for (int threshold : new int[] { -1, 0 }) {
+            EngineGraph g = chain(rules, 21, threshold);
+            Set<Triple> found = new HashSet<Triple>(g.find(Node.ANY, node("long"), Node.ANY).toList());
+            assertTrue(g.getEngine().getRuleStore().getArgumentVarCount() > RuleClauseCode.MAX_ARGUMENT_VARS);
+            assertEquals(3, found.size());
+            StringBuilder expected = new StringBuilder();
+            for (int i = 1; i <= 12; i++) expected.append(NS + "n" + i);
+            assertTrue(found.contains(Triple.create(node(1), node("long"), Node.createLiteral(expected.toString()))));
+        }
+    }
+}
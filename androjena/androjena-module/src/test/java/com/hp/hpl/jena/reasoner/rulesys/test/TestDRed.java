@@ -0,0 +1,184 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.BaseInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+
+/**
+ * Tests for the incremental maintenance of forward deductions on delete
+ * (delete/rederive). After each delete the deductions must be exactly those
+ * of a graph built from scratch over what is left: the deductions with no
+ * other support are retracted, and those with other support are kept or
+ * derived again.
+ */
+public class TestDRed {
+
+    static final String NS = "http://example/";
+
+    static final GenericRuleReasoner.RuleMode[] MODES = {
+        GenericRuleReasoner.FORWARD, GenericRuleReasoner.FORWARD_RETE, GenericRuleReasoner.FORWARD_PARALLEL,
+        GenericRuleReasoner.HYBRID
+    };
+
+    static String p(String name) {
+        return "<" + NS + name + ">";
+    }
+
+    /** Two ways to q, then r from q, then transitive anc over p */
+    static final String RULES =
+        "[viaP: (?a " + p("p") + " ?b) -> (?a " + p("q") + " ?b)]" +
+        "[viaS: (?a " + p("s") + " ?b) -> (?a " + p("q") + " ?b)]" +
+        "[back: (?a " + p("q") + " ?b) -> (?b " + p("r") + " ?a)]" +
+        "[anc1: (?a " + p("p") + " ?b) -> (?a " + p("anc") + " ?b)]" +
+        "[anc2: (?a " + p("anc") + " ?b), (?b " + p("anc") + " ?c) -> (?a " + p("anc") + " ?c)]";
+
+    static Node node(String name) {
+        return Node.createURI(NS + name);
+    }
+
+    static Triple triple(String s, String p, String o) {
+        return Triple.create(node(s), node(p), node(o));
+    }
+
+    static BaseInfGraph bind(String rules, GenericRuleReasoner.RuleMode mode, Graph data) {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(rules));
+        reasoner.setMode(mode);
+        BaseInfGraph g = (BaseInfGraph) reasoner.bind(data);
+        g.prepare();
+        return g;
+    }
+
+    static Set<Triple> deductions(BaseInfGraph g) {
+        return new HashSet<Triple>(g.getDeductionsGraph().find(Node.ANY, Node.ANY, Node.ANY).toList());
+    }
+
+    /** Check g against a graph built from scratch over a copy of its data */
+    static void checkAgainstScratch(String rules, GenericRuleReasoner.RuleMode mode, BaseInfGraph g) {
+        Graph copy = Factory.createGraphMem();
+        copy.getBulkUpdateHandler().add(g.getRawGraph());
+        BaseInfGraph scratch = bind(rules, mode, copy);
+        assertEquals("deductions in mode " + mode, deductions(scratch), deductions(g));
+    }
+
+    static Graph data() {
+        Graph data = Factory.createGraphMem();
+        // a chain x -> y -> z with a short cut x -> z
+        data.add(triple("x", "p", "y"));
+        data.add(triple("y", "p", "z"));
+        data.add(triple("x", "p", "z"));
+        data.add(triple("z", "p", "w"));
+        // b is reached from a both by p and by s
+        data.add(triple("a", "p", "b"));
+        data.add(triple("a", "s", "b"));
+        data.add(triple("c", "p", "d"));
+        return data;
+    }
+
+    @Test
+    public void deleteRetractsOnlyUnsupportedDeductions() {
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            BaseInfGraph g = bind(RULES, mode, data());
+            assertTrue(g.contains(triple("c", "q", "d")));
+            assertTrue(g.contains(triple("d", "r", "c")));
+            g.delete(triple("c", "p", "d"));
+            assertTrue("incremental in mode " + mode, g.isPrepared());
+            assertFalse(g.contains(triple("c", "q", "d")));
+            assertFalse(g.contains(triple("d", "r", "c")));
+            assertFalse(g.contains(triple("c", "anc", "d")));
+            assertTrue(g.contains(triple("a", "q", "b")));
+            assertTrue(g.contains(triple("x", "anc", "w")));
+            checkAgainstScratch(RULES, mode, g);
+        }
+    }
+
+    @Test
+    public void alternativeSupportIsKept() {
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            BaseInfGraph g = bind(RULES, mode, data());
+            g.delete(triple("a", "p", "b"));
+            assertTrue("incremental in mode " + mode, g.isPrepared());
+            assertTrue(g.contains(triple("a", "q", "b")));
+            assertTrue(g.contains(triple("b", "r", "a")));
+            assertFalse(g.contains(triple("a", "anc", "b")));
+            checkAgainstScratch(RULES, mode, g);
+
+            g.delete(triple("a", "s", "b"));
+            assertFalse(g.contains(triple("a", "q", "b")));
+            assertFalse(g.contains(triple("b", "r", "a")));
+            checkAgainstScratch(RULES, mode, g);
+        }
+    }
+
+    @Test
+    public void recursiveDeductionsAreRederived() {
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            BaseInfGraph g = bind(RULES, mode, data());
+            // x anc z and x anc w depended on x p y, but the short cut still supports them
+            g.delete(triple("x", "p", "y"));
+            assertTrue("incremental in mode " + mode, g.isPrepared());
+            assertFalse(g.contains(triple("x", "anc", "y")));
+            assertTrue(g.contains(triple("x", "anc", "z")));
+            assertTrue(g.contains(triple("x", "anc", "w")));
+            checkAgainstScratch(RULES, mode, g);
+
+            g.delete(triple("x", "p", "z"));
+            assertFalse(g.contains(triple("x", "anc", "z")));
+            assertFalse(g.contains(triple("x", "anc", "w")));
+            assertTrue(g.contains(triple("y", "anc", "w")));
+            checkAgainstScratch(RULES, mode, g);
+        }
+    }
+
+    @Test
+    public void assertedTripleWhichIsAlsoDeducedStays() {
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            Graph data = data();
+            data.add(triple("a", "q", "b"));
+            BaseInfGraph g = bind(RULES, mode, data);
+            g.delete(triple("a", "q", "b"));
+            assertTrue(g.contains(triple("a", "q", "b")));
+            assertTrue(g.contains(triple("b", "r", "a")));
+            checkAgainstScratch(RULES, mode, g);
+        }
+    }
+
+    @Test
+    public void deleteThenAddAgain() {
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            BaseInfGraph g = bind(RULES, mode, data());
+            Set<Triple> before = deductions(g);
+            g.delete(triple("y", "p", "z"));
+            g.delete(triple("a", "s", "b"));
+            checkAgainstScratch(RULES, mode, g);
+            g.add(triple("y", "p", "z"));
+            g.add(triple("a", "s", "b"));
+            g.prepare();
+            assertEquals("deductions in mode " + mode, before, deductions(g));
+        }
+    }
+
+    @Test
+    public void nonMonotonicRulesAreRecomputed() {
+        String rules = RULES + "[none: (?a " + p("p") + " ?b), noValue(?b " + p("p") + ") -> (?b " + p("leaf") + " 'true')]";
+        for (GenericRuleReasoner.RuleMode mode : MODES) {
+            BaseInfGraph g = bind(rules, mode, data());
+            assertFalse(g.contains(node("z"), node("leaf"), Node.ANY));
+            // the delete makes noValue true, so there is something new to derive
+            g.delete(triple("z", "p", "w"));
+            assertFalse(g.isPrepared());
+            assertTrue(g.contains(node("z"), node("leaf"), Node.ANY));
+            checkAgainstScratch(rules, mode, g);
+        }
+    }
+}
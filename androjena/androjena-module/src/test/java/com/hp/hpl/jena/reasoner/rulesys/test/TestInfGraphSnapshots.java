@@ -0,0 +1,171 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.InfGraphSnapshots;
+import com.hp.hpl.jena.reasoner.rulesys.Functor;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/**
+ * Tests for read snapshots of forward and hybrid rule graphs.
+ */
+public class TestInfGraphSnapshots {
+
+    static final String NS = "http://example/";
+
+    static final String RULES =
+        "[q: (?a <" + NS + "p> ?b) -> (?a <" + NS + "q> ?b)]" +
+        "[f: (?a <" + NS + "p> ?b) -> (?a <" + NS + "f> wrap(?b))]";
+
+    static final String BACKWARD =
+        "[s: (?a <" + NS + "s> ?b) <- (?a <" + NS + "q> ?b)]";
+
+    static Node node(String name) {
+        return Node.createURI(NS + name);
+    }
+
+    static Triple triple(String s, String p, String o) {
+        return Triple.create(node(s), node(p), node(o));
+    }
+
+    static InfGraph bind(GenericRuleReasoner.RuleMode mode, boolean filterFunctors) {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        reasoner.setMode(mode);
+        reasoner.setFunctorFiltering(filterFunctors);
+        Graph data = Factory.createGraphMem();
+        data.add(triple("a", "p", "b"));
+        return reasoner.bind(data);
+    }
+
+    @Test
+    public void commitsPublishNewVersions() {
+        InfGraph g = bind(GenericRuleReasoner.FORWARD_RETE, true);
+        InfGraphSnapshots snapshots = new InfGraphSnapshots(g);
+        InfGraphSnapshots.Snapshot first = snapshots.current();
+        assertTrue(first.contains(triple("a", "q", "b")));
+
+        snapshots.beginWrite();
+        try {
+            g.add(triple("c", "p", "d"));
+            g.delete(triple("a", "p", "b"));
+        } finally {
+            snapshots.commit();
+        }
+        InfGraphSnapshots.Snapshot second = snapshots.current();
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(second.contains(triple("c", "q", "d")));
+        assertFalse(second.contains(triple("a", "q", "b")));
+        assertFalse(second.contains(triple("a", "p", "b")));
+        // the earlier snapshot is unchanged
+        assertTrue(first.contains(triple("a", "q", "b")));
+        assertFalse(first.contains(triple("c", "q", "d")));
+
+        snapshots.beginWrite();
+        assertSame(second, snapshots.commit());
+        snapshots.close();
+    }
+
+    @Test
+    public void functorsAreFilteredAsByTheGraph() {
+        for (boolean filter : new boolean[] { true, false }) {
+            InfGraph g = bind(GenericRuleReasoner.FORWARD_RETE, filter);
+            // a blank predicate is not a functor, and is shown either way
+            Triple odd = Triple.create(node("a"), Node.createAnon(), node("b"));
+            g.add(odd);
+            InfGraphSnapshots snapshots = new InfGraphSnapshots(g);
+            InfGraphSnapshots.Snapshot s = snapshots.current();
+            boolean functor = false;
+            for (Triple t : s.find(node("a"), node("f"), Node.ANY).toList()) {
+                functor |= Functor.isFunctor(t.getObject());
+            }
+            assertEquals(!filter, functor);
+            assertEquals(g.contains(node("a"), node("f"), Node.ANY), s.contains(node("a"), node("f"), Node.ANY));
+            assertTrue(s.contains(odd));
+            assertTrue(s.contains(triple("a", "q", "b")));
+            snapshots.close();
+        }
+    }
+
+    @Test
+    public void hybridSnapshotsAnswerThroughBackwardRules() {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES + BACKWARD));
+        reasoner.setMode(GenericRuleReasoner.HYBRID);
+        Graph data = Factory.createGraphMem();
+        data.add(triple("a", "p", "b"));
+        InfGraph g = reasoner.bind(data);
+        InfGraphSnapshots snapshots = new InfGraphSnapshots(g);
+        InfGraphSnapshots.Snapshot first = snapshots.current();
+        assertTrue(first.contains(triple("a", "s", "b")));
+        assertTrue(first.contains(triple("a", "q", "b")));
+        assertTrue(first.contains(triple("a", "p", "b")));
+        assertFalse(first.contains(node("a"), node("f"), Node.ANY));
+        assertEquals(g.find(Node.ANY, Node.ANY, Node.ANY).toSet(), first.find(Node.ANY, Node.ANY, Node.ANY).toSet());
+
+        snapshots.beginWrite();
+        try {
+            g.add(triple("c", "p", "d"));
+            g.delete(triple("a", "p", "b"));
+        } finally {
+            snapshots.commit();
+        }
+        InfGraphSnapshots.Snapshot second = snapshots.current();
+        assertTrue(second.contains(triple("c", "s", "d")));
+        assertFalse(second.contains(triple("a", "s", "b")));
+        assertEquals(g.find(Node.ANY, Node.ANY, Node.ANY).toSet(), second.find(Node.ANY, Node.ANY, Node.ANY).toSet());
+        // the earlier snapshot keeps its own backward engine
+        assertTrue(first.contains(triple("a", "s", "b")));
+        assertFalse(first.contains(triple("c", "s", "d")));
+        snapshots.close();
+    }
+
+    @Test
+    public void snapshotsSeeTheTransitiveCaches() {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(
+            "[t: (?x <" + NS + "isa> ?c) <- (?x rdf:type ?a), (?a rdfs:subClassOf ?c)]"));
+        reasoner.setMode(GenericRuleReasoner.HYBRID);
+        reasoner.setTransitiveClosureCaching(true);
+        Graph data = Factory.createGraphMem();
+        data.add(Triple.create(node("A"), RDFS.subClassOf.asNode(), node("B")));
+        data.add(Triple.create(node("B"), RDFS.subClassOf.asNode(), node("C")));
+        data.add(Triple.create(node("x"), RDF.type.asNode(), node("A")));
+        InfGraph g = reasoner.bind(data);
+        InfGraphSnapshots snapshots = new InfGraphSnapshots(g);
+        InfGraphSnapshots.Snapshot first = snapshots.current();
+        assertTrue(first.contains(Triple.create(node("A"), RDFS.subClassOf.asNode(), node("C"))));
+        assertTrue(first.contains(triple("x", "isa", "C")));
+
+        snapshots.beginWrite();
+        try {
+            g.add(Triple.create(node("C"), RDFS.subClassOf.asNode(), node("D")));
+        } finally {
+            snapshots.commit();
+        }
+        InfGraphSnapshots.Snapshot second = snapshots.current();
+        assertTrue(second.contains(Triple.create(node("A"), RDFS.subClassOf.asNode(), node("D"))));
+        assertTrue(second.contains(triple("x", "isa", "D")));
+        assertEquals(g.find(node("x"), Node.ANY, Node.ANY).toSet(), second.find(node("x"), Node.ANY, Node.ANY).toSet());
+        assertFalse(first.contains(Triple.create(node("A"), RDFS.subClassOf.asNode(), node("D"))));
+        assertFalse(first.contains(triple("x", "isa", "D")));
+        snapshots.close();
+    }
+
+    @Test
+    public void backwardGraphsAreRefused() {
+        try {
+            new InfGraphSnapshots(bind(GenericRuleReasoner.BACKWARD, true));
+            fail("snapshot of a backward graph");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.IllegalParameterException;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.BuiltinRegistry;
+import com.hp.hpl.jena.reasoner.rulesys.FBRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.LPBackwardRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.RuleContext;
+import com.hp.hpl.jena.reasoner.rulesys.builtins.BaseBuiltin;
+import com.hp.hpl.jena.reasoner.rulesys.impl.LPBRuleEngine;
+import com.hp.hpl.jena.reasoner.rulesys.impl.LPRuleStore;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.vocabulary.ReasonerVocabulary;
+
+/**
+ * Tests for the tabling and locking of the LP backward engine.
+ */
+public class TestLPBRuleEngine {
+
+    static final String NS = "http://example/";
+
+    static final Node parent = Node.createURI(NS + "parent");
+    static final Node anc = Node.createURI(NS + "anc");
+    static final Node rel = Node.createURI(NS + "rel");
+
+    static final String RULES =
+        "[t1: (?a <" + NS + "anc> ?b) <- (?a <" + NS + "parent> ?b)]" +
+        "[t2: (?a <" + NS + "anc> ?c) <- (?a <" + NS + "parent> ?b), (?b <" + NS + "anc> ?c)]" +
+        "[r: (?a <" + NS + "rel> ?b) <- (?a <" + NS + "anc> ?b)]";
+
+    /** A backward graph which gives the tests its engine */
+    static class EngineGraph extends LPBackwardRuleInfGraph {
+        EngineGraph(Graph data) {
+            super(new GenericRuleReasoner(Rule.parseRules(RULES)), store(), data, null);
+        }
+
+        static LPRuleStore store() {
+            LPRuleStore store = new LPRuleStore(Rule.parseRules(RULES));
+            store.tablePredicate(anc);
+            return store;
+        }
+
+        LPBRuleEngine getEngine() {
+            return engine;
+        }
+    }
+
+    static Node node(int i) {
+        return Node.createURI(NS + "n" + i);
+    }
+
+    /** A graph of a chain of parents n0, n1, ... */
+    static EngineGraph chain(int length) {
+        Graph data = Factory.createGraphMem();
+        for (int i = 0; i + 1 < length; i++) {
+            data.add(Triple.create(node(i), parent, node(i + 1)));
+        }
+        EngineGraph g = new EngineGraph(data);
+        g.prepare();
+        return g;
+    }
+
+    static Set<Node> objects(Graph g, Node s, Node p) {
+        Set<Node> result = new HashSet<Node>();
+        ExtendedIterator<Triple> it = g.find(s, p, Node.ANY);
+        try {
+            while (it.hasNext()) result.add(it.next().getObject());
+        } finally {
+            it.close();
+        }
+        return result;
+    }
+
+    static Set<Node> nodes(int from, int to) {
+        Set<Node> result = new HashSet<Node>();
+        for (int i = from; i < to; i++) result.add(node(i));
+        return result;
+    }
+
+    @Test
+    public void completedTabledGoalIsAnsweredWithoutLock() throws Exception {
+        final EngineGraph g = chain(10);
+        // Complete the table of the goal, with the engine locked as usual
+        assertEquals(nodes(1, 10), objects(g, node(0), anc));
+
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            pool.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    synchronized (g.getEngine()) {
+                        held.countDown();
+                        release.await();
+                    }
+                    return null;
+                }
+            });
+            held.await();
+            Future<Set<Node>> answer = pool.submit(new Callable<Set<Node>>() {
+                public Set<Node> call() {
+                    return objects(g, node(0), anc);
+                }
+            });
+            assertEquals(nodes(1, 10), answer.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    /** Builtin which counts its calls, so a test can see how often a rule body is run */
+    static class CountCalls extends BaseBuiltin {
+        static final AtomicInteger calls = new AtomicInteger();
+
+        public String getName() {
+            return "testCountCalls";
+        }
+
+        @Override
+        public boolean bodyCall(Node[] args, int length, RuleContext context) {
+            calls.incrementAndGet();
+            return true;
+        }
+    }
+
+    @Test
+    public void untabledGoalIsEvaluatedOnceAndLazily() {
+        BuiltinRegistry.theRegistry.register(new CountCalls());
+        String rules = "[big: (?a <" + NS + "big> ?b) <- (?a <" + NS + "item> ?b), testCountCalls()]";
+        Graph data = Factory.createGraphMem();
+        int n = 1500;
+        for (int i = 0; i < n; i++) {
+            data.add(Triple.create(node(0), Node.createURI(NS + "item"), node(i)));
+        }
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(rules));
+        reasoner.setMode(GenericRuleReasoner.BACKWARD);
+        InfGraph g = reasoner.bind(data);
+        g.prepare();
+        Node big = Node.createURI(NS + "big");
+
+        CountCalls.calls.set(0);
+        ExtendedIterator<Triple> it = g.find(node(0), big, Node.ANY);
+        assertTrue(it.hasNext());
+        it.close();
+        assertTrue(CountCalls.calls.get() <= 1);
+
+        CountCalls.calls.set(0);
+        assertEquals(nodes(0, n), objects(g, node(0), big));
+        assertEquals(n, CountCalls.calls.get());
+    }
+
+    @Test
+    public void untabledGoalOverIncompleteTablesIsAnswered() {
+        EngineGraph g = chain(10);
+        assertEquals(nodes(1, 10), objects(g, node(0), rel));
+        // A new subject needs a new table, so is answered with the engine locked
+        assertEquals(nodes(4, 10), objects(g, node(3), rel));
+        assertEquals(nodes(4, 10), objects(g, node(3), rel));
+    }
+
+    @Test
+    public void concurrentQueriesAgree() throws Exception {
+        final EngineGraph g = chain(30);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new java.util.ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int round = 0; round < 50; round++) {
+                            int i = (round + offset) % 29;
+                            if (!nodes(i + 1, 30).equals(objects(g, node(i), rel))) return false;
+                            if (!nodes(i + 1, 30).equals(objects(g, node(i), anc))) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> f : results) {
+                assertTrue(f.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void changeAfterFindIsDetected() {
+        EngineGraph g = chain(5);
+        objects(g, node(0), rel);
+        ExtendedIterator<Triple> it = g.find(node(0), rel, Node.ANY);
+        g.add(Triple.create(node(4), parent, node(5)));
+        try {
+            it.hasNext();
+            fail("change to the graph not detected");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void tableHitsAndMisses() {
+        EngineGraph g = chain(5);
+        assertEquals(0, g.getTableHits());
+        assertEquals(0, g.getTableMisses());
+        assertEquals(nodes(1, 5), objects(g, node(0), anc));
+        long misses = g.getTableMisses();
+        assertTrue(misses > 0);
+        long hits = g.getTableHits();
+        assertEquals(nodes(1, 5), objects(g, node(0), anc));
+        assertEquals(misses, g.getTableMisses());
+        assertEquals(hits + 1, g.getTableHits());
+        assertEquals(0, g.getTableEvictions());
+    }
+
+    @Test
+    public void leastRecentlyUsedTablesAreEvicted() {
+        EngineGraph g = chain(20);
+        g.setMaxTabledResults(30);
+        for (int i = 0; i < 19; i++) {
+            assertEquals(nodes(i + 1, 20), objects(g, node(i), anc));
+            assertTrue(g.getEngine().getTabledResults() <= 30);
+        }
+        long evictions = g.getTableEvictions();
+        assertTrue(evictions > 0);
+        // The table for n0, the largest and least recently used, has gone
+        long misses = g.getTableMisses();
+        assertEquals(nodes(1, 20), objects(g, node(0), anc));
+        assertTrue(g.getTableMisses() > misses);
+        // The most recently used is still there
+        misses = g.getTableMisses();
+        assertEquals(nodes(19, 20), objects(g, node(18), anc));
+        assertEquals(misses, g.getTableMisses());
+    }
+
+    @Test
+    public void evictionLimitCanBeLowered() {
+        EngineGraph g = chain(10);
+        for (int i = 0; i < 9; i++) objects(g, node(i), anc);
+        assertEquals(0, g.getTableEvictions());
+        long held = g.getEngine().getTabledResults();
+        g.setMaxTabledResults(held / 2);
+        assertTrue(g.getTableEvictions() > 0);
+        assertTrue(g.getEngine().getTabledResults() <= held / 2);
+        g.setMaxTabledResults(0);
+        assertEquals(nodes(1, 10), objects(g, node(0), anc));
+    }
+
+    private static GenericRuleReasoner reasoner(String mode, Object maxTabled) {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        reasoner.setParameter(ReasonerVocabulary.PROPruleMode, mode);
+        reasoner.setParameter(ReasonerVocabulary.PROPmaxTabledResults, maxTabled);
+        return reasoner;
+    }
+
+    @Test
+    public void maxTabledResultsParameter() {
+        InfGraph g = reasoner("backward", "7").bind(Factory.createGraphMem());
+        assertEquals(7, ((LPBackwardRuleInfGraph) g).getMaxTabledResults());
+        g = reasoner("hybrid", Integer.valueOf(9)).bind(Factory.createGraphMem());
+        assertEquals(9, ((FBRuleInfGraph) g).getMaxTabledResults());
+        g = new GenericRuleReasoner(Rule.parseRules(RULES)).bind(Factory.createGraphMem());
+        assertEquals(0, ((FBRuleInfGraph) g).getMaxTabledResults());
+    }
+
+    @Test(expected = IllegalParameterException.class)
+    public void maxTabledResultsMustBeAnInteger() {
+        reasoner("backward", "lots");
+    }
+}
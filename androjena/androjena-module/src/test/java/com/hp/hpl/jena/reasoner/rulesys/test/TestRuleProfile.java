@@ -0,0 +1,122 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.InfModel;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.FBRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.ForwardRuleInfGraphI;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.impl.RuleProfile;
+import com.hp.hpl.jena.reasoner.transitiveReasoner.TransitiveReasoner;
+
+/**
+ * Tests for the profile of the work done by each rule.
+ */
+public class TestRuleProfile {
+
+    static final String NS = "http://example/";
+
+    static final String RULES =
+        "[grand: (?a <" + NS + "p> ?b), (?b <" + NS + "p> ?c), (?c <" + NS + "q> ?d) -> (?a <" + NS + "r> ?d)]" +
+        "[back: (?a <" + NS + "s> ?b) <- (?a <" + NS + "r> ?b)]";
+
+    static Node node(String name) {
+        return Node.createURI(NS + name);
+    }
+
+    static Graph data() {
+        Graph data = Factory.createGraphMem();
+        for (int i = 0; i < 5; i++) {
+            data.add(Triple.create(node("n" + i), node("p"), node("n" + (i + 1))));
+            data.add(Triple.create(node("n" + i), node("q"), node("m" + i)));
+        }
+        return data;
+    }
+
+    static ForwardRuleInfGraphI bind(String mode) {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        reasoner.setMode(mode.equals("rete") ? GenericRuleReasoner.FORWARD_RETE : GenericRuleReasoner.HYBRID);
+        ForwardRuleInfGraphI g = (ForwardRuleInfGraphI) reasoner.bind(data());
+        g.setProfiling(true);
+        g.prepare();
+        return g;
+    }
+
+    static RuleProfile.Stats statsOf(ForwardRuleInfGraphI g, String name) {
+        for (RuleProfile.Stats s : g.getRuleProfile().getStats(RuleProfile.Order.WORK)) {
+            if (name.equals(s.getRule().getName())) return s;
+        }
+        fail("no profile for rule " + name);
+        return null;
+    }
+
+    @Test
+    public void reteJoinsAreCountedPerQueue() {
+        ForwardRuleInfGraphI g = bind("rete");
+        RuleProfile.Stats grand = statsOf(g, "grand");
+        assertEquals(3, grand.getDeductions());
+        List<RuleProfile.JoinStats> joins = grand.getJoinStats();
+        assertEquals(4, joins.size());
+        long total = 0;
+        for (RuleProfile.JoinStats j : joins) {
+            assertSame(grand, j.getRuleStats());
+            total += j.getTokens();
+        }
+        assertTrue(total > 0);
+        assertEquals(grand.getTokens(), total);
+        assertEquals(1, joins.get(0).getClause());
+        assertTrue(joins.get(0).isLeft());
+        assertEquals(2, joins.get(3).getClause());
+        assertFalse(joins.get(3).isLeft());
+
+        StringWriter report = new StringWriter();
+        g.printProfile(new PrintWriter(report));
+        assertTrue(report.toString().contains("join at clause 2"));
+    }
+
+    @Test
+    public void backwardRulesShareTheProfile() {
+        FBRuleInfGraph g = (FBRuleInfGraph) bind("hybrid");
+        assertEquals(3, g.find(Node.ANY, node("s"), Node.ANY).toList().size());
+        assertTrue(statsOf(g, "back").getFired() > 0);
+        assertEquals(3, statsOf(g, "grand").getDeductions());
+
+        g.resetLPProfile(false);
+        assertTrue(g.getRuleProfile().getStats(RuleProfile.Order.WORK).isEmpty());
+        g.find(node("n0"), node("s"), Node.ANY).toList();
+        assertTrue(g.getRuleProfile().getStats(RuleProfile.Order.WORK).isEmpty());
+    }
+
+    @Test
+    public void reportThroughInfGraph() {
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(Rule.parseRules(RULES));
+        InfGraph g = reasoner.bind(data());
+        g.setProfiling(true);
+        InfModel model = ModelFactory.createInfModel(g);
+        assertEquals(3, model.listStatements(null, model.createProperty(NS + "r"), (RDFNode) null).toList().size());
+        StringWriter report = new StringWriter();
+        ((InfGraph) model.getGraph()).printProfile(new PrintWriter(report));
+        assertTrue(report.toString().contains("grand"));
+
+        // Other inference graphs have no profile but can still be asked for one
+        InfGraph transitive = new TransitiveReasoner().bind(data());
+        transitive.setProfiling(true);
+        report = new StringWriter();
+        transitive.printProfile(new PrintWriter(report));
+        assertEquals("No profile collected", report.toString().trim());
+    }
+}
@@ -0,0 +1,119 @@
+package com.hp.hpl.jena.reasoner.rulesys.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.TriplePattern;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.RuleSetFile;
+import com.hp.hpl.jena.shared.JenaException;
+
+/**
+ * Tests for the precompiled form of rule sets.
+ */
+public class TestRuleSetFile {
+
+    static final String NS = "http://example/";
+
+    static final String RULES =
+        "[grand: (?a <" + NS + "p> ?b), (?b <" + NS + "p> ?c) -> (?a <" + NS + "gp> ?c)]" +
+        "[lit: (?a <" + NS + "p> ?b) -> (?a <" + NS + "tag> 'x') (?a <" + NS + "n> 42) (?a <" + NS + "f> 1.5)" +
+            " (?a <" + NS + "typed> 'y'^^xsd:string)]" +
+        "[fun: (?a <" + NS + "p> ?b), strConcat(?a, ' > ', ?b, ?s) -> (?a <" + NS + "label> ?s) (?a <" + NS + "pair> f(?b, _:x))]" +
+        "[nested: (?a <" + NS + "gp> ?c) -> [(?a <" + NS + "anc> ?c) <- (?c <" + NS + "p> ?a)]]" +
+        "[back: (?a <" + NS + "anc> ?b) <- (?a <" + NS + "gp> ?b)]" +
+        "(?a <" + NS + "p> ?b) -> (?b <" + NS + "child> ?a).";
+
+    static Node node(String name) {
+        return Node.createURI(NS + name);
+    }
+
+    static List<Rule> roundTrip(List<Rule> rules) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RuleSetFile.write(rules, out);
+        return RuleSetFile.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    static Set<Triple> closure(List<Rule> rules) {
+        Graph data = Factory.createGraphMem();
+        for (int i = 0; i < 4; i++) {
+            data.add(Triple.create(node("n" + i), node("p"), node("n" + (i + 1))));
+        }
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(rules);
+        return new HashSet<Triple>(reasoner.bind(data).find(Node.ANY, Node.ANY, Node.ANY).toList());
+    }
+
+    @Test
+    public void rulesAreReadBackAsWritten() throws IOException {
+        List<Rule> rules = Rule.parseRules(RULES);
+        List<Rule> read = roundTrip(rules);
+        assertEquals(rules.size(), read.size());
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            Rule copy = read.get(i);
+            assertEquals(rule.toString(), copy.toString());
+            assertEquals(rule, copy);
+            assertEquals(rule.getName(), copy.getName());
+            assertEquals(rule.isBackward(), copy.isBackward());
+            assertEquals(rule.getNumVars(), copy.getNumVars());
+            assertEquals(rule.isMonotonic(), copy.isMonotonic());
+        }
+        // Variables stay shared within a rule, as the parser leaves them
+        TriplePattern first = (TriplePattern) read.get(0).getBodyElement(0);
+        TriplePattern second = (TriplePattern) read.get(0).getBodyElement(1);
+        assertSame(first.getObject(), second.getSubject());
+    }
+
+    @Test
+    public void readRulesGiveTheSameClosure() throws IOException {
+        List<Rule> rules = Rule.parseRules(RULES);
+        Set<Triple> expected = closure(rules);
+        assertTrue(expected.contains(Triple.create(node("n0"), node("anc"), node("n2"))));
+        assertEquals(expected, closure(roundTrip(rules)));
+    }
+
+    @Test
+    public void mappedFile() throws IOException {
+        List<Rule> rules = Rule.parseRules(RULES);
+        File file = File.createTempFile("rules", ".bin");
+        try {
+            RuleSetFile.write(rules, file);
+            assertEquals(rules, RuleSetFile.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void badFilesAreRejected() throws IOException {
+        try {
+            RuleSetFile.read(new ByteArrayInputStream("[r: (?a ?b ?c) -> (?c ?b ?a)]".getBytes("UTF-8")));
+            fail("rule text read as a rule set file");
+        } catch (JenaException e) {
+            // expected
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RuleSetFile.write(Rule.parseRules(RULES), out);
+        byte[] bytes = out.toByteArray();
+        try {
+            RuleSetFile.read(new ByteArrayInputStream(bytes, 0, bytes.length / 2));
+            fail("truncated rule set file read");
+        } catch (JenaException e) {
+            // expected
+        }
+    }
+}
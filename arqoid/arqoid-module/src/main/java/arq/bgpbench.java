@@ -0,0 +1,118 @@
+package arq;
+
+import arq.cmdline.CmdGeneral;
+
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/** Benchmark for basic graph patterns: runs a star-shaped and a path-shaped
+ *  pattern over N subjects, one input binding at a time and in batches
+ *  (ARQ.bgpBatchSize).  Each is run several times, so the later runs show
+ *  the times after warming up.  The default is 100000 subjects. */
+public class bgpbench extends CmdGeneral
+{
+    static final String NS = "http://example/" ;
+
+    // Five properties of each subject.
+    static final String starQuery = "PREFIX : <"+NS+"> SELECT * {"+
+        " ?s :p1 ?a ; :p2 ?b ; :p3 ?c ; :p4 ?d ; :p5 ?e }" ;
+
+    // Each subject links to a shared group node, and the group to a label.
+    static final String pathQuery = "PREFIX : <"+NS+"> SELECT * {"+
+        " ?s :p1 ?a . ?s :group ?g . ?g :label ?l }" ;
+
+    static final int[] batchSizes = { 0, 100, 1000 } ;
+    static final int repeats = 3 ;
+
+    int rows = 100000 ;
+
+    public static void main (String [] argv)
+    {
+        new bgpbench(argv).mainAndExit() ;
+    }
+
+    private bgpbench(String argv[])
+    {
+        super(argv) ;
+    }
+
+    @Override
+    protected String getSummary()
+    {
+        return getCommandName()+" [rows]" ;
+    }
+
+    @Override
+    protected String getCommandName()
+    {
+        return "bgpbench" ;
+    }
+
+    @Override
+    protected void processModulesAndArgs()
+    {
+        if ( getNumPositional() > 1 )
+            cmdError("Too many positional arguments") ;
+        if ( getNumPositional() == 1 )
+        {
+            try { rows = Integer.parseInt(getPositionalArg(0)) ; }
+            catch (NumberFormatException e) { cmdError("Bad argument: "+getPositionalArg(0)) ; }
+        }
+    }
+
+    @Override
+    protected void exec()
+    {
+        Model model = ModelFactory.createDefaultModel() ;
+        Property[] p = new Property[6] ;
+        for ( int j = 1 ; j <= 5 ; j++ )
+            p[j] = model.createProperty(NS+"p"+j) ;
+        Property group = model.createProperty(NS+"group") ;
+        Property label = model.createProperty(NS+"label") ;
+        for ( int i = 0 ; i < rows ; i++ )
+        {
+            Resource s = model.createResource(NS+"s"+i) ;
+            for ( int j = 1 ; j <= 5 ; j++ )
+                model.add(s, p[j], model.createTypedLiteral(i*j)) ;
+            Resource g = model.createResource(NS+"g"+(i%100)) ;
+            model.add(s, group, g) ;
+        }
+        for ( int i = 0 ; i < 100 ; i++ )
+            model.add(model.createResource(NS+"g"+i), label, "group "+i) ;
+
+        System.out.println(rows+" subjects") ;
+        run("star", starQuery, model) ;
+        run("path", pathQuery, model) ;
+    }
+
+    private void run(String label, String queryString, Model model)
+    {
+        Query query = QueryFactory.create(queryString) ;
+        for ( int r = 0 ; r < repeats ; r++ )
+        {
+            for ( int batchSize : batchSizes )
+            {
+                long start = System.currentTimeMillis() ;
+                QueryExecution qExec = QueryExecutionFactory.create(query, model) ;
+                qExec.getContext().set(ARQ.bgpBatchSize, batchSize) ;
+                long count = 0 ;
+                try {
+                    ResultSet rs = qExec.execSelect() ;
+                    for ( ; rs.hasNext() ; rs.nextBinding() )
+                        count++ ;
+                } finally { qExec.close() ; }
+                long ms = System.currentTimeMillis() - start ;
+                String mode = ( batchSize > 0 ) ? "batch "+batchSize : "one at a time" ;
+                System.out.println(label+" ("+mode+"): "+count+" results in "+ms+"ms") ;
+            }
+        }
+    }
+}
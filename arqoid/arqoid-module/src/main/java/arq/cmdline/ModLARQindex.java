@@ -11,12 +11,13 @@ import java.io.File;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
 
 import arq.cmd.CmdException;
 
 import com.hp.hpl.jena.query.larq.ARQLuceneException;
+import com.hp.hpl.jena.query.larq.DirectoryLARQ;
 import com.hp.hpl.jena.query.larq.IndexLARQ;
 
 public class ModLARQindex implements ArgModuleGeneral
@@ -43,7 +44,7 @@ public class ModLARQindex implements ArgModuleGeneral
         try {
         	//ANDROID: migration to lucene 3.0.2 with lucenoid
 //            FSDirectory dir = FSDirectory.getDirectory(luceneDir);
-        	FSDirectory dir = FSDirectory.open(new File(luceneDir));
+        	Directory dir = DirectoryLARQ.getDefault().open(new File(luceneDir));
             IndexReader indexReader = IndexReader.open(dir) ;
             return new IndexLARQ(indexReader) ;
         } catch (Exception ex)
@@ -56,8 +57,10 @@ public class ModLARQindex implements ArgModuleGeneral
         	//ANDROID: migration to lucene 3.0.2 with lucenoid
 //            FSDirectory dir = FSDirectory.getDirectory(luceneDir);
 //            IndexWriter indexWriter = new IndexWriter(dir, new StandardAnalyzer()) ;
-        	FSDirectory dir = FSDirectory.open(new File(luceneDir));
+        	DirectoryLARQ directory = DirectoryLARQ.getDefault() ;
+        	Directory dir = directory.open(new File(luceneDir));
             IndexWriter indexWriter = new IndexWriter(dir, new StandardAnalyzer(Version.LUCENE_23), true, IndexWriter.MaxFieldLength.UNLIMITED) ;
+            indexWriter.setUseCompoundFile(directory.useCompoundFile()) ;
             return indexWriter ;
         } catch (Exception ex)
         { throw new ARQLuceneException("LARQ", ex) ; }
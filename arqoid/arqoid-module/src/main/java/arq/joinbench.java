@@ -0,0 +1,105 @@
+package arq;
+
+import arq.cmdline.CmdGeneral;
+
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/** Benchmark for the joins which can not be streamed: runs a join and a
+ *  left join with a condition, each of N rows by N rows, with and without
+ *  hash joins (ARQ.optHashJoin).  The default is 10000 rows. */
+public class joinbench extends CmdGeneral
+{
+    static final String NS = "http://example/" ;
+
+    // Both sides define ?k; the inner OPTIONALs stop the join being streamed.
+    static final String joinQuery = "PREFIX : <"+NS+"> SELECT * {"+
+        " { ?a :p ?k OPTIONAL { ?a :r ?z } }"+
+        " { ?b :q ?k OPTIONAL { ?b :r ?z } } }" ;
+
+    // ?a is optional on the right and used on the left, so the OPTIONAL is not streamed.
+    static final String leftJoinQuery = "PREFIX : <"+NS+"> SELECT * {"+
+        " ?a :p ?k"+
+        " OPTIONAL { ?b :q ?k OPTIONAL { ?b :r ?a } FILTER ( ?b != :b0 ) } }" ;
+
+    int rows = 10000 ;
+
+    public static void main (String [] argv)
+    {
+        new joinbench(argv).mainAndExit() ;
+    }
+
+    private joinbench(String argv[])
+    {
+        super(argv) ;
+    }
+
+    @Override
+    protected String getSummary()
+    {
+        return getCommandName()+" [rows]" ;
+    }
+
+    @Override
+    protected String getCommandName()
+    {
+        return "joinbench" ;
+    }
+
+    @Override
+    protected void processModulesAndArgs()
+    {
+        if ( getNumPositional() > 1 )
+            cmdError("Too many positional arguments") ;
+        if ( getNumPositional() == 1 )
+        {
+            try { rows = Integer.parseInt(getPositionalArg(0)) ; }
+            catch (NumberFormatException e) { cmdError("Bad argument: "+getPositionalArg(0)) ; }
+        }
+    }
+
+    @Override
+    protected void exec()
+    {
+        Model model = ModelFactory.createDefaultModel() ;
+        Property p = model.createProperty(NS+"p") ;
+        Property q = model.createProperty(NS+"q") ;
+        for ( int i = 0 ; i < rows ; i++ )
+        {
+            Resource k = model.createResource(NS+"k"+i) ;
+            model.add(model.createResource(NS+"a"+i), p, k) ;
+            model.add(model.createResource(NS+"b"+i), q, k) ;
+        }
+
+        System.out.println(rows+" x "+rows+" rows") ;
+        run("join", joinQuery, model) ;
+        run("left join", leftJoinQuery, model) ;
+    }
+
+    private void run(String label, String queryString, Model model)
+    {
+        Query query = QueryFactory.create(queryString) ;
+        for ( boolean hash : new boolean[]{ true, false } )
+        {
+            long start = System.currentTimeMillis() ;
+            QueryExecution qExec = QueryExecutionFactory.create(query, model) ;
+            qExec.getContext().set(ARQ.optHashJoin, hash) ;
+            long count = 0 ;
+            try {
+                ResultSet rs = qExec.execSelect() ;
+                for ( ; rs.hasNext() ; rs.nextBinding() )
+                    count++ ;
+            } finally { qExec.close() ; }
+            long ms = System.currentTimeMillis() - start ;
+            System.out.println(label+(hash ? " (hash)" : " (scan)")+": "+count+" results in "+ms+"ms") ;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package arq;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.lucene.index.IndexReader;
+
+import arq.cmdline.CmdGeneral;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.larq.ARQLuceneException;
+import com.hp.hpl.jena.query.larq.DirectoryLARQ;
+import com.hp.hpl.jena.query.larq.HitLARQ;
+import com.hp.hpl.jena.query.larq.IndexBuilderNode;
+import com.hp.hpl.jena.query.larq.IndexLARQ;
+
+/** Benchmark for the Lucene directories of an on-disk LARQ index: builds an
+ *  index of N documents of random words in a temporary directory, then
+ *  times the same searches reading it as NIO, MMAP, HYBRID and RAM
+ *  (see DirectoryLARQ).  Each is run several times, so the later runs show
+ *  the times after warming up.  The default is 100000 documents. */
+public class larqbench extends CmdGeneral
+{
+    static final DirectoryLARQ.Type[] types =
+        { DirectoryLARQ.Type.NIO, DirectoryLARQ.Type.MMAP, DirectoryLARQ.Type.HYBRID, DirectoryLARQ.Type.RAM } ;
+    static final int vocabulary = 5000 ;
+    static final int wordsPerDoc = 12 ;
+    static final int searches = 2000 ;
+    static final int repeats = 3 ;
+
+    int docs = 100000 ;
+
+    public static void main (String [] argv)
+    {
+        new larqbench(argv).mainAndExit() ;
+    }
+
+    private larqbench(String argv[])
+    {
+        super(argv) ;
+    }
+
+    @Override
+    protected String getSummary()
+    {
+        return getCommandName()+" [docs]" ;
+    }
+
+    @Override
+    protected String getCommandName()
+    {
+        return "larqbench" ;
+    }
+
+    @Override
+    protected void processModulesAndArgs()
+    {
+        if ( getNumPositional() > 1 )
+            cmdError("Too many positional arguments") ;
+        if ( getNumPositional() == 1 )
+        {
+            try { docs = Integer.parseInt(getPositionalArg(0)) ; }
+            catch (NumberFormatException e) { cmdError("Bad argument: "+getPositionalArg(0)) ; }
+        }
+    }
+
+    @Override
+    protected void exec()
+    {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "larqbench-"+System.currentTimeMillis()) ;
+        try {
+            for ( DirectoryLARQ.Type type : types )
+            {
+                // Build with the same layout as it is read (HYBRID has no compound files).
+                File d = new File(dir, type.toString()) ;
+                build(d, new DirectoryLARQ(type == DirectoryLARQ.Type.HYBRID ? type : DirectoryLARQ.Type.NIO)) ;
+            }
+            System.out.println(docs+" documents") ;
+            for ( int r = 0 ; r < repeats ; r++ )
+            {
+                for ( DirectoryLARQ.Type type : types )
+                    run(new File(dir, type.toString()), new DirectoryLARQ(type)) ;
+            }
+        } finally { delete(dir) ; }
+    }
+
+    private void build(File dir, DirectoryLARQ directory)
+    {
+        Random random = new Random(42) ;
+        IndexBuilderNode builder = new IndexBuilderNode(dir, directory) ;
+        StringBuilder sb = new StringBuilder() ;
+        for ( int i = 0 ; i < docs ; i++ )
+        {
+            sb.setLength(0) ;
+            for ( int j = 0 ; j < wordsPerDoc ; j++ )
+                sb.append(" w").append(zipf(random)) ;
+            builder.index(Node.createURI("http://example/d"+i), sb.toString()) ;
+        }
+        builder.closeWriter() ;
+    }
+
+    private void run(File dir, DirectoryLARQ directory)
+    {
+        Random random = new Random(7) ;
+        IndexLARQ index ;
+        try {
+            index = new IndexLARQ(IndexReader.open(directory.open(dir), true)) ;
+        } catch (IOException ex) { throw new ARQLuceneException("larqbench", ex) ; }
+        long hits = 0 ;
+        long start = System.nanoTime() ;
+        for ( int i = 0 ; i < searches ; i++ )
+        {
+            // Mix common and rare words, and two-word conjunctions.
+            String q = ( i%2 == 0 ) ? "w"+zipf(random) : "+w"+zipf(random)+" +w"+zipf(random) ;
+            for ( Iterator<HitLARQ> iter = index.search(q, 10, 0.0f) ; iter.hasNext() ; iter.next() )
+                hits++ ;
+        }
+        long us = (System.nanoTime() - start) / 1000 / searches ;
+        index.close() ;
+        System.out.println(directory.getType()+": "+searches+" searches, "+hits+" hits, "+us+"us per search") ;
+    }
+
+    // Word numbers skewed towards the small ones, as in text.
+    private static int zipf(Random random)
+    {
+        return (int)Math.floor(Math.pow(vocabulary, random.nextDouble())) ;
+    }
+
+    private static void delete(File f)
+    {
+        File[] x = f.listFiles() ;
+        if ( x != null )
+            for ( File y : x )
+                delete(y) ;
+        f.delete() ;
+    }
+}
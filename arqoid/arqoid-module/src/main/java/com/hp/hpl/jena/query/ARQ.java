@@ -163,6 +163,13 @@ public class ARQ
      */  
     public static final Symbol optFilterPlacement = ARQConstants.allocSymbol("optFilterPlacement") ;
     
+    /** 
+     *  Context key controlling whether the main query engine keeps only the
+     *  first rows of an ORDER BY under a LIMIT, rather than sorting all of them.
+     *  Default is "true".
+     */  
+    public static final Symbol optTopN = ARQConstants.allocSymbol("optTopN") ;
+    
     @Deprecated
     /** Use optFilterPlacement */
     public static final Symbol filterPlacement = ARQConstants.allocSymbol("optFilterPlacement") ;
@@ -192,6 +199,49 @@ public class ARQ
      *  optimizations to disjunctions (||) in filters.
      */  
     public static final Symbol optFilterDisjunction = ARQConstants.allocSymbol("optFilterDisjunction") ;
+
+    /** 
+     *  Context key controlling whether joins and left joins which can not be
+     *  streamed are done by hashing the right side on the variables shared
+     *  with the left side, rather than by scanning it for every left binding.
+     *  Default is "true".
+     */  
+    public static final Symbol optHashJoin = ARQConstants.allocSymbol("optHashJoin") ;
+
+    /** 
+     *  Context key for the number of rows that ORDER BY, DISTINCT and
+     *  GROUP BY hold in memory.  Beyond that, ORDER BY sorts runs of this
+     *  many rows, which are written to temporary files and merged, and
+     *  DISTINCT and GROUP BY write further rows to temporary files,
+     *  partitioned by hash, and process one partition at a time.  Zero or
+     *  less means never spill.  Default is 100000.
+     */  
+    public static final Symbol spillThreshold = ARQConstants.allocSymbol("spillThreshold") ;
+    
+    /** 
+     *  Context key controlling whether the nodes reachable by the paths p*
+     *  and p+, for a single property p, are kept for each graph and kept up
+     *  to date as the graph changes, rather than walking the graph for each
+     *  evaluation.  Default is "false".
+     */  
+    public static final Symbol pathIndex = ARQConstants.allocSymbol("pathIndex") ;
+    
+    /** 
+     *  Context key for the number of rows at a time that basic graph
+     *  patterns on in-memory and other graphs are executed in, rather than
+     *  one input binding at a time.  Zero or less means one at a time.
+     *  Default is 0.
+     */  
+    public static final Symbol bgpBatchSize = ARQConstants.allocSymbol("bgpBatchSize") ;
+    
+    /** 
+     *  Context key for the most rows that a property function call may be
+     *  estimated to produce (see PropertyFunction.estimate) to be done before
+     *  the other triple patterns of its basic graph pattern, whatever order
+     *  they are written in.  Its rows are then the input to those patterns.
+     *  Zero or less turns this off.  Default is 1000.
+     */  
+    public static final Symbol propertyFunctionFirstLimit = ARQConstants.allocSymbol("propertyFunctionFirstLimit") ;
     
     /** 
      *  Context key controlling whether the main query engine 
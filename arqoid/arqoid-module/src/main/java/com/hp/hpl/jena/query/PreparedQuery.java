@@ -0,0 +1,259 @@
+package com.hp.hpl.jena.query;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.ARQConstants;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.Plan;
+import com.hp.hpl.jena.sparql.engine.QueryEngineFactory;
+import com.hp.hpl.jena.sparql.engine.QueryExecutionBase;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.binding.BindingRoot;
+import com.hp.hpl.jena.sparql.engine.main.QueryEngineMain;
+import com.hp.hpl.jena.sparql.lib.Cache;
+import com.hp.hpl.jena.sparql.lib.CacheFactory;
+import com.hp.hpl.jena.sparql.lib.CacheStats;
+import com.hp.hpl.jena.sparql.lib.cache.CacheLRU;
+import com.hp.hpl.jena.sparql.util.Context;
+
+/** A query that has been parsed, compiled to algebra and optimized once,
+ *  to be executed many times, with different parameters, by the main query
+ *  engine.
+ *  <p>
+ *  Prepared queries are kept in an LRU cache keyed on the query: queries
+ *  that are equal (see Query.equals) share the same optimized algebra.
+ *  Query strings are also cached so a repeated string is not parsed again.
+ *  The cache is held in the context the query is prepared with
+ *  (ARQConstants.sysPreparedCache), by default the global context, so queries
+ *  prepared with different contexts, which may be optimized differently, do
+ *  not share it.
+ *  <p>
+ *  What is kept is the optimized Op, not a Plan: a Plan holds the iterator
+ *  of one execution.  Parameters are given as an initial binding; they are
+ *  substituted into the algebra at the start of each execution, as for
+ *  QueryExecution.setInitialBinding, and the algebra is not optimized again.
+ *  The algebra is optimized with the context it is prepared with, as it is
+ *  when prepared, and executions get a copy of that context.
+ *  <p>
+ *  The context of each execution records whether an earlier execution of
+ *  this PreparedQuery already paid for compiling it
+ *  (ARQConstants.sysPreparedReused), which is false only for the first, and
+ *  the time spent preparing the query for it, in milliseconds
+ *  (ARQConstants.sysPreparedCompileTime).  The hits and misses of the
+ *  cache of prepared queries so far are recorded in the context it is held
+ *  in, and so in the contexts of executions copied from it
+ *  (ARQConstants.sysPreparedCacheHits and sysPreparedCacheMisses).
+ */
+public class PreparedQuery
+{
+    /** Number of prepared queries kept */
+    public static final int CACHE_SIZE = 100 ;
+
+    private static final Cache<String, Query> parsed =
+        CacheFactory.createSync(new CacheLRU<String, Query>(0.75f, CACHE_SIZE)) ;
+
+    private final Query query ;
+    private final Context context ;
+    private final Op op ;
+    private final long compileTime ;
+    private final AtomicBoolean executed = new AtomicBoolean(false) ;
+
+    /** Prepare a query string, in the default syntax */
+    public static PreparedQuery prepare(String queryString)
+    {
+        return prepare(queryString, Syntax.defaultSyntax) ;
+    }
+
+    /** Prepare a query string */
+    public static PreparedQuery prepare(String queryString, Syntax syntax)
+    {
+        return prepare(queryString, syntax, ARQ.getContext()) ;
+    }
+
+    /** Prepare a query string, optimized with the given context and cached in it */
+    public static PreparedQuery prepare(String queryString, Syntax syntax, Context context)
+    {
+        String key = syntax.getSymbol()+" "+queryString ;
+        Query query = parsed.get(key) ;
+        if ( query != null )
+            return prepare(query, context, 0) ;
+        long start = System.currentTimeMillis() ;
+        query = QueryFactory.create(queryString, syntax) ;
+        long parseTime = System.currentTimeMillis()-start ;
+        parsed.put(key, query) ;
+        return prepare(query, context, parseTime) ;
+    }
+
+    /** Prepare a query.  The query must not be changed afterwards. */
+    public static PreparedQuery prepare(Query query)
+    {
+        return prepare(query, ARQ.getContext()) ;
+    }
+
+    /** Prepare a query, optimized with the given context and cached in it.
+     *  The query must not be changed afterwards. */
+    public static PreparedQuery prepare(Query query, Context context)
+    {
+        return prepare(query, context, 0) ;
+    }
+
+    private static PreparedQuery prepare(Query query, Context context, long parseTime)
+    {
+        CacheStats<Query, PreparedQuery> cache = cache(context) ;
+        PreparedQuery pq = cache.get(query) ;
+        if ( pq == null )
+        {
+            // Two threads may both prepare the same query; either result will do.
+            pq = new PreparedQuery(query, context, parseTime) ;
+            cache.put(query, pq) ;
+        }
+        context.set(ARQConstants.sysPreparedCacheHits, Long.valueOf(cache.getCacheHits())) ;
+        context.set(ARQConstants.sysPreparedCacheMisses, Long.valueOf(cache.getCacheMisses())) ;
+        return pq ;
+    }
+
+    // The cache of prepared queries held in a context, created on first use.
+    @SuppressWarnings("unchecked")
+    private static CacheStats<Query, PreparedQuery> cache(Context context)
+    {
+        synchronized (context)
+        {
+            CacheStats<Query, PreparedQuery> cache = (CacheStats<Query, PreparedQuery>)context.get(ARQConstants.sysPreparedCache) ;
+            if ( cache == null )
+            {
+                cache = CacheFactory.createStats(CacheFactory.createSync(new CacheLRU<Query, PreparedQuery>(0.75f, CACHE_SIZE))) ;
+                context.set(ARQConstants.sysPreparedCache, cache) ;
+            }
+            return cache ;
+        }
+    }
+
+    /** Drop all prepared queries of the global context, for example after changing the optimizer settings */
+    public static void clearCache()
+    {
+        clearCache(ARQ.getContext()) ;
+        parsed.clear() ;
+    }
+
+    /** Drop all prepared queries of a context, for example after changing its optimizer settings */
+    public static void clearCache(Context context)
+    {
+        context.remove(ARQConstants.sysPreparedCache) ;
+        context.remove(ARQConstants.sysPreparedCacheHits) ;
+        context.remove(ARQConstants.sysPreparedCacheMisses) ;
+    }
+
+    private PreparedQuery(Query query, Context context, long parseTime)
+    {
+        long start = System.currentTimeMillis() ;
+        query.validate() ;
+        this.query = query ;
+        this.context = context ;
+        Op op = Algebra.compile(query) ;
+        if ( ! context.isFalse(ARQ.optimization) )
+            op = Algebra.optimize(op, context) ;
+        this.op = op ;
+        this.compileTime = parseTime + System.currentTimeMillis()-start ;
+    }
+
+    public Query getQuery()         { return query ; }
+
+    /** The optimized algebra expression */
+    public Op getOp()               { return op ; }
+
+    /** Milliseconds spent parsing, compiling and optimizing the query */
+    public long getCompileTime()    { return compileTime ; }
+
+    /** Create a QueryExecution over a dataset */
+    public QueryExecution create(Dataset dataset)
+    {
+        return create(dataset, null) ;
+    }
+
+    /** Create a QueryExecution over a dataset, with the parameters in an initial binding */
+    public QueryExecution create(Dataset dataset, Binding params)
+    {
+        return new QueryExecutionBase(query, dataset, context.copy(), new Factory(params)) ;
+    }
+
+    /** Create a QueryExecution over a model */
+    public QueryExecution create(Model model)
+    {
+        return create(model, null) ;
+    }
+
+    /** Create a QueryExecution over a model, with the parameters in an initial binding */
+    public QueryExecution create(Model model, Binding params)
+    {
+        return create(DatasetFactory.create(model), params) ;
+    }
+
+    /** Create a Plan to execute over a dataset */
+    public Plan createPlan(DatasetGraph dataset, Binding params)
+    {
+        return new Factory(params).create(query, dataset, BindingRoot.create(), context.copy()) ;
+    }
+
+    // Record the metrics, then use the main engine on the algebra, which is
+    // already optimized.
+    private Plan plan(Op op, DatasetGraph dataset, Binding input, Context context)
+    {
+        // Only the first execution pays for the compilation.
+        boolean reused = executed.getAndSet(true) ;
+        context.set(ARQConstants.sysCurrentQuery, query) ;
+        context.set(ARQConstants.sysPreparedReused, reused) ;
+        context.set(ARQConstants.sysPreparedCompileTime, Long.valueOf(reused ? 0 : compileTime)) ;
+        QueryEngineMain engine = new QueryEngineMain(op, dataset, input, context)
+        {
+            @Override
+            protected Op modifyOp(Op op) { return op ; }
+        } ;
+        return engine.getPlan() ;
+    }
+
+    /** Execution of the prepared algebra for one set of parameters */
+    private class Factory implements QueryEngineFactory
+    {
+        private final Binding params ;
+
+        Factory(Binding params) { this.params = params ; }
+
+        public boolean accept(Query query, DatasetGraph dataset, Context context)
+        { return query == PreparedQuery.this.query ; }
+
+        // The input is the initial binding of the QueryExecution, if any.
+        public Plan create(Query query, DatasetGraph dataset, Binding input, Context context)
+        {
+            return plan(op, dataset, withParams(input), context) ;
+        }
+
+        public boolean accept(Op op, DatasetGraph dataset, Context context)
+        { return op == PreparedQuery.this.op ; }
+
+        public Plan create(Op op, DatasetGraph dataset, Binding input, Context context)
+        {
+            return plan(op, dataset, withParams(input), context) ;
+        }
+
+        // The parameters, with any other variables of the input.
+        private Binding withParams(Binding input)
+        {
+            if ( params == null )
+                return input ;
+            Binding b = new BindingMap(params) ;
+            for ( Iterator<Var> iter = input.vars() ; iter.hasNext() ; )
+            {
+                Var v = iter.next() ;
+                if ( ! params.contains(v) )
+                    b.add(v, input.get(v)) ;
+            }
+            return b ;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.hp.hpl.jena.query.larq;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.Constants;
+
+/** How the Lucene files of an on-disk LARQ index are read: which Lucene
+ *  Directory is used, and its settings.  The index builders and readers
+ *  of LARQ open their directories through one of these; the default is
+ *  getDefault().
+ *  <p>
+ *  <ul>
+ *  <li>MMAP: the files are memory mapped.  Files larger than the maximum
+ *      chunk size (by default, 2GB on 64 bit JVMs and 256MB otherwise) are
+ *      mapped in several chunks.  This is the default on 64 bit JVMs.</li>
+ *  <li>NIO, SIMPLE: the files are read through buffers, positioned reads or
+ *      a RandomAccessFile.</li>
+ *  <li>FS: Lucene's choice for the platform (FSDirectory.open).  This is
+ *      the default on 32 bit JVMs, where address space is short.</li>
+ *  <li>HYBRID: the term dictionary and the other small files that are
+ *      searched at random are mapped; postings and stored fields, which are
+ *      read in runs, are read through buffers.  The index does not use
+ *      compound files, so that each part is a file of its own.</li>
+ *  <li>RAM: an index in memory; the file is only used to load it.</li>
+ *  </ul>
+ *  The files are the same whatever the type, so an index written with one
+ *  type can be read with another.
+ */
+
+public class DirectoryLARQ
+{
+    public enum Type { FS, SIMPLE, NIO, MMAP, HYBRID, RAM }
+
+    /** The files HYBRID maps: term dictionary and its index, field infos,
+     *  norms, and the index of stored fields. */
+    public static final Set<String> mappedExtensions =
+        Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("tis", "tii", "fnm", "nrm", "fdx"))) ;
+
+    private static DirectoryLARQ defaultDirectory = new DirectoryLARQ(Constants.JRE_IS_64BIT ? Type.MMAP : Type.FS) ;
+
+    /** The directory settings used by LARQ when none is given */
+    public static DirectoryLARQ getDefault() { return defaultDirectory ; }
+
+    /** Set the directory settings used by LARQ when none is given */
+    public static void setDefault(DirectoryLARQ directory) { defaultDirectory = directory ; }
+
+    private final Type type ;
+    private int maxChunkSize = -1 ;
+    private boolean useUnmap = false ;
+
+    public DirectoryLARQ(Type type)
+    {
+        this.type = type ;
+    }
+
+    public Type getType() { return type ; }
+
+    /** Set the largest piece of a file mapped at once (MMAP and HYBRID).
+     *  Smaller chunks are a little slower to seek in but more likely to find
+     *  address space on a 32 bit JVM. */
+    public DirectoryLARQ setMaxChunkSize(int bytes)
+    {
+        if ( bytes <= 0 )
+            throw new IllegalArgumentException("Chunk size must be > 0: "+bytes) ;
+        maxChunkSize = bytes ;
+        return this ;
+    }
+
+    /** Release mapped files when they are closed rather than when garbage
+     *  collected (MMAP and HYBRID), where the JVM allows it. */
+    public DirectoryLARQ setUseUnmap(boolean useUnmap)
+    {
+        this.useUnmap = useUnmap && MMapDirectory.UNMAP_SUPPORTED ;
+        return this ;
+    }
+
+    /** Whether index writers should pack segments into compound files */
+    public boolean useCompoundFile() { return type != Type.HYBRID ; }
+
+    /** Open the Lucene directory for an index in a file system directory */
+    public Directory open(File fileDir) throws IOException
+    {
+        switch (type)
+        {
+            case SIMPLE:    return new SimpleFSDirectory(fileDir) ;
+            case NIO:       return new NIOFSDirectory(fileDir) ;
+            case MMAP:      return mmap(fileDir) ;
+            case HYBRID:    return new HybridDirectory(mmap(fileDir), new NIOFSDirectory(fileDir)) ;
+            case RAM:       return fileDir.exists() ? new RAMDirectory(FSDirectory.open(fileDir)) : new RAMDirectory() ;
+            default:        return FSDirectory.open(fileDir) ;
+        }
+    }
+
+    private MMapDirectory mmap(File fileDir) throws IOException
+    {
+        MMapDirectory dir = new MMapDirectory(fileDir) ;
+        if ( maxChunkSize > 0 )
+            dir.setMaxChunkSize(maxChunkSize) ;
+        dir.setUseUnmap(useUnmap) ;
+        return dir ;
+    }
+
+    @Override
+    public String toString() { return "DirectoryLARQ("+type+")" ; }
+
+    // Both directories are the same place on disk, so list it once.
+    private static class HybridDirectory extends FileSwitchDirectory
+    {
+        HybridDirectory(Directory mapped, Directory buffered)
+        { super(mappedExtensions, mapped, buffered, true) ; }
+
+        @Override
+        public String[] listAll() throws IOException
+        { return getPrimaryDir().listAll() ; }
+    }
+}
@@ -10,10 +10,10 @@ import java.io.File;
 import java.io.IOException;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 
@@ -31,6 +31,7 @@ public class IndexBuilderBase implements IndexBuilder
 
     private IndexWriter indexWriter = null ;
     //private IndexReader indexReader = null ;
+    private IndexManagerLARQ indexManager = null ;
 
     //private boolean isClosed ;
 
@@ -50,29 +51,30 @@ public class IndexBuilderBase implements IndexBuilder
         indexWriter = existingWriter ;
     }
     
-    /** Create an on-disk index */
+    /** Create an on-disk index, read as set by DirectoryLARQ.getDefault() */
     
     public IndexBuilderBase(File fileDir)
     {
-        try {
-        	//ANDROID: migration to lucene 3.0.2 with lucenoid
-//            dir = FSDirectory.getDirectory(fileDir);
-        	dir = FSDirectory.open(fileDir);
-            makeIndex() ;
-        } catch (Exception ex)
-        { throw new ARQLuceneException("IndexBuilderLARQ", ex) ; }
-        
+        this(fileDir, DirectoryLARQ.getDefault()) ;
     }
     
-    /** Create an on-disk index */
+    /** Create an on-disk index, read as set by DirectoryLARQ.getDefault() */
 
     public IndexBuilderBase(String fileDir)
+    {
+        this(new File(fileDir)) ;
+    }
+
+    /** Create an on-disk index, choosing the Lucene directory used for it */
+
+    public IndexBuilderBase(File fileDir, DirectoryLARQ directory)
     {
         try {
         	//ANDROID: migration to lucene 3.0.2 with lucenoid
-//          dir = FSDirectory.getDirectory(fileDir);
-        	dir = FSDirectory.open(new File(fileDir));
+//            dir = FSDirectory.getDirectory(fileDir);
+        	dir = directory.open(fileDir) ;
             makeIndex() ;
+            indexWriter.setUseCompoundFile(directory.useCompoundFile()) ;
         } catch (Exception ex)
         { throw new ARQLuceneException("IndexBuilderLARQ", ex) ; }
     }
@@ -89,6 +91,16 @@ public class IndexBuilderBase implements IndexBuilder
 
     protected IndexWriter getIndexWriter() { return indexWriter ; }
     
+    /** Add a document to the index.  Searches through the index manager see it
+     *  from the next search on. */
+    protected void addDocument(Document doc) throws IOException
+    {
+        indexWriter.addDocument(doc) ;
+        IndexManagerLARQ m = indexManager ;
+        if ( m != null )
+            m.changed() ;
+    }
+    
     protected IndexReader getIndexReader()
     {
         // Always return a new reader.  Write may have changed.
@@ -110,6 +122,12 @@ public class IndexBuilderBase implements IndexBuilder
     {
         if ( optimize ) 
             flushWriter() ;
+        synchronized(this)
+        {
+            if ( indexManager != null )
+                indexManager.close() ;
+            indexManager = null ;
+        }
         try {
             if ( indexWriter != null ) indexWriter.close();
         }
@@ -119,7 +137,14 @@ public class IndexBuilderBase implements IndexBuilder
     
     public void flushWriter()
     { 
-        try { if ( indexWriter != null ) indexWriter.optimize(); }
+        try {
+            if ( indexWriter != null )
+            {
+                indexWriter.optimize() ;
+                // Lucene 3: readers opened on the directory only see commits.
+                indexWriter.commit() ;
+            }
+        }
         catch (IOException ex) { throw new ARQLuceneException("flushWriter", ex) ; }
     }
     
@@ -133,6 +158,21 @@ public class IndexBuilderBase implements IndexBuilder
         return new IndexLARQ(getIndexReader()) ;
     }
     
+    /** Get the manager of a shared searcher over this index, which sees
+     *  documents as they are added, without flushing or optimizing.
+     *  Use getIndexManager().getIndex() for a LARQ index that keeps up
+     *  with changes.
+     */
+    
+    public synchronized IndexManagerLARQ getIndexManager()
+    {
+        if ( indexWriter == null )
+            throw new ARQLuceneException("getIndexManager: writer closed") ;
+        if ( indexManager == null )
+            indexManager = new IndexManagerLARQ(indexWriter) ;
+        return indexManager ;
+    }
+    
 
 }
 
@@ -43,6 +43,9 @@ public abstract class IndexBuilderLiteral extends IndexBuilderModel
     public IndexBuilderLiteral(String fileDir)
     { super(fileDir) ; }
 
+    public IndexBuilderLiteral(File fileDir, DirectoryLARQ directory)
+    { super(fileDir, directory) ; }
+
     /** Test whether to index this literal */
     protected abstract boolean indexThisLiteral(Literal literal) ;
     
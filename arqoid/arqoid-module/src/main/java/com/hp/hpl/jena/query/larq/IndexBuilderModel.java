@@ -50,6 +50,10 @@ public abstract class IndexBuilderModel extends StatementListener
     public IndexBuilderModel(String fileDir)
     { index = new IndexBuilderNode(fileDir) ; }
 
+    /** Create an on-disk index, choosing the Lucene directory used for it */
+    public IndexBuilderModel(File fileDir, DirectoryLARQ directory)
+    { index = new IndexBuilderNode(fileDir, directory) ; }
+
 //    protected IndexWriter getIndexWriter() { return index.getIndexWriter() ; }
 //    protected IndexReader getIndexReader() { return index.getIndexReader() ; }
     
@@ -87,6 +91,11 @@ public abstract class IndexBuilderModel extends StatementListener
     /** Get a search index used by LARQ. */
     public IndexLARQ getIndex()
     { return index.getIndex() ; }
+
+    /** Get the manager of a shared searcher that sees statements as they
+     *  are indexed.  See IndexBuilderBase.getIndexManager. */
+    public IndexManagerLARQ getIndexManager()
+    { return index.getIndexManager() ; }
 }
 
 /*
@@ -42,13 +42,16 @@ public class IndexBuilderNode extends IndexBuilderBase
     /** Create an on-disk index */
     public IndexBuilderNode(String fileDir) { super(fileDir) ; }
 
+    /** Create an on-disk index, choosing the Lucene directory used for it */
+    public IndexBuilderNode(File fileDir, DirectoryLARQ directory) { super(fileDir, directory) ; }
+
     public void index(RDFNode rdfNode, String indexStr)
     {
         try {
             Document doc = new Document() ;
             LARQ.store(doc, rdfNode.asNode()) ;
             LARQ.index(doc, indexStr) ;
-            getIndexWriter().addDocument(doc) ;
+            addDocument(doc) ;
         } catch (IOException ex)
         { throw new ARQLuceneException("index", ex) ; }
     }
@@ -59,7 +62,7 @@ public class IndexBuilderNode extends IndexBuilderBase
             Document doc = new Document() ;
             LARQ.store(doc, rdfNode.asNode()) ;
             LARQ.index(doc, indexStream) ;
-            getIndexWriter().addDocument(doc) ;
+            addDocument(doc) ;
         } catch (IOException ex)
         { throw new ARQLuceneException("index", ex) ; }
     }
@@ -70,7 +73,7 @@ public class IndexBuilderNode extends IndexBuilderBase
             Document doc = new Document() ;
             LARQ.store(doc, node) ;
             LARQ.index(doc, indexStr) ;
-            getIndexWriter().addDocument(doc) ;
+            addDocument(doc) ;
         } catch (IOException ex)
         { throw new ARQLuceneException("index", ex) ; }
     }
@@ -81,7 +84,7 @@ public class IndexBuilderNode extends IndexBuilderBase
             Document doc = new Document() ;
             LARQ.store(doc, node) ;
             LARQ.index(doc, indexStream) ;
-            getIndexWriter().addDocument(doc) ;
+            addDocument(doc) ;
         } catch (IOException ex)
         { throw new ARQLuceneException("index", ex) ; }
     }
@@ -41,6 +41,12 @@ public class IndexBuilderString extends IndexBuilderLiteral
     public IndexBuilderString(String fileDir)
     { super(fileDir) ; }
 
+    /** Create an index builder, storing the Lucene files in a directory
+     *  read through the given kind of Lucene directory, that indexes
+     *  string literals */
+    public IndexBuilderString(File fileDir, DirectoryLARQ directory)
+    { super(fileDir, directory) ; }
+
     /** Create an index builder in-memory that indexes string literals,
      * restricted to statements with a given property
      */
@@ -41,6 +41,9 @@ public class IndexBuilderSubject extends IndexBuilderModel
     public IndexBuilderSubject(String fileDir)
     { super(fileDir) ; }
 
+    public IndexBuilderSubject(File fileDir, DirectoryLARQ directory)
+    { super(fileDir, directory) ; }
+
     public IndexBuilderSubject(Property p)
     {
         this() ;
@@ -6,18 +6,26 @@
 
 package com.hp.hpl.jena.query.larq;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.Version;
 
@@ -26,7 +34,6 @@ import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.NodeIterator;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.impl.NodeIteratorImpl;
-import com.hp.hpl.jena.sparql.lib.iterator.IteratorTruncate;
 import com.hp.hpl.jena.sparql.util.ModelUtils;
 import com.hp.hpl.jena.util.iterator.Map1;
 import com.hp.hpl.jena.util.iterator.Map1Iterator;
@@ -38,6 +45,8 @@ import com.hp.hpl.jena.util.iterator.Map1Iterator;
  */
 public class IndexLARQ {
 	private IndexReader reader = null;
+	private IndexManagerLARQ manager = null;
+	private IndexSearcher searcher = null;
 	private QueryParser luceneQueryParser = null;
 
 	public IndexLARQ(IndexReader r) {
@@ -59,6 +68,37 @@ public class IndexLARQ {
 		luceneQueryParser = qp;
 	}
 
+	/**
+	 * An index that searches with the shared searcher of a manager, and so
+	 * sees documents as they are added.
+	 */
+	public IndexLARQ(IndexManagerLARQ m) {
+		this(m, new StandardAnalyzer(Version.LUCENE_23));
+	}
+
+	public IndexLARQ(IndexManagerLARQ m, Analyzer a) {
+		this(m, new QueryParser(Version.LUCENE_23, LARQ.fIndex, a));
+	}
+
+	public IndexLARQ(IndexManagerLARQ m, QueryParser qp) {
+		manager = m;
+		luceneQueryParser = qp;
+	}
+
+	private synchronized Searcher acquireSearcher() {
+		if (manager != null)
+			return manager.acquire();
+		// One searcher for the life of the reader.
+		if (searcher == null)
+			searcher = new IndexSearcher(reader);
+		return searcher;
+	}
+
+	private void releaseSearcher(Searcher s) {
+		if (manager != null)
+			manager.release((IndexSearcher) s);
+	}
+
 	/**
 	 * Perform a free text Lucene search and return a NodeIterator.
 	 * 
@@ -103,10 +143,7 @@ public class IndexLARQ {
 		};
 
 		Iterator<RDFNode> iter = new Map1Iterator<HitLARQ, RDFNode>(converter,
-				search(queryString));
-		if (scoreLimit > 0)
-			iter = new IteratorTruncate<RDFNode>(new ScoreTest(scoreLimit),
-					iter);
+				search(queryString, -1, scoreLimit));
 
 		NodeIterator nIter = new NodeIteratorImpl(iter, null);
 		return nIter;
@@ -128,9 +165,25 @@ public class IndexLARQ {
 	 */
 
 	public Iterator<HitLARQ> search(String queryString) {
-		try {
-			final Searcher searcher = new IndexSearcher(reader);
+		return search(queryString, -1, 0.0f);
+	}
+
+	/**
+	 * Perform a free text Lucene search, asking Lucene for no more than the
+	 * best limit hits and stopping at the first hit scoring below scoreLimit.
+	 * 
+	 * @param queryString
+	 * @param limit
+	 *            Most hits to return; negative for no limit
+	 * @param scoreLimit
+	 *            Minimum Lucene score; zero or less for no minimum
+	 * @return Iterator of hits (Graph node and score), best first
+	 */
 
+	public Iterator<HitLARQ> search(String queryString, int limit,
+			float scoreLimit) {
+		Searcher searcher = acquireSearcher();
+		try {
 			Query query = luceneQueryParser.parse(queryString);
 
 			// ANDROID: migration to lucene 3.0.2 with lucenoid
@@ -146,17 +199,84 @@ public class IndexLARQ {
 			// Iterator<HitLARQ> iter = new Map1Iterator<Hit,
 			// HitLARQ>(converter, iterHits) ;
 			// return iter ;
-			TopDocs docs = searcher.search(query, Integer.MAX_VALUE);
-			List<HitLARQ> hitLarqs = new ArrayList<HitLARQ>(docs.totalHits);
-			for(int i=0; i < docs.totalHits; i++) {
+			// Top-K and the score threshold are applied before documents are
+			// loaded.
+			int n = (limit >= 0) ? limit : Integer.MAX_VALUE;
+			if (n == 0)
+				return new ArrayList<HitLARQ>().iterator();
+			TopDocs docs = searcher.search(query, n);
+			List<HitLARQ> hitLarqs = new ArrayList<HitLARQ>(docs.scoreDocs.length);
+			for(int i=0; i < docs.scoreDocs.length; i++) {
 				ScoreDoc scoreDoc = docs.scoreDocs[i];
+				if (scoreLimit > 0 && scoreDoc.score < scoreLimit)
+					break;
 				hitLarqs.add(new HitLARQ(searcher.doc(scoreDoc.doc), scoreDoc));
 			}
 			return hitLarqs.iterator();
 
 		} catch (Exception e) {
 			throw new ARQLuceneException("search", e);
+		} finally {
+			releaseSearcher(searcher);
+		}
+	}
+
+	/**
+	 * Estimate the number of hits for a Lucene query string from the document
+	 * frequencies of its terms: the least for terms that must all match, the
+	 * sum for alternatives. Used to decide whether to search before the other
+	 * patterns of a query.
+	 * 
+	 * @param queryString
+	 * @return Estimated number of hits, at most the number of documents
+	 */
+	public long estimateHits(String queryString) {
+		Searcher searcher = acquireSearcher();
+		try {
+			IndexReader r = ((IndexSearcher) searcher).getIndexReader();
+			Query query = searcher.rewrite(luceneQueryParser.parse(queryString));
+			return Math.min(estimate(query, r), r.numDocs());
+		} catch (Exception e) {
+			throw new ARQLuceneException("estimateHits", e);
+		} finally {
+			releaseSearcher(searcher);
+		}
+	}
+
+	private static long estimate(Query query, IndexReader r) throws IOException {
+		if (query instanceof TermQuery)
+			return r.docFreq(((TermQuery) query).getTerm());
+		if (query instanceof PhraseQuery) {
+			long x = r.numDocs();
+			for (Term t : ((PhraseQuery) query).getTerms())
+				x = Math.min(x, r.docFreq(t));
+			return x;
+		}
+		if (query instanceof BooleanQuery) {
+			long required = -1;
+			long optional = 0;
+			for (BooleanClause c : ((BooleanQuery) query).getClauses()) {
+				if (c.isProhibited())
+					continue;
+				long x = estimate(c.getQuery(), r);
+				if (c.isRequired())
+					required = (required < 0) ? x : Math.min(required, x);
+				else
+					optional += x;
+			}
+			return (required >= 0) ? required : optional;
+		}
+		// Anything else: every term may match separately.
+		Set<Term> terms = new HashSet<Term>();
+		try {
+			query.extractTerms(terms);
+		} catch (UnsupportedOperationException ex) {
+			return r.numDocs();
 		}
+		long x = 0;
+		for (Term t : terms)
+			x += r.docFreq(t);
+		return x;
 	}
 
 	/**
@@ -0,0 +1,86 @@
+package com.hp.hpl.jena.query.larq;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+
+/** Shares one searcher over an index that is still being written, and
+ *  brings it up to date when the index changes.
+ *  <p>
+ *  The reader comes from the IndexWriter (IndexWriter.getReader), so it sees
+ *  documents added by the writer without a commit or an optimize.  Index
+ *  builders call changed() after adding documents; the next acquire then
+ *  reopens the reader, which only opens the segments written since, and
+ *  searches started before that carry on with the reader they have.
+ *  <p>
+ *  Readers are reference counted: each acquire must be matched by a
+ *  release.  The manager holds one reference to the current reader, which
+ *  is given up when it is replaced or the manager is closed.
+ */
+
+public class IndexManagerLARQ
+{
+    private final IndexWriter writer ;
+    private IndexSearcher current ;
+    private volatile boolean stale = false ;
+
+    public IndexManagerLARQ(IndexWriter writer)
+    {
+        this.writer = writer ;
+        try { current = new IndexSearcher(writer.getReader()) ; }
+        catch (IOException ex) { throw new ARQLuceneException("IndexManagerLARQ", ex) ; }
+    }
+
+    /** Note that the index has changed; the searcher is reopened when next acquired. */
+    public void changed() { stale = true ; }
+
+    /** Get the current searcher.  Call release when finished with it. */
+    public synchronized IndexSearcher acquire()
+    {
+        if ( current == null )
+            throw new ARQLuceneException("IndexManagerLARQ: closed") ;
+        if ( stale )
+            reopen() ;
+        current.getIndexReader().incRef() ;
+        return current ;
+    }
+
+    /** Finish with a searcher from acquire. */
+    public void release(IndexSearcher searcher)
+    {
+        try { searcher.getIndexReader().decRef() ; }
+        catch (IOException ex) { throw new ARQLuceneException("release", ex) ; }
+    }
+
+    /** Make the searcher see all documents added so far. */
+    public synchronized void reopen()
+    {
+        // Clear first: a change during the reopen marks it stale again.
+        stale = false ;
+        try {
+            IndexReader reader = current.getIndexReader() ;
+            IndexReader newReader = reader.reopen() ;
+            if ( newReader != reader )
+            {
+                current = new IndexSearcher(newReader) ;
+                reader.decRef() ;
+            }
+        } catch (IOException ex) { throw new ARQLuceneException("reopen", ex) ; }
+    }
+
+    /** A search index, for LARQ, that always sees the latest documents */
+    public IndexLARQ getIndex() { return new IndexLARQ(this) ; }
+
+    /** Stop sharing the searcher.  Searches in progress can finish; the
+     *  writer is not closed. */
+    public synchronized void close()
+    {
+        if ( current == null )
+            return ;
+        try { current.getIndexReader().decRef() ; }
+        catch (IOException ex) { throw new ARQLuceneException("close", ex) ; }
+        current = null ;
+    }
+}
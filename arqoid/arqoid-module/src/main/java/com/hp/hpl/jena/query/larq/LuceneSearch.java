@@ -6,7 +6,9 @@
 
 package com.hp.hpl.jena.query.larq;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import com.hp.hpl.jena.util.iterator.Map1;
 import com.hp.hpl.jena.util.iterator.Map1Iterator;
@@ -22,14 +24,13 @@ import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
-import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSlice;
 import com.hp.hpl.jena.sparql.expr.ExprEvalException;
 import com.hp.hpl.jena.sparql.expr.NodeValue;
-import com.hp.hpl.jena.sparql.lib.iterator.IteratorTruncate ;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArgType;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionEval;
 import com.hp.hpl.jena.sparql.util.ALog;
+import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.sparql.util.IterLib;
 import com.hp.hpl.jena.sparql.util.NodeFactory;
 
@@ -47,8 +48,47 @@ public abstract class LuceneSearch extends PropertyFunctionEval
               PropFuncArgType.PF_ARG_EITHER) ;
     }
 
+    // Per execution: the hits for each search string tested with a bound subject.
+    private Map<String, Map<Node, HitLARQ>> hitSets = null ;
+
     protected abstract IndexLARQ getIndex(ExecutionContext execCxt) ;
     
+    /** The index to use when planning a query, before it is executed, or null
+     *  if it is not known until then. */
+    protected IndexLARQ getIndex(Context context) { return null ; }
+    
+    /** Estimate the number of hits for a search, from the Lucene document
+     *  frequencies of its terms.  Returns -1 if there is no estimate, or if
+     *  the search should stay where it is in the query: the match is not a
+     *  variable, the search string is not a constant, or the search has a
+     *  limit (a limit on hits means something different once the match is
+     *  bound).
+     */
+    @Override
+    public long estimate(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, Context context)
+    {
+        Node match = argSubject.isList() ? argSubject.getArg(0) : argSubject.getArg() ;
+        if ( match == null || ! match.isVariable() )
+            return -1 ;
+        Node searchString = argObject.isList() ? argObject.getArg(0) : argObject.getArg() ;
+        if ( searchString == null || ! searchString.isLiteral() || asString(searchString) == null )
+            return -1 ;
+        if ( argObject.isList() )
+        {
+            for ( int i = 1 ; i < argObject.getArgListSize() ; i++ )
+            {
+                if ( isInteger(asInteger(argObject.getArg(i))) )
+                    return -1 ;
+            }
+        }
+        IndexLARQ index = getIndex(context) ;
+        if ( index == null )
+            return -1 ;
+        try {
+            return index.estimateHits(asString(searchString)) ;
+        } catch (ARQLuceneException ex) { return -1 ; }
+    }
+    
     @Override
     public void build(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt)
     {
@@ -196,19 +236,14 @@ public abstract class LuceneSearch extends PropertyFunctionEval
                                     String searchString, long limit, float scoreLimit,
                                     ExecutionContext execCxt)
     {
-        Iterator<HitLARQ> iter = getIndex(execCxt).search(searchString) ;
-        
-        if ( scoreLimit > 0 )
-            iter = new IteratorTruncate<HitLARQ>(new ScoreTest(scoreLimit), iter) ;
+        // Lucene applies the limit and the score threshold.
+        int n = ( limit < 0 || limit > Integer.MAX_VALUE ) ? -1 : (int)limit ;
+        Iterator<HitLARQ> iter = getIndex(execCxt).search(searchString, n, scoreLimit) ;
         
         HitConverter converter = new HitConverter(binding, match, score) ;
         
         Iterator<Binding> iter2 = new Map1Iterator<HitLARQ, Binding>(converter, iter) ;
-        QueryIterator qIter = new QueryIterPlainWrapper(iter2, execCxt) ;
-
-        if ( limit >= 0 )
-            qIter = new QueryIterSlice(qIter, 0, limit, execCxt) ;
-        return qIter ;
+        return new QueryIterPlainWrapper(iter2, execCxt) ;
     }
     
     static class HitConverter implements Map1<HitLARQ, Binding>
@@ -240,7 +275,7 @@ public abstract class LuceneSearch extends PropertyFunctionEval
                                       String searchString, long limit, float scoreLimit,
                                       ExecutionContext execCxt)
     {
-        HitLARQ hit = getIndex(execCxt).contains(match, searchString) ;
+        HitLARQ hit = hits(searchString, execCxt).get(match) ;
         
         if ( hit == null )
             return new QueryIterNullIterator(execCxt) ;
@@ -249,6 +284,27 @@ public abstract class LuceneSearch extends PropertyFunctionEval
         return IterLib.oneResult(binding, score, NodeFactory.floatToNode(hit.getScore()), execCxt) ;
     }
 
+    // Search once for each search string, rather than once for each subject.
+    private Map<Node, HitLARQ> hits(String searchString, ExecutionContext execCxt)
+    {
+        if ( hitSets == null )
+            hitSets = new HashMap<String, Map<Node, HitLARQ>>() ;
+        Map<Node, HitLARQ> hits = hitSets.get(searchString) ;
+        if ( hits == null )
+        {
+            hits = new HashMap<Node, HitLARQ>() ;
+            for ( Iterator<HitLARQ> iter = getIndex(execCxt).search(searchString) ; iter.hasNext() ; )
+            {
+                // Best first: keep the first hit for a node, as contains() would.
+                HitLARQ hit = iter.next() ;
+                if ( ! hits.containsKey(hit.getNode()) )
+                    hits.put(hit.getNode(), hit) ;
+            }
+            hitSets.put(searchString, hits) ;
+        }
+        return hits ;
+    }
+
     static private String asString(Node node)
     {
         if ( node.getLiteralDatatype() != null
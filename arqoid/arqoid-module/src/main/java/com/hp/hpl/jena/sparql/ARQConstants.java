@@ -196,6 +196,21 @@ public class ARQConstants
     
     /** Context key for the execution-scoped bNode variable generator */
     public static final Symbol sysVarAllocAnon  = Symbol.create(systemVarNS+"namedVarAnon") ;
+
+    /** Context key for whether the execution of a PreparedQuery came after another, which paid for compiling it */
+    public static final Symbol sysPreparedReused  = Symbol.create(systemVarNS+"preparedReused") ;
+
+    /** Context key for the milliseconds the execution of a PreparedQuery spent preparing it (a Long) */
+    public static final Symbol sysPreparedCompileTime  = Symbol.create(systemVarNS+"preparedCompileTime") ;
+
+    /** Context key for the cache of the queries prepared with a context */
+    public static final Symbol sysPreparedCache  = Symbol.create(systemVarNS+"preparedCache") ;
+
+    /** Context key for the number of PreparedQuery.prepare calls answered from the cache of a context (a Long) */
+    public static final Symbol sysPreparedCacheHits  = Symbol.create(systemVarNS+"preparedCacheHits") ;
+
+    /** Context key for the number of PreparedQuery.prepare calls that compiled the query for the cache of a context (a Long) */
+    public static final Symbol sysPreparedCacheMisses  = Symbol.create(systemVarNS+"preparedCacheMisses") ;
     
     /** Context key for making all SELECT queries have DISTINCT applied, whether stated ot not */
     public static final Symbol autoDistinct = ARQConstants.allocSymbol("autoDistinct") ;
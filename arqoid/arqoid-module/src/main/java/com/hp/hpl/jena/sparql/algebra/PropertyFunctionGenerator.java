@@ -7,6 +7,8 @@
 package com.hp.hpl.jena.sparql.algebra;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -14,6 +16,7 @@ import java.util.Map;
 
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
 import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
 import com.hp.hpl.jena.sparql.algebra.op.OpPropFunc;
 import com.hp.hpl.jena.sparql.algebra.op.OpSequence;
@@ -22,6 +25,8 @@ import com.hp.hpl.jena.sparql.core.BasicPattern;
 import com.hp.hpl.jena.sparql.expr.Expr;
 import com.hp.hpl.jena.sparql.expr.ExprList;
 import com.hp.hpl.jena.sparql.pfunction.PropFuncArg;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunction;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionFactory;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry;
 import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.sparql.util.ExprUtils;
@@ -65,6 +70,10 @@ public class PropertyFunctionGenerator
         // Removes triples of list arguments.  This mutates 'triples'
         findPropertyFunctionArgs(context, triples, propertyFunctionTriples, pfInvocations) ;
         
+        // Property functions expected to produce few rows go first, so their
+        // rows are the input to the other triples.
+        selectiveFirst(context, registry, triples, pfInvocations) ;
+        
         // Now make the OpSequence structure.
         Op op = makeStages(triples, pfInvocations) ;
         return op ;
@@ -101,6 +110,46 @@ public class PropertyFunctionGenerator
         }
     }
     
+    private static void selectiveFirst(Context context,
+                                      PropertyFunctionRegistry registry,
+                                      BasicPattern triples,
+                                      Map<Triple, PropertyFunctionInstance> pfInvocations)
+    {
+        if ( context == null )
+            return ;
+        int maxRows = context.getInt(ARQ.propertyFunctionFirstLimit, 1000) ;
+        if ( maxRows <= 0 )
+            return ;
+        
+        final Map<Triple, Long> estimates = new HashMap<Triple, Long>() ;
+        for ( Triple t : triples )
+        {
+            PropertyFunctionInstance pfi = pfInvocations.get(t) ;
+            if ( pfi == null )
+                continue ;
+            String uri = t.getPredicate().getURI() ;
+            PropertyFunctionFactory factory = registry.get(uri) ;
+            PropertyFunction pf = ( factory == null ) ? null : factory.create(uri) ;
+            if ( pf == null )
+                continue ;
+            long n = pf.estimate(pfi.getSubjectArgList(), t.getPredicate(), pfi.getObjectArgList(), context) ;
+            if ( n >= 0 && n <= maxRows )
+                estimates.put(t, n) ;
+        }
+        if ( estimates.isEmpty() )
+            return ;
+        
+        // Fewest rows first, then the rest of the pattern as written.
+        List<Triple> first = new ArrayList<Triple>(estimates.keySet()) ;
+        Collections.sort(first, new Comparator<Triple>() {
+            public int compare(Triple t1, Triple t2)
+            { return estimates.get(t1).compareTo(estimates.get(t2)) ; }
+        }) ;
+        List<Triple> list = triples.getList() ;
+        list.removeAll(first) ;
+        list.addAll(0, first) ;
+    }
+    
     private static class PropertyFunctionInstance
     {
         Node predicate ;
@@ -6,9 +6,12 @@
 
 package com.hp.hpl.jena.sparql.algebra;
 
+import java.util.List;
+
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.algebra.table.Table1;
 import com.hp.hpl.jena.sparql.algebra.table.TableEmpty;
+import com.hp.hpl.jena.sparql.algebra.table.TableHashed;
 import com.hp.hpl.jena.sparql.algebra.table.TableN;
 import com.hp.hpl.jena.sparql.algebra.table.TableUnit;
 import com.hp.hpl.jena.sparql.core.Var;
@@ -36,6 +39,19 @@ public class TableFactory
         
         return new TableN(queryIterator) ; }
 
+    /** Create a table for the right side of a join, hashed on the join key variables */
+    public static Table create(QueryIterator queryIterator, List<Var> keyVars)
+    {
+        if ( keyVars.isEmpty() )
+            return create(queryIterator) ;
+        if ( queryIterator instanceof QueryIterRoot )
+        {
+            queryIterator.close();
+            return createUnit() ;
+        }
+        return new TableHashed(queryIterator, keyVars) ;
+    }
+
     public static Table create(Var var, Node value)
     { return new Table1(var, value) ; }
 }
@@ -35,7 +35,8 @@ public class TransformJoinStrategy extends TransformCopy
       if ( canDoLinear )
           // Streamed evaluation
           return OpSequence.create(left, right) ;
-      // Can't do better.
+      // Can't stream.  Both sides are evaluated and joined, by hashing
+      // the right side if they share variables (see OpExecutor).
       return super.transform(opJoin, left,right) ;
     }
     
@@ -59,7 +60,8 @@ public class TransformJoinStrategy extends TransformCopy
           return new OpConditional(opLeft, opRight) ;
       }
 
-      // Not index-able. 
+      // Not index-able.  Left join by hashing the right side on any
+      // shared variables, with the expression applied to each match.
       return super.transform(opLeftJoin, opLeft, opRight) ;
     }
 }
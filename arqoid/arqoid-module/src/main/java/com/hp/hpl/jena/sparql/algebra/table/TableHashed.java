@@ -0,0 +1,147 @@
+package com.hp.hpl.jena.sparql.algebra.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+
+/** A table, used as the right side of a join, with its rows hashed on
+ *  the values of some join key variables.  matchRightLeft then only
+ *  looks at the rows with the same key as the left binding, rather than
+ *  at every row.
+ *  <p>
+ *  The key variables need only be usually bound: rows with a key variable
+ *  unbound are compatible with any key, so are tried for every left
+ *  binding, and a left binding with a key variable unbound is matched
+ *  against every row.  Rows are tried in table order, so the results are
+ *  the same, in the same order, as for TableN.
+ */
+public class TableHashed extends TableN
+{
+    private final Var[] keyVars ;
+    private final Map<Object, Rows> index = new HashMap<Object, Rows>() ;
+    // Rows with some key variable unbound
+    private final Rows unkeyed = new Rows() ;
+
+    public TableHashed(List<Var> keyVars)
+    {
+        this.keyVars = keyVars.toArray(new Var[keyVars.size()]) ;
+    }
+
+    public TableHashed(QueryIterator qIter, List<Var> keyVars)
+    {
+        this(keyVars) ;
+        materialize(qIter) ;
+    }
+
+    @Override
+    public void addBinding(Binding binding)
+    {
+        int i = rows.size() ;
+        super.addBinding(binding) ;
+        Object key = key(binding) ;
+        if ( key == null )
+        {
+            unkeyed.add(i) ;
+            return ;
+        }
+        Rows r = index.get(key) ;
+        if ( r == null )
+        {
+            r = new Rows() ;
+            index.put(key, r) ;
+        }
+        r.add(i) ;
+    }
+
+    // Note - this table is the RIGHT table, and takes a LEFT binding.
+    @Override
+    public QueryIterator matchRightLeft(Binding bindingLeft, boolean includeOnNoMatch,
+                                        ExprList conditions,
+                                        ExecutionContext execContext)
+    {
+        Object key = key(bindingLeft) ;
+        if ( key == null )
+            return super.matchRightLeft(bindingLeft, includeOnNoMatch, conditions, execContext) ;
+
+        List<Binding> out = new ArrayList<Binding>() ;
+        Rows keyed = index.get(key) ;
+        if ( keyed == null )
+            keyed = Rows.NONE ;
+
+        // Merge the two lists of row numbers, keeping table order.
+        int i = 0 ;
+        int j = 0 ;
+        while ( i < keyed.size || j < unkeyed.size )
+        {
+            int row ;
+            if ( j == unkeyed.size || ( i < keyed.size && keyed.rows[i] < unkeyed.rows[j] ) )
+                row = keyed.rows[i++] ;
+            else
+                row = unkeyed.rows[j++] ;
+            Binding r = Algebra.merge(bindingLeft, rows.get(row)) ;
+            if ( r == null )
+                continue ;
+            // This does the conditional part. Theta-join.
+            if ( conditions == null || conditions.isSatisfied(r, execContext) )
+                out.add(r) ;
+        }
+
+        if ( out.size() == 0 && includeOnNoMatch )
+            out.add(bindingLeft) ;
+
+        if ( out.size() == 0 )
+            return new QueryIterNullIterator(execContext) ;
+        return new QueryIterPlainWrapper(out.iterator(), execContext) ;
+    }
+
+    @Override
+    public void closeTable()
+    {
+        super.closeTable() ;
+        index.clear() ;
+    }
+
+    /** The key of a binding: the node for a single key variable, a list
+     *  of nodes for several, or null if any key variable is unbound. */
+    private Object key(Binding binding)
+    {
+        if ( keyVars.length == 1 )
+            return binding.get(keyVars[0]) ;
+        Node[] nodes = new Node[keyVars.length] ;
+        for ( int i = 0 ; i < keyVars.length ; i++ )
+        {
+            nodes[i] = binding.get(keyVars[i]) ;
+            if ( nodes[i] == null )
+                return null ;
+        }
+        return Arrays.asList(nodes) ;
+    }
+
+    /** Row numbers, ascending */
+    private static class Rows
+    {
+        static final Rows NONE = new Rows() ;
+
+        int[] rows = new int[2] ;
+        int size = 0 ;
+
+        void add(int row)
+        {
+            if ( size == rows.length )
+                rows = Arrays.copyOf(rows, size * 2) ;
+            rows[size++] = row ;
+        }
+    }
+}
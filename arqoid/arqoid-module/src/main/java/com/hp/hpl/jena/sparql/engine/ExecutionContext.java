@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.query.ARQ;
 import com.hp.hpl.jena.sparql.core.DatasetGraph;
 import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory;
 import com.hp.hpl.jena.sparql.function.FunctionEnv;
@@ -20,6 +21,9 @@ public class ExecutionContext implements FunctionEnv
 {
     private static boolean TrackAllIterators = false ;
 
+    /** Default for ARQ.spillThreshold */
+    public static final int DEFAULT_SPILL_THRESHOLD = 100000 ;
+
     private Context context       = null ;
     private DatasetGraph dataset  = null ;
     
@@ -61,6 +65,18 @@ public class ExecutionContext implements FunctionEnv
 
     public Context getContext()       { return context ; }
 
+    /** The number of rows an operator that needs all its input (ORDER BY,
+     *  DISTINCT, GROUP BY) holds in memory before spilling to disk, or 0 for
+     *  no limit.  Set with ARQ.spillThreshold.
+     */
+    public int getSpillThreshold()
+    {
+        if ( context == null )
+            return DEFAULT_SPILL_THRESHOLD ;
+        int x = context.getInt(ARQ.spillThreshold, DEFAULT_SPILL_THRESHOLD) ;
+        return x < 0 ? 0 : x ;
+    }
+
 //    public ExecutionContext getExecutionContext()       { return this ; }
 
     
@@ -0,0 +1,129 @@
+package com.hp.hpl.jena.sparql.engine.binding;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.sparql.core.Var;
+
+/** Read bindings written by BindingOutputStream.  Each binding is rebuilt
+ *  as a chain of one-variable bindings in the order it was written, so its
+ *  variables are iterated in the same order as the original's. */
+public class BindingInputStream
+{
+    private final DataInputStream in ;
+    private final List<Var> vars = new ArrayList<Var>() ;
+    private final Node[] cache = new Node[BindingOutputStream.CACHE_SIZE] ;
+    private final TypeMapper typeMapper = TypeMapper.getInstance() ;
+
+    public BindingInputStream(InputStream in)
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64*1024)) ;
+    }
+
+    /** Read the next binding, or return null at the end of the stream */
+    public Binding read() throws IOException
+    {
+        int first = in.read() ;
+        if ( first < 0 )
+            return null ;
+        int size = readInt(first) ;
+        Binding binding = BindingRoot.create() ;
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            int x = readInt(in.readUnsignedByte()) ;
+            Var v ;
+            if ( x == vars.size() )
+            {
+                v = Var.alloc(readString()) ;
+                vars.add(v) ;
+            }
+            else
+                v = vars.get(x) ;
+            binding = new Binding1(binding, v, readNode()) ;
+        }
+        return binding ;
+    }
+
+    private Node readNode() throws IOException
+    {
+        int kind = in.readUnsignedByte() ;
+        Node node ;
+        switch (kind)
+        {
+            case BindingOutputStream.REF:
+                return cache[readInt(in.readUnsignedByte())] ;
+            case BindingOutputStream.URI:
+                node = Node.createURI(readString()) ;
+                break ;
+            case BindingOutputStream.BLANK:
+                node = Node.createAnon(new AnonId(readString())) ;
+                break ;
+            case BindingOutputStream.LITERAL:
+                node = Node.createLiteral(readString()) ;
+                break ;
+            case BindingOutputStream.LANG:
+            {
+                String lex = readString() ;
+                node = Node.createLiteral(lex, readString(), false) ;
+                break ;
+            }
+            case BindingOutputStream.TYPED:
+            {
+                String lex = readString() ;
+                node = Node.createLiteral(lex, null, typeMapper.getSafeTypeByName(readString())) ;
+                break ;
+            }
+            case BindingOutputStream.VARIABLE:
+                node = Node.createVariable(readString()) ;
+                break ;
+            default:
+                throw new IOException("Bad node encoding: "+kind) ;
+        }
+        cache[BindingOutputStream.slot(node)] = node ;
+        return node ;
+    }
+
+    /** Read a number written by BindingOutputStream.writeLong */
+    public long readLong() throws IOException
+    {
+        long x = 0 ;
+        int shift = 0 ;
+        int b ;
+        while ( ( ( b = in.readUnsignedByte() ) & 0x80 ) != 0 )
+        {
+            x |= (long)( b & 0x7F ) << shift ;
+            shift += 7 ;
+        }
+        return x | ( (long)b << shift ) ;
+    }
+
+    // The first byte has been read already, so EOF can be told apart from a truncated binding.
+    private int readInt(int b) throws IOException
+    {
+        int x = 0 ;
+        int shift = 0 ;
+        while ( ( b & 0x80 ) != 0 )
+        {
+            x |= ( b & 0x7F ) << shift ;
+            shift += 7 ;
+            b = in.readUnsignedByte() ;
+        }
+        return x | ( b << shift ) ;
+    }
+
+    private String readString() throws IOException
+    {
+        byte[] b = new byte[readInt(in.readUnsignedByte())] ;
+        in.readFully(b) ;
+        return new String(b, "UTF-8") ;
+    }
+
+    public void close() throws IOException  { in.close() ; }
+}
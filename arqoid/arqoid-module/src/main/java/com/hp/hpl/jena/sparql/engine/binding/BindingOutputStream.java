@@ -0,0 +1,174 @@
+package com.hp.hpl.jena.sparql.engine.binding;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+
+/** Write bindings in a compact binary form, for spilling to disk and
+ *  reading back with BindingInputStream.
+ *  <p>
+ *  Each binding is its number of variables, then a variable and a node
+ *  for each, in the order of Binding.vars().  A variable is written by
+ *  name the first time it is seen, and after that as a number.  Nodes go
+ *  through a small direct-mapped cache, mirrored by the reader, so a node
+ *  that was written recently, as nodes in sorted or grouped results usually
+ *  were, is just a slot number.  Numbers are variable length and strings
+ *  are UTF-8.
+ */
+public class BindingOutputStream
+{
+    static final int CACHE_SIZE = 1 << 12 ;
+
+    // Node encodings
+    static final int REF        = 0 ;
+    static final int URI        = 1 ;
+    static final int BLANK      = 2 ;
+    static final int LITERAL    = 3 ;
+    static final int LANG       = 4 ;
+    static final int TYPED      = 5 ;
+    static final int VARIABLE   = 6 ;
+
+    private final DataOutputStream out ;
+    private final Map<Var, Integer> vars = new HashMap<Var, Integer>() ;
+    private final Node[] cache = new Node[CACHE_SIZE] ;
+
+    public BindingOutputStream(OutputStream out)
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64*1024)) ;
+    }
+
+    public void write(Binding binding) throws IOException
+    {
+        writeInt(binding.size()) ;
+        for ( Iterator<Var> iter = binding.vars() ; iter.hasNext() ; )
+        {
+            Var v = iter.next() ;
+            Integer i = vars.get(v) ;
+            if ( i == null )
+            {
+                // A new variable: the next number, then its name.
+                writeInt(vars.size()) ;
+                writeString(v.getVarName()) ;
+                vars.put(v, vars.size()) ;
+            }
+            else
+                writeInt(i) ;
+            write(binding.get(v)) ;
+        }
+    }
+
+    private void write(Node node) throws IOException
+    {
+        int slot = slot(node) ;
+        if ( node.equals(cache[slot]) )
+        {
+            out.writeByte(REF) ;
+            writeInt(slot) ;
+            return ;
+        }
+        cache[slot] = node ;
+        if ( node.isURI() )
+        {
+            out.writeByte(URI) ;
+            writeString(node.getURI()) ;
+        }
+        else if ( node.isBlank() )
+        {
+            out.writeByte(BLANK) ;
+            writeString(node.getBlankNodeLabel()) ;
+        }
+        else if ( node.isLiteral() )
+        {
+            String dt = node.getLiteralDatatypeURI() ;
+            String lang = node.getLiteralLanguage() ;
+            if ( dt != null )
+            {
+                out.writeByte(TYPED) ;
+                writeString(node.getLiteralLexicalForm()) ;
+                writeString(dt) ;
+            }
+            else if ( lang != null && ! lang.equals("") )
+            {
+                out.writeByte(LANG) ;
+                writeString(node.getLiteralLexicalForm()) ;
+                writeString(lang) ;
+            }
+            else
+            {
+                out.writeByte(LITERAL) ;
+                writeString(node.getLiteralLexicalForm()) ;
+            }
+        }
+        else if ( node.isVariable() )
+        {
+            out.writeByte(VARIABLE) ;
+            writeString(node.getName()) ;
+        }
+        else
+            throw new IOException("Can't write node: "+node) ;
+    }
+
+    /** The cache slot for a node.  This depends only on the strings which
+     *  are written for the node, so the reader finds the same slot for the
+     *  node it reads back. */
+    static int slot(Node node)
+    {
+        int h ;
+        if ( node.isURI() )
+            h = node.getURI().hashCode() ;
+        else if ( node.isBlank() )
+            h = 31 * node.getBlankNodeLabel().hashCode() + BLANK ;
+        else if ( node.isLiteral() )
+        {
+            String dt = node.getLiteralDatatypeURI() ;
+            String lang = node.getLiteralLanguage() ;
+            h = node.getLiteralLexicalForm().hashCode() ;
+            if ( dt != null )
+                h = 31 * h + dt.hashCode() ;
+            else if ( lang != null )
+                h = 31 * h + lang.hashCode() ;
+        }
+        else
+            h = node.hashCode() ;
+        return (h * 0x9E3779B9) >>> 20 ;
+    }
+
+    /** Write a number alongside the bindings, such as a row number */
+    public void writeLong(long x) throws IOException
+    {
+        while ( ( x & ~0x7FL ) != 0 )
+        {
+            out.writeByte((int)( x & 0x7F ) | 0x80) ;
+            x >>>= 7 ;
+        }
+        out.writeByte((int)x) ;
+    }
+
+    private void writeInt(int x) throws IOException
+    {
+        while ( ( x & ~0x7F ) != 0 )
+        {
+            out.writeByte(( x & 0x7F ) | 0x80) ;
+            x >>>= 7 ;
+        }
+        out.writeByte(x) ;
+    }
+
+    private void writeString(String s) throws IOException
+    {
+        byte[] b = s.getBytes("UTF-8") ;
+        writeInt(b.length) ;
+        out.write(b) ;
+    }
+
+    public void flush() throws IOException  { out.flush() ; }
+
+    public void close() throws IOException  { out.close() ; }
+}
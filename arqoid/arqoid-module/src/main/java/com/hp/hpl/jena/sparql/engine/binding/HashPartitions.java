@@ -0,0 +1,105 @@
+package com.hp.hpl.jena.sparql.engine.binding;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hp.hpl.jena.sparql.ARQException;
+
+/** Temporary files for rows partitioned by a hash code, for DISTINCT and
+ *  GROUP BY when they have too many rows to hold in memory.  Rows with the
+ *  same hash code go to the same partition, so each partition can be
+ *  processed on its own.  A partition that is still too big can itself be
+ *  partitioned, at the next level, which uses different bits of the hash
+ *  code; there are at most MAX_LEVEL levels.
+ *  <p>
+ *  A file is only created for a partition when a row is added to it.
+ */
+public class HashPartitions
+{
+    public static final int FANOUT = 16 ;
+    public static final int MAX_LEVEL = 4 ;
+
+    private final int level ;
+    private final File[] files = new File[FANOUT] ;
+    private final BindingOutputStream[] streams = new BindingOutputStream[FANOUT] ;
+
+    public HashPartitions(int level)
+    {
+        if ( level >= MAX_LEVEL )
+            throw new ARQException("Too many levels of partitioning: "+level) ;
+        this.level = level ;
+    }
+
+    public int getLevel() { return level ; }
+
+    /** The stream for the partition of rows with this hash code */
+    public BindingOutputStream stream(int hash)
+    {
+        // Each level takes the next four bits of the mixed hash code.
+        int i = ( ( hash * 0x9E3779B9 ) >>> ( 28 - 4*level ) ) & ( FANOUT-1 ) ;
+        if ( streams[i] == null )
+        {
+            try {
+                files[i] = File.createTempFile("arq-part", ".tmp") ;
+                streams[i] = new BindingOutputStream(new FileOutputStream(files[i])) ;
+            } catch (IOException ex)
+            {
+                delete() ;
+                throw new ARQException("Failed to create partition", ex) ;
+            }
+        }
+        return streams[i] ;
+    }
+
+    /** Finish writing; returns the files of the partitions, which the
+     *  caller must delete. */
+    public List<File> finish()
+    {
+        List<File> x = new ArrayList<File>() ;
+        try {
+            for ( int i = 0 ; i < FANOUT ; i++ )
+            {
+                if ( streams[i] == null )
+                    continue ;
+                streams[i].close() ;
+                streams[i] = null ;
+                x.add(files[i]) ;
+                files[i] = null ;
+            }
+        } catch (IOException ex)
+        {
+            for ( File f : x )
+                f.delete() ;
+            delete() ;
+            throw new ARQException("Failed to write partition", ex) ;
+        }
+        return x ;
+    }
+
+    /** Abandon the partitions */
+    public void delete()
+    {
+        for ( int i = 0 ; i < FANOUT ; i++ )
+        {
+            if ( streams[i] != null )
+                try { streams[i].close() ; } catch (IOException ex) {}
+            if ( files[i] != null )
+                files[i].delete() ;
+            streams[i] = null ;
+            files[i] = null ;
+        }
+    }
+
+    /** Open a partition file for reading */
+    public static BindingInputStream open(File file)
+    {
+        try {
+            return new BindingInputStream(new FileInputStream(file)) ;
+        } catch (IOException ex)
+        { throw new ARQException("Failed to read partition", ex) ; }
+    }
+}
@@ -0,0 +1,193 @@
+package com.hp.hpl.jena.sparql.engine.binding;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.hp.hpl.jena.sparql.ARQException;
+import com.hp.hpl.jena.sparql.lib.iterator.ClosableIterator;
+
+/** The sorted runs of an external merge sort.  Each run is written to a
+ *  temporary file with BindingOutputStream; merge() then reads them all
+ *  back together, in order.  Equal bindings come out in the order of
+ *  their runs, so if the runs were sorted stably, so is the result.
+ *  <p>
+ *  At most MAX_FANIN runs are merged at once: beyond that, the first runs
+ *  are first merged into a single run.  All the files are deleted when
+ *  the merge ends or is closed.
+ */
+public class SortedRuns
+{
+    public static final int MAX_FANIN = 64 ;
+
+    private final Comparator<Binding> comparator ;
+    private final List<File> runs = new ArrayList<File>() ;
+
+    public SortedRuns(Comparator<Binding> comparator)
+    {
+        this.comparator = comparator ;
+    }
+
+    public int size() { return runs.size() ; }
+
+    /** Add a run, which must be in order already */
+    public void add(Binding[] run, int length)
+    {
+        File file = null ;
+        try {
+            file = File.createTempFile("arq-sort", ".tmp") ;
+            runs.add(file) ;
+            BindingOutputStream out = new BindingOutputStream(new FileOutputStream(file)) ;
+            try {
+                for ( int i = 0 ; i < length ; i++ )
+                    out.write(run[i]) ;
+            } finally { out.close() ; }
+        } catch (IOException ex)
+        {
+            delete() ;
+            throw new ARQException("Failed to write sort run", ex) ;
+        }
+    }
+
+    /** Merge the runs.  No more runs can be added. */
+    public ClosableIterator<Binding> merge()
+    {
+        try {
+            while ( runs.size() > MAX_FANIN )
+            {
+                List<File> first = new ArrayList<File>(runs.subList(0, MAX_FANIN)) ;
+                File file = File.createTempFile("arq-sort", ".tmp") ;
+                runs.add(MAX_FANIN, file) ;
+                Merge merge = new Merge(first) ;
+                runs.subList(0, MAX_FANIN).clear() ;
+                BindingOutputStream out = new BindingOutputStream(new FileOutputStream(file)) ;
+                try {
+                    while ( merge.hasNext() )
+                        out.write(merge.next()) ;
+                } finally { out.close() ; merge.close() ; }
+            }
+            Merge merge = new Merge(new ArrayList<File>(runs)) ;
+            runs.clear() ;
+            return merge ;
+        } catch (IOException ex)
+        {
+            delete() ;
+            throw new ARQException("Failed to merge sort runs", ex) ;
+        }
+    }
+
+    /** Delete any runs not yet handed to a merge */
+    public void delete()
+    {
+        for ( File f : runs )
+            f.delete() ;
+        runs.clear() ;
+    }
+
+    /** The head of a run in the merge */
+    private static class Run
+    {
+        final int index ;
+        final File file ;
+        final BindingInputStream in ;
+        Binding head ;
+
+        Run(int index, File file) throws IOException
+        {
+            this.index = index ;
+            this.file = file ;
+            this.in = new BindingInputStream(new FileInputStream(file)) ;
+        }
+
+        void close()
+        {
+            try { in.close() ; } catch (IOException ex) {}
+            file.delete() ;
+        }
+    }
+
+    /** k-way merge of run files, deleting each as it is used up */
+    private class Merge implements ClosableIterator<Binding>
+    {
+        private final PriorityQueue<Run> queue ;
+        private final List<Run> open = new ArrayList<Run>() ;
+
+        Merge(List<File> files) throws IOException
+        {
+            queue = new PriorityQueue<Run>(Math.max(1, files.size()), new Comparator<Run>() {
+                public int compare(Run r1, Run r2)
+                {
+                    int x = comparator.compare(r1.head, r2.head) ;
+                    if ( x != 0 )
+                        return x ;
+                    return r1.index < r2.index ? -1 : ( r1.index == r2.index ? 0 : 1 ) ;
+                }
+            }) ;
+            try {
+                for ( int i = 0 ; i < files.size() ; i++ )
+                {
+                    Run run = new Run(i, files.get(i)) ;
+                    open.add(run) ;
+                    advance(run) ;
+                }
+            } catch (IOException ex)
+            {
+                close() ;
+                for ( File f : files )
+                    f.delete() ;
+                throw ex ;
+            }
+        }
+
+        private void advance(Run run) throws IOException
+        {
+            run.head = run.in.read() ;
+            if ( run.head == null )
+            {
+                run.close() ;
+                open.remove(run) ;
+            }
+            else
+                queue.add(run) ;
+        }
+
+        public boolean hasNext()
+        {
+            return ! queue.isEmpty() ;
+        }
+
+        public Binding next()
+        {
+            Run run = queue.poll() ;
+            if ( run == null )
+                throw new NoSuchElementException() ;
+            Binding b = run.head ;
+            try { advance(run) ; }
+            catch (IOException ex)
+            {
+                close() ;
+                throw new ARQException("Failed to read sort run", ex) ;
+            }
+            return b ;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException() ;
+        }
+
+        public void close()
+        {
+            for ( Run run : open )
+                run.close() ;
+            open.clear() ;
+            queue.clear() ;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.serializer.SerializationContext;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+import com.hp.hpl.jena.sparql.util.IndentedWriter;
+import com.hp.hpl.jena.sparql.util.Utils;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Execute a basic graph pattern a block of rows at a time.  The same
+ *  solutions, in the same order, as QueryIterBlockTriples.
+ *  <p>
+ *  Rows are held in columns, one array of nodes for each variable bound in
+ *  the pattern, with the input binding each row comes from.  Each triple
+ *  pattern is a stage that reads blocks from the stage before it and writes
+ *  blocks of up to the batch size.  Within an input block, the graph is
+ *  asked once for each distinct triple to find: matches are kept for a
+ *  triple that more than one row asks for, and streamed from the graph for
+ *  a triple only one row asks for.  A Binding is only made for each row that
+ *  comes out of the last stage.
+ */
+public class QueryIterBlockTriplesBatch extends QueryIter1
+{
+    private final BasicPattern pattern ;
+    private Stage output ;
+    private Block block = null ;
+    private int row = 0 ;
+
+    public static QueryIterator create(QueryIterator input,
+                                       BasicPattern pattern,
+                                       int batchSize,
+                                       ExecutionContext execContext)
+    {
+        return new QueryIterBlockTriplesBatch(input, pattern, batchSize, execContext) ;
+    }
+
+    private QueryIterBlockTriplesBatch(QueryIterator input,
+                                       BasicPattern pattern,
+                                       int batchSize,
+                                       ExecutionContext execContext)
+    {
+        super(input, execContext) ;
+        this.pattern = pattern ;
+        Graph graph = execContext.getActiveGraph() ;
+        List<Var> columns = new ArrayList<Var>() ;
+        Stage chain = new InputStage(input, batchSize) ;
+        for ( Triple triple : pattern )
+            chain = new TripleStage(chain, graph, triple, columns, batchSize) ;
+        output = chain ;
+    }
+
+    @Override
+    protected boolean hasNextBinding()
+    {
+        while ( block == null || row >= block.size )
+        {
+            if ( output == null )
+                return false ;
+            block = output.next() ;
+            row = 0 ;
+            if ( block == null )
+            {
+                closeSubIterator() ;
+                return false ;
+            }
+        }
+        return true ;
+    }
+
+    @Override
+    protected Binding moveToNextBinding()
+    {
+        hasNextBinding() ;
+        return block.binding(row++) ;
+    }
+
+    @Override
+    protected void closeSubIterator()
+    {
+        if ( output != null )
+            output.close() ;
+        output = null ;
+    }
+
+    @Override
+    protected void details(IndentedWriter out, SerializationContext sCxt)
+    {
+        out.print(Utils.className(this)) ;
+        out.println() ;
+        out.incIndent() ;
+        FmtUtils.formatPattern(out, pattern, sCxt) ;
+        out.decIndent() ;
+    }
+
+    /** A block of rows.  Column i is the variable vars[i]; where the input
+     *  binding of a row already had that variable, the column repeats it. */
+    private static class Block
+    {
+        final Var[] vars ;
+        final int max ;
+        Binding[] parents ;
+        Node[][] columns ;
+        int size = 0 ;
+
+        // Starts small, as a pattern is often run for a single input row.
+        Block(Var[] vars, int max)
+        {
+            this.vars = vars ;
+            this.max = max ;
+            int capacity = Math.min(max, 16) ;
+            this.parents = new Binding[capacity] ;
+            this.columns = new Node[vars.length][capacity] ;
+        }
+
+        boolean isFull() { return size == max ; }
+
+        /** Make room for one more row */
+        void ensureRoom()
+        {
+            if ( size < parents.length )
+                return ;
+            int capacity = Math.min(max, 2*parents.length) ;
+            Binding[] p = new Binding[capacity] ;
+            System.arraycopy(parents, 0, p, 0, size) ;
+            parents = p ;
+            for ( int j = 0 ; j < columns.length ; j++ )
+            {
+                Node[] c = new Node[capacity] ;
+                System.arraycopy(columns[j], 0, c, 0, size) ;
+                columns[j] = c ;
+            }
+        }
+
+        Binding binding(int i)
+        {
+            Binding parent = parents[i] ;
+            Binding b = null ;
+            for ( int j = 0 ; j < vars.length ; j++ )
+            {
+                if ( parent.contains(vars[j]) )
+                    continue ;
+                if ( b == null )
+                    b = new BindingMap(parent) ;
+                b.add(vars[j], columns[j][i]) ;
+            }
+            return b == null ? parent : b ;
+        }
+    }
+
+    private static abstract class Stage
+    {
+        /** The next block, or null at the end */
+        abstract Block next() ;
+        abstract void close() ;
+    }
+
+    private static class InputStage extends Stage
+    {
+        private final QueryIterator input ;
+        private final int batchSize ;
+
+        InputStage(QueryIterator input, int batchSize)
+        {
+            this.input = input ;
+            this.batchSize = batchSize ;
+        }
+
+        @Override
+        Block next()
+        {
+            if ( ! input.hasNext() )
+                return null ;
+            Block block = new Block(new Var[0], batchSize) ;
+            while ( ! block.isFull() && input.hasNext() )
+            {
+                block.ensureRoom() ;
+                block.parents[block.size++] = input.nextBinding() ;
+            }
+            return block ;
+        }
+
+        @Override
+        void close() {}     // QueryIter1 closes the input.
+    }
+
+    private static class TripleStage extends Stage
+    {
+        // How each of S, P and O is found for a row.
+        private static final int CONST = 0 ;    // A constant.
+        private static final int COLUMN = 1 ;   // A variable of an earlier triple pattern.
+        private static final int NEW = 2 ;      // First use of a variable; maybe set in the input binding.
+
+        private final Stage input ;
+        private final Graph graph ;
+        private final int batchSize ;
+        private final Var[] vars ;
+        private final int[] kind = new int[3] ;
+        private final Node[] nodes = new Node[3] ;
+        private final int[] index = new int[3] ;
+
+        private Block in = null ;
+        private int row = 0 ;
+        private Triple[] keys = null ;
+        private Map<Triple, Integer> counts = null ;
+        private Map<Triple, List<Triple>> cache = null ;
+        private Iterator<Triple> matches = null ;
+        private final Node[] values = new Node[3] ;
+
+        TripleStage(Stage input, Graph graph, Triple triple, List<Var> columns, int batchSize)
+        {
+            this.input = input ;
+            this.graph = graph ;
+            this.batchSize = batchSize ;
+            Node[] x = { triple.getSubject(), triple.getPredicate(), triple.getObject() } ;
+            // Columns from here on are first bound by this triple pattern.
+            int firstNew = columns.size() ;
+            for ( int i = 0 ; i < 3 ; i++ )
+            {
+                nodes[i] = x[i] ;
+                if ( ! Var.isVar(x[i]) )
+                {
+                    kind[i] = CONST ;
+                    continue ;
+                }
+                Var v = Var.alloc(x[i]) ;
+                int j = columns.indexOf(v) ;
+                if ( j < 0 )
+                {
+                    j = columns.size() ;
+                    columns.add(v) ;
+                }
+                // A repeat, as in ?x :p ?x, is NEW both times.
+                kind[i] = ( j < firstNew ) ? COLUMN : NEW ;
+                nodes[i] = v ;
+                index[i] = j ;
+            }
+            this.vars = columns.toArray(new Var[columns.size()]) ;
+        }
+
+        /** The node for position i of the current row, or null if unbound */
+        private Node value(int i)
+        {
+            switch (kind[i])
+            {
+                case CONST:  return nodes[i] ;
+                case COLUMN: return in.columns[index[i]][row] ;
+                default:     return in.parents[row].get((Var)nodes[i]) ;
+            }
+        }
+
+        private Triple key()
+        {
+            for ( int i = 0 ; i < 3 ; i++ )
+            {
+                Node n = value(i) ;
+                values[i] = n == null ? Node.ANY : n ;
+            }
+            return new Triple(values[0], values[1], values[2]) ;
+        }
+
+        @Override
+        Block next()
+        {
+            Block out = null ;
+            for ( ;; )
+            {
+                // The stage before may hand on an empty block.
+                while ( in == null || ( matches == null && row >= in.size ) )
+                {
+                    if ( ! nextInput() )
+                        return out ;
+                }
+                if ( matches == null )
+                    matches = find(keys[row]) ;
+                while ( matches.hasNext() )
+                {
+                    Triple t = matches.next() ;
+                    if ( out == null )
+                        out = new Block(vars, batchSize) ;
+                    if ( ! add(out, t) )
+                        continue ;
+                    if ( out.isFull() )
+                        return out ;
+                }
+                endMatches() ;
+                row++ ;
+            }
+        }
+
+        private boolean nextInput()
+        {
+            in = input.next() ;
+            row = 0 ;
+            cache = null ;
+            if ( in == null )
+                return false ;
+            // Count the rows wanting each triple; only the shared ones are kept.
+            keys = new Triple[in.size] ;
+            counts = new HashMap<Triple, Integer>() ;
+            for ( row = 0 ; row < in.size ; row++ )
+            {
+                Triple k = key() ;
+                keys[row] = k ;
+                Integer c = counts.get(k) ;
+                counts.put(k, c == null ? 1 : c+1) ;
+            }
+            row = 0 ;
+            return true ;
+        }
+
+        private Iterator<Triple> find(Triple key)
+        {
+            if ( counts.get(key) == 1 )
+                return graph.find(key.getSubject(), key.getPredicate(), key.getObject()) ;
+            if ( cache == null )
+                cache = new HashMap<Triple, List<Triple>>() ;
+            List<Triple> x = cache.get(key) ;
+            if ( x == null )
+            {
+                x = graph.find(key.getSubject(), key.getPredicate(), key.getObject()).toList() ;
+                cache.put(key, x) ;
+            }
+            return x.iterator() ;
+        }
+
+        private void endMatches()
+        {
+            if ( matches instanceof ClosableIterator )
+                NiceIterator.close((ClosableIterator<Triple>)matches) ;
+            matches = null ;
+        }
+
+        /** Add the row for a match to the current row, unless a variable is
+         *  used twice and the match has different nodes for it. */
+        private boolean add(Block out, Triple t)
+        {
+            out.ensureRoom() ;
+            int r = out.size ;
+            Node[] x = { t.getSubject(), t.getPredicate(), t.getObject() } ;
+            for ( int i = 0 ; i < 3 ; i++ )
+            {
+                if ( kind[i] != NEW )
+                    continue ;
+                Node n = out.columns[index[i]][r] ;
+                if ( n == null )
+                    out.columns[index[i]][r] = x[i] ;
+                else if ( ! n.equals(x[i]) )
+                {
+                    for ( int j = 0 ; j < 3 ; j++ )
+                        if ( kind[j] == NEW ) out.columns[index[j]][r] = null ;
+                    return false ;
+                }
+            }
+            for ( int j = 0 ; j < in.vars.length ; j++ )
+                out.columns[j][r] = in.columns[j][row] ;
+            out.parents[r] = in.parents[row] ;
+            out.size++ ;
+            return true ;
+        }
+
+        @Override
+        void close()
+        {
+            if ( matches != null )
+                endMatches() ;
+            in = null ;
+            keys = null ;
+            counts = null ;
+            cache = null ;
+            input.close() ;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/** Count the bindings that pass through a QueryIterator. */ 
+
+public class QueryIterCounting extends QueryIteratorWrapper
+{
+    private long count = 0 ;
+
+    public QueryIterCounting(QueryIterator input)
+    {
+        super(input) ;
+    }
+    
+    @Override
+    protected Binding moveToNextBinding()
+    { 
+        Binding binding = super.moveToNextBinding() ;
+        count++ ;
+        return binding ;
+    }
+
+    /** The number of bindings so far */ 
+    public long getCount() { return count ; }
+}
@@ -6,16 +6,36 @@
 
 package com.hp.hpl.jena.sparql.engine.iterator;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
+import com.hp.hpl.jena.sparql.ARQException;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingInputStream;
+import com.hp.hpl.jena.sparql.engine.binding.BindingOutputStream;
+import com.hp.hpl.jena.sparql.engine.binding.HashPartitions;
+import com.hp.hpl.jena.sparql.engine.binding.SortedRuns;
 
 /** A QueryIterator that surpresses items already seen. 
  * Like com.hp.hpl.jena.util.iterators.UniqueExtendedIterator
  * except this one works on QueryIterators (and hence ClosableIterators)  
+ * <p>
+ * At most ARQ.spillThreshold rows are remembered.  After that, rows not
+ * already seen are held back in temporary files, partitioned by hash, and
+ * each partition is made distinct on its own when the input is used up.
+ * The held back rows are numbered so that they are still returned in the
+ * order they first occurred, as they are when nothing is spilled.
  * 
  * @author Andy Seaborne
  */
@@ -23,23 +43,46 @@ import com.hp.hpl.jena.sparql.engine.binding.Binding;
 public class QueryIterDistinct extends QueryIterDistinctReduced
 {
     private Set<Binding> seen = new HashSet<Binding>() ;
+    private final int threshold ;
+    private HashPartitions partitions = null ;
+    private long spilled = 0 ;
+    private Merge merge = null ;
+    private List<File> files = new ArrayList<File>() ;
     
     public QueryIterDistinct(QueryIterator iter, ExecutionContext context)
     {
         super(iter, context)  ;
+        threshold = context.getSpillThreshold() ;
     }
 
     @Override
     protected void closeSubIterator()
     {
         seen = null ;
+        if ( partitions != null )
+            partitions.delete() ;
+        if ( merge != null )
+            merge.close() ;
+        for ( File f : files )
+            f.delete() ;
+        files.clear() ;
         super.closeSubIterator() ;
     }
 
     @Override
     protected boolean isDuplicate(Binding binding)
     {
-        return seen.contains(binding) ;
+        if ( seen.contains(binding) )
+            return true ;
+        if ( partitions == null )
+        {
+            if ( threshold <= 0 || seen.size() < threshold )
+                return false ;
+            partitions = new HashPartitions(0) ;
+        }
+        // Held back until the end, when it is returned if it is new.
+        write(partitions.stream(binding.hashCode()), binding, spilled++) ;
+        return true ;
     }
 
     @Override
@@ -47,6 +90,210 @@ public class QueryIterDistinct extends QueryIterDistinctReduced
     {
         seen.add(binding) ;
     }
+
+    @Override
+    protected Binding endOfInput()
+    {
+        if ( partitions == null )
+            return null ;
+        if ( merge == null )
+        {
+            // Everything from now on is new, so seen is not needed.
+            seen = null ;
+            List<File> leaves = new ArrayList<File>() ;
+            for ( File f : track(partitions.finish()) )
+                distinct(f, 1, leaves) ;
+            // Bound the number of files open at once, as SortedRuns does.
+            while ( leaves.size() > SortedRuns.MAX_FANIN )
+            {
+                List<File> first = new ArrayList<File>(leaves.subList(0, SortedRuns.MAX_FANIN)) ;
+                leaves.subList(0, SortedRuns.MAX_FANIN).clear() ;
+                leaves.add(combine(first)) ;
+            }
+            merge = new Merge(leaves) ;
+        }
+        return merge.next() ;
+    }
+
+    /** Make the rows of a partition file distinct, into leaf files of rows
+     *  in order of their numbers.  Too many rows are partitioned again. */
+    private void distinct(File file, int level, List<File> leaves)
+    {
+        Map<Binding, Long> rows = new LinkedHashMap<Binding, Long>() ;
+        HashPartitions sub = null ;
+        BindingInputStream in = HashPartitions.open(file) ;
+        try {
+            for ( Binding b ; ( b = in.read() ) != null ; )
+            {
+                long seq = in.readLong() ;
+                if ( rows.containsKey(b) )
+                    continue ;
+                if ( sub == null && ( rows.size() < threshold || level >= HashPartitions.MAX_LEVEL ) )
+                {
+                    rows.put(b, seq) ;
+                    continue ;
+                }
+                if ( sub == null )
+                    sub = new HashPartitions(level) ;
+                write(sub.stream(b.hashCode()), b, seq) ;
+            }
+        } catch (IOException ex)
+        {
+            if ( sub != null )
+                sub.delete() ;
+            throw new ARQException("Failed to read partition", ex) ;
+        }
+        finally { close(in) ; file.delete() ; }
+
+        // The rows are in order already, as they were read.
+        try {
+            File leaf = File.createTempFile("arq-part", ".tmp") ;
+            files.add(leaf) ;
+            BindingOutputStream out = new BindingOutputStream(new FileOutputStream(leaf)) ;
+            try {
+                for ( Map.Entry<Binding, Long> e : rows.entrySet() )
+                    write(out, e.getKey(), e.getValue()) ;
+            } finally { out.close() ; }
+            leaves.add(leaf) ;
+        } catch (IOException ex)
+        {
+            if ( sub != null )
+                sub.delete() ;
+            throw new ARQException("Failed to write partition", ex) ;
+        }
+        rows = null ;
+
+        if ( sub != null )
+        {
+            for ( File f : track(sub.finish()) )
+                distinct(f, level+1, leaves) ;
+        }
+    }
+
+    /** Merge leaf files into one */
+    private File combine(List<File> leaves)
+    {
+        Merge m = new Merge(leaves) ;
+        try {
+            File leaf = File.createTempFile("arq-part", ".tmp") ;
+            files.add(leaf) ;
+            BindingOutputStream out = new BindingOutputStream(new FileOutputStream(leaf)) ;
+            try {
+                for ( Binding b ; ( b = m.next() ) != null ; )
+                    write(out, b, m.seq) ;
+            } finally { out.close() ; }
+            return leaf ;
+        } catch (IOException ex)
+        { throw new ARQException("Failed to write partition", ex) ; }
+        finally { m.close() ; }
+    }
+
+    private List<File> track(List<File> x)
+    {
+        files.addAll(x) ;
+        return x ;
+    }
+
+    private static void write(BindingOutputStream out, Binding binding, long seq)
+    {
+        try {
+            out.write(binding) ;
+            out.writeLong(seq) ;
+        } catch (IOException ex)
+        { throw new ARQException("Failed to write partition", ex) ; }
+    }
+
+    private static void close(BindingInputStream in)
+    {
+        try { in.close() ; } catch (IOException ex) {}
+    }
+
+    /** A leaf file being merged, by row number */
+    private static class Leaf
+    {
+        final File file ;
+        final BindingInputStream in ;
+        Binding head ;
+        long seq ;
+
+        Leaf(File file)
+        {
+            this.file = file ;
+            this.in = HashPartitions.open(file) ;
+        }
+
+        boolean advance()
+        {
+            try {
+                head = in.read() ;
+                if ( head == null )
+                    return false ;
+                seq = in.readLong() ;
+                return true ;
+            } catch (IOException ex)
+            { throw new ARQException("Failed to read partition", ex) ; }
+        }
+
+        void close()
+        {
+            QueryIterDistinct.close(in) ;
+            file.delete() ;
+        }
+    }
+
+    /** Merge leaf files back into the order the rows first occurred. */
+    private static class Merge
+    {
+        private final PriorityQueue<Leaf> queue ;
+        private final List<Leaf> open = new ArrayList<Leaf>() ;
+        // The number of the last binding returned
+        long seq = -1 ;
+
+        Merge(List<File> leaves)
+        {
+            queue = new PriorityQueue<Leaf>(Math.max(1, leaves.size()), new Comparator<Leaf>() {
+                public int compare(Leaf x1, Leaf x2)
+                { return x1.seq < x2.seq ? -1 : ( x1.seq == x2.seq ? 0 : 1 ) ; }
+            }) ;
+            for ( File f : leaves )
+            {
+                Leaf leaf = new Leaf(f) ;
+                open.add(leaf) ;
+                advance(leaf) ;
+            }
+        }
+
+        private void advance(Leaf leaf)
+        {
+            if ( leaf.advance() )
+                queue.add(leaf) ;
+            else
+            {
+                leaf.close() ;
+                open.remove(leaf) ;
+            }
+        }
+
+        /** The next binding, or null at the end */
+        Binding next()
+        {
+            Leaf leaf = queue.poll() ;
+            if ( leaf == null )
+                return null ;
+            Binding b = leaf.head ;
+            seq = leaf.seq ;
+            advance(leaf) ;
+            return b ;
+        }
+
+        void close()
+        {
+            for ( Leaf leaf : open )
+                leaf.close() ;
+            open.clear() ;
+            queue.clear() ;
+        }
+    }
 }
 
 /*
@@ -46,7 +46,8 @@ public abstract class QueryIterDistinctReduced extends QueryIter1
                 return true ;
             }
         }
-        return false ;
+        slot = endOfInput() ;
+        return slot != null ;
     }
 
     @Override
@@ -60,6 +61,10 @@ public abstract class QueryIterDistinctReduced extends QueryIter1
     
     protected abstract boolean isDuplicate(Binding binding) ;
     
+    /** Called when the input is used up: return any binding that was held
+     *  back, or null for none.  Called again until it returns null. */ 
+    protected Binding endOfInput() { return null ; }
+    
     protected abstract void remember(Binding binding) ;
 }
 
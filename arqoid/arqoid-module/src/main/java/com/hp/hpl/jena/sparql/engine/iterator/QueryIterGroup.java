@@ -6,21 +6,36 @@
 
 package com.hp.hpl.jena.sparql.engine.iterator;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.ARQException;
 import com.hp.hpl.jena.sparql.core.Var;
 import com.hp.hpl.jena.sparql.core.VarExprList;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingInputStream;
 import com.hp.hpl.jena.sparql.engine.binding.BindingKey;
 import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.binding.HashPartitions;
 import com.hp.hpl.jena.sparql.expr.E_Aggregator;
+import com.hp.hpl.jena.sparql.lib.iterator.ClosableIterator;
 
+/** Group and aggregate.  At most ARQ.spillThreshold groups are held in
+ *  memory: once there are that many, rows for any other group are written
+ *  to temporary files, partitioned by the hash of the group key.  Every row
+ *  of a group then goes to the same place, so each partition is grouped and
+ *  aggregated on its own, one at a time, after the groups in memory. 
+ */
 public class QueryIterGroup extends QueryIterPlainWrapper
 {
     public QueryIterGroup(QueryIterator qIter, 
@@ -42,28 +57,11 @@ public class QueryIterGroup extends QueryIterPlainWrapper
                                           VarExprList groupVars, List<E_Aggregator> aggregators,
                                           ExecutionContext execCxt)
     {
-        // Phase 1 : assign bindings to buckets by key and pump through the aggregrators.
-        Map<BindingKey, Binding> buckets = new HashMap<BindingKey, Binding>() ;    
+        int threshold = execCxt.getSpillThreshold() ;
+        List<Partition> pending = new LinkedList<Partition>() ;
         
-        for ( ; iter.hasNext() ; )
-        {
-            Binding b = iter.nextBinding() ;
-            BindingKey key = genKey(groupVars, b, execCxt) ;
-            
-            // Assumes key binding has value based .equals/.hashCode. 
-            if ( ! buckets.containsKey(key) )
-                buckets.put(key, key.getBinding()) ;
-            
-            // Assumes an aggregator is a per-execution mutable thingy
-            if ( aggregators != null )
-            {
-                for ( Iterator<E_Aggregator> aggIter = aggregators.iterator() ; aggIter.hasNext() ; )
-                {
-                    E_Aggregator agg = aggIter.next();
-                    agg.getAggregator().accumulate(key, b, execCxt) ;
-                }
-            }
-        }
+        // Phase 1 : assign bindings to buckets by key and pump through the aggregrators.
+        Map<BindingKey, Binding> buckets = accumulate(iter, 0, pending, groupVars, aggregators, threshold, execCxt) ;
         
         // Phase 2 : Empty input
         
@@ -98,9 +96,70 @@ public class QueryIterGroup extends QueryIterPlainWrapper
                 return new QueryIterNullIterator(execCxt) ;
         }
         
-        
         // Phase 2 : There was input and so there are some groups.
+        Iterator<Binding> groups = aggregate(buckets, aggregators) ;
+        if ( pending.isEmpty() )
+            return groups ;
+        return new SpillIterator(groups, pending, groupVars, aggregators, threshold, execCxt) ;
+    }
+    
+    /** Assign rows to buckets, and rows of new groups to partitions at
+     *  this level once there are threshold groups. */ 
+    private static Map<BindingKey, Binding> accumulate(Iterator<Binding> iter, int level, List<Partition> pending,
+                                                       VarExprList groupVars, List<E_Aggregator> aggregators,
+                                                       int threshold, ExecutionContext execCxt)
+    {
+        Map<BindingKey, Binding> buckets = new HashMap<BindingKey, Binding>() ;
+        HashPartitions partitions = null ;
+        
+        try {
+            for ( ; iter.hasNext() ; )
+            {
+                Binding b = iter.next() ;
+                BindingKey key = genKey(groupVars, b, execCxt) ;
+                
+                // Assumes key binding has value based .equals/.hashCode. 
+                if ( ! buckets.containsKey(key) )
+                {
+                    if ( threshold > 0 && buckets.size() >= threshold && level < HashPartitions.MAX_LEVEL )
+                    {
+                        // A group for a partition.
+                        if ( partitions == null )
+                            partitions = new HashPartitions(level) ;
+                        try { partitions.stream(key.hashCode()).write(b) ; }
+                        catch (IOException ex) { throw new ARQException("Failed to write partition", ex) ; }
+                        continue ;
+                    }
+                    buckets.put(key, key.getBinding()) ;
+                }
+                
+                // Assumes an aggregator is a per-execution mutable thingy
+                if ( aggregators != null )
+                {
+                    for ( Iterator<E_Aggregator> aggIter = aggregators.iterator() ; aggIter.hasNext() ; )
+                    {
+                        E_Aggregator agg = aggIter.next();
+                        agg.getAggregator().accumulate(key, b, execCxt) ;
+                    }
+                }
+            }
+        } catch (RuntimeException ex)
+        {
+            if ( partitions != null )
+                partitions.delete() ;
+            throw ex ;
+        }
         
+        if ( partitions != null )
+        {
+            for ( File f : partitions.finish() )
+                pending.add(new Partition(f, level+1)) ;
+        }
+        return buckets ;
+    }
+    
+    private static Iterator<Binding> aggregate(Map<BindingKey, Binding> buckets, List<E_Aggregator> aggregators)
+    {
         // For each bucket, get binding, add aggregator values to the binding.
         if ( aggregators != null )
         {
@@ -121,6 +180,9 @@ public class QueryIterGroup extends QueryIterPlainWrapper
                         binding.add(v, value) ;
                 }
             }
+            // The values are in the bindings now: free the aggregators for the next partition.
+            for ( Iterator<E_Aggregator> aggIter = aggregators.iterator() ; aggIter.hasNext() ; )
+                aggIter.next().getAggregator().clear() ;
         }
 
         // Results - the binding modified by the aggregations.
@@ -147,10 +209,98 @@ public class QueryIterGroup extends QueryIterPlainWrapper
         }
         return x ;
     }
+    
+    /** A partition file, and the level its rows are grouped at */
+    private static class Partition
+    {
+        final File file ;
+        final int level ;
+        Partition(File file, int level) { this.file = file ; this.level = level ; }
+    }
+    
+    /** The groups held in memory, then those of each partition in turn. */
+    private static class SpillIterator implements ClosableIterator<Binding>
+    {
+        private Iterator<Binding> current ;
+        private final List<Partition> pending ;
+        private final VarExprList groupVars ;
+        private final List<E_Aggregator> aggregators ;
+        private final int threshold ;
+        private final ExecutionContext execCxt ;
+        
+        SpillIterator(Iterator<Binding> groups, List<Partition> pending,
+                      VarExprList groupVars, List<E_Aggregator> aggregators,
+                      int threshold, ExecutionContext execCxt)
+        {
+            this.current = groups ;
+            this.pending = pending ;
+            this.groupVars = groupVars ;
+            this.aggregators = aggregators ;
+            this.threshold = threshold ;
+            this.execCxt = execCxt ;
+        }
+        
+        public boolean hasNext()
+        {
+            while ( ! current.hasNext() && ! pending.isEmpty() )
+            {
+                Partition p = pending.remove(0) ;
+                final BindingInputStream in = HashPartitions.open(p.file) ;
+                Iterator<Binding> rows = new Iterator<Binding>() {
+                    Binding slot = null ;
+                    public boolean hasNext()
+                    {
+                        if ( slot == null )
+                        {
+                            try { slot = in.read() ; }
+                            catch (IOException ex) { throw new ARQException("Failed to read partition", ex) ; }
+                        }
+                        return slot != null ;
+                    }
+                    public Binding next()
+                    {
+                        if ( ! hasNext() )
+                            throw new NoSuchElementException() ;
+                        Binding b = slot ;
+                        slot = null ;
+                        return b ;
+                    }
+                    public void remove() { throw new UnsupportedOperationException() ; }
+                } ;
+                // Any partitions of this partition are done next, depth first.
+                List<Partition> more = new ArrayList<Partition>() ;
+                try {
+                    Map<BindingKey, Binding> buckets = accumulate(rows, p.level, more, groupVars, aggregators, threshold, execCxt) ;
+                    current = aggregate(buckets, aggregators) ;
+                } finally
+                {
+                    try { in.close() ; } catch (IOException ex) {}
+                    p.file.delete() ;
+                    pending.addAll(0, more) ;
+                }
+            }
+            return current.hasNext() ;
+        }
+        
+        public Binding next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            return current.next() ;
+        }
+        
+        public void remove() { throw new UnsupportedOperationException() ; }
+        
+        public void close()
+        {
+            for ( Partition p : pending )
+                p.file.delete() ;
+            pending.clear() ;
+        }
+    }
 }
 
 
-
 /*
  * (c) Copyright 2007, 2008, 2009 Hewlett-Packard Development Company, LP
  * All rights reserved.
@@ -16,10 +16,12 @@ import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.binding.BindingComparator;
+import com.hp.hpl.jena.sparql.engine.binding.SortedRuns;
 import com.hp.hpl.jena.query.SortCondition;
 
-/** Sort a query iterator.  Uses an in-memory sort, so limiting the size of
- * iterators that can be handled.
+/** Sort a query iterator.  Sorts in memory up to a threshold number of
+ * rows (ARQ.spillThreshold); beyond that, sorted runs of that many rows
+ * are written to temporary files and merged.
  * 
  * @author Andy Seaborne
  */
@@ -37,22 +39,46 @@ public class QueryIterSort
 
     public QueryIterSort(QueryIterator qIter, Comparator<Binding> comparator, ExecutionContext context)
     {
-        super(sort(qIter, comparator), context) ;
+        super(sort(qIter, comparator, context.getSpillThreshold()), context) ;
     }
-    
-    private static Iterator<Binding> sort(QueryIterator qIter, Comparator<Binding> comparator)
+
+    private static Iterator<Binding> sort(QueryIterator qIter, Comparator<Binding> comparator, int threshold)
     {
         // Be careful about duplicates.
         // Used to use a TreeSet but, well, that's a set.
         List<Binding> x = new ArrayList<Binding>() ;
-        for ( ; qIter.hasNext() ; )
+        SortedRuns runs = null ;
+        try {
+            for ( ; qIter.hasNext() ; )
+            {
+                Binding b = qIter.next() ;
+                x.add(b) ;
+                if ( threshold > 0 && x.size() >= threshold )
+                {
+                    // Arrays.sort is stable, so equal bindings keep their order across the runs.
+                    if ( runs == null )
+                        runs = new SortedRuns(comparator) ;
+                    Binding[] y = x.toArray(new Binding[x.size()]) ;
+                    x.clear() ;
+                    Arrays.sort(y, comparator) ;
+                    runs.add(y, y.length) ;
+                }
+            }
+        } catch (RuntimeException ex)
         {
-            Binding b = qIter.next() ;
-            x.add(b) ;
+            if ( runs != null )
+                runs.delete() ;
+            throw ex ;
         }
         Binding[] y = x.toArray(new Binding[]{}) ;
         x = null ;      // Drop the List now - might be big.  Unlikely to really make a real difference.  But we can try.
         Arrays.sort(y, comparator) ;
+        if ( runs != null )
+        {
+            if ( y.length > 0 )
+                runs.add(y, y.length) ;
+            return runs.merge() ;
+        }
         x = Arrays.asList(y) ;
         return x.iterator() ;
     }
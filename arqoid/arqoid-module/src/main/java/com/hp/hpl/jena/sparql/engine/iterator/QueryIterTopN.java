@@ -0,0 +1,85 @@
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingComparator;
+
+/** The first N rows of a sort, for ORDER BY with LIMIT.  Only N rows are
+ *  ever held: a heap keeps the N least seen so far, and its largest row is
+ *  replaced by any row that sorts before it.  The rows returned are the
+ *  same, in the same order, as the first N returned by QueryIterSort.
+ */
+public class QueryIterTopN extends QueryIterPlainWrapper
+{
+    public QueryIterTopN(QueryIterator qIter, List<SortCondition> conditions, int n, ExecutionContext context)
+    {
+        this(qIter, new BindingComparator(conditions, context), n, context) ;
+    }
+
+    public QueryIterTopN(QueryIterator qIter, Comparator<Binding> comparator, int n, ExecutionContext context)
+    {
+        super(topN(qIter, comparator, n), context) ;
+    }
+
+    private static Iterator<Binding> topN(QueryIterator qIter, final Comparator<Binding> comparator, int n)
+    {
+        if ( n <= 0 )
+        {
+            qIter.close() ;
+            return Arrays.asList(new Binding[0]).iterator() ;
+        }
+        // Order by the sort, then by arrival as a stable sort would.
+        final Comparator<Entry> order = new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2)
+            {
+                int x = comparator.compare(e1.binding, e2.binding) ;
+                if ( x != 0 )
+                    return x ;
+                return e1.seq < e2.seq ? -1 : ( e1.seq == e2.seq ? 0 : 1 ) ;
+            }
+        } ;
+        // The heap has the largest entry at the top.
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.min(n, 1024)+1, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) { return order.compare(e2, e1) ; }
+        }) ;
+        long seq = 0 ;
+        for ( ; qIter.hasNext() ; )
+        {
+            Entry e = new Entry(qIter.next(), seq++) ;
+            if ( heap.size() < n )
+                heap.add(e) ;
+            else if ( order.compare(e, heap.peek()) < 0 )
+            {
+                heap.poll() ;
+                heap.add(e) ;
+            }
+        }
+        Entry[] entries = heap.toArray(new Entry[heap.size()]) ;
+        heap = null ;
+        Arrays.sort(entries, order) ;
+        Binding[] x = new Binding[entries.length] ;
+        for ( int i = 0 ; i < x.length ; i++ )
+            x[i] = entries[i].binding ;
+        return Arrays.asList(x).iterator() ;
+    }
+
+    private static class Entry
+    {
+        final Binding binding ;
+        final long seq ;
+
+        Entry(Binding binding, long seq)
+        {
+            this.binding = binding ;
+            this.seq = seq ;
+        }
+    }
+}
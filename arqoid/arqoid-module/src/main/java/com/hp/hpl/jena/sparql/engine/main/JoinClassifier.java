@@ -5,6 +5,8 @@
 
 package com.hp.hpl.jena.sparql.engine.main ;
 
+import java.util.ArrayList ;
+import java.util.List ;
 import java.util.Set ;
 
 import com.hp.hpl.jena.sparql.algebra.Op ;
@@ -111,6 +113,18 @@ public class JoinClassifier
         return !bad1 && !bad2 ;
     }
 
+    /** The variables defined, and not just optionally, by both sides of a
+     *  join: the key on which a join of the two sides can be hashed.
+     *  Empty if there are none. */
+    static public List<Var> joinKeys(Op left, Op right)
+    {
+        VarFinder vfLeft = new VarFinder(effectiveOp(left)) ;
+        VarFinder vfRight = new VarFinder(effectiveOp(right)) ;
+        Set<Var> vLeft = SetUtils.difference(vfLeft.getFixed(), vfLeft.getOpt()) ;
+        Set<Var> vRight = SetUtils.difference(vfRight.getFixed(), vfRight.getOpt()) ;
+        return new ArrayList<Var>(SetUtils.intersection(vLeft, vRight)) ;
+    }
+
     static public Op effectiveOp(Op op)
     {
         if (op instanceof OpExt) op = ((OpExt) op).effectiveOp() ;
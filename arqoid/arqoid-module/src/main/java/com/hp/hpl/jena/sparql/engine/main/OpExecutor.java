@@ -10,16 +10,21 @@ import java.util.ArrayList ;
 import java.util.Iterator ;
 import java.util.List ;
 
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.query.Query ;
 import com.hp.hpl.jena.query.QueryExecException ;
 import com.hp.hpl.jena.sparql.ARQNotImplemented ;
 import com.hp.hpl.jena.sparql.algebra.Op ;
 import com.hp.hpl.jena.sparql.algebra.op.* ;
 import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.Var ;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
 import com.hp.hpl.jena.sparql.engine.QueryIterator ;
 import com.hp.hpl.jena.sparql.engine.binding.Binding ;
 import com.hp.hpl.jena.sparql.engine.iterator.* ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterGraph ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterHashJoin ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterHashLeftJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterLeftJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterOptionalIndex ;
@@ -171,6 +176,13 @@ public class OpExecutor
         }
         QueryIterator left = executeOp(opJoin.getLeft(), input) ;
         QueryIterator right = executeOp(opJoin.getRight(), root()) ;
+        // Hash the right side on any variables both sides define.
+        if ( execCxt.getContext().isTrueOrUndef(ARQ.optHashJoin) )
+        {
+            List<Var> keyVars = JoinClassifier.joinKeys(opJoin.getLeft(), opJoin.getRight()) ;
+            if ( ! keyVars.isEmpty() )
+                return new QueryIterHashJoin(left, right, keyVars, execCxt) ;
+        }
         QueryIterator qIter = new QueryIterJoin(left, right, execCxt) ;
         return qIter ;
     }
@@ -201,6 +213,12 @@ public class OpExecutor
     {
         QueryIterator left = executeOp(opLeftJoin.getLeft(), input) ;
         QueryIterator right = executeOp(opLeftJoin.getRight(), root()) ;
+        if ( execCxt.getContext().isTrueOrUndef(ARQ.optHashJoin) )
+        {
+            List<Var> keyVars = JoinClassifier.joinKeys(opLeftJoin.getLeft(), opLeftJoin.getRight()) ;
+            if ( ! keyVars.isEmpty() )
+                return new QueryIterHashLeftJoin(left, right, keyVars, opLeftJoin.getExprs(), execCxt) ;
+        }
         QueryIterator qIter = new QueryIterLeftJoin(left, right, opLeftJoin.getExprs(), execCxt) ;
         return qIter ;
     }
@@ -344,8 +362,13 @@ public class OpExecutor
     
     protected QueryIterator execute(OpOrder opOrder, QueryIterator input)
     { 
+        // Taken before the sub op runs, which may have slices of its own.
+        int n = takeTopN(opOrder) ;
         QueryIterator qIter = executeOp(opOrder.getSubOp(), input) ;
-        qIter = new QueryIterSort(qIter, opOrder.getConditions(), execCxt) ;
+        if ( n > 0 )
+            qIter = new QueryIterTopN(qIter, opOrder.getConditions(), n, execCxt) ;
+        else
+            qIter = new QueryIterSort(qIter, opOrder.getConditions(), execCxt) ;
         return qIter ;
     }
 
@@ -359,11 +382,54 @@ public class OpExecutor
 
     protected QueryIterator execute(OpSlice opSlice, QueryIterator input)
     { 
+        noteTopN(opSlice) ;
         QueryIterator qIter = executeOp(opSlice.getSubOp(), input) ;
         qIter = new QueryIterSlice(qIter, opSlice.getStart(), opSlice.getLength(), execCxt) ;
         return qIter ;
     }
     
+    // The ORDER BY under the slice being executed, and the rows needed from it.
+    private OpOrder topNOrder = null ;
+    private int topNRows = 0 ;
+
+    /** ORDER BY then LIMIT, possibly with a project between: only the first
+     *  offset+limit rows of the sort are needed, so execute(OpOrder) keeps
+     *  just those in a heap rather than sorting everything.  The order and
+     *  project are still executed through execute(OpOrder) and
+     *  execute(OpProject), so a subclass sees them; one that does its own
+     *  sort simply does not call takeTopN.  Switched off by ARQ.optTopN.
+     */
+    protected void noteTopN(OpSlice opSlice)
+    {
+        topNOrder = null ;
+        if ( opSlice.getLength() == Query.NOLIMIT || execCxt.getContext().isFalse(ARQ.optTopN) )
+            return ;
+        Op sub = opSlice.getSubOp() ;
+        if ( sub instanceof OpProject )
+            sub = ((OpProject)sub).getSubOp() ;
+        if ( ! ( sub instanceof OpOrder ) )
+            return ;
+        long n = opSlice.getLength() ;
+        if ( opSlice.getStart() != Query.NOLIMIT )
+            n += opSlice.getStart() ;
+        // Beyond the spill threshold, the heap would hold more than a sort does.
+        int threshold = execCxt.getSpillThreshold() ;
+        if ( n > Integer.MAX_VALUE || ( threshold > 0 && n > threshold ) )
+            return ;
+        topNOrder = (OpOrder)sub ;
+        topNRows = (int)n ;
+    }
+
+    /** The number of rows needed from this ORDER BY, if only the first few
+     *  are (see noteTopN), else 0. */
+    protected int takeTopN(OpOrder opOrder)
+    {
+        if ( opOrder != topNOrder )
+            return 0 ;
+        topNOrder = null ;
+        return topNRows ;
+    }
+    
     protected QueryIterator execute(OpGroupAgg opGroupAgg, QueryIterator input)
     { 
         QueryIterator qIter = executeOp(opGroupAgg.getSubOp(), input) ;
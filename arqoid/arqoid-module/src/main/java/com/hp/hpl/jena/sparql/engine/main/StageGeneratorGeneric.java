@@ -8,23 +8,34 @@ package com.hp.hpl.jena.sparql.engine.main;
 
 import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.TERM;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.hp.hpl.jena.db.GraphRDB;
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.GraphStatisticsHandler;
 import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.PredicateStatisticsHandler;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.mem.GraphMem;
 import com.hp.hpl.jena.mem.faster.GraphMemFaster;
 
+import com.hp.hpl.jena.query.ARQ;
 import com.hp.hpl.jena.sparql.ARQConstants;
 import com.hp.hpl.jena.sparql.core.BasicPattern;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterBlockTriples;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterBlockTriplesBatch;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterBlockTriplesQH;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterCounting;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterTriplePattern;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorWrapper;
 import com.hp.hpl.jena.sparql.engine.optimizer.reorder.*;
 //ANDROID: removed management dependence
 //import com.hp.hpl.jena.sparql.mgt.Explain;
 import com.hp.hpl.jena.sparql.util.ALog;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
 import com.hp.hpl.jena.sparql.util.Symbol;
 import com.hp.hpl.jena.sparql.util.Utils;
 
@@ -33,6 +44,12 @@ public class StageGeneratorGeneric implements StageGenerator
 {
     public final static Symbol altMatcher = ARQConstants.allocSymbol("altmatcher") ;
     
+    /** Context key: log, for each basic graph pattern reordered by graph
+     *  statistics, the estimated and the actual rows of each triple pattern. */
+    public final static Symbol explain = ARQConstants.allocSymbol("explainBGP") ;
+    
+    private static Logger log = LoggerFactory.getLogger(StageGeneratorGeneric.class) ;
+    
     public StageGeneratorGeneric() {}
     
     public QueryIterator execute(BasicPattern pattern, 
@@ -91,9 +108,52 @@ public class StageGeneratorGeneric implements StageGenerator
 //            Explain.explain("Reorder", pattern, execCxt.getContext()) ;
         }
 
+        if ( reorder instanceof ReorderGraphStats && execution == executeInline 
+             && execCxt.getContext().isTrue(explain) )
+            return explain(pattern, ((ReorderGraphStats)reorder).estimates(pattern), input, execCxt) ;
+
+        if ( execution == executeInline )
+        {
+            int batchSize = execCxt.getContext().getInt(ARQ.bgpBatchSize, 0) ;
+            if ( batchSize > 0 )
+                return QueryIterBlockTriplesBatch.create(input, pattern, batchSize, execCxt) ;
+        }
+
         return execution.execute(pattern, input, execCxt) ; 
     }
     
+    /** Execute as QueryIterBlockTriples does, counting the rows out of each
+     *  triple pattern, and log them against the estimates when closed. */ 
+    private static QueryIterator explain(final BasicPattern pattern, final double[] estimates,
+                                         QueryIterator input, ExecutionContext execCxt)
+    {
+        final QueryIterCounting[] counts = new QueryIterCounting[pattern.size()+1] ;
+        QueryIterator chain = counts[0] = new QueryIterCounting(input) ;
+        int i = 0 ;
+        for ( Triple triple : pattern )
+        {
+            chain = new QueryIterTriplePattern(chain, triple, execCxt) ;
+            chain = counts[++i] = new QueryIterCounting(chain) ;
+        }
+        return new QueryIteratorWrapper(chain) {
+            @Override
+            protected void closeIterator()
+            {
+                super.closeIterator() ;
+                StringBuilder buff = new StringBuilder("BGP estimated/actual rows per input row:") ;
+                for ( int j = 0 ; j < estimates.length ; j++ )
+                {
+                    long in = counts[j].getCount() ;
+                    long out = counts[j+1].getCount() ;
+                    buff.append(String.format("\n  %-50s  %10.2f %10.2f  (%d rows)",
+                                              FmtUtils.stringForTriple(pattern.get(j)),
+                                              estimates[j], in == 0 ? 0.0 : (double)out/in, out)) ;
+                }
+                log.info(buff.toString()) ;
+            }
+        } ;
+    }
+    
     
     // ---- Execution policies
     private static StageGenerator executeQueryHandler = new StageGenerator() {
@@ -121,6 +181,8 @@ public class StageGeneratorGeneric implements StageGenerator
         GraphStatisticsHandler stats = graph.getStatisticsHandler() ;
         if ( stats == null )
             return reorderFixed() ;
+        if ( stats instanceof PredicateStatisticsHandler )
+            return new ReorderGraphStats(graph, (PredicateStatisticsHandler)stats) ;
         return new ReorderStatsHandler(graph, graph.getStatisticsHandler()) ;
     }
 
@@ -7,6 +7,7 @@
 package com.hp.hpl.jena.sparql.engine.main;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -163,6 +164,36 @@ class VarFinder
                 opLeftJoin.getExprs().varsMentioned(filterMentions);
         }
 
+        @Override
+        public void visit(OpSequence opSequence)
+        {
+            for ( Iterator<Op> iter = opSequence.iterator() ; iter.hasNext() ; )
+            {
+                VarUsageVisitor usage = VarUsageVisitor.apply(iter.next()) ;
+                defines.addAll(usage.defines) ;
+                optDefines.addAll(usage.optDefines) ;
+                filterMentions.addAll(usage.filterMentions) ;
+            }
+        }
+
+        // The streamed form of a left join, with any expression moved into the right side.
+        @Override
+        public void visit(OpConditional opCondition)
+        {
+            VarUsageVisitor leftUsage = VarUsageVisitor.apply(opCondition.getLeft()) ;
+            VarUsageVisitor rightUsage = VarUsageVisitor.apply(opCondition.getRight()) ;
+            
+            defines.addAll(leftUsage.defines) ;
+            optDefines.addAll(leftUsage.optDefines) ;
+            filterMentions.addAll(leftUsage.filterMentions) ;
+            
+            optDefines.addAll(rightUsage.defines) ;     // Asymmetric.
+            optDefines.addAll(rightUsage.optDefines) ;
+            filterMentions.addAll(rightUsage.filterMentions) ;
+            
+            optDefines.removeAll(leftUsage.defines) ;
+        }
+
         @Override
         public void visit(OpUnion opUnion)
         {
@@ -0,0 +1,25 @@
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.List;
+
+import com.hp.hpl.jena.sparql.algebra.TableFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+
+/** Join by materializing the RHS into a table hashed on the join key
+ *  variables, so each left binding is only tried against the right rows
+ *  with the same key values. */
+public class QueryIterHashJoin extends QueryIterJoinBase
+{
+    public QueryIterHashJoin(QueryIterator left, QueryIterator right, List<Var> keyVars, ExecutionContext qCxt)
+    {
+        super(left, TableFactory.create(right, keyVars), null, qCxt) ;
+    }
+    
+    @Override
+    protected QueryIterator joinWorker()
+    {
+        return super.equiJoinWorker() ;
+    }
+}
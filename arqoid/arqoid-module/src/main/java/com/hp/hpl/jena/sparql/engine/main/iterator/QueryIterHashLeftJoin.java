@@ -0,0 +1,26 @@
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.List;
+
+import com.hp.hpl.jena.sparql.algebra.TableFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+
+/** Left join by materializing the RHS into a table hashed on the join key
+ *  variables.  The condition, if any, is applied to the merged bindings
+ *  of the matching rows; a left binding with none left is passed through. */
+public class QueryIterHashLeftJoin extends QueryIterJoinBase
+{
+    public QueryIterHashLeftJoin(QueryIterator left, QueryIterator right, List<Var> keyVars, ExprList exprs, ExecutionContext qCxt)
+    {
+        super(left, TableFactory.create(right, keyVars), exprs, qCxt) ;
+    }
+
+    @Override
+    protected QueryIterator joinWorker()
+    {
+        return super.leftJoinWorker() ;
+    }
+}
@@ -0,0 +1,127 @@
+package com.hp.hpl.jena.sparql.engine.optimizer.reorder;
+
+import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.TERM;
+
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.PredicateStatisticsHandler;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.lib.iterator.Iter;
+import com.hp.hpl.jena.sparql.lib.iterator.Transform;
+import com.hp.hpl.jena.sparql.sse.Item;
+
+/** Reorder a basic graph pattern using the statistics the graph keeps for
+ *  each predicate.  The weight of a triple pattern is the number of triples
+ *  expected to match it for each row coming in.  For a known predicate,
+ *  that is its number of triples divided by its number of different
+ *  subjects if the subject is bound, and by its number of different
+ *  objects if the object is bound, whether bound by a constant in the query
+ *  or by a variable of an earlier pattern.  Without a known predicate, it
+ *  falls back on the counts for a constant subject or object, or on guesses.
+ */
+public class ReorderGraphStats extends ReorderTransformationBase
+{
+    private final PredicateStatisticsHandler stats ;
+
+    // Guesses, as for ReorderStatsHandler, where the predicate is not known.
+    private final long TERM_S ;         // Used for S ? ? for a subject bound by an earlier pattern
+    private final long TERM_O ;         // Used for ? ? O for an object bound by an earlier pattern
+    private final long N ;
+
+    public ReorderGraphStats(Graph graph, PredicateStatisticsHandler stats)
+    {
+        this.stats = stats ;
+        N = graph.size() ;
+        TERM_S = 10 ;       // Wild guess: "An average subject has 10 properties".
+        TERM_O = 20 ;       // Wild guess: "An average object is in 20 triples".
+    }
+
+    @Override
+    protected double weight(PatternTriple pt)
+    {
+        if ( isConcrete(pt.predicate) )
+        {
+            Node p = pt.predicate.getNode() ;
+            long count = stats.getStatistic(Node.ANY, p, Node.ANY) ;
+            long subjects = stats.getDistinctSubjects(p) ;
+            long objects = stats.getDistinctObjects(p) ;
+            if ( count >= 0 && subjects >= 0 && objects >= 0 )
+                return weightP(pt, count, subjects, objects) ;
+        }
+        return weightNoP(pt) ;
+    }
+
+    private double weightP(PatternTriple pt, long count, long subjects, long objects)
+    {
+        if ( count == 0 )
+            return 0 ;
+        double x = count ;
+        if ( isConcrete(pt.subject) || TERM.equals(pt.subject) )
+            x = x / subjects ;
+        if ( isConcrete(pt.object) || TERM.equals(pt.object) )
+            x = x / objects ;
+        // A constant can also be rarer than the average.
+        if ( isConcrete(pt.subject) )
+            x = Math.min(x, stats.getStatistic(pt.subject.getNode(), Node.ANY, Node.ANY)) ;
+        if ( isConcrete(pt.object) )
+            x = Math.min(x, stats.getStatistic(Node.ANY, Node.ANY, pt.object.getNode())) ;
+        return x ;
+    }
+
+    private double weightNoP(PatternTriple pt)
+    {
+        long S = -1 ;
+        long O = -1 ;
+
+        if ( isConcrete(pt.subject) )
+            S = stats.getStatistic(pt.subject.getNode(), Node.ANY, Node.ANY) ;
+        else if ( TERM.equals(pt.subject) )
+            S = TERM_S ;
+
+        if ( isConcrete(pt.object) )
+            O = stats.getStatistic(Node.ANY, Node.ANY, pt.object.getNode()) ;
+        else if ( TERM.equals(pt.object) )
+            O = TERM_O ;
+
+        if ( S == 0 || O == 0 )
+            // Can't match.
+            return 0 ;
+
+        double x = N ;
+        if ( S > 0 && S < x ) x = S ;
+        if ( O > 0 && O < x ) x = O ;
+        return x ;
+    }
+
+    /** The estimated rows per input row of each triple pattern, in the
+     *  order given, with the variables of each pattern bound for the
+     *  patterns after it. */
+    public double[] estimates(BasicPattern pattern)
+    {
+        List<Triple> triples = pattern.getList() ;
+        List<PatternTriple> components = Iter.toList(Iter.map(triples, convert)) ;
+        double[] x = new double[triples.size()] ;
+        for ( int i = 0 ; i < x.length ; i++ )
+        {
+            x[i] = weight(components.get(i)) ;
+            components.set(i, null) ;
+            update(triples.get(i), components) ;
+        }
+        return x ;
+    }
+
+    private static boolean isConcrete(Item item)
+    {
+        return item.isNode() && item.getNode().isConcrete() ;
+    }
+
+    private static Transform<Triple, PatternTriple> convert = new Transform<Triple, PatternTriple>(){
+        //@Override
+        public PatternTriple convert(Triple triple)
+        {
+            return new PatternTriple(triple) ;
+        }} ;
+}
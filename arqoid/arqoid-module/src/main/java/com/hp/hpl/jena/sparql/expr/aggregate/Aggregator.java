@@ -22,6 +22,8 @@ public interface Aggregator
     public Node getValue(BindingKey key) ;
     /** Value if there are no elements in any group : return null for no result */
     public Node getValueEmpty() ;
+    /** Forget all groups accumulated so far (their values have been taken) */
+    public void clear() ;
     public String toPrefixString()  ;
     // Key to identify an aggregator as synatx for duplictae use in a query.
     public String key() ;           
@@ -52,6 +52,8 @@ public abstract class AggregatorBase implements Aggregator
         return nv.asNode() ;
     }
     
+    public void clear() { buckets.clear() ; }
+    
     public String key() { return toPrefixString() ; }
 }
 
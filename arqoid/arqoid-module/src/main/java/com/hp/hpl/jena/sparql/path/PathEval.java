@@ -7,9 +7,12 @@
 package com.hp.hpl.jena.sparql.path;
 
 import java.util.Collection ;
+import java.util.HashSet ;
 import java.util.Iterator ;
 import java.util.LinkedHashSet ;
+import java.util.LinkedList ;
 import java.util.List ;
+import java.util.NoSuchElementException ;
 import java.util.Set ;
 
 import org.slf4j.Logger ;
@@ -75,8 +78,41 @@ public class PathEval
     static public Iterator<Node> evalInverse(Graph g, Node node, Path path) 
     { return eval(g, node, path, false) ; }
 
+    /** Test whether there is a path from one node to another.  For p* and
+     *  p+, this walks breadth first from both ends at once, extending the
+     *  side with the smaller frontier, and stops as soon as the two walks
+     *  meet or either runs out. */
+    static public boolean testConnected(Graph graph, Node start, Path path, Node end)
+    {
+        if ( isClosure(path) && ! end.isLiteral() )
+            return connected(graph, start, (P_Mod)path, end) ;
+        // Stops at the first match, p* and p+ being evaluated lazily.
+        Iterator<Node> iter = eval(graph, start, path) ;
+        for ( ; iter.hasNext() ; )
+        {
+            if ( iter.next().sameValueAs(end) )
+                return true ;
+        }
+        return false ;
+    }
+
+    /** Is this path p* or p+ ? */
+    static boolean isClosure(Path path)
+    {
+        if ( ! ( path instanceof P_Mod ) )
+            return false ;
+        P_Mod pMod = (P_Mod)path ;
+        return pMod.isZeroOrMore() || pMod.isOneOrMore() ;
+    }
+
     static private Iterator<Node> eval(Graph graph, Node node, Path path, boolean forward)
     {
+        if ( isClosure(path) )
+        {
+            // Results are produced as the walk goes.
+            P_Mod pMod = (P_Mod)path ;
+            return new ClosureIterator(graph, node, pMod.getSubPath(), forward, pMod.isZeroOrMore()) ;
+        }
         Set<Node> acc = new LinkedHashSet<Node>() ;
         eval(graph, node, path, forward, acc);
         return acc.iterator() ;
@@ -101,6 +137,134 @@ public class PathEval
         p.visit(evaluator) ;
     }
     // ----
+
+    static private boolean connected(Graph graph, Node start, P_Mod path, Node end)
+    {
+        Path step = path.getSubPath() ;
+        if ( path.isZeroOrMore() && start.sameValueAs(end) )
+            return true ;
+
+        // Nodes reached from the start, by one or more steps for p+, and
+        // nodes from which the end is reached, by zero or more steps.
+        Set<Node> seenFwd = new HashSet<Node>() ;
+        Set<Node> seenBwd = new HashSet<Node>() ;
+        List<Node> frontierFwd = new LinkedList<Node>() ;
+        List<Node> frontierBwd = new LinkedList<Node>() ;
+
+        if ( path.isZeroOrMore() )
+        {
+            seenFwd.add(start) ;
+            frontierFwd.add(start) ;
+        }
+        else
+        {
+            Iterator<Node> iter = eval(graph, start, step, true) ;
+            for ( ; iter.hasNext() ; )
+            {
+                Node n = iter.next() ;
+                if ( n.equals(end) )
+                    return true ;
+                if ( seenFwd.add(n) )
+                    frontierFwd.add(n) ;
+            }
+        }
+        seenBwd.add(end) ;
+        frontierBwd.add(end) ;
+
+        boolean forward = false ;
+        while ( ! frontierFwd.isEmpty() && ! frontierBwd.isEmpty() )
+        {
+            // Take turns when the frontiers are the same size.
+            if ( frontierFwd.size() != frontierBwd.size() )
+                forward = frontierFwd.size() < frontierBwd.size() ;
+            else
+                forward = ! forward ;
+            if ( forward )
+                frontierFwd = expand(graph, step, true, frontierFwd, seenFwd, seenBwd) ;
+            else
+                frontierBwd = expand(graph, step, false, frontierBwd, seenBwd, seenFwd) ;
+            if ( frontierFwd == null || frontierBwd == null )
+                return true ;
+        }
+        return false ;
+    }
+
+    /** Extend one side of a bidirectional walk by a level.  Returns the new
+     *  frontier, or null if the two sides have met. */
+    static private List<Node> expand(Graph graph, Path step, boolean forward,
+                                     List<Node> frontier, Set<Node> seen, Set<Node> other)
+    {
+        List<Node> next = new LinkedList<Node>() ;
+        for ( Node node : frontier )
+        {
+            Iterator<Node> iter = eval(graph, node, step, forward) ;
+            for ( ; iter.hasNext() ; )
+            {
+                Node n = iter.next() ;
+                if ( other.contains(n) )
+                    return null ;
+                if ( seen.add(n) )
+                    next.add(n) ;
+            }
+        }
+        return next ;
+    }
+
+    /** Breadth first walk of the nodes reachable by repeating a path,
+     *  returning each node as it is first reached.  The start node is
+     *  included for p*, and for p+ only if it is reached again. */
+    private static class ClosureIterator implements Iterator<Node>
+    {
+        private final Graph graph ;
+        private final Path step ;
+        private final boolean forward ;
+        private final Set<Node> visited = new HashSet<Node>() ;
+        private final LinkedList<Node> queue = new LinkedList<Node>() ;
+        private Iterator<Node> current ;
+        private Node slot = null ;
+
+        ClosureIterator(Graph graph, Node start, Path step, boolean forward, boolean includeStart)
+        {
+            this.graph = graph ;
+            this.step = step ;
+            this.forward = forward ;
+            current = includeStart ? Iter.<Node>singleton(start) : eval(graph, start, step, forward) ;
+        }
+
+        public boolean hasNext()
+        {
+            if ( slot != null )
+                return true ;
+            for ( ;; )
+            {
+                for ( ; current.hasNext() ; )
+                {
+                    Node n = current.next() ;
+                    if ( visited.add(n) )
+                    {
+                        queue.add(n) ;
+                        slot = n ;
+                        return true ;
+                    }
+                }
+                if ( queue.isEmpty() )
+                    return false ;
+                current = eval(graph, queue.removeFirst(), step, forward) ;
+            }
+        }
+
+        public Node next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            Node n = slot ;
+            slot = null ;
+            return n ;
+        }
+
+        public void remove()
+        { throw new UnsupportedOperationException("ClosureIterator.remove") ; }
+    }
     
     private static class PathEvaluator implements PathVisitor
     {
@@ -359,37 +523,15 @@ public class PathEval
 
         private static long dec(long x) { return (x<=0) ? x : x-1 ; }
 
+        // Breadth first, without recursion, so long chains do not overflow the stack. 
         private void doOneOrMore(Path path)
         {
-            // Do one, then do zero or more for each result.
-            Iterator<Node> iter1 = eval(graph, node, path, forwardMode) ;  // ORDER
-            // Do zero or more.
-            Set<Node> visited = new LinkedHashSet<Node>() ;
-            for ( ; iter1.hasNext() ; )
-            {
-                Node n1 = iter1.next();
-                closure(graph, n1, path, visited, forwardMode) ;
-            }
-            output.addAll(visited) ;
+            fill(new ClosureIterator(graph, node, path, forwardMode, false)) ;
         }
 
         private void doZeroOrMore(Path path)
         {
-            Set<Node> visited = new LinkedHashSet<Node>() ;
-            closure(graph, node, path, visited, forwardMode) ;
-            output.addAll(visited) ;
-        }
-
-        private static void closure(Graph graph, Node node, Path path, Collection<Node> visited, boolean forward)
-        {
-            if ( visited.contains(node) ) return ;
-            visited.add(node) ;
-            Iterator<Node> iter = eval(graph, node, path, forward) ;
-            for ( ; iter.hasNext() ; )
-            {
-                Node n2 = iter.next() ;
-                closure(graph, n2, path, visited, forward) ;
-            }
+            fill(new ClosureIterator(graph, node, path, forwardMode, true)) ;
         }
     }
 }
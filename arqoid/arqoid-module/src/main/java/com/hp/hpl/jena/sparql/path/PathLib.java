@@ -6,12 +6,11 @@
 
 package com.hp.hpl.jena.sparql.path;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ARQ;
 import com.hp.hpl.jena.sparql.ARQInternalErrorException;
 import com.hp.hpl.jena.sparql.algebra.Op;
 import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
@@ -28,6 +27,8 @@ import com.hp.hpl.jena.sparql.engine.binding.Binding1;
 import com.hp.hpl.jena.sparql.engine.binding.BindingUtils;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterConcat;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.lib.iterator.Iter;
+import com.hp.hpl.jena.sparql.lib.iterator.Transform;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunction;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionFactory;
 import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry;
@@ -117,63 +118,71 @@ public class PathLib
         Iterator<Node> iter = null ;
         Node endNode = null ;
         Graph graph = execCxt.getActiveGraph() ;
+        ReachabilityIndex index = null ;
+        if ( ReachabilityIndex.handles(path) && execCxt.getContext().isTrue(ARQ.pathIndex) )
+            index = ReachabilityIndex.get(graph) ;
         
         if ( Var.isVar(s) && Var.isVar(o) )
-            return ungroundedPath(binding, graph, Var.alloc(s), path, Var.alloc(o), execCxt) ;
+            return ungroundedPath(binding, graph, index, Var.alloc(s), path, Var.alloc(o), execCxt) ;
 
         if ( ! Var.isVar(s) && ! Var.isVar(o) )
-            return groundedPath(binding, graph, s, path, o, execCxt) ;
+            return groundedPath(binding, graph, index, s, path, o, execCxt) ;
         
         if ( Var.isVar(s) )
         {
             // Var subject, concreate object - do backwards.
-            iter = PathEval.evalInverse(graph, o, path) ;
+            iter = eval(graph, index, o, path, false) ;
             endNode = s ;
         } 
         else
         {
-            iter = PathEval.eval(graph, s, path) ;
+            iter = eval(graph, index, s, path, true) ;
             endNode = o ;
         }
         return _execTriplePath(binding, iter, endNode, execCxt) ;
     }
     
-    private static QueryIterator _execTriplePath(Binding binding, 
+    private static Iterator<Node> eval(Graph graph, ReachabilityIndex index, Node node, Path path, boolean forward)
+    {
+        if ( index != null )
+            return index.eval(graph, node, path, forward) ;
+        return forward ? PathEval.eval(graph, node, path) : PathEval.evalInverse(graph, node, path) ;
+    }
+    
+    private static QueryIterator _execTriplePath(final Binding binding, 
                                                  Iterator<Node> iter,
                                                  Node endNode,
                                                  ExecutionContext execCxt)
     {
-        List<Binding> results = new ArrayList<Binding>() ;
-        
         if (! Var.isVar(endNode))
             throw new ARQInternalErrorException("Non-variable endnode in _execTriplePath") ;
         
-        Var var = Var.alloc(endNode) ;
-        // Assign.
-        for (; iter.hasNext();)
-        {
-            Node n = iter.next() ;
-            results.add(new Binding1(binding, var, n)) ;
-        }
-        return new QueryIterPlainWrapper(results.iterator()) ;
+        final Var var = Var.alloc(endNode) ;
+        // Assign, as the path evaluation produces nodes.
+        Transform<Node, Binding> assign = new Transform<Node, Binding>(){
+            public Binding convert(Node n)
+            {
+                return new Binding1(binding, var, n) ;
+            }
+        } ;
+        return new QueryIterPlainWrapper(Iter.map(iter, assign), execCxt) ;
     }
 
     // Subject and object are nodes.
-    private static QueryIterator groundedPath(Binding binding, Graph graph, Node subject, Path path, Node object,
+    private static QueryIterator groundedPath(Binding binding, Graph graph, ReachabilityIndex index,
+                                              Node subject, Path path, Node object,
                                               ExecutionContext execCxt)
     {
-        Iterator<Node> iter = PathEval.eval(graph, subject, path) ;
-        for ( ; iter.hasNext() ; )
-        {
-            Node n = iter.next() ;
-            if ( n.sameValueAs(object) )
-                return IterLib.result(binding, execCxt) ;        
-        }
+        boolean b = ( index != null ) ? index.testConnected(graph, subject, path, object)
+                                      : PathEval.testConnected(graph, subject, path, object) ;
+        if ( b )
+            return IterLib.result(binding, execCxt) ;        
         return IterLib.noResults(execCxt) ;
     }
 
     // Brute force evaluation of a TriplePath where neither subject nor object are bound 
-    private static QueryIterator ungroundedPath(Binding binding, Graph graph, Var sVar, Path path, Var oVar,
+    private static QueryIterator ungroundedPath(Binding binding, Graph graph, ReachabilityIndex index,
+                                                Var sVar, Path path, Var oVar,
                                                 ExecutionContext execCxt)
     {
         Iterator<Node> iter = GraphUtils.allNodes(graph) ;
@@ -183,7 +192,7 @@ public class PathLib
         {
             Node n = iter.next() ;
             Binding b2 = new Binding1(binding, sVar, n) ;
-            Iterator<Node> pathIter = PathEval.eval(graph, n, path) ;
+            Iterator<Node> pathIter = eval(graph, index, n, path, true) ;
             QueryIterator qIter = _execTriplePath(b2, pathIter, oVar, execCxt) ;
             qIterCat.add(qIter) ;
         }
@@ -0,0 +1,274 @@
+package com.hp.hpl.jena.sparql.path;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.sparql.lib.iterator.Iter;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Reachability for the paths p* and p+ of a single property, cached for a
+ *  graph.  For each property, the nodes reachable by one or more steps from
+ *  a node, forwards or backwards, are computed on first use and kept, up to
+ *  MAX_ENTRIES nodes each way.
+ *  <p>
+ *  The index listens to the graph.  As in TransitiveGraphCache, adding a
+ *  link only ever adds to a closure: the closures that reach the subject of
+ *  a new triple are extended by a walk from its object, which stops at the
+ *  nodes they already hold.  Deleting a link drops only the closures that
+ *  could have gone through it, and they are recomputed when next asked for.
+ *  Anything else, such as removeAll, drops everything.  A closure is never
+ *  changed once handed out; it is replaced by a new set.
+ *  <p>
+ *  Inference graphs are not indexed, as their deductions change without
+ *  the graph telling its listeners.
+ */
+public class ReachabilityIndex implements GraphListener
+{
+    public static final int MAX_ENTRIES = 1000 ;
+
+    private static final Map<Graph, ReachabilityIndex> indexes = new WeakHashMap<Graph, ReachabilityIndex>() ;
+
+    /** The index for a graph, created and registered with the graph on first
+     *  use, or null if the graph can not be indexed. */
+    public static ReachabilityIndex get(Graph graph)
+    {
+        if ( graph instanceof InfGraph )
+            return null ;
+        synchronized(indexes)
+        {
+            ReachabilityIndex index = indexes.get(graph) ;
+            if ( index == null )
+            {
+                index = new ReachabilityIndex() ;
+                graph.getEventManager().register(index) ;
+                indexes.put(graph, index) ;
+            }
+            return index ;
+        }
+    }
+
+    /** Whether the index can evaluate this path: p* or p+ of one property */
+    public static boolean handles(Path path)
+    {
+        return PathEval.isClosure(path) && ((P_Mod)path).getSubPath() instanceof P_Link ;
+    }
+
+    // Property to closures.  The index does not refer to the graph, which
+    // is passed in, so the graph can still be garbage collected.
+    private final Map<Node, Closures> properties = new HashMap<Node, Closures>() ;
+
+    private ReachabilityIndex() {}
+
+    /** Evaluate p* or p+ from a node */
+    public Iterator<Node> eval(Graph graph, Node node, Path path, boolean forward)
+    {
+        P_Mod pMod = (P_Mod)path ;
+        Set<Node> closure = closure(graph, property(pMod), node, forward) ;
+        if ( pMod.isOneOrMore() || closure.contains(node) )
+            return closure.iterator() ;
+        return Iter.append(Iter.singleton(node), closure.iterator()) ;
+    }
+
+    /** Test whether p* or p+ connects two nodes */
+    public boolean testConnected(Graph graph, Node start, Path path, Node end)
+    {
+        P_Mod pMod = (P_Mod)path ;
+        if ( pMod.isZeroOrMore() && start.sameValueAs(end) )
+            return true ;
+        Set<Node> closure = closure(graph, property(pMod), start, true) ;
+        if ( ! end.isLiteral() )
+            return closure.contains(end) ;
+        for ( Node n : closure )
+        {
+            if ( n.sameValueAs(end) )
+                return true ;
+        }
+        return false ;
+    }
+
+    private static Node property(P_Mod pMod)
+    {
+        return ((P_Link)pMod.getSubPath()).getNode() ;
+    }
+
+    private synchronized Set<Node> closure(Graph graph, Node property, Node node, boolean forward)
+    {
+        Closures c = properties.get(property) ;
+        if ( c == null )
+        {
+            c = new Closures() ;
+            properties.put(property, c) ;
+        }
+        Map<Node, Set<Node>> map = forward ? c.forward : c.backward ;
+        Set<Node> x = map.get(node) ;
+        if ( x == null )
+        {
+            x = new LinkedHashSet<Node>() ;
+            walk(graph, property, node, forward, x) ;
+            map.put(node, x) ;
+        }
+        return x ;
+    }
+
+    // Breadth first from the nodes one step from a node, adding anything
+    // not already in the set.
+    private static void walk(Graph graph, Node property, Node node, boolean forward, Set<Node> acc)
+    {
+        LinkedList<Node> queue = new LinkedList<Node>() ;
+        queue.add(node) ;
+        while ( ! queue.isEmpty() )
+        {
+            Node n = queue.removeFirst() ;
+            ExtendedIterator<Triple> iter = forward ? graph.find(n, property, Node.ANY)
+                                                    : graph.find(Node.ANY, property, n) ;
+            try {
+                for ( ; iter.hasNext() ; )
+                {
+                    Triple t = iter.next() ;
+                    Node n2 = forward ? t.getObject() : t.getSubject() ;
+                    if ( acc.add(n2) )
+                        queue.add(n2) ;
+                }
+            } finally { iter.close() ; }
+        }
+    }
+
+    // ---- Listener
+
+    public void notifyAddTriple(Graph g, Triple t)
+    { add(g, t) ; }
+
+    public void notifyAddArray(Graph g, Triple[] triples)
+    {
+        for ( int i = 0 ; i < triples.length ; i++ )
+            add(g, triples[i]) ;
+    }
+
+    public void notifyAddList(Graph g, List<Triple> triples)
+    { notifyAddIterator(g, triples.iterator()) ; }
+
+    public void notifyAddIterator(Graph g, Iterator<Triple> it)
+    {
+        for ( ; it.hasNext() ; )
+            add(g, it.next()) ;
+    }
+
+    public void notifyAddGraph(Graph g, Graph added)
+    { clear() ; }
+
+    public void notifyDeleteTriple(Graph g, Triple t)
+    { delete(t) ; }
+
+    public void notifyDeleteList(Graph g, List<Triple> triples)
+    { notifyDeleteIterator(g, triples.iterator()) ; }
+
+    public void notifyDeleteArray(Graph g, Triple[] triples)
+    {
+        for ( int i = 0 ; i < triples.length ; i++ )
+            delete(triples[i]) ;
+    }
+
+    public void notifyDeleteIterator(Graph g, Iterator<Triple> it)
+    {
+        for ( ; it.hasNext() ; )
+            delete(it.next()) ;
+    }
+
+    public void notifyDeleteGraph(Graph g, Graph removed)
+    { clear() ; }
+
+    public void notifyEvent(Graph source, Object value)
+    {
+        if ( value.equals(GraphEvents.startRead) || value.equals(GraphEvents.finishRead) )
+            return ;
+        // removeAll, remove(s,p,o) and anything else not tracked.
+        clear() ;
+    }
+
+    private synchronized void add(Graph graph, Triple t)
+    {
+        Closures c = properties.get(t.getPredicate()) ;
+        if ( c == null )
+            return ;
+        // Closures reaching the subject now also reach the object, and on from it.
+        extend(graph, t.getPredicate(), t.getSubject(), t.getObject(), true, c.forward) ;
+        extend(graph, t.getPredicate(), t.getObject(), t.getSubject(), false, c.backward) ;
+    }
+
+    private static void extend(Graph graph, Node property, Node from, Node to, boolean forward, Map<Node, Set<Node>> map)
+    {
+        Map<Node, Set<Node>> changes = null ;
+        for ( Map.Entry<Node, Set<Node>> e : map.entrySet() )
+        {
+            Set<Node> x = e.getValue() ;
+            if ( x.contains(to) || ! ( e.getKey().equals(from) || x.contains(from) ) )
+                continue ;
+            x = new LinkedHashSet<Node>(x) ;
+            x.add(to) ;
+            walk(graph, property, to, forward, x) ;
+            if ( changes == null )
+                changes = new HashMap<Node, Set<Node>>() ;
+            changes.put(e.getKey(), x) ;
+        }
+        if ( changes != null )
+            map.putAll(changes) ;
+    }
+
+    private synchronized void delete(Triple t)
+    {
+        Closures c = properties.get(t.getPredicate()) ;
+        if ( c == null )
+            return ;
+        // Only closures that could have gone through the link.
+        retract(t.getSubject(), c.forward) ;
+        retract(t.getObject(), c.backward) ;
+    }
+
+    private static void retract(Node from, Map<Node, Set<Node>> map)
+    {
+        for ( Iterator<Map.Entry<Node, Set<Node>>> iter = map.entrySet().iterator() ; iter.hasNext() ; )
+        {
+            Map.Entry<Node, Set<Node>> e = iter.next() ;
+            if ( e.getKey().equals(from) || e.getValue().contains(from) )
+                iter.remove() ;
+        }
+    }
+
+    private synchronized void clear()
+    {
+        properties.clear() ;
+    }
+
+    /** The closures for one property, least recently used dropped first */
+    private static class Closures
+    {
+        final Map<Node, Set<Node>> forward = new LRU() ;
+        final Map<Node, Set<Node>> backward = new LRU() ;
+    }
+
+    private static class LRU extends LinkedHashMap<Node, Set<Node>>
+    {
+        private static final long serialVersionUID = 1L ;
+
+        LRU() { super(16, 0.75f, true) ; }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Node, Set<Node>> eldest)
+        {
+            return size() > MAX_ENTRIES ;
+        }
+    }
+}
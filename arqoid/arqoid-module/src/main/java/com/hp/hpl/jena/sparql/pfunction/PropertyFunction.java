@@ -9,6 +9,7 @@ package com.hp.hpl.jena.sparql.pfunction;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
 import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.util.Context;
 
 /* Abstraction: QueryStage = PlanElement has a single "build"
  * but it's never worng - this two step process here allows for checking 
@@ -30,6 +31,18 @@ public interface PropertyFunction
      */ 
     public void build(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, ExecutionContext execCxt) ;
 
+    /** Called during query planning, before build, to estimate the number of
+     * rows this call produces with none of its variables bound.  A call
+     * estimated to produce few rows is done before the other triple patterns
+     * of its basic graph pattern (see ARQ.propertyFunctionFirstLimit).
+     * @param argSubject   The parsed argument(s) in the subject position 
+     * @param predicate    The extension URI (as a Node).
+     * @param argObject    The parsed argument(s) in the object position 
+     * @param context      The query context
+     * @return             The estimate, or -1 if there is none or the call should stay where it is written
+     */ 
+    public long estimate(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, Context context) ;
+
 
     /** Create an iterator of bindings for the given inputs 
      * @param input       QueryIterator from the previous stage
@@ -13,6 +13,7 @@ import com.hp.hpl.jena.sparql.engine.QueryIterator;
 import com.hp.hpl.jena.sparql.engine.binding.Binding;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
 import com.hp.hpl.jena.sparql.serializer.SerializationContext;
+import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.sparql.util.FmtUtils;
 import com.hp.hpl.jena.sparql.util.IndentedWriter;
 import com.hp.hpl.jena.sparql.util.IterLib;
@@ -60,6 +61,10 @@ public abstract class PropertyFunctionBase implements PropertyFunction
             if ( ! argObject.isList() )
                 throw new QueryBuildException("Single argument, list expected (object) to "+predicate.getURI()) ;
     }
+    
+    /** No estimate: stay where written */
+    public long estimate(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, Context context)
+    { return -1 ; }
 
 
     
@@ -10,6 +10,7 @@ import com.hp.hpl.jena.query.larq.IndexLARQ;
 import com.hp.hpl.jena.query.larq.LARQ;
 import com.hp.hpl.jena.query.larq.LuceneSearch;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.util.Context;
 
 /** Property function to search the default Lucene index (which is 
  *  the one set by {@link LARQ#setDefaultIndex(IndexLARQ) })
@@ -26,6 +27,10 @@ public class textMatch extends LuceneSearch
             index = LARQ.getDefaultIndex(execCxt.getContext()) ;
         return index ; 
     }
+
+    @Override
+    protected IndexLARQ getIndex(Context context)
+    { return LARQ.getDefaultIndex(context) ; }
 }
 
 /*
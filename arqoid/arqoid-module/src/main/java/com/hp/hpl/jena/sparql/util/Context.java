@@ -8,6 +8,8 @@ package com.hp.hpl.jena.sparql.util;
 
 import java.util.*;
 
+import com.hp.hpl.jena.sparql.ARQException;
+
 /** A class for setting and keeping named values.  Used to pass 
  *  implementation-specific parameters across general
  *  interfaces.
@@ -108,6 +110,21 @@ public class Context
         return x.toString() ;
     }
 
+    // -- as int
+
+    /** Get the value as an int: a Number, or a string which parses as one - supply a default value */
+    public int getInt(Symbol property, int defaultValue)
+    {
+        Object x = context.get(property) ;
+        if ( x == null )
+            return defaultValue ;
+        if ( x instanceof Number )
+            return ((Number)x).intValue() ;
+        try { return Integer.parseInt(x.toString().trim()) ; }
+        catch (NumberFormatException ex)
+        { throw new ARQException("Not an integer: "+property+" = "+x) ; }
+    }
+
     public void setAll(Context other)
     {
         if ( other != null )
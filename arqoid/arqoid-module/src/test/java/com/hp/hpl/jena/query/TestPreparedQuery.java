@@ -0,0 +1,138 @@
+package com.hp.hpl.jena.query;
+
+import static org.junit.Assert.* ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.rdf.model.Model ;
+import com.hp.hpl.jena.rdf.model.ModelFactory ;
+import com.hp.hpl.jena.rdf.model.Property ;
+import com.hp.hpl.jena.sparql.ARQConstants ;
+import com.hp.hpl.jena.sparql.algebra.Algebra ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.Symbol ;
+
+/** Prepared queries are cached per context: a repeated query string must
+ *  be served from the cache, and neither different queries nor the same
+ *  query prepared with different contexts may share an entry.
+ */
+public class TestPreparedQuery
+{
+    static final String NS = "http://example/" ;
+    static final String PREFIX = "PREFIX : <"+NS+"> " ;
+
+    static Model data()
+    {
+        Model m = ModelFactory.createDefaultModel() ;
+        Property p = m.createProperty(NS+"p") ;
+        Property q = m.createProperty(NS+"q") ;
+        for ( int i = 0 ; i < 20 ; i++ )
+        {
+            m.createResource(NS+"s"+i).addProperty(p, m.createTypedLiteral(i%7)) ;
+            if ( i%3 == 0 )
+                m.createResource(NS+"s"+i).addProperty(q, m.createTypedLiteral(i)) ;
+        }
+        return m ;
+    }
+
+    static final Model model = data() ;
+
+    static Context context()
+    {
+        Context context = ARQ.getContext().copy() ;
+        PreparedQuery.clearCache(context) ;
+        return context ;
+    }
+
+    static List<String> run(QueryExecution qExec)
+    {
+        List<String> rows = new ArrayList<String>() ;
+        try {
+            ResultSet rs = qExec.execSelect() ;
+            while ( rs.hasNext() )
+            {
+                QuerySolution row = rs.nextSolution() ;
+                StringBuilder sb = new StringBuilder() ;
+                for ( String v : rs.getResultVars() )
+                    sb.append(v).append('=').append(row.get(v)).append(' ') ;
+                rows.add(sb.toString()) ;
+            }
+        } finally { qExec.close() ; }
+        return rows ;
+    }
+
+    static List<String> run(String queryString)
+    {
+        return run(QueryExecutionFactory.create(QueryFactory.create(PREFIX+queryString), model)) ;
+    }
+
+    static long count(Context context, Symbol symbol)
+    {
+        return ((Long)context.get(symbol)).longValue() ;
+    }
+
+    @Test public void repeatedStringIsServedFromTheCache()
+    {
+        Context context = context() ;
+        String qs = PREFIX+"SELECT ?s ?o { ?s :p ?o FILTER(?o > 2) } ORDER BY ?s" ;
+        PreparedQuery pq = PreparedQuery.prepare(qs, Syntax.syntaxARQ, context) ;
+        assertEquals(0, count(context, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(1, count(context, ARQConstants.sysPreparedCacheMisses)) ;
+        assertSame(pq, PreparedQuery.prepare(qs, Syntax.syntaxARQ, context)) ;
+        assertEquals(1, count(context, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(1, count(context, ARQConstants.sysPreparedCacheMisses)) ;
+
+        List<String> expected = run("SELECT ?s ?o { ?s :p ?o FILTER(?o > 2) } ORDER BY ?s") ;
+        QueryExecution first = pq.create(model) ;
+        assertEquals(expected, run(first)) ;
+        assertFalse(first.getContext().isTrue(ARQConstants.sysPreparedReused)) ;
+        assertEquals(1, count(first.getContext(), ARQConstants.sysPreparedCacheHits)) ;
+        QueryExecution second = pq.create(model) ;
+        assertEquals(expected, run(second)) ;
+        assertTrue(second.getContext().isTrue(ARQConstants.sysPreparedReused)) ;
+    }
+
+    @Test public void differentQueriesDoNotShare()
+    {
+        Context context = context() ;
+        PreparedQuery pq1 = PreparedQuery.prepare(PREFIX+"SELECT ?s { ?s :p 1 } ORDER BY ?s", Syntax.syntaxARQ, context) ;
+        PreparedQuery pq2 = PreparedQuery.prepare(PREFIX+"SELECT ?s { ?s :p 2 } ORDER BY ?s", Syntax.syntaxARQ, context) ;
+        assertNotSame(pq1, pq2) ;
+        assertEquals(0, count(context, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(2, count(context, ARQConstants.sysPreparedCacheMisses)) ;
+        assertEquals(run("SELECT ?s { ?s :p 1 } ORDER BY ?s"), run(pq1.create(model))) ;
+        assertEquals(run("SELECT ?s { ?s :p 2 } ORDER BY ?s"), run(pq2.create(model))) ;
+        assertFalse(run(pq1.create(model)).equals(run(pq2.create(model)))) ;
+    }
+
+    @Test public void differentContextsDoNotShare()
+    {
+        String qs = PREFIX+"SELECT ?s ?n { ?s :p ?o OPTIONAL { ?s :q ?n } FILTER(?o < 4) } ORDER BY ?s" ;
+        Context optimized = context() ;
+        Context plain = context() ;
+        plain.set(ARQ.optimization, false) ;
+        PreparedQuery pq1 = PreparedQuery.prepare(qs, Syntax.syntaxARQ, optimized) ;
+        PreparedQuery pq2 = PreparedQuery.prepare(qs, Syntax.syntaxARQ, plain) ;
+        assertNotSame(pq1, pq2) ;
+        assertEquals(0, count(plain, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(1, count(plain, ARQConstants.sysPreparedCacheMisses)) ;
+        assertEquals(0, count(optimized, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(1, count(optimized, ARQConstants.sysPreparedCacheMisses)) ;
+        // Each is optimized as its own context says
+        assertEquals(Algebra.compile(pq2.getQuery()), pq2.getOp()) ;
+        assertFalse(pq1.getOp().equals(pq2.getOp())) ;
+
+        assertSame(pq1, PreparedQuery.prepare(qs, Syntax.syntaxARQ, optimized)) ;
+        assertEquals(1, count(optimized, ARQConstants.sysPreparedCacheHits)) ;
+        assertEquals(0, count(plain, ARQConstants.sysPreparedCacheHits)) ;
+
+        QueryExecution qExec = pq2.create(model) ;
+        assertTrue(qExec.getContext().isFalse(ARQ.optimization)) ;
+        List<String> expected = run("SELECT ?s ?n { ?s :p ?o OPTIONAL { ?s :q ?n } FILTER(?o < 4) } ORDER BY ?s") ;
+        assertEquals(expected, run(qExec)) ;
+        assertEquals(expected, run(pq1.create(model))) ;
+    }
+}
@@ -0,0 +1,88 @@
+package com.hp.hpl.jena.sparql.algebra;
+
+import static org.junit.Assert.* ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP ;
+import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.pfunction.PFuncSimple ;
+import com.hp.hpl.jena.sparql.pfunction.PropFuncArg ;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.IterLib ;
+
+/** A property function estimated, through PropertyFunction.estimate, to
+ *  produce few rows is planned before the other triples of its basic graph
+ *  pattern.
+ */
+public class TestPropertyFunctionOrder
+{
+    static final String NS = "http://example/" ;
+
+    public static class Estimated extends PFuncSimple
+    {
+        @Override
+        public long estimate(PropFuncArg argSubject, Node predicate, PropFuncArg argObject, Context context)
+        {
+            Node n = argObject.getArg() ;
+            return n.isLiteral() ? Long.parseLong(n.getLiteralLexicalForm()) : -1 ;
+        }
+
+        @Override
+        public QueryIterator execEvaluated(Binding binding, Node subject, Node predicate, Node object, ExecutionContext execCxt)
+        { return IterLib.noResults(execCxt) ; }
+    }
+
+    static String plan(String estimate, int limit)
+    {
+        Context context = new Context() ;
+        PropertyFunctionRegistry registry = new PropertyFunctionRegistry() ;
+        registry.put(NS+"estimated", Estimated.class) ;
+        PropertyFunctionRegistry.set(context, registry) ;
+        if ( limit >= 0 )
+            context.set(ARQ.propertyFunctionFirstLimit, limit) ;
+
+        Var s = Var.alloc("s") ;
+        Var o = Var.alloc("o") ;
+        BasicPattern pattern = new BasicPattern() ;
+        pattern.add(new Triple(s, Node.createURI(NS+"p"), o)) ;
+        pattern.add(new Triple(o, Node.createURI(NS+"estimated"), Node.createLiteral(estimate))) ;
+        return PropertyFunctionGenerator.buildPropertyFunctions(new OpBGP(pattern), context).toString() ;
+    }
+
+    /** Done first, the call is over the unit table and the triple follows it;
+     *  where written, the call is over the triple. */
+    static boolean propFuncFirst(String plan)
+    {
+        boolean first = plan.contains("(table unit)") ;
+        assertEquals(plan, first, plan.startsWith("(sequence")) ;
+        return first ;
+    }
+
+    @Test public void selectiveCallGoesFirst()
+    {
+        assertTrue(propFuncFirst(plan("5", -1))) ;
+        assertTrue(propFuncFirst(plan("1000", -1))) ;
+    }
+
+    @Test public void unselectiveCallStays()
+    {
+        assertFalse(propFuncFirst(plan("1001", -1))) ;
+        assertFalse(propFuncFirst(plan("-1", -1))) ;
+    }
+
+    @Test public void limitIsConfigurable()
+    {
+        assertFalse(propFuncFirst(plan("50", 10))) ;
+        assertTrue(propFuncFirst(plan("50", 100))) ;
+        assertFalse(propFuncFirst(plan("5", 0))) ;
+    }
+}
@@ -0,0 +1,161 @@
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import static org.junit.Assert.* ;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.List ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Factory ;
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.DataSourceGraphImpl ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding1 ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingRoot ;
+import com.hp.hpl.jena.sparql.engine.main.QC ;
+import com.hp.hpl.jena.sparql.util.Context ;
+
+/** A basic graph pattern executed a block of rows at a time must give the
+ *  same rows, in the same order, as executed a row at a time: with
+ *  variables used more than once, with more input rows than fit in a
+ *  block, and with no input rows at all.
+ */
+public class TestBlockTriplesBatch
+{
+    static final String NS = "http://example/" ;
+
+    static final Var s = Var.alloc("s"), o = Var.alloc("o"), o2 = Var.alloc("o2"),
+                     x = Var.alloc("x"), pp = Var.alloc("pp"), z = Var.alloc("z") ;
+
+    static final Var[] VARS = { s, o, o2, x, pp, z } ;
+
+    static final int[] BATCH_SIZES = { 1, 2, 3, 7, 64, 1000 } ;
+
+    static Node node(String name) { return Node.createURI(NS+name) ; }
+
+    static Graph data()
+    {
+        Graph g = Factory.createGraphMem() ;
+        for ( int i = 0 ; i < 50 ; i++ )
+        {
+            g.add(new Triple(node("s"+i), node("p"), node("o"+(i%5)))) ;
+            if ( i%4 == 0 )
+                g.add(new Triple(node("s"+i), node("r"), node("s"+i))) ;
+            else
+                g.add(new Triple(node("s"+i), node("r"), node("s"+(i+1)))) ;
+        }
+        for ( int k = 0 ; k < 5 ; k++ )
+        {
+            if ( k%2 == 0 )
+                g.add(new Triple(node("o"+k), node("q"), node("o"+k))) ;
+            g.add(new Triple(node("o"+k), node("q"), node("o"+(k+1)))) ;
+        }
+        return g ;
+    }
+
+    static final Graph graph = data() ;
+
+    static BasicPattern pattern(Node... nodes)
+    {
+        BasicPattern bgp = new BasicPattern() ;
+        for ( int i = 0 ; i < nodes.length ; i += 3 )
+            bgp.add(new Triple(nodes[i], nodes[i+1], nodes[i+2])) ;
+        return bgp ;
+    }
+
+    static final BasicPattern[] PATTERNS = {
+        pattern(s, node("p"), o, o, node("q"), o2),
+        // a variable twice in one triple pattern
+        pattern(o, node("q"), o),
+        pattern(x, node("r"), x, x, node("p"), o),
+        pattern(s, node("p"), o, o, node("q"), o),
+        pattern(s, pp, s),
+        pattern(s, node("r"), x, x, node("p"), o, o, node("q"), o),
+    } ;
+
+    /** Input rows: each ?s, each twice, with an unrelated ?z */
+    static List<Binding> inputRows()
+    {
+        List<Binding> rows = new ArrayList<Binding>() ;
+        for ( int i = 0 ; i < 50 ; i++ )
+        {
+            Binding b = new Binding1(BindingRoot.create(), s, node("s"+i)) ;
+            rows.add(b) ;
+            rows.add(new Binding1(b, z, node("z"+(i%3)))) ;
+        }
+        return rows ;
+    }
+
+    static List<String> run(BasicPattern pattern, List<Binding> input, int batchSize)
+    {
+        Context context = ARQ.getContext().copy() ;
+        ExecutionContext execCxt = new ExecutionContext(context, graph, new DataSourceGraphImpl(graph), QC.getFactory(context)) ;
+        QueryIterator in = new QueryIterPlainWrapper(input.iterator(), execCxt) ;
+        QueryIterator iter = batchSize > 0 ? QueryIterBlockTriplesBatch.create(in, pattern, batchSize, execCxt)
+                                           : QueryIterBlockTriples.create(in, pattern, execCxt) ;
+        List<String> rows = new ArrayList<String>() ;
+        try {
+            while ( iter.hasNext() )
+            {
+                Binding b = iter.nextBinding() ;
+                StringBuilder sb = new StringBuilder() ;
+                for ( Var v : VARS )
+                    if ( b.contains(v) )
+                        sb.append(v).append('=').append(b.get(v)).append(' ') ;
+                rows.add(sb.toString()) ;
+            }
+        } finally { iter.close() ; }
+        return rows ;
+    }
+
+    static void assertSameRows(List<Binding> input)
+    {
+        for ( BasicPattern pattern : PATTERNS )
+        {
+            List<String> expected = run(pattern, input, 0) ;
+            for ( int batchSize : BATCH_SIZES )
+                assertEquals(pattern+" in blocks of "+batchSize, expected, run(pattern, input, batchSize)) ;
+        }
+    }
+
+    @Test public void oneInputRow()
+    {
+        List<Binding> input = Collections.singletonList(BindingRoot.create()) ;
+        assertSameRows(input) ;
+        assertEquals(80, run(PATTERNS[0], input, 7).size()) ;
+    }
+
+    @Test public void repeatedVariables()
+    {
+        List<Binding> input = Collections.singletonList(BindingRoot.create()) ;
+        // o0, o2 and o4 are linked to themselves by :q
+        assertEquals(3, run(pattern(o, node("q"), o), input, 2).size()) ;
+        // s0, s4, ... s48 are linked to themselves by :r
+        assertEquals(13, run(pattern(x, node("r"), x, x, node("p"), o), input, 2).size()) ;
+        assertEquals(run(pattern(s, pp, s), input, 0), run(pattern(s, pp, s), input, 5)) ;
+    }
+
+    @Test public void moreInputRowsThanABlock()
+    {
+        List<Binding> input = inputRows() ;
+        assertTrue(input.size() > 64) ;
+        assertSameRows(input) ;
+        assertEquals(100, run(pattern(s, node("p"), o), input, 7).size()) ;
+    }
+
+    @Test public void noInputRows()
+    {
+        List<Binding> input = Collections.emptyList() ;
+        assertSameRows(input) ;
+        assertTrue(run(PATTERNS[0], input, 7).isEmpty()) ;
+    }
+}
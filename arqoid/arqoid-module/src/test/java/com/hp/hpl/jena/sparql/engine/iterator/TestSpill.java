@@ -0,0 +1,139 @@
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import static org.junit.Assert.* ;
+
+import java.io.File ;
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.List ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.query.QueryExecution ;
+import com.hp.hpl.jena.query.QueryExecutionFactory ;
+import com.hp.hpl.jena.query.QueryFactory ;
+import com.hp.hpl.jena.query.QuerySolution ;
+import com.hp.hpl.jena.query.ResultSet ;
+import com.hp.hpl.jena.query.Syntax ;
+import com.hp.hpl.jena.rdf.model.Model ;
+import com.hp.hpl.jena.rdf.model.ModelFactory ;
+import com.hp.hpl.jena.rdf.model.Property ;
+import com.hp.hpl.jena.rdf.model.Resource ;
+
+/** Operators which need all their input, run with a spill threshold small
+ *  enough that they spill to temporary files, must give the same answers as
+ *  they do in memory, and must delete their files when closed.
+ */
+public class TestSpill
+{
+    static final String NS = "http://example/" ;
+    static final String PREFIX = "PREFIX : <"+NS+"> " ;
+
+    static Model data()
+    {
+        Model m = ModelFactory.createDefaultModel() ;
+        Property p = m.createProperty(NS+"p") ;
+        Property q = m.createProperty(NS+"q") ;
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            Resource s = m.createResource(NS+"s"+i) ;
+            s.addProperty(p, "v"+(i%17)) ;
+            s.addProperty(q, m.createResource(NS+"g"+(i%13))) ;
+        }
+        return m ;
+    }
+
+    static final Model model = data() ;
+
+    /** Run the query, answering its rows as strings, in order.
+     *  spilled[0] is set if temporary files appeared while it ran. */
+    static List<String> run(String queryString, int threshold, boolean[] spilled)
+    {
+        int before = tempFiles() ;
+        QueryExecution qExec = QueryExecutionFactory.create(QueryFactory.create(PREFIX+queryString, Syntax.syntaxARQ), model) ;
+        qExec.getContext().set(ARQ.spillThreshold, threshold) ;
+        List<String> rows = new ArrayList<String>() ;
+        try {
+            ResultSet rs = qExec.execSelect() ;
+            while ( rs.hasNext() )
+            {
+                if ( spilled != null && tempFiles() > before )
+                    spilled[0] = true ;
+                QuerySolution row = rs.nextSolution() ;
+                StringBuilder sb = new StringBuilder() ;
+                for ( String v : rs.getResultVars() )
+                    sb.append(v).append('=').append(row.get(v)).append(' ') ;
+                rows.add(sb.toString()) ;
+            }
+        } finally { qExec.close() ; }
+        assertEquals("temporary files left behind", before, tempFiles()) ;
+        return rows ;
+    }
+
+    static int tempFiles()
+    {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles() ;
+        int n = 0 ;
+        if ( files != null )
+            for ( File f : files )
+                if ( f.getName().startsWith("arq-") )
+                    n++ ;
+        return n ;
+    }
+
+    static void assertSameRows(String queryString, boolean ordered, int threshold)
+    {
+        List<String> expected = run(queryString, 0, null) ;
+        boolean[] spilled = { false } ;
+        List<String> actual = run(queryString, threshold, spilled) ;
+        assertTrue("did not spill", spilled[0]) ;
+        if ( ! ordered )
+        {
+            Collections.sort(expected) ;
+            Collections.sort(actual) ;
+        }
+        assertEquals(expected, actual) ;
+    }
+
+    @Test public void distinctSpills()
+    {
+        assertSameRows("SELECT DISTINCT ?v { ?s :p ?v }", false, 3) ;
+        assertEquals(17, run("SELECT DISTINCT ?v { ?s :p ?v }", 3, null).size()) ;
+    }
+
+    @Test public void distinctPairsSpill()
+    {
+        assertSameRows("SELECT DISTINCT ?v ?g { ?s :p ?v ; :q ?g }", false, 5) ;
+        assertEquals(200, run("SELECT DISTINCT ?v ?g { ?s :p ?v ; :q ?g }", 5, null).size()) ;
+    }
+
+    @Test public void groupSpills()
+    {
+        assertSameRows("SELECT ?g (count(*) AS ?c) { ?s :q ?g } GROUP BY ?g", false, 2) ;
+        assertEquals(13, run("SELECT ?g (count(*) AS ?c) { ?s :q ?g } GROUP BY ?g", 2, null).size()) ;
+    }
+
+    @Test public void groupWithSeveralKeysSpills()
+    {
+        assertSameRows("SELECT ?g ?v (count(?s) AS ?c) { ?s :q ?g ; :p ?v } GROUP BY ?g ?v", false, 4) ;
+    }
+
+    @Test public void sortSpills()
+    {
+        assertSameRows("SELECT ?s ?v { ?s :p ?v } ORDER BY ?v ?s", true, 7) ;
+    }
+
+    @Test public void sortMergeKeepsTiesInInputOrder()
+    {
+        // 200 rows over 13 keys: runs of 10 are merged with many ties between them
+        assertSameRows("SELECT ?s ?g { ?s :q ?g } ORDER BY DESC(?g)", true, 10) ;
+    }
+
+    @Test public void sortUnderSliceBeyondThresholdSpills()
+    {
+        // 60 rows needed is beyond the threshold, so this sorts rather than keeping the top N
+        assertSameRows("SELECT ?s ?v { ?s :p ?v } ORDER BY ?v ?s LIMIT 50 OFFSET 10", true, 20) ;
+        assertEquals(50, run("SELECT ?s ?v { ?s :p ?v } ORDER BY ?v ?s LIMIT 50 OFFSET 10", 20, null).size()) ;
+    }
+}
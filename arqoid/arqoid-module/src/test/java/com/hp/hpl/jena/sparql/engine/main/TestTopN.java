@@ -0,0 +1,137 @@
+package com.hp.hpl.jena.sparql.engine.main;
+
+import static org.junit.Assert.* ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.query.QueryExecution ;
+import com.hp.hpl.jena.query.QueryExecutionFactory ;
+import com.hp.hpl.jena.query.QueryFactory ;
+import com.hp.hpl.jena.query.QuerySolution ;
+import com.hp.hpl.jena.query.ResultSet ;
+import com.hp.hpl.jena.rdf.model.Model ;
+import com.hp.hpl.jena.rdf.model.ModelFactory ;
+import com.hp.hpl.jena.rdf.model.Property ;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder ;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSort ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterTopN ;
+
+/** ORDER BY with LIMIT keeps only the top rows, which must be the same rows
+ *  as sorting everything and slicing, and must not stop a subclass of
+ *  OpExecutor from seeing the order and project, nor be lost to it.
+ */
+public class TestTopN
+{
+    static final String NS = "http://example/" ;
+    static final String PREFIX = "PREFIX : <"+NS+"> " ;
+
+    static Model data()
+    {
+        Model m = ModelFactory.createDefaultModel() ;
+        Property p = m.createProperty(NS+"p") ;
+        for ( int i = 0 ; i < 100 ; i++ )
+            m.createResource(NS+"s"+i).addProperty(p, m.createTypedLiteral((i*37)%23)) ;
+        return m ;
+    }
+
+    static final Model model = data() ;
+
+    static List<String> run(String queryString, OpExecutorFactory factory)
+    {
+        return run(queryString, factory, true) ;
+    }
+
+    static List<String> run(String queryString, OpExecutorFactory factory, boolean topN)
+    {
+        QueryExecution qExec = QueryExecutionFactory.create(QueryFactory.create(PREFIX+queryString), model) ;
+        qExec.getContext().set(ARQ.spillThreshold, 0) ;
+        qExec.getContext().set(ARQ.optTopN, topN) ;
+        if ( factory != null )
+            QC.setFactory(qExec.getContext(), factory) ;
+        List<String> rows = new ArrayList<String>() ;
+        try {
+            ResultSet rs = qExec.execSelect() ;
+            while ( rs.hasNext() )
+            {
+                QuerySolution row = rs.nextSolution() ;
+                StringBuilder sb = new StringBuilder() ;
+                for ( String v : rs.getResultVars() )
+                    sb.append(v).append('=').append(row.get(v)).append(' ') ;
+                rows.add(sb.toString()) ;
+            }
+        } finally { qExec.close() ; }
+        return rows ;
+    }
+
+    @Test public void topNIsTheSliceOfTheSort()
+    {
+        List<String> all = run("SELECT ?s ?o { ?s :p ?o } ORDER BY DESC(?o) ?s", null) ;
+        assertEquals(100, all.size()) ;
+        assertEquals(all.subList(0, 10), run("SELECT ?s ?o { ?s :p ?o } ORDER BY DESC(?o) ?s LIMIT 10", null)) ;
+        assertEquals(all.subList(15, 22), run("SELECT ?s ?o { ?s :p ?o } ORDER BY DESC(?o) ?s LIMIT 7 OFFSET 15", null)) ;
+        assertEquals(all.subList(95, 100), run("SELECT ?s ?o { ?s :p ?o } ORDER BY DESC(?o) ?s LIMIT 20 OFFSET 95", null)) ;
+    }
+
+    @Test public void topNUnderProject()
+    {
+        List<String> all = run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s", null) ;
+        assertEquals(all.subList(0, 12), run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s LIMIT 12", null)) ;
+    }
+
+    static class Counting extends OpExecutor
+    {
+        static int orders = 0 ;
+        static int projects = 0 ;
+        static QueryIterator lastOrder = null ;
+
+        Counting(ExecutionContext execCxt) { super(execCxt) ; }
+
+        @Override
+        protected QueryIterator execute(OpOrder opOrder, QueryIterator input)
+        {
+            orders++ ;
+            lastOrder = super.execute(opOrder, input) ;
+            return lastOrder ;
+        }
+
+        @Override
+        protected QueryIterator execute(OpProject opProject, QueryIterator input)
+        {
+            projects++ ;
+            return super.execute(opProject, input) ;
+        }
+    }
+
+    @Test public void subclassSeesOrderAndProject()
+    {
+        Counting.orders = 0 ;
+        Counting.projects = 0 ;
+        OpExecutorFactory factory = new OpExecutorFactory() {
+            public OpExecutor create(ExecutionContext execCxt) { return new Counting(execCxt) ; }
+        } ;
+        List<String> rows = run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s LIMIT 5", factory) ;
+        assertEquals(run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s LIMIT 5", null), rows) ;
+        assertEquals(1, Counting.orders) ;
+        assertEquals(1, Counting.projects) ;
+        // and still keeps only the top rows
+        assertTrue(Counting.lastOrder instanceof QueryIterTopN) ;
+
+        assertEquals(rows, run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s LIMIT 5", factory, false)) ;
+        assertTrue(Counting.lastOrder instanceof QueryIterSort) ;
+        run("SELECT ?s { ?s :p ?o } ORDER BY ?o ?s", factory) ;
+        assertTrue(Counting.lastOrder instanceof QueryIterSort) ;
+    }
+
+    @Test public void topNCanBeSwitchedOff()
+    {
+        String qs = "SELECT ?s ?o { ?s :p ?o } ORDER BY DESC(?o) ?s LIMIT 7 OFFSET 15" ;
+        assertEquals(run(qs, null), run(qs, null, false)) ;
+    }
+}
@@ -0,0 +1,155 @@
+package com.hp.hpl.jena.sparql.path;
+
+import static org.junit.Assert.* ;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.List ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.query.QueryExecution ;
+import com.hp.hpl.jena.query.QueryExecutionFactory ;
+import com.hp.hpl.jena.query.QueryFactory ;
+import com.hp.hpl.jena.query.QuerySolution ;
+import com.hp.hpl.jena.query.ResultSet ;
+import com.hp.hpl.jena.query.Syntax ;
+import com.hp.hpl.jena.rdf.model.Model ;
+import com.hp.hpl.jena.rdf.model.ModelFactory ;
+import com.hp.hpl.jena.rdf.model.Property ;
+import com.hp.hpl.jena.rdf.model.Resource ;
+
+/** The paths p+ and p*, evaluated with the reachability index, must give
+ *  the same answers as walking the graph each time, on graphs with cycles,
+ *  with either end bound or both, and after the graph changes once the
+ *  index has been built.
+ */
+public class TestPathIndex
+{
+    static final String NS = "http://example/" ;
+    static final String PREFIX = "PREFIX : <"+NS+"> " ;
+
+    static final String[] QUERIES = {
+        "SELECT ?o { :a0 :p+ ?o }",
+        "SELECT ?o { :a0 :p* ?o }",
+        "SELECT ?o { :b0 :p+ ?o }",
+        "SELECT ?s { ?s :p+ :a0 }",
+        "SELECT ?s { ?s :p* :b1 }",
+        "SELECT ?s ?o { ?s :p+ ?o }",
+        "SELECT ?s ?o { ?s :p* ?o }",
+        "SELECT * { :a0 :p+ :a0 }",
+        "SELECT * { :a1 :p+ :b1 }",
+        "SELECT * { :b1 :p+ :a0 }",
+        "SELECT * { :c0 :p+ :c0 }",
+        "SELECT * { :z :p* :z }",
+        "SELECT ?y ?o { :x :q ?y . ?y :p+ ?o }",
+    } ;
+
+    /** A cycle a0, a1, a2, a tail b0, b1 off it, and a loop on c0 */
+    static Model data()
+    {
+        Model m = ModelFactory.createDefaultModel() ;
+        link(m, "a0", "p", "a1") ;
+        link(m, "a1", "p", "a2") ;
+        link(m, "a2", "p", "a0") ;
+        link(m, "a2", "p", "b0") ;
+        link(m, "b0", "p", "b1") ;
+        link(m, "c0", "p", "c0") ;
+        link(m, "x", "q", "a1") ;
+        link(m, "x", "q", "b0") ;
+        return m ;
+    }
+
+    static void link(Model m, String s, String p, String o)
+    {
+        m.add(resource(m, s), property(m, p), resource(m, o)) ;
+    }
+
+    static Resource resource(Model m, String name) { return m.createResource(NS+name) ; }
+
+    static Property property(Model m, String name) { return m.createProperty(NS+name) ; }
+
+    /** Run the query, answering its rows as strings, sorted */
+    static List<String> run(Model model, String queryString, boolean indexed)
+    {
+        QueryExecution qExec = QueryExecutionFactory.create(QueryFactory.create(PREFIX+queryString, Syntax.syntaxARQ), model) ;
+        qExec.getContext().set(ARQ.pathIndex, indexed) ;
+        List<String> rows = new ArrayList<String>() ;
+        try {
+            ResultSet rs = qExec.execSelect() ;
+            while ( rs.hasNext() )
+            {
+                QuerySolution row = rs.nextSolution() ;
+                StringBuilder sb = new StringBuilder() ;
+                for ( String v : rs.getResultVars() )
+                    sb.append(v).append('=').append(row.get(v)).append(' ') ;
+                rows.add(sb.toString()) ;
+            }
+        } finally { qExec.close() ; }
+        Collections.sort(rows) ;
+        return rows ;
+    }
+
+    static void assertSameRows(Model model)
+    {
+        for ( String q : QUERIES )
+            assertEquals(q, run(model, q, false), run(model, q, true)) ;
+    }
+
+    static boolean reaches(Model model, String from, String to)
+    {
+        return run(model, "SELECT * { :"+from+" :p+ :"+to+" }", true).size() == 1 ;
+    }
+
+    @Test public void sameAnswersAsWalking()
+    {
+        Model model = data() ;
+        assertSameRows(model) ;
+        // again, now the closures are in the index
+        assertSameRows(model) ;
+        assertEquals(5, run(model, "SELECT ?o { :a0 :p+ ?o }", true).size()) ;
+        assertEquals(5, run(model, "SELECT ?o { :a0 :p* ?o }", true).size()) ;
+        assertEquals(1, run(model, "SELECT * { :a0 :p+ :a0 }", true).size()) ;
+        assertEquals(0, run(model, "SELECT * { :b1 :p+ :a0 }", true).size()) ;
+        assertEquals(1, run(model, "SELECT * { :z :p* :z }", true).size()) ;
+    }
+
+    @Test public void indexExtendsOnAdd()
+    {
+        Model model = data() ;
+        assertSameRows(model) ;
+        assertFalse(reaches(model, "a0", "d0")) ;
+        link(model, "b1", "p", "d0") ;
+        assertTrue(reaches(model, "a0", "d0")) ;
+        assertSameRows(model) ;
+        // closing a second cycle through the tail
+        link(model, "d0", "p", "b0") ;
+        assertTrue(reaches(model, "d0", "d0")) ;
+        assertSameRows(model) ;
+        // a link from outside into the cycle
+        link(model, "c0", "p", "a1") ;
+        assertTrue(reaches(model, "c0", "b1")) ;
+        assertSameRows(model) ;
+    }
+
+    @Test public void indexRetractsOnDelete()
+    {
+        Model model = data() ;
+        assertSameRows(model) ;
+        assertTrue(reaches(model, "a0", "b1")) ;
+        model.remove(resource(model, "a2"), property(model, "p"), resource(model, "b0")) ;
+        assertFalse(reaches(model, "a0", "b1")) ;
+        assertSameRows(model) ;
+        // breaking the cycle
+        assertTrue(reaches(model, "a1", "a0")) ;
+        model.remove(resource(model, "a2"), property(model, "p"), resource(model, "a0")) ;
+        assertFalse(reaches(model, "a1", "a0")) ;
+        assertFalse(reaches(model, "a0", "a0")) ;
+        assertSameRows(model) ;
+        // and putting it back
+        link(model, "a2", "p", "a0") ;
+        assertTrue(reaches(model, "a0", "a0")) ;
+        assertSameRows(model) ;
+    }
+}